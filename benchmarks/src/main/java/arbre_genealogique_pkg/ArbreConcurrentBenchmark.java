@@ -0,0 +1,98 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure le débit d'un arbre partagé ({@link ArbreConcurrent}) selon le nombre de fils : lectures seules,
+ * imports seuls (un enfant ajouté à un membre tiré au hasard), puis trois lecteurs pendant qu'un fil importe.
+ * Le débit total doit croître avec le nombre de fils, jusqu'au nombre de cœurs.
+ * Exemple : java -jar target/benchmarks.jar ArbreConcurrent -t 1 puis -t 4
+ * @author aklam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArbreConcurrentBenchmark {
+
+    @Param({"100000"})
+    public int taille;
+
+    private ArbreConcurrent arbre;
+
+    /**
+     * l'arbre est reconstruit à chaque itération pour que les imports ne le fassent pas grandir sans fin
+     */
+    @Setup(Level.Iteration)
+    public void construire() {
+        arbre = new ArbreConcurrent(ArbresSynthetiques.construire(taille, 20).getArbre());
+    }
+
+    /**
+     * tirage propre à chaque fil
+     */
+    @State(Scope.Thread)
+    public static class Tirage {
+        private final SplittableRandom alea = new SplittableRandom(Thread.currentThread().getId());
+        private int numero;
+
+        int membre(int taille) {
+            return alea.nextInt(taille);
+        }
+    }
+
+    @Benchmark
+    public int lire(Tirage tirage) {
+        return lecture(tirage);
+    }
+
+    @Benchmark
+    public int importer(Tirage tirage) {
+        return ajout(tirage);
+    }
+
+    @Benchmark
+    @Group("mixte")
+    @GroupThreads(3)
+    public int lecteurs(Tirage tirage) {
+        return lecture(tirage);
+    }
+
+    @Benchmark
+    @Group("mixte")
+    @GroupThreads(1)
+    public int importeur(Tirage tirage) {
+        return ajout(tirage);
+    }
+
+    //le nom, le pere et les enfants d'un membre : ce que l'interface affiche à la sélection
+    private int lecture(Tirage tirage) {
+        int id = tirage.membre(taille);
+        return arbre.nom(id).length() + arbre.pere(id) + arbre.enfants(id).length;
+    }
+
+    private int ajout(Tirage tirage) {
+        int numero = ++tirage.numero;
+        MembreFamille.Genre genre = (numero & 1) == 0 ? MembreFamille.Genre.MASCULIN : MembreFamille.Genre.FEMININ;
+        return arbre.ajouterLien(tirage.membre(taille), MembreFamille.LienDeParente.ENFANT,
+                ArbresSynthetiques.prenoms(genre, numero), ArbresSynthetiques.nom(numero), "", genre);
+    }
+}
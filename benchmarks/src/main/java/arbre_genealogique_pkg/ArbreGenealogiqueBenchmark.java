@@ -0,0 +1,40 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure la construction d'un arbre complet, de la création de la racine (creerArbre dans l'interface)
+ * jusqu'au dernier membre, pour des arbres synthétiques de taille et de profondeur données.
+ * Exemple : java -jar target/benchmarks.jar ArbreGenealogiqueBenchmark -p taille=1000000 -p profondeur=20
+ * @author aklam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArbreGenealogiqueBenchmark {
+
+    @Param({"10000", "100000"})
+    public int taille;
+
+    @Param({"6", "12"})
+    public int profondeur;
+
+    @Benchmark
+    public ArbreGenealogique creerArbre() {
+        return ArbresSynthetiques.construire(taille, profondeur).getArbre();
+    }
+}
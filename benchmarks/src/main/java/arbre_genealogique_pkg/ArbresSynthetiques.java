@@ -0,0 +1,101 @@
+package arbre_genealogique_pkg;
+
+import java.util.ArrayDeque;
+
+/**
+ * Arbres de test pour les mesures : une racine mariée, puis génération après génération chaque membre reçoit
+ * un conjoint et des enfants, par les mêmes méthodes que l'interface graphique ({@link MoteurArbre#ajouterLien}).
+ * Les noms sont tirés de listes fixes : deux appels avec les mêmes paramètres donnent le même arbre
+ * @author aklam
+ */
+final class ArbresSynthetiques {
+
+    private static final String[] PRENOMS_MASCULINS = {
+            "Jean", "Pierre", "Luc", "Paul", "Louis", "Marc", "Henri", "Jacques", "André", "Michel"
+    };
+    private static final String[] PRENOMS_FEMININS = {
+            "Marie", "Jeanne", "Anne", "Louise", "Claire", "Élodie", "Zoé", "Hélène", "Sophie", "Camille"
+    };
+    private static final String[] NOMS = {
+            "Dupont", "Martin", "Bernard", "Durand", "Lefèvre", "Moreau", "Laurent", "Simon", "Michel", "Garnier",
+            "Roux", "Fournier", "Girard", "Bonnet", "Mercier", "Blanc", "Guérin", "Muller", "Henry", "Rousseau"
+    };
+
+    private ArbresSynthetiques() {
+    }
+
+    /**
+     * @param taille nombre de membres visé, atteint exactement
+     * @param profondeur nombre maximal de générations d'enfants sous la racine
+     * @return le moteur sur l'arbre construit
+     */
+    static MoteurArbre construire(int taille, int profondeur) {
+        if (taille < 1 || profondeur < 1) {
+            throw new IllegalArgumentException("Taille et profondeur doivent être positives");
+        }
+        int enfantsParCouple = enfantsParCouple(taille, profondeur);
+        MoteurArbre moteur = new MoteurArbre();
+        int numero = 0;
+        MembreFamille racine = moteur.definirRacine(prenoms(MembreFamille.Genre.MASCULIN, numero), nom(0),
+                MembreFamille.Genre.MASCULIN);
+        int nombre = 1;
+
+        //parcours en largeur : chaque membre d'une génération complète sa famille avant la génération suivante
+        ArrayDeque<MembreFamille> file = new ArrayDeque<>();
+        ArrayDeque<Integer> generations = new ArrayDeque<>();
+        file.add(racine);
+        generations.add(0);
+        while (nombre < taille && !file.isEmpty()) {
+            MembreFamille membre = file.poll();
+            int generation = generations.poll();
+            MembreFamille.Genre genreConjoint = oppose(membre.getGenre());
+            moteur.ajouterLien(membre, MembreFamille.LienDeParente.CONJOINT, prenoms(genreConjoint, ++numero),
+                    nom(numero), genreConjoint);
+            nombre++;
+            if (generation == profondeur) {
+                continue;
+            }
+            for (int i = 0; i < enfantsParCouple && nombre < taille; i++) {
+                MembreFamille.Genre genre = (numero & 1) == 0 ? MembreFamille.Genre.MASCULIN : MembreFamille.Genre.FEMININ;
+                MembreFamille enfant = moteur.ajouterLien(membre, MembreFamille.LienDeParente.ENFANT,
+                        prenoms(genre, ++numero), membre.getNom(), genre);
+                nombre++;
+                file.add(enfant);
+                generations.add(generation + 1);
+            }
+        }
+        return moteur;
+    }
+
+    /**
+     * @return le plus petit nombre d'enfants par couple, au moins 2, qui permet d'atteindre la taille
+     * en au plus profondeur générations
+     */
+    static int enfantsParCouple(int taille, int profondeur) {
+        for (int enfants = 2; ; enfants++) {
+            //chaque membre compte avec son conjoint
+            long total = 0;
+            long generation = 1;
+            for (int g = 0; g <= profondeur && total < taille; g++) {
+                total += 2 * generation;
+                generation *= enfants;
+            }
+            if (total >= taille) {
+                return enfants;
+            }
+        }
+    }
+
+    static String prenoms(MembreFamille.Genre genre, int numero) {
+        String[] prenoms = genre == MembreFamille.Genre.FEMININ ? PRENOMS_FEMININS : PRENOMS_MASCULINS;
+        return prenoms[numero % prenoms.length];
+    }
+
+    static String nom(int numero) {
+        return NOMS[numero % NOMS.length];
+    }
+
+    private static MembreFamille.Genre oppose(MembreFamille.Genre genre) {
+        return genre == MembreFamille.Genre.MASCULIN ? MembreFamille.Genre.FEMININ : MembreFamille.Genre.MASCULIN;
+    }
+}
@@ -0,0 +1,61 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Mesure avec JOL la mémoire occupée par membre : disposition de {@link MembreFamille} et de {@link ListeIds},
+ * membre isolé, puis moyenne sur un arbre entièrement chargé. Les noms (partagés, voir {@link ReserveNoms})
+ * et le registre ne sont pas comptés, seulement les membres et les listes qu'ils référencent.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar arbre_genealogique_pkg.EmpreinteMembres [arbre.ft | taille]
+ * </pre>
+ * @author aklam
+ */
+public final class EmpreinteMembres {
+
+    private EmpreinteMembres() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(ClassLayout.parseClass(MembreFamille.class).toPrintable());
+        System.out.println(ClassLayout.parseClass(ListeIds.class).toPrintable());
+
+        MembreFamille seul = new MembreFamille("Jean", "Dupont", MembreFamille.Genre.MASCULIN);
+        long noms = GraphLayout.parseInstance(seul.getPrenoms(), seul.getNom(),
+                seul.getNomDeBaseDeLaMariee()).totalSize();
+        System.out.println("membre isolé\t" + (GraphLayout.parseInstance(seul).totalSize() - noms) + " octets");
+
+        ArbreGenealogique arbre;
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            arbre = FichierArbre.ouvrir(new File(args[0]));
+        } else {
+            arbre = ArbresSynthetiques.construire(args.length > 0 ? Integer.parseInt(args[0]) : 100_000, 20).getArbre();
+        }
+        RegistreMembres registre = arbre.getRegistre();
+        long membres = 0;
+        long listes = 0;
+        Set<ListeIds> vues = Collections.newSetFromMap(new IdentityHashMap<ListeIds, Boolean>());
+        //la liste vide commune n'appartient à aucun membre
+        vues.add(ListeIds.VIDE);
+        for (int id = 0; id < registre.taille(); id++) {
+            MembreFamille membre = registre.get(id);
+            membres += ClassLayout.parseInstance(membre).instanceSize();
+            for (ListeIds liste : new ListeIds[]{membre.idsEnfants(), membre.idsFreresSoeurs()}) {
+                if (vues.add(liste)) {
+                    listes += GraphLayout.parseInstance(liste).totalSize();
+                }
+            }
+        }
+        int taille = Math.max(1, registre.taille());
+        System.out.printf("arbre\t%d membres, %d listes%n", registre.taille(), vues.size() - 1);
+        System.out.printf("par membre\t%.1f octets (objet %.1f, listes %.1f)%n",
+                (double) (membres + listes) / taille, (double) membres / taille, (double) listes / taille);
+    }
+}
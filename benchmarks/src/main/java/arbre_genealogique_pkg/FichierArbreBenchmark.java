@@ -0,0 +1,109 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure l'enregistrement et la lecture d'un arbre au format .ft : lecture complète, et projection
+ * en mémoire suivie de la lecture de la racine (ce que fait l'interface à l'ouverture d'un gros fichier).
+ * Les arbres viennent du {@link GenerateurArbre} : 14 générations font environ 9 500 membres, 18 environ 96 000.
+ * enregistrerModification mesure l'enregistrement d'un seul nom modifié quand le fichier est journalisé,
+ * compactage occasionnel compris, à comparer avec enregistrer qui réécrit tout l'arbre.
+ * Les mesures *Compresse utilisent le format compressé par blocs Deflate ({@link CodecBlocs})
+ * @author aklam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FichierArbreBenchmark {
+
+    @Param({"14", "18"})
+    public int generations;
+
+    private ArbreGenealogique arbre;
+    private File lu;
+    private File luCompresse;
+    private File ecrit;
+    private File journalise;
+    private MoteurArbre moteur;
+    private MembreFamille modifie;
+    private int numero;
+
+    @Setup
+    public void preparer() throws IOException {
+        arbre = new GenerateurArbre(generations, 1).genererArbre();
+        lu = Files.createTempFile("arbre-lu", ".ft").toFile();
+        ecrit = Files.createTempFile("arbre-ecrit", ".ft").toFile();
+        FichierArbre.enregistrer(arbre, lu);
+        luCompresse = Files.createTempFile("arbre-compresse", ".ft").toFile();
+        FichierArbre.enregistrer(arbre, luCompresse, CodecBlocs.DEFLATE, SuiviProgression.AUCUN);
+        journalise = Files.createTempFile("arbre-journalise", ".ft").toFile();
+        FichierArbre.enregistrer(arbre, journalise);
+        moteur = MoteurArbre.ouvrirJournalise(journalise);
+        modifie = moteur.getMembre(moteur.getArbre().nombreMembres() / 2);
+    }
+
+    @TearDown
+    public void nettoyer() throws IOException {
+        moteur.fermerJournal();
+        Files.deleteIfExists(lu.toPath());
+        Files.deleteIfExists(luCompresse.toPath());
+        Files.deleteIfExists(ecrit.toPath());
+        Files.deleteIfExists(journalise.toPath());
+        Files.deleteIfExists(JournalArbre.fichierJournal(journalise).toPath());
+    }
+
+    @Benchmark
+    public File enregistrer() throws IOException {
+        FichierArbre.enregistrer(arbre, ecrit);
+        return ecrit;
+    }
+
+    @Benchmark
+    public File enregistrerCompresse() throws IOException {
+        FichierArbre.enregistrer(arbre, ecrit, CodecBlocs.DEFLATE, SuiviProgression.AUCUN);
+        return ecrit;
+    }
+
+    @Benchmark
+    public File enregistrerModification() throws IOException {
+        numero++;
+        moteur.modifierNom(modifie, (numero & 1) == 0 ? "Bernard" : "Martin");
+        moteur.enregistrer(journalise);
+        return journalise;
+    }
+
+    @Benchmark
+    public ArbreGenealogique ouvrir() throws IOException {
+        //sous le seuil de projection, le fichier est lu en entier
+        return FichierArbre.ouvrir(lu);
+    }
+
+    @Benchmark
+    public ArbreGenealogique ouvrirCompresse() throws IOException {
+        return FichierArbre.ouvrir(luCompresse);
+    }
+
+    @Benchmark
+    public MembreFamille ouvrirProjete() throws IOException {
+        return FichierArbre.ouvrirProjete(lu).getRoot();
+    }
+}
@@ -0,0 +1,62 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure le générateur d'arbres de test : construction en mémoire par les règles de liaison,
+ * et écriture directe d'un fichier .ft.
+ * Exemple : java -jar target/benchmarks.jar GenerateurArbreBenchmark.genererFichier -p generations=25
+ * @author aklam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GenerateurArbreBenchmark {
+
+    @Param({"14", "18"})
+    public int generations;
+
+    private GenerateurArbre generateur;
+    private File fichier;
+
+    @Setup
+    public void preparer() throws IOException {
+        generateur = new GenerateurArbre(generations, 1);
+        fichier = Files.createTempFile("arbre-genere", ".ft").toFile();
+    }
+
+    @TearDown
+    public void nettoyer() throws IOException {
+        Files.deleteIfExists(fichier.toPath());
+    }
+
+    @Benchmark
+    public ArbreGenealogique genererArbre() {
+        return generateur.genererArbre();
+    }
+
+    @Benchmark
+    public File genererFichier() throws IOException {
+        generateur.genererFichier(fichier);
+        return fichier;
+    }
+}
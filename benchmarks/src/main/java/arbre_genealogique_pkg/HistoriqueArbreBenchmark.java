@@ -0,0 +1,60 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure l'annulation ({@link MoteurArbre#annuler()}) : ajouter un membre lié puis l'annuler, modifier un nom
+ * puis l'annuler. Le coût ne doit pas dépendre de la taille de l'arbre.
+ * Exemple : java -jar target/benchmarks.jar HistoriqueArbre -p taille=1000000
+ * @author aklam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoriqueArbreBenchmark {
+
+    @Param({"100000"})
+    public int taille;
+
+    private MoteurArbre moteur;
+    private int numero;
+
+    @Setup(Level.Trial)
+    public void construire() {
+        moteur = ArbresSynthetiques.construire(taille, 20);
+    }
+
+    private MembreFamille suivant() {
+        numero++;
+        return moteur.getMembre((int) ((numero * 0x9E3779B9L) & 0x7FFFFFFF) % taille);
+    }
+
+    @Benchmark
+    public boolean ajouterPuisAnnuler() {
+        moteur.ajouterLien(suivant(), MembreFamille.LienDeParente.ENFANT, ArbresSynthetiques.nom(numero), "Durand",
+                MembreFamille.Genre.FEMININ);
+        return moteur.annuler();
+    }
+
+    @Benchmark
+    public boolean modifierPuisAnnuler() {
+        moteur.modifierNom(suivant(), ArbresSynthetiques.nom(numero));
+        return moteur.annuler();
+    }
+}
@@ -0,0 +1,69 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure les instantanés ({@link InstantaneArbre}) : en prendre un sans modification, après une modification
+ * (le membre modifié est republié, le reste partagé), et parcourir tout un instantané.
+ * Exemple : java -jar target/benchmarks.jar InstantaneArbre -p taille=1000000
+ * @author aklam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstantaneArbreBenchmark {
+
+    @Param({"100000"})
+    public int taille;
+
+    private MoteurArbre moteur;
+    private InstantaneArbre instantane;
+    private int numero;
+
+    /**
+     * le premier instantané publie tout l'arbre, il est pris avant la mesure
+     */
+    @Setup(Level.Trial)
+    public void construire() {
+        moteur = ArbresSynthetiques.construire(taille, 20);
+        instantane = moteur.instantane();
+    }
+
+    @Benchmark
+    public InstantaneArbre figerSansModification() {
+        return moteur.instantane();
+    }
+
+    @Benchmark
+    public InstantaneArbre modifierPuisFiger() {
+        numero++;
+        MembreFamille membre = moteur.getMembre((int) ((numero * 0x9E3779B9L) & 0x7FFFFFFF) % taille);
+        moteur.modifierNom(membre, ArbresSynthetiques.nom(numero));
+        return moteur.instantane();
+    }
+
+    @Benchmark
+    public long parcourir() {
+        long total = 0;
+        for (int id = 0; id < instantane.nombreMembres(); id++) {
+            total += instantane.nom(id).length() + instantane.pere(id) + instantane.enfants(id).length;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,82 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure la création d'un membre (validation des noms comprise) et les règles de liaison :
+ * setConjoint, ajouterEnfant, setPere et setMere. Une famille mesurée forme un nouvel arbre,
+ * son registre est donc créé à chaque opération, comme pour un arbre vierge dans l'interface
+ * @author aklam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembreFamilleBenchmark {
+
+    private int numero;
+
+    /**
+     * nombre d'enfants de la famille liée à chaque opération, sans effet sur la création d'un membre seul
+     */
+    @State(Scope.Thread)
+    public static class Famille {
+        @Param({"2", "8"})
+        public int enfants;
+    }
+
+    @Benchmark
+    public MembreFamille construire() {
+        numero++;
+        return new MembreFamille(ArbresSynthetiques.prenoms(MembreFamille.Genre.FEMININ, numero),
+                ArbresSynthetiques.nom(numero), MembreFamille.Genre.FEMININ);
+    }
+
+    /**
+     * un couple puis ses enfants par ajouterEnfant, qui fixe le père, la mère et la fratrie de chaque enfant
+     */
+    @Benchmark
+    public int lierParAjouterEnfant(Famille famille) {
+        MembreFamille pere = membre(MembreFamille.Genre.MASCULIN);
+        MembreFamille mere = membre(MembreFamille.Genre.FEMININ);
+        pere.setConjoint(mere);
+        for (int i = 0; i < famille.enfants; i++) {
+            pere.ajouterEnfant(membre((i & 1) == 0 ? MembreFamille.Genre.MASCULIN : MembreFamille.Genre.FEMININ));
+        }
+        return mere.nombreEnfants();
+    }
+
+    /**
+     * les mêmes liens posés depuis les enfants, par setPere et setMere
+     */
+    @Benchmark
+    public int lierParSetters(Famille famille) {
+        MembreFamille pere = membre(MembreFamille.Genre.MASCULIN);
+        MembreFamille mere = membre(MembreFamille.Genre.FEMININ);
+        pere.setConjoint(mere);
+        for (int i = 0; i < famille.enfants; i++) {
+            MembreFamille enfant = membre((i & 1) == 0 ? MembreFamille.Genre.MASCULIN : MembreFamille.Genre.FEMININ);
+            enfant.setPere(pere);
+            enfant.setMere(mere);
+        }
+        return mere.nombreEnfants();
+    }
+
+    private MembreFamille membre(MembreFamille.Genre genre) {
+        numero++;
+        return new MembreFamille(ArbresSynthetiques.prenoms(genre, numero), ArbresSynthetiques.nom(numero), genre);
+    }
+}
@@ -0,0 +1,85 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Mesure le débit de la validation des noms : l'ancien chemin (trim().matches() à chaque appel, soit une
+ * expression régulière recompilée et deux trim), l'expression compilée une seule fois, et le ValidateurNom.
+ * Lancement : java -jar target/benchmarks.jar ValidateurNomBenchmark
+ * @author aklam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidateurNomBenchmark {
+
+    //la règle de ValidateurNom écrite en expression régulière, telle que l'appliquait l'ancien chemin
+    private static final String NOM_REGEX = "^[\\p{L} .'-]+$";
+
+    private static final Pattern NOM_PATTERN = Pattern.compile(NOM_REGEX);
+
+    private static final String[] NOMS = {
+            "Dupont", "Jean-Pierre", "  Marie Curie ", "L'ourve D'Marche", "Aklam Moses Crack.",
+            "Sklodowska", "Zoé", "Ngũgĩ wa Thiong'o", "Müller", "O'Neil", "Dupont2", "",
+            "Żółć", "Björk Guðmundsdóttir", "李小龍", "Jean  Paul", "Marie-Hélène", "#Invalide"
+    };
+
+    //nom suivant à valider, pour ne pas mesurer toujours la même entrée
+    private int suivant;
+
+    @Setup
+    public void verifier() {
+        //les trois chemins doivent donner le même résultat
+        for (String nom : NOMS) {
+            boolean attendu = nom.trim().matches(NOM_REGEX);
+            if (attendu != NOM_PATTERN.matcher(nom.trim()).matches() || attendu != (ValidateurNom.valider(nom) != null)) {
+                throw new IllegalStateException("Résultat différent pour \"" + nom + "\"");
+            }
+        }
+    }
+
+    private String nom() {
+        String nom = NOMS[suivant];
+        suivant = suivant + 1 == NOMS.length ? 0 : suivant + 1;
+        return nom;
+    }
+
+    @Benchmark
+    public int ancienChemin() {
+        String nom = nom();
+        if (nom.trim().matches(NOM_REGEX)) {
+            return nom.trim().length();
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int patternPrecompile() {
+        String valeur = nom().trim();
+        if (NOM_PATTERN.matcher(valeur).matches()) {
+            return valeur.length();
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int validateur() {
+        String valeur = ValidateurNom.valider(nom());
+        return valeur == null ? -1 : valeur.length();
+    }
+}
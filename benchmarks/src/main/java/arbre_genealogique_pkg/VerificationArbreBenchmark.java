@@ -0,0 +1,57 @@
+package arbre_genealogique_pkg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure la vérification de tout un arbre en mémoire ({@link VerificationArbre}) selon le nombre de fils.
+ * Exemple : java -jar target/benchmarks.jar VerificationArbre -p taille=10000000 -p fils=1,2,4,8
+ * @author aklam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerificationArbreBenchmark {
+
+    @Param({"1000000"})
+    public int taille;
+
+    @Param({"1", "4"})
+    public int fils;
+
+    private RegistreMembres registre;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void construire() {
+        registre = ArbresSynthetiques.construire(taille, 20).getArbre().getRegistre();
+        pool = new ForkJoinPool(fils);
+    }
+
+    @TearDown(Level.Trial)
+    public void arreter() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public RapportVerification verifier() {
+        return VerificationArbre.verifier(registre, pool);
+    }
+}
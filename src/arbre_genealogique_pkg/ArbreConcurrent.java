@@ -0,0 +1,385 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Accès à un arbre généalogique partagé entre plusieurs fils, par exemple plusieurs imports qui remplissent
+ * le même arbre pendant que d'autres fils l'interrogent. Les membres et leurs listes de liens sont protégés
+ * par des verrous répartis en bandes : une modification ne verrouille que les bandes des membres et des listes
+ * qu'elle touche, dans l'ordre des bandes pour ne jamais s'interbloquer. Les lectures (noms, liens) ne prennent
+ * aucun verrou : elles sont validées après coup et ne sont refaites sous verrou que si une modification les a croisées.
+ * Seules les méthodes de cette classe sont sûres entre fils : les membres ne doivent plus être modifiés directement,
+ * ni par un {@link MoteurArbre}, tant que l'arbre est partagé. Les modifications ne sont pas journalisées
+ * @author aklam
+ */
+public class ArbreConcurrent {
+
+    //puissance de deux : la bande d'un objet se prend dans les bits de poids fort de son hachage
+    private static final int BITS_BANDES = 8;
+
+    private final ArbreGenealogique arbre;
+    private final RegistreMembres registre;
+    private final StampedLock[] verrous = new StampedLock[1 << BITS_BANDES];
+
+    /**
+     * prépare un arbre à être partagé : les membres pas encore lus dans son fichier sont tous construits
+     * @param arbre l'arbre à partager, qui ne doit plus être modifié que par cet objet
+     */
+    public ArbreConcurrent(ArbreGenealogique arbre) {
+        if (arbre == null) {
+            throw new IllegalArgumentException("Arbre manquant");
+        }
+        this.arbre = arbre;
+        this.registre = arbre.getRegistre();
+        this.registre.activerConcurrence();
+        for (int i = 0; i < verrous.length; i++) {
+            verrous[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * @return l'arbre partagé
+     */
+    public ArbreGenealogique getArbre() {
+        return arbre;
+    }
+
+    /**
+     * crée la personne racine de l'arbre
+     * @param nomDeBaseDeLaMariee le nom de base de la mariée, vide s'il n'y en a pas
+     * @return l'identifiant de la nouvelle racine
+     */
+    public synchronized int definirRacine(String prenoms, String nom, String nomDeBaseDeLaMariee,
+                                          MembreFamille.Genre genre) {
+        MembreFamille racine = MoteurArbre.nouveauMembre(prenoms, nom, nomDeBaseDeLaMariee, genre);
+        arbre.setRoot(racine);
+        return racine.getId();
+    }
+
+    /**
+     * @return l'identifiant de la racine, -1 s'il n'y en a pas
+     */
+    public synchronized int racine() {
+        return arbre.hasRoot() ? arbre.getRoot().getId() : -1;
+    }
+
+    /**
+     * crée un membre et le relie à un membre existant
+     * @param id l'identifiant du membre existant
+     * @param lien le lien du nouveau membre avec le membre existant
+     * @param nomDeBaseDeLaMariee le nom de base de la mariée, vide s'il n'y en a pas
+     * @return l'identifiant du nouveau membre
+     */
+    public int ajouterLien(int id, MembreFamille.LienDeParente lien, String prenoms, String nom,
+                           String nomDeBaseDeLaMariee, MembreFamille.Genre genre) {
+        MembreFamille membre = membre(id);
+        //construit et validé hors verrou, le nouveau membre n'est encore visible d'aucun autre fil
+        MembreFamille nouveau = MoteurArbre.nouveauMembre(prenoms, nom, nomDeBaseDeLaMariee, genre);
+        //l'enfant d'un membre devient aussi celui de son conjoint
+        boolean avecConjoint = lien == MembreFamille.LienDeParente.ENFANT;
+        while (true) {
+            MembreFamille conjoint = avecConjoint ? membre.getConjoint() : null;
+            int[] bandes = bandes(membre, conjoint, nouveau);
+            long[] tampons = verrouiller(bandes);
+            try {
+                //le conjoint ou les listes ont pu changer avant le verrouillage : on recommence avec les bons verrous
+                if ((!avecConjoint || membre.getConjoint() == conjoint)
+                        && Arrays.equals(bandes, bandes(membre, conjoint, nouveau))) {
+                    membre.ajouterLienRelatif(lien, nouveau);
+                    return nouveau.getId();
+                }
+            } finally {
+                deverrouiller(bandes, tampons);
+            }
+        }
+    }
+
+    /**
+     * @param prenoms les nouveaux prenoms du membre
+     */
+    public void modifierPrenoms(int id, String prenoms) {
+        MembreFamille membre = membre(id);
+        StampedLock verrou = verrou(membre);
+        long tampon = verrou.writeLock();
+        try {
+            membre.setPrenoms(prenoms);
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+    }
+
+    /**
+     * @param nom le nouveau nom du membre
+     */
+    public void modifierNom(int id, String nom) {
+        MembreFamille membre = membre(id);
+        StampedLock verrou = verrou(membre);
+        long tampon = verrou.writeLock();
+        try {
+            membre.setNom(nom);
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+    }
+
+    /**
+     * @param nomDeBaseDeLaMariee le nouveau nom de base de la mariée, vide pour l'effacer
+     */
+    public void modifierNomDeBaseDeLaMariee(int id, String nomDeBaseDeLaMariee) {
+        MembreFamille membre = membre(id);
+        StampedLock verrou = verrou(membre);
+        long tampon = verrou.writeLock();
+        try {
+            membre.setNomDeBaseDeLaMariee(nomDeBaseDeLaMariee);
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+    }
+
+    /**
+     * @param genre le nouveau genre du membre
+     */
+    public void modifierGenre(int id, MembreFamille.Genre genre) {
+        MembreFamille membre = membre(id);
+        StampedLock verrou = verrou(membre);
+        long tampon = verrou.writeLock();
+        try {
+            membre.verifierGenre(genre);
+            membre.setGenre(genre);
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+    }
+
+    /**
+     * fige l'arbre : toutes les bandes sont prises en lecture le temps de publier les membres modifiés
+     * depuis l'instantané précédent, les modifications en cours se terminent avant
+     * @return la version courante de l'arbre, qui ne changera plus
+     */
+    public synchronized InstantaneArbre instantane() {
+        long[] tampons = new long[verrous.length];
+        for (int i = 0; i < verrous.length; i++) {
+            tampons[i] = verrous[i].readLock();
+        }
+        try {
+            return arbre.instantane();
+        } finally {
+            for (int i = verrous.length - 1; i >= 0; i--) {
+                verrous[i].unlockRead(tampons[i]);
+            }
+        }
+    }
+
+    /**
+     * @return le nombre de membres de l'arbre
+     */
+    public int nombreMembres() {
+        return registre.taille();
+    }
+
+    public String prenoms(int id) {
+        return lire(id, MembreFamille::getPrenoms);
+    }
+
+    public String nom(int id) {
+        return lire(id, MembreFamille::getNom);
+    }
+
+    public String nomDeBaseDeLaMariee(int id) {
+        return lire(id, MembreFamille::getNomDeBaseDeLaMariee);
+    }
+
+    public MembreFamille.Genre genre(int id) {
+        return lire(id, MembreFamille::getGenre);
+    }
+
+    /**
+     * @return l'identifiant du pere, -1 s'il n'y en a pas
+     */
+    public int pere(int id) {
+        return lireId(id, MembreFamille::idPere);
+    }
+
+    /**
+     * @return l'identifiant de la mere, -1 s'il n'y en a pas
+     */
+    public int mere(int id) {
+        return lireId(id, MembreFamille::idMere);
+    }
+
+    /**
+     * @return l'identifiant du conjoint, -1 s'il n'y en a pas
+     */
+    public int conjoint(int id) {
+        return lireId(id, MembreFamille::idConjoint);
+    }
+
+    /**
+     * @return une copie des identifiants des enfants
+     */
+    public int[] enfants(int id) {
+        return lireListe(id, MembreFamille::idsEnfants);
+    }
+
+    /**
+     * @return une copie des identifiants des freresSoeurs
+     */
+    public int[] freresSoeurs(int id) {
+        return lireListe(id, MembreFamille::idsFreresSoeurs);
+    }
+
+    /**
+     * @param nom le nom recherché, sans tenir compte de la casse
+     * @return les identifiants des membres portant ce nom
+     */
+    public int[] trouverParNom(String nom) {
+        return ids(registre.trouver(RegistreMembres.Champ.NOM, nom));
+    }
+
+    /**
+     * @param prenoms les prenoms recherchés, sans tenir compte de la casse
+     * @return les identifiants des membres portant ces prenoms
+     */
+    public int[] trouverParPrenoms(String prenoms) {
+        return ids(registre.trouver(RegistreMembres.Champ.PRENOMS, prenoms));
+    }
+
+    private MembreFamille membre(int id) {
+        MembreFamille membre = registre.get(id);
+        if (membre == null) {
+            throw new IllegalArgumentException("Membre inconnu: " + id);
+        }
+        return membre;
+    }
+
+    private static int[] ids(List<MembreFamille> membres) {
+        int[] ids = new int[membres.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = membres.get(i).getId();
+        }
+        return ids;
+    }
+
+    private <T> T lire(int id, Function<MembreFamille, T> lecture) {
+        MembreFamille membre = membre(id);
+        StampedLock verrou = verrou(membre);
+        long tampon = verrou.tryOptimisticRead();
+        T valeur = lecture.apply(membre);
+        if (!verrou.validate(tampon)) {
+            tampon = verrou.readLock();
+            try {
+                valeur = lecture.apply(membre);
+            } finally {
+                verrou.unlockRead(tampon);
+            }
+        }
+        return valeur;
+    }
+
+    private int lireId(int id, ToIntFunction<MembreFamille> lecture) {
+        MembreFamille membre = membre(id);
+        StampedLock verrou = verrou(membre);
+        long tampon = verrou.tryOptimisticRead();
+        int valeur = lecture.applyAsInt(membre);
+        if (!verrou.validate(tampon)) {
+            tampon = verrou.readLock();
+            try {
+                valeur = lecture.applyAsInt(membre);
+            } finally {
+                verrou.unlockRead(tampon);
+            }
+        }
+        return valeur;
+    }
+
+    //la liste est protégée par sa propre bande : elle peut être partagée avec un conjoint ou des freresSoeurs
+    private int[] lireListe(int id, Function<MembreFamille, ListeIds> lecture) {
+        MembreFamille membre = membre(id);
+        StampedLock verrouMembre = verrou(membre);
+        long tampon = verrouMembre.tryOptimisticRead();
+        ListeIds liste = lecture.apply(membre);
+        StampedLock verrouListe = verrou(liste);
+        long tamponListe = verrouListe.tryOptimisticRead();
+        int[] ids = liste.copie();
+        if (verrouMembre.validate(tampon) && verrouListe.validate(tamponListe)) {
+            return ids;
+        }
+        //les deux verrous en lecture, dans l'ordre des bandes comme les modifications
+        while (true) {
+            int[] bandes = trier(bande(membre), bande(liste));
+            long[] tampons = new long[bandes.length];
+            for (int i = 0; i < bandes.length; i++) {
+                tampons[i] = verrous[bandes[i]].readLock();
+            }
+            try {
+                ListeIds relue = lecture.apply(membre);
+                if (relue == liste || bande(relue) == bande(liste)) {
+                    return relue.copie();
+                }
+                liste = relue;
+            } finally {
+                for (int i = bandes.length - 1; i >= 0; i--) {
+                    verrous[bandes[i]].unlockRead(tampons[i]);
+                }
+            }
+        }
+    }
+
+    //bandes des membres et de leurs listes de liens, triées et sans doublon
+    private int[] bandes(MembreFamille... membres) {
+        int[] bandes = new int[membres.length * 3];
+        int n = 0;
+        for (MembreFamille membre : membres) {
+            if (membre == null) {
+                continue;
+            }
+            bandes[n++] = bande(membre);
+            //la liste vide commune n'est jamais modifiée : pas de verrou
+            if (membre.idsEnfants() != ListeIds.VIDE) {
+                bandes[n++] = bande(membre.idsEnfants());
+            }
+            if (membre.idsFreresSoeurs() != ListeIds.VIDE) {
+                bandes[n++] = bande(membre.idsFreresSoeurs());
+            }
+        }
+        return trier(Arrays.copyOf(bandes, n));
+    }
+
+    private static int[] trier(int... bandes) {
+        Arrays.sort(bandes);
+        int n = 0;
+        for (int i = 0; i < bandes.length; i++) {
+            if (i == 0 || bandes[i] != bandes[i - 1]) {
+                bandes[n++] = bandes[i];
+            }
+        }
+        return Arrays.copyOf(bandes, n);
+    }
+
+    private long[] verrouiller(int[] bandes) {
+        long[] tampons = new long[bandes.length];
+        for (int i = 0; i < bandes.length; i++) {
+            tampons[i] = verrous[bandes[i]].writeLock();
+        }
+        return tampons;
+    }
+
+    private void deverrouiller(int[] bandes, long[] tampons) {
+        for (int i = bandes.length - 1; i >= 0; i--) {
+            verrous[bandes[i]].unlockWrite(tampons[i]);
+        }
+    }
+
+    private StampedLock verrou(Object objet) {
+        return verrous[bande(objet)];
+    }
+
+    //par identité : la bande d'un membre est connue avant qu'il reçoive son identifiant
+    private static int bande(Object objet) {
+        return (System.identityHashCode(objet) * 0x9E3779B9) >>> (32 - BITS_BANDES);
+    }
+}
@@ -3,13 +3,17 @@ package arbre_genealogique_pkg;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
 import javax.swing.border.EmptyBorder;
@@ -43,7 +47,7 @@ public class ArbreGUI {
      */
     public ArbreGUI() {
 
-        arbreDeLaFamilleActuelle = new ArbreGenealogique();
+        moteur = new MoteurArbre();
         fichierActuel = null;
         arbre = new JTree();
         creerGUI();
@@ -52,10 +56,23 @@ public class ArbreGUI {
     private JPanel controlPanel;
     private JPanel infoPanel;
     private final JLabel statusLabel = new JLabel("Programme chargé");
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JButton annulerTache = new JButton("Annuler");
     private File fichierActuel;
     private JTree arbre;
-
-    private ArbreGenealogique arbreDeLaFamilleActuelle;
+    private ModeleArbre modeleArbre;
+    //champ de recherche et liste des membres trouvés, au-dessus de l'arbre
+    private JPanel panneauRecherche;
+    private final DefaultListModel<MembreFamille> resultatsRecherche = new DefaultListModel<>();
+    //nombre maximal de membres proposés par la recherche
+    private static final int LIMITE_RECHERCHE = 50;
+    //lecture ou enregistrement en cours en arrière-plan, null s'il n'y en a pas
+    private TacheFichier<?> tacheEnCours;
+    //composants désactivés pendant un enregistrement, à réactiver ensuite
+    private final List<Component> composantsDesactives = new ArrayList<>();
+
+    //l'arbre affiché, manipulé à travers le moteur
+    private MoteurArbre moteur;
 
     /**
      * Appelle les fonctions d'initialisation pour mettre en place tous les différents panels
@@ -82,7 +99,7 @@ public class ArbreGUI {
         initStatusBar();
 
         //affiche l'arbre vide
-        afficherArbre(arbreDeLaFamilleActuelle);
+        afficherArbre(moteur.getArbre());
 
         //vérifier si l'utilisateur souhaite continuer à utiliser la fonction checkUserCOntinue
         mainFrame.addWindowListener(new WindowAdapter() {
@@ -167,9 +184,29 @@ public class ArbreGUI {
         mainFrame.setJMenuBar(menuBar);
 
         JMenu fichierMenu = new JMenu("Fichier");
-//        JMenu editMenu = new JMenu("Edit");
+        JMenu editionMenu = new JMenu("Edition");
+        JMenu outilsMenu = new JMenu("Outils");
         menuBar.add(fichierMenu);
-//        menuBar.add(editMenu);
+        menuBar.add(editionMenu);
+        menuBar.add(outilsMenu);
+
+        JMenuItem annulerAction = new JMenuItem("Annuler");
+        annulerAction.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        editionMenu.add(annulerAction);
+        annulerAction.addActionListener(new ActionHistorique(true));
+
+        JMenuItem refaireAction = new JMenuItem("Rétablir");
+        refaireAction.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        editionMenu.add(refaireAction);
+        refaireAction.addActionListener(new ActionHistorique(false));
+
+        JMenuItem verifierAction = new JMenuItem("Vérifier l'arbre");
+        outilsMenu.add(verifierAction);
+        verifierAction.addActionListener(new ActionVerifier());
+
+        JMenuItem statistiquesAction = new JMenuItem("Statistiques");
+        outilsMenu.add(statistiquesAction);
+        statistiquesAction.addActionListener(new ActionStatistiques());
 
         JMenuItem nouvelleAction = new JMenuItem("Nouveau");
         fichierMenu.add(nouvelleAction);
@@ -179,6 +216,22 @@ public class ArbreGUI {
         fichierMenu.add(ouvrirAction);
         ouvrirAction.addActionListener(new ouvrirAction());
 
+        JMenuItem importerAction = new JMenuItem("Importer GEDCOM");
+        fichierMenu.add(importerAction);
+        importerAction.addActionListener(new ActionImporterGedcom());
+
+        JMenuItem genererAction = new JMenuItem("Générer un arbre de test");
+        fichierMenu.add(genererAction);
+        genererAction.addActionListener(new ActionGenererArbre());
+
+        JMenuItem exporterGedcomAction = new JMenuItem("Exporter GEDCOM");
+        fichierMenu.add(exporterGedcomAction);
+        exporterGedcomAction.addActionListener(new ActionExporter("Fichier GEDCOM (*.ged)", "ged"));
+
+        JMenuItem exporterCsvAction = new JMenuItem("Exporter CSV");
+        fichierMenu.add(exporterCsvAction);
+        exporterCsvAction.addActionListener(new ActionExporter("Fichier CSV (*.csv)", "csv"));
+
         fichierMenu.addSeparator();
 
         JMenuItem sauvegarderAction = new JMenuItem("Enregistrer");
@@ -222,6 +275,25 @@ public class ArbreGUI {
         statusLabel.setHorizontalAlignment(SwingConstants.LEFT);
         //c'est là que le message de statut sera affiché
         statusPanel.add(statusLabel);
+
+        //avancement et annulation des lectures et enregistrements, visibles seulement pendant l'opération
+        statusPanel.add(Box.createHorizontalGlue());
+        progressBar.setStringPainted(true);
+        progressBar.setMaximumSize(new Dimension(200, 16));
+        progressBar.setVisible(false);
+        statusPanel.add(progressBar);
+        annulerTache.setMargin(new Insets(0, 4, 0, 4));
+        annulerTache.setVisible(false);
+        annulerTache.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (tacheEnCours != null) {
+                    tacheEnCours.annuler();
+                    modifierStatus("Annulation en cours...");
+                }
+            }
+        });
+        statusPanel.add(annulerTache);
     }
 
     /**
@@ -277,12 +349,12 @@ public class ArbreGUI {
         @Override
         public void actionPerformed(ActionEvent e) {
 
-            if (checkUserContinue()) {
+            if (!operationEnCours() && checkUserContinue()) {
                 //vérifier si l'arbre n'est pas sauvegardé et réinitialiser les principales variables
-                arbreDeLaFamilleActuelle = new ArbreGenealogique();
+                remplacerMoteur(new MoteurArbre());
                 fichierActuel = null;
                 //fficher le nouvel arbre (vide)
-                afficherArbre(arbreDeLaFamilleActuelle);
+                afficherArbre(moteur.getArbre());
                 modifierStatus("Creation d'un arbre vierge");
             }
 
@@ -296,7 +368,7 @@ public class ArbreGUI {
 
         @Override
         public void actionPerformed(ActionEvent e) {
-            if (checkUserContinue()) {
+            if (!operationEnCours() && checkUserContinue()) {
                 JFileChooser jFileChooser = new JFileChooser();
                 //définir des filtres de fichiers
                 jFileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Fichier ArbreGenealogique (*.ft)", "ft"));
@@ -306,10 +378,8 @@ public class ArbreGUI {
                 //process jfilechooser resultat
                 if (resultat == JFileChooser.APPROVE_OPTION) {
                     try {
-                        //essayer d'ouvrir le fichier, afficher l'arbre généalogique
+                        //ouvrir le fichier en arrière-plan, l'arbre généalogique sera affiché à la fin de la lecture
                         ouvrirFichier(jFileChooser.getSelectedFile());
-                        afficherArbre(arbreDeLaFamilleActuelle);
-                        modifierStatus("Dossier ouvert depuis: " + (jFileChooser.getSelectedFile().getAbsolutePath()));
                     } catch (Exception j) {
                         //error
                         showErrorDialog(j);
@@ -321,12 +391,95 @@ public class ArbreGUI {
         }
     }
 
+    /**
+     * importe un fichier GEDCOM choisi par l'utilisateur à la place de l'arbre actuel
+     */
+    private class ActionImporterGedcom implements ActionListener {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!operationEnCours() && checkUserContinue()) {
+                JFileChooser jFileChooser = new JFileChooser();
+                jFileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Fichier GEDCOM (*.ged)", "ged"));
+                jFileChooser.setAcceptAllFileFilterUsed(true);
+                if (jFileChooser.showOpenDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+                    importerGedcom(jFileChooser.getSelectedFile());
+                }
+            }
+        }
+    }
+
+    /**
+     * génère un arbre de test du nombre de générations demandé dans un fichier .ft, puis l'ouvre
+     */
+    private class ActionGenererArbre implements ActionListener {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (operationEnCours() || !checkUserContinue()) {
+                return;
+            }
+            String reponse = JOptionPane.showInputDialog(mainFrame, "Nombre de générations (25 générations : environ 10 millions de membres)", "12");
+            if (reponse == null) {
+                return;
+            }
+            GenerateurArbre generateur;
+            try {
+                generateur = new GenerateurArbre(Integer.parseInt(reponse.trim()), 1);
+            } catch (IllegalArgumentException j) {
+                showErrorDialog(new IllegalArgumentException("Nombre de générations invalide"));
+                return;
+            }
+            JFileChooser jFileChooser = new JFileChooser();
+            jFileChooser.setSelectedFile(new File("Arbre de test.ft"));
+            jFileChooser.setFileFilter(new FileNameExtensionFilter("Fichiers d'Abres Genealogiques (*.ft)", "ft"));
+            if (jFileChooser.showSaveDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+                String nomFichier = jFileChooser.getSelectedFile().toString();
+                if (!nomFichier.endsWith(".ft")) {
+                    nomFichier += ".ft";
+                }
+                genererFichier(generateur, new File(nomFichier));
+            }
+        }
+    }
+
+    /**
+     * exporte l'arbre au format GEDCOM ou CSV, selon l'extension
+     */
+    private class ActionExporter implements ActionListener {
+
+        private final String description;
+        private final String extension;
+
+        ActionExporter(String description, String extension) {
+            this.description = description;
+            this.extension = extension;
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (operationEnCours()) {
+                return;
+            }
+            JFileChooser jFileChooser = new JFileChooser();
+            jFileChooser.setSelectedFile(new File("Arbre Genealogique." + extension));
+            jFileChooser.setFileFilter(new FileNameExtensionFilter(description, extension));
+            if (jFileChooser.showSaveDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
+                String nomFichier = jFileChooser.getSelectedFile().toString();
+                if (!nomFichier.endsWith("." + extension)) {
+                    nomFichier += "." + extension;
+                }
+                exporter(new File(nomFichier), extension.equals("ged"));
+            }
+        }
+    }
+
     /**
      * Méthode pratique pour vérifier si l'arbre est chargé. Utilisée pour vérifier si l'utilisateur veut continuer malgré le chargement de l'arbre
      * @return true si l'arbre n'a pas de racine ou si l'utilisateur souhaite continuer
      */
     private boolean checkUserContinue() {
-        if (arbreDeLaFamilleActuelle.hasRoot()) {
+        if (moteur.getArbre().hasRoot()) {
             int resultatDialog = JOptionPane.showConfirmDialog(mainFrame, "Êtes-vous sûr de vouloir continuer ? Tout changement non sauvegardé sera perdu", "Avertissement", JOptionPane.YES_NO_CANCEL_OPTION);
             return resultatDialog == JOptionPane.YES_OPTION;
         }
@@ -335,46 +488,27 @@ public class ArbreGUI {
 
     /**
      * affiche l'objet arbre généalogique à travers un jTree.
+     * Les nœuds sont créés par le modèle au fur et à mesure que l'utilisateur déplie l'arbre
      * @param arbreGenealogique l'arbre généalogique à afficher
      */
     private void afficherArbre(ArbreGenealogique arbreGenealogique) {
 
-        //créer le nœud racine
-        DefaultMutableTreeNode main = new DefaultMutableTreeNode("Main");
-        //dernier chemin sélectionné pour garder la trace de la dernière personne sélectionnée par l'utilisateur.
-        //Utilisé lors de l'ajout ou de l'annulation d'une action
-        TreePath dernierNoeudSelectionne = null;
-
-        //nœud d'arbre mutable permettant aux objets de servir de nœuds
-        DefaultMutableTreeNode top;
+        //le modèle contient le nœud principal caché et la personne racine (ou un message si l'arbre est vide)
+        modeleArbre = new ModeleArbre(arbreGenealogique);
 
-        //aucune donnée chargée dans l'arbre
-        if (!arbreGenealogique.hasRoot()) {
-            top = new DefaultMutableTreeNode("Aucune donnée d'arbre trouvée.");
-
-        } else {
-            //ajouter la personne racine
-            top = new DefaultMutableTreeNode(arbreGenealogique.getRoot());
-            //appeler la méthode récursive pour peupler l'arbre entier avec tous les détails du membre de la famille racine
-            creerArbre(top, arbreGenealogique.getRoot());
-            //si l'utilisateur a sélectionné un membre, indiquer le dernier chemin sélectionné
-            dernierNoeudSelectionne = arbre.getSelectionPath();
-
-        }
         //Créer l'arbre et permettre une sélection à la fois et cacher le nœud racine
-        arbre = new JTree(main);
-        main.add(top);
+        arbre = new JTree(modeleArbre);
         arbre.setRootVisible(false);
         arbre.setShowsRootHandles(true);
         arbre.setEnabled(true);
-        arbre.expandPath(new TreePath(main.getPath()));
         arbre.getSelectionModel().addTreeSelectionListener(new ActionArbreSelectionne());
         arbre.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
         arbre.setBorder(new EmptyBorder(0, 10, 0, 10));
 
-        //développer tous les nœuds de l'arbre
-        for (int i = 0; i < arbre.getRowCount(); i++) {
-            arbre.expandRow(i);
+        //développer seulement le premier niveau, le reste est chargé à la demande
+        ModeleArbre.NoeudMembre noeudRacine = modeleArbre.getNoeudRacine();
+        if (noeudRacine != null) {
+            arbre.expandPath(modeleArbre.chemin(noeudRacine));
         }
 
         //disposer d'un moteur de rendu personnalisé pour les nœuds de l'arbre
@@ -408,6 +542,11 @@ public class ArbreGUI {
         JScrollPane treeScrollPane = new JScrollPane(arbre);
         treeScrollPane.setPreferredSize(new Dimension(250, 0));
 
+        //la recherche par nom est placée au-dessus de l'arbre
+        JPanel panneauGauche = new JPanel(new BorderLayout());
+        panneauGauche.add(creerPanneauRecherche(), BorderLayout.NORTH);
+        panneauGauche.add(treeScrollPane, BorderLayout.CENTER);
+
         //créer le panneau d'information à afficher dans le panneau de contrôle
         infoPanel = new JPanel();
         infoPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -434,15 +573,12 @@ public class ArbreGUI {
         controlPanel.add(container);
 
         container.setLayout(new BorderLayout());
-        container.add(treeScrollPane, BorderLayout.WEST);
+        container.add(panneauGauche, BorderLayout.WEST);
         container.add(infoPanel, BorderLayout.CENTER);
 
         controlPanel.add(container);
         controlPanel.validate();
         controlPanel.repaint();
-
-        //faire défiler l'arbre jusqu'au dernier chemin sélectionné
-        arbre.setSelectionPath(dernierNoeudSelectionne);
     }
 
     /**
@@ -470,13 +606,15 @@ public class ArbreGUI {
 
         @Override
         public void actionPerformed(ActionEvent e) {
+            if (operationEnCours()) {
+                return;
+            }
             try {
                 if (fichierActuel != null) {
                     int resultatDialog = JOptionPane.showConfirmDialog(mainFrame, "Souhaitez-vous remplacer l'arbre actuel ?", "Avertissement", JOptionPane.YES_NO_OPTION);
                     if (resultatDialog == JOptionPane.YES_OPTION) {
                         //sauvegarder le fichier
                         sauvegarderDansFichier(fichierActuel);
-                        modifierStatus("Fichier enregistré dans: " + fichierActuel.getPath());
                     }
                 } else {
                     modifierStatus("Fichier non chargé");
@@ -500,6 +638,9 @@ public class ArbreGUI {
 
         @Override
         public void actionPerformed(ActionEvent e) {
+            if (operationEnCours()) {
+                return;
+            }
             JFileChooser jFileChooser = new JFileChooser() {
                 //check if file already exists, as to overwrite
                 @Override
@@ -525,11 +666,19 @@ public class ArbreGUI {
             };
             jFileChooser.setSelectedFile(new File("Arbre Genealogique.ft"));
             //Définir un filtre d'extension, afin que l'utilisateur voit les autres fichiers ft
-            jFileChooser.setFileFilter(new FileNameExtensionFilter("Fichiers d'Abres Genealogiques (*.ft)", "ft"));
+            FileNameExtensionFilter filtre = new FileNameExtensionFilter("Fichiers d'Abres Genealogiques (*.ft)", "ft");
+            //le même fichier, compressé : le codec est retrouvé dans l'en-tête à l'ouverture
+            FileNameExtensionFilter filtreCompresse = new FileNameExtensionFilter(
+                    "Fichiers d'Abres Genealogiques compressés (*.ft)", "ft");
+            jFileChooser.addChoosableFileFilter(filtre);
+            jFileChooser.addChoosableFileFilter(filtreCompresse);
+            jFileChooser.setFileFilter(moteur.codec() == CodecBlocs.AUCUN ? filtre : filtreCompresse);
             //invite à sauvegarder
             int resultat = jFileChooser.showSaveDialog(mainFrame);
             if (resultat == JFileChooser.APPROVE_OPTION) {
                 try {
+                    moteur.choisirCodec(jFileChooser.getFileFilter() == filtreCompresse
+                            ? CodecBlocs.DEFLATE : CodecBlocs.AUCUN);
                     String nomFichier = jFileChooser.getSelectedFile().toString();
                     if (!nomFichier.endsWith(".ft")) {
                         nomFichier += ".ft";
@@ -537,8 +686,6 @@ public class ArbreGUI {
                     File file = new File(nomFichier);
 
                     sauvegarderDansFichier(file);
-                    afficherArbre(arbreDeLaFamilleActuelle);
-                    modifierStatus("Fichier enregistré dans: " + (file.getAbsolutePath()));
                 } catch (Exception j) {
                     showErrorDialog(j);
                     modifierStatus("Erreur: "+ j.getMessage());
@@ -547,6 +694,77 @@ public class ArbreGUI {
         }
     }
 
+    /**
+     * annule ou rétablit la dernière modification, puis met l'affichage en accord avec l'arbre
+     */
+    private class ActionHistorique implements ActionListener {
+        private final boolean annuler;
+
+        ActionHistorique(boolean annuler) {
+            this.annuler = annuler;
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            //une tâche en cours peut lire l'arbre, et le raccourci clavier ne passe pas par les composants désactivés
+            if (operationEnCours()) {
+                return;
+            }
+            try {
+                MembreFamille racine = moteur.getArbre().getRoot();
+                boolean fait = annuler ? moteur.annuler() : moteur.refaire();
+                if (!fait) {
+                    modifierStatus(annuler ? "Rien à annuler" : "Rien à rétablir");
+                    return;
+                }
+                if (modeleArbre == null || moteur.getArbre().getRoot() != racine) {
+                    //la racine a été retirée ou rajoutée : l'arbre est réaffiché
+                    afficherArbre(moteur.getArbre());
+                } else {
+                    //on ne sait pas quels liens ni quels noms ont changé : tous les nœuds chargés sont vérifiés
+                    modeleArbre.liensModifies();
+                    modeleArbre.membresModifies();
+                    DefaultMutableTreeNode noeud = (DefaultMutableTreeNode) arbre.getLastSelectedPathComponent();
+                    if (noeud != null && noeud.getUserObject() instanceof MembreFamille) {
+                        affichierMembreInfo((MembreFamille) noeud.getUserObject());
+                    } else {
+                        //le membre affiché a peut-être été retiré
+                        infoPanel.removeAll();
+                        infoPanel.revalidate();
+                        infoPanel.repaint();
+                    }
+                }
+                modifierStatus(annuler ? "Modification annulée" : "Modification rétablie");
+            } catch (Exception d) {
+                showErrorDialog(d);
+            }
+        }
+    }
+
+    /**
+     * vérifie la cohérence de l'arbre en arrière-plan et affiche le rapport
+     */
+    private class ActionVerifier implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!operationEnCours()) {
+                verifier();
+            }
+        }
+    }
+
+    /**
+     * calcule les statistiques de l'arbre en arrière-plan et les affiche
+     */
+    private class ActionStatistiques implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!operationEnCours()) {
+                statistiques();
+            }
+        }
+    }
+
     /**
      * action invoquée lorsque l'utilisateur sélectionne un nœud de l'arbre
      */
@@ -571,52 +789,549 @@ public class ArbreGUI {
     }
 
     /**
-     * Enregistre l'objet dans un fichier en utilisant la sérialisation
+     * crée le champ de recherche et la liste de ses résultats. Choisir un résultat sélectionne le membre
+     * dans l'arbre, ce qui affiche ses informations comme un clic sur son nœud
+     * @return le panneau de recherche
+     */
+    private JPanel creerPanneauRecherche() {
+        JTextField champRecherche = new JTextField();
+        champRecherche.setToolTipText("Nom ou prenoms, en entier ou en partie ; accents et fautes de frappe tolérés");
+
+        resultatsRecherche.clear();
+        JList<MembreFamille> listeResultats = new JList<>(resultatsRecherche);
+        listeResultats.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        listeResultats.setVisibleRowCount(6);
+        listeResultats.addListSelectionListener(new ActionResultatSelectionne(listeResultats));
+        JScrollPane defilementResultats = new JScrollPane(listeResultats);
+        defilementResultats.setVisible(false);
+
+        ActionRechercher rechercher = new ActionRechercher(champRecherche, defilementResultats);
+        champRecherche.getDocument().addDocumentListener(rechercher);
+        champRecherche.addActionListener(rechercher);
+
+        panneauRecherche = new JPanel(new BorderLayout());
+        panneauRecherche.setBorder(new EmptyBorder(0, 0, 5, 0));
+        panneauRecherche.add(new JLabel("Rechercher :"), BorderLayout.NORTH);
+        panneauRecherche.add(champRecherche, BorderLayout.CENTER);
+        panneauRecherche.add(defilementResultats, BorderLayout.SOUTH);
+        return panneauRecherche;
+    }
+
+    /**
+     * met à jour les résultats à chaque modification du champ de recherche, une fois l'index construit ;
+     * la touche Entrée choisit le premier résultat
+     */
+    private class ActionRechercher implements DocumentListener, ActionListener {
+
+        private final JTextField champRecherche;
+        private final JScrollPane defilementResultats;
+
+        ActionRechercher(JTextField champRecherche, JScrollPane defilementResultats) {
+            this.champRecherche = champRecherche;
+            this.defilementResultats = defilementResultats;
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            rechercher();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            rechercher();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            rechercher();
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!resultatsRecherche.isEmpty()) {
+                selectionnerMembre(resultatsRecherche.get(0));
+            }
+        }
+
+        private void rechercher() {
+            if (!moteur.recherchePrete()) {
+                //l'index est construit en arrière-plan à la première frappe ; les suivantes sont ignorées jusque-là
+                if (tacheEnCours == null) {
+                    preparerRecherche(this);
+                }
+                return;
+            }
+            resultatsRecherche.clear();
+            for (MembreFamille membre : moteur.rechercher(champRecherche.getText(), LIMITE_RECHERCHE)) {
+                resultatsRecherche.addElement(membre);
+            }
+            defilementResultats.setVisible(!resultatsRecherche.isEmpty());
+            panneauRecherche.revalidate();
+        }
+    }
+
+    /**
+     * Construit l'index de la recherche approchée en arrière-plan, puis recherche le texte saisi.
+     * Comme pendant un enregistrement, l'arbre ne peut pas être modifié pendant la construction
+     * @param action la recherche à relancer une fois l'index construit
+     */
+    private void preparerRecherche(ActionRechercher action) {
+        MoteurArbre moteurAIndexer = moteur;
+        activerModification(false);
+        lancer(new TacheFichier<Void>("Index de recherche") {
+            @Override
+            protected Void doInBackground() throws Exception {
+                moteurAIndexer.preparerRecherche(this);
+                return null;
+            }
+
+            @Override
+            void terminer() {
+                activerModification(true);
+            }
+
+            @Override
+            void reussir(Void resultat) {
+                modifierStatus("Index de recherche construit");
+                action.rechercher();
+                action.champRecherche.requestFocusInWindow();
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("L'index de recherche n'a pas pu etre construit.", cause);
+            }
+        });
+    }
+
+    /**
+     * sélectionne dans l'arbre le membre choisi parmi les résultats de recherche
+     */
+    private class ActionResultatSelectionne implements ListSelectionListener {
+
+        private final JList<MembreFamille> listeResultats;
+
+        ActionResultatSelectionne(JList<MembreFamille> listeResultats) {
+            this.listeResultats = listeResultats;
+        }
+
+        @Override
+        public void valueChanged(ListSelectionEvent e) {
+            if (!e.getValueIsAdjusting() && listeResultats.getSelectedValue() != null) {
+                selectionnerMembre(listeResultats.getSelectedValue());
+            }
+        }
+    }
+
+    /**
+     * sélectionne le nœud d'un membre en dépliant l'arbre jusqu'à lui ; {@link ActionArbreSelectionne}
+     * affiche alors ses informations. Un membre qui n'apparaît pas dans l'arbre est affiché directement
+     * @param membre le membre à sélectionner
+     */
+    private void selectionnerMembre(MembreFamille membre) {
+        TreePath chemin = modeleArbre.cheminVers(membre);
+        if (chemin != null) {
+            arbre.setSelectionPath(chemin);
+            arbre.scrollPathToVisible(chemin);
+        } else {
+            affichierMembreInfo(membre);
+            modifierStatus("Membre absent de l'arbre affiché: " + membre);
+        }
+    }
+
+    /**
+     * Enregistre l'objet dans un fichier au format binaire .ft, en arrière-plan.
+     * Dans le fichier actuel, seul le journal des modifications est validé, sauf s'il est devenu trop gros ;
+     * les modifications suivantes sont journalisées pour le fichier enregistré.
+     * L'arbre ne peut pas être modifié pendant l'enregistrement
      * @param fichier le fichier à sauvegarder dans
      */
     private void sauvegarderDansFichier(File fichier) {
-        // enregistrer l'objet dans le fichier
-        FileOutputStream fos = null;
-        ObjectOutputStream out = null;
-        try {
-            //définir les flux de sortie
-            fos = new FileOutputStream(fichier);
-            out = new ObjectOutputStream(fos);
-            //écrire l'objet dans le fichier
-            out.writeObject(this.arbreDeLaFamilleActuelle);
-
-            out.close();
-            fichierActuel = fichier;
-        } catch (Exception ex) {
-            throw new IllegalArgumentException("File could not be saved");
-        }
+        MoteurArbre moteurAEnregistrer = this.moteur;
+        activerModification(false);
+        lancer(new TacheFichier<Void>("Enregistrement") {
+            @Override
+            protected Void doInBackground() throws Exception {
+                moteurAEnregistrer.enregistrer(fichier, this);
+                moteurAEnregistrer.journaliser(fichier);
+                return null;
+            }
+
+            @Override
+            void terminer() {
+                activerModification(true);
+            }
+
+            @Override
+            void reussir(Void resultat) {
+                fichierActuel = fichier;
+                modifierStatus("Fichier enregistré dans: " + fichier.getAbsolutePath());
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("File could not be saved", cause);
+            }
+        });
     }
 
     /**
-     * Ouvre un fichier et charge les données dans les variables existantes
+     * Ouvre un fichier en arrière-plan puis affiche l'arbre lu.
+     * Les fichiers enregistrés par sérialisation avec les anciennes versions sont aussi acceptés
      * @param fichier le fichier à ouvrir
      */
     private void ouvrirFichier(File fichier) {
-        // lire l'objet à partir du fichier
-        FileInputStream fis = null;
-        ObjectInputStream in = null;
-        ArbreGenealogique ft = null;
+        lancer(new TacheFichier<MoteurArbre>("Lecture") {
+            @Override
+            protected MoteurArbre doInBackground() throws Exception {
+                return MoteurArbre.ouvrirJournalise(fichier, this);
+            }
+
+            @Override
+            void reussir(MoteurArbre resultat) {
+                //l'arbre actuel n'est remplacé qu'une fois le fichier entièrement lu
+                remplacerMoteur(resultat);
+                fichierActuel = fichier;
+                afficherArbre(moteur.getArbre());
+                modifierStatus("Dossier ouvert depuis: " + fichier.getAbsolutePath());
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("Le fichier n'a pas pu etre lu.", cause);
+            }
+        });
+    }
+
+    /**
+     * Génère un arbre de test en arrière-plan, directement dans un fichier, puis l'ouvre
+     * @param generateur le générateur
+     * @param fichier le fichier .ft à écrire
+     */
+    private void genererFichier(GenerateurArbre generateur, File fichier) {
+        lancer(new TacheFichier<Void>("Génération") {
+            @Override
+            protected Void doInBackground() throws Exception {
+                generateur.genererFichier(fichier, this);
+                return null;
+            }
+
+            @Override
+            void reussir(Void resultat) {
+                ouvrirFichier(fichier);
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("L'arbre de test n'a pas pu etre généré.", cause);
+            }
+        });
+    }
+
+    /**
+     * Importe un fichier GEDCOM en arrière-plan puis affiche l'arbre obtenu. L'arbre importé n'a pas
+     * encore de fichier .ft : le premier enregistrement demande où l'écrire
+     * @param fichier le fichier GEDCOM
+     */
+    private void importerGedcom(File fichier) {
+        lancer(new TacheFichier<ImportGedcom.Bilan>("Import") {
+            @Override
+            protected ImportGedcom.Bilan doInBackground() throws Exception {
+                return ImportGedcom.importer(fichier, this);
+            }
+
+            @Override
+            void reussir(ImportGedcom.Bilan bilan) {
+                remplacerMoteur(new MoteurArbre(bilan.arbre));
+                fichierActuel = null;
+                afficherArbre(moteur.getArbre());
+                modifierStatus("Importé depuis " + fichier.getName() + ": " + bilan);
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("Le fichier GEDCOM n'a pas pu etre importé.", cause);
+            }
+        });
+    }
+
+    /**
+     * Exporte l'arbre en arrière-plan. Un arbre en mémoire est exporté depuis un instantané et reste modifiable
+     * pendant l'export ; un arbre projeté n'est pas chargé pour autant, il ne peut pas être modifié pendant l'export.
+     * Le premier instantané publie tous les membres : il est pris en arrière-plan, l'arbre n'étant pas modifiable
+     * le temps de le prendre
+     * @param fichier le fichier à écrire
+     * @param gedcom true pour le format GEDCOM, false pour le format CSV
+     */
+    private void exporter(File fichier, boolean gedcom) {
+        MoteurArbre moteurCourant = this.moteur;
+        RegistreMembres registre = moteurCourant.getArbre().getRegistre();
+        boolean figer = registre.estPartiel();
+        //les instantanés suivants ne coûtent que les membres modifiés : ils sont pris tout de suite
+        InstantaneArbre instantane = figer || !registre.estPublie() ? null : moteurCourant.instantane();
+        boolean bloquer = instantane == null;
+        if (bloquer) {
+            activerModification(false);
+        }
+        lancer(new TacheFichier<Void>("Export") {
+            private boolean debloque;
+
+            @Override
+            protected Void doInBackground() throws Exception {
+                MoteurArbre moteurAExporter;
+                if (figer) {
+                    moteurAExporter = moteurCourant;
+                } else if (instantane != null) {
+                    moteurAExporter = new MoteurArbre(instantane.arbre());
+                } else {
+                    moteurAExporter = new MoteurArbre(moteurCourant.instantane().arbre());
+                    //l'arbre est de nouveau modifiable dès que l'instantané est pris
+                    publish((Void) null);
+                }
+                if (gedcom) {
+                    moteurAExporter.exporterGedcom(fichier, this);
+                } else {
+                    moteurAExporter.exporterCsv(fichier, this);
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<Void> etapes) {
+                debloquer();
+            }
+
+            @Override
+            void terminer() {
+                debloquer();
+            }
+
+            private void debloquer() {
+                if (bloquer && !debloque) {
+                    debloque = true;
+                    activerModification(true);
+                }
+            }
+
+            @Override
+            void reussir(Void resultat) {
+                modifierStatus("Arbre exporté dans: " + fichier.getAbsolutePath());
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("L'arbre n'a pas pu etre exporté.", cause);
+            }
+        });
+    }
+
+    /**
+     * Vérifie l'arbre en arrière-plan, sur tous les processeurs. L'arbre est vérifié tel quel, sans instantané :
+     * il ne peut pas être modifié pendant la vérification
+     */
+    private void verifier() {
+        MoteurArbre moteurAVerifier = moteur;
+        activerModification(false);
+        lancer(new TacheFichier<RapportVerification>("Vérification") {
+            @Override
+            protected RapportVerification doInBackground() {
+                return moteurAVerifier.verifier();
+            }
+
+            @Override
+            void terminer() {
+                activerModification(true);
+            }
+
+            @Override
+            void reussir(RapportVerification rapport) {
+                modifierStatus(rapport.estValide() ? "Arbre cohérent" : rapport.total() + " incohérence(s) trouvée(s)");
+                afficherRapport("Vérification de l'arbre", rapport.toString(),
+                        rapport.estValide() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("L'arbre n'a pas pu etre vérifié.", cause);
+            }
+        });
+    }
+
+    /**
+     * Calcule les statistiques de l'arbre en arrière-plan, sur tous les processeurs ; comme pour la vérification,
+     * l'arbre ne peut pas être modifié pendant le calcul
+     */
+    private void statistiques() {
+        MoteurArbre moteurAAnalyser = moteur;
+        activerModification(false);
+        lancer(new TacheFichier<RapportStatistiques>("Statistiques") {
+            @Override
+            protected RapportStatistiques doInBackground() {
+                return moteurAAnalyser.statistiques();
+            }
+
+            @Override
+            void terminer() {
+                activerModification(true);
+            }
+
+            @Override
+            void reussir(RapportStatistiques rapport) {
+                modifierStatus("Statistiques de " + rapport.nombreMembres() + " membres");
+                afficherRapport("Statistiques de l'arbre", rapport.toString(), JOptionPane.INFORMATION_MESSAGE);
+            }
+
+            @Override
+            void echouer(Throwable cause) {
+                signalerEchec("Les statistiques n'ont pas pu etre calculées.", cause);
+            }
+        });
+    }
+
+    /**
+     * affiche un rapport de plusieurs lignes dans un dialogue, en police à chasse fixe pour aligner les colonnes
+     * @param titre le titre du dialogue
+     * @param texte le rapport
+     * @param type le type de message de {@link JOptionPane}
+     */
+    private void afficherRapport(String titre, String texte, int type) {
+        JTextArea zone = new JTextArea(texte);
+        zone.setEditable(false);
+        zone.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(mainFrame, zone, titre, type);
+    }
+
+    /**
+     * remplace l'arbre affiché et ferme le journal de l'ancien : ses modifications non enregistrées sont abandonnées
+     * @param nouveauMoteur le moteur du nouvel arbre
+     */
+    private void remplacerMoteur(MoteurArbre nouveauMoteur) {
         try {
-            //définir les flux d'entrée
-            fis = new FileInputStream(fichier);
-            in = new ObjectInputStream(fis);
-
-            //essayer d'attribuer l'objet
-            ft = (ArbreGenealogique) in.readObject();
-            in.close();
-
-            arbreDeLaFamilleActuelle.setRoot(ft.getRoot());
-            fichierActuel = fichier;
-            arbre = new JTree();
-        } catch (Exception ex) {
-            throw new IllegalArgumentException("Le fichier n'a pas pu etre lu.");
+            moteur.fermerJournal();
+        } catch (IOException e) {
+            //le journal n'est plus écrit, sa fin non validée sera ignorée à la prochaine ouverture
+        }
+        moteur = nouveauMoteur;
+    }
+
+    /**
+     * @return true si une lecture ou un enregistrement est en cours, après l'avoir signalé dans la barre d'état
+     */
+    private boolean operationEnCours() {
+        if (tacheEnCours != null) {
+            modifierStatus("Une opération sur un fichier est déjà en cours");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * démarre une tâche sur un fichier et affiche son avancement dans la barre d'état
+     * @param tache la tâche à démarrer
+     */
+    private void lancer(TacheFichier<?> tache) {
+        tacheEnCours = tache;
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        annulerTache.setVisible(true);
+        modifierStatus(tache.libelle + " en cours...");
+        tache.addPropertyChangeListener(evenement -> {
+            if ("progress".equals(evenement.getPropertyName())) {
+                progressBar.setValue((Integer) evenement.getNewValue());
+            }
+        });
+        tache.execute();
+    }
+
+    /**
+     * autorise ou interdit les modifications de l'arbre, par exemple pendant son enregistrement.
+     * Seuls les composants désactivés ici sont réactivés ensuite
+     * @param active true pour autoriser les modifications
+     */
+    private void activerModification(boolean active) {
+        if (active) {
+            for (Component composant : composantsDesactives) {
+                composant.setEnabled(true);
+            }
+            composantsDesactives.clear();
+        } else {
+            desactiver(arbre);
+            desactiver(panneauRecherche);
+            desactiver(infoPanel);
         }
+    }
 
+    private void desactiver(Component composant) {
+        if (composant.isEnabled()) {
+            composant.setEnabled(false);
+            composantsDesactives.add(composant);
+        }
+        if (composant instanceof Container) {
+            for (Component enfant : ((Container) composant).getComponents()) {
+                desactiver(enfant);
+            }
+        }
+    }
+
+    /**
+     * Lecture ou enregistrement d'un fichier hors du fil d'événements Swing, pour que la fenêtre reste utilisable.
+     * L'avancement est transmis à la barre de progression et l'annulation est vérifiée par le code de lecture
+     * et d'écriture, qui s'arrête proprement : done() n'est appelé qu'une fois le travail réellement arrêté
+     */
+    private abstract class TacheFichier<T> extends SwingWorker<T, Void> implements SuiviProgression {
+
+        private final String libelle;
+        private volatile boolean annule;
+
+        TacheFichier(String libelle) {
+            this.libelle = libelle;
+            this.annule = false;
+        }
+
+        void annuler() {
+            annule = true;
+        }
+
+        @Override
+        public void progression(long fait, long total) {
+            if (total > 0) {
+                setProgress((int) Math.min(100, fait * 100 / total));
+            }
+        }
+
+        @Override
+        public boolean estAnnule() {
+            return annule;
+        }
+
+        /**
+         * appelé sur le fil d'événements quand la tâche se termine, quelle qu'en soit l'issue
+         */
+        void terminer() {
+        }
+
+        abstract void reussir(T resultat);
+
+        abstract void echouer(Throwable cause);
+
+        @Override
+        protected void done() {
+            tacheEnCours = null;
+            progressBar.setVisible(false);
+            annulerTache.setVisible(false);
+            terminer();
+            try {
+                reussir(get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof InterruptedIOException) {
+                    modifierStatus(libelle + " annulé");
+                } else {
+                    echouer(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -719,13 +1434,8 @@ public class ArbreGUI {
         JLabel petisEnfantsLabel = new JLabel("Petits Enfants");
         String petitsEnfants = "<html>";
         if (membre.has(MembreFamille.Attribut.ENFANTS)) {
-            for (MembreFamille enfant : membre.getEnfants()) {
-                if (enfant.has(MembreFamille.Attribut.ENFANTS)) {
-                    for (MembreFamille petitEnfant : enfant.getEnfants()) {
-                        petitsEnfants += petitEnfant.toString() + "<br>";
-                    }
-                }
-
+            for (MembreFamille petitEnfant : moteur.petitsEnfants(membre)) {
+                petitsEnfants += petitEnfant.toString() + "<br>";
             }
             petitsEnfants += "</html>";
         } else {
@@ -910,18 +1620,20 @@ public class ArbreGUI {
             @Override
             public void actionPerformed(ActionEvent e) {
                 try {
-                    //essayez de sauvegarder les détails
-                    membre.setNom(nomTextField.getText().trim());
-                    membre.setPrenoms(prenomsTextField.getText().trim());
-                    membre.setNomDeBaseDeLaMariee(nomDeBaseDeLaMarieeTextField.getText().trim());
+                    //essayez de sauvegarder les détails, par le moteur pour qu'ils soient journalisés
+                    //et annulés ensemble par Edition > Annuler
+                    moteur.modifierMembre(membre, nomTextField.getText().trim(), prenomsTextField.getText().trim(),
+                            nomDeBaseDeLaMarieeTextField.getText().trim(),
+                            (MembreFamille.Genre) genreComboBox.getSelectedItem());
                     //membre.setLifeDescription(lifeDescriptionTextArea.getText().trim());
-                    membre.setGenre((MembreFamille.Genre) genreComboBox.getSelectedItem());
 
                     /*membre.getAddress().setStreetNumber(streetNoTextField.getText().trim());
                     membre.getAddress().setStreetName(streetNameTextField.getText().trim());
                     membre.getAddress().setSuburb(suburbTextField.getText().trim());
                     membre.getAddress().setPostCode(postcodeTextField.getText().trim());*/
-                    afficherArbre(arbreDeLaFamilleActuelle);
+                    //seuls les nœuds qui affichent ce membre sont redessinés
+                    modeleArbre.membreModifie(membre);
+                    affichierMembreInfo(membre);
                     modifierStatus("Membre "+membre.toString()+" ajouté");
                 } catch (Exception d) {
                     //toute erreur telle que des noms incorrects, etc. apparaîtra ici pour informer l'utilisateur
@@ -1029,23 +1741,29 @@ public class ArbreGUI {
             public void actionPerformed(ActionEvent e) {
 
                 try {
-                    //create the objects
-
-                    MembreFamille nouveauMembre = new MembreFamille(
-                            nomTextField.getText(),
-                            prenomsTextField.getText(),
-                            (MembreFamille.Genre) genreComboBox.getSelectedItem());
-                    nouveauMembre.setNomDeBaseDeLaMariee(nomDeBaseDeLaMarieeTextField.getText());
+                    //create the objects, par le moteur pour que l'ajout soit journalisé
                     //Si pas de racine
                     if (membre == null) {
-                        arbreDeLaFamilleActuelle.setRoot(nouveauMembre);
+                        moteur.definirRacine(
+                                nomTextField.getText(),
+                                prenomsTextField.getText(),
+                                nomDeBaseDeLaMarieeTextField.getText(),
+                                (MembreFamille.Genre) genreComboBox.getSelectedItem());
+                        afficherArbre(moteur.getArbre());
                         modifierStatus("Membre racine ajouté");
                     } else {
                         //ajouter le relatif
-                        membre.ajouterLienRelatif((MembreFamille.LienDeParente) lienDeParenteJComboBox.getSelectedItem(), nouveauMembre);
+                        MembreFamille nouveau = moteur.ajouterLien(membre,
+                                (MembreFamille.LienDeParente) lienDeParenteJComboBox.getSelectedItem(),
+                                nomTextField.getText(),
+                                prenomsTextField.getText(),
+                                nomDeBaseDeLaMarieeTextField.getText(),
+                                (MembreFamille.Genre) genreComboBox.getSelectedItem());
+                        //insérer les nouveaux nœuds dans les parties déjà dépliées qui affichent les liens ajoutés
+                        modeleArbre.liensModifies(membre, membre.getConjoint(), nouveau);
+                        affichierMembreInfo(membre);
                         modifierStatus("Nouveau membre ajouté");
                     }
-                    afficherArbre(arbreDeLaFamilleActuelle);
 
                 } catch (Exception d) {
                     showErrorDialog(d);
@@ -1142,80 +1860,25 @@ public class ArbreGUI {
         infoPanel.repaint();
     }
 
-    /**
-     * Méthode récursive pour peupler l'objet jtree pour chaque membre de la famille de la personne racine
-     * @param top le nœud à peupler
-     * @param root le membre pour obtenir les détails auprès de
-     */
-    private void creerArbre(DefaultMutableTreeNode top, MembreFamille root) {
-        DefaultMutableTreeNode parents = null;
-        DefaultMutableTreeNode pere = null;
-        DefaultMutableTreeNode mere = null;
-        DefaultMutableTreeNode conjoint = null;
-        DefaultMutableTreeNode enfants = null;
-        DefaultMutableTreeNode freresSoeurs = null;
-        DefaultMutableTreeNode enfant = null;
-        DefaultMutableTreeNode frereSoeur = null;
-        DefaultMutableTreeNode noeudConjoint = null;
-
-        if (root.has(MembreFamille.Attribut.PARENTS) && root == arbreDeLaFamilleActuelle.getRoot()) {
-            parents = new DefaultMutableTreeNode("Parents");
-            //ajouter un nœud parent
-            top.add(parents);
-
-            if (root.has(MembreFamille.Attribut.PERE)) {
-                pere = new DefaultMutableTreeNode(root.getPere());
-                //ajouter pere au nœud parent
-                parents.add(pere);
-            }
-
-            if (root.has(MembreFamille.Attribut.MERE)) {
-                mere = new DefaultMutableTreeNode(root.getMere());
-                //ajouter mere au nœud parent
-                parents.add(mere);
-            }
-        }
-
-//        }
-        if (root.has(MembreFamille.Attribut.CONJOINT)) {
-            noeudConjoint = new DefaultMutableTreeNode("Conjoint");
-            conjoint = new DefaultMutableTreeNode(root.getConjoint());
-            //ajouter un nœud conjoint
-            noeudConjoint.add(conjoint);
-            //ajouter le noeud conjoint
-            top.add(noeudConjoint);
-        }
-
-        if (root.has(MembreFamille.Attribut.ENFANTS)) {
-            enfants = new DefaultMutableTreeNode("Enfants");
-            for (MembreFamille f : root.getEnfants()) {
-                enfant = new DefaultMutableTreeNode(f);
-                //pour chaque enfant, appel à créer un arbre pour peupler les nœuds de leur sous-arbre
-                creerArbre(enfant, f);
-                //ajouter cet enfant au nœud supérieur
-                enfants.add(enfant);
-            }
-            top.add(enfants);
-        }
-
-        if (root.has(MembreFamille.Attribut.FRERESSOEURS)) {
-            freresSoeurs = new DefaultMutableTreeNode("Freres-Soeurs");
-            for (MembreFamille g : root.getFreresSoeurs()) {
-                frereSoeur = new DefaultMutableTreeNode(g);
-                //pour chaque freres et soeurs, appel à créer un arbre pour peupler les nœuds de leur sous-arbre
-                creerArbre(frereSoeur, g);
-                //ajouter cet freres et soeurs au nœud supérieur
-                freresSoeurs.add(frereSoeur);
-            }
-            top.add(freresSoeurs);
-        }
-
-    }
-
     /**
      * affiche un dialogue d'erreur contenant un message d'erreur provenant d'une exception
      * @param e l'exception pour recevoir le message de
      */
+    /**
+     * affiche l'échec d'une tâche en arrière-plan, suivi de sa cause
+     * @param message ce qui n'a pas pu être fait
+     * @param cause l'exception levée par la tâche
+     */
+    private void signalerEchec(String message, Throwable cause) {
+        //une UncheckedIOException ne fait qu'envelopper l'erreur de lecture ou d'écriture
+        Throwable origine = cause instanceof UncheckedIOException && cause.getCause() != null ? cause.getCause() : cause;
+        String detail = origine == null ? null
+                : origine.getMessage() == null ? origine.toString() : origine.getMessage();
+        String texte = detail == null ? message : message + " " + detail;
+        showErrorDialog(new IllegalArgumentException(texte));
+        modifierStatus("Erreur: " + texte);
+    }
+
     private void showErrorDialog(Exception e) {
         JOptionPane.showMessageDialog(mainFrame, "Erreur: " + e.getMessage(), "Erreur", JOptionPane.ERROR_MESSAGE);
     }
@@ -1,6 +1,9 @@
 package arbre_genealogique_pkg;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * this family tree class acts as an implementation of the family member class
@@ -15,15 +18,37 @@ public class ArbreGenealogique implements Serializable{
      */
     public ArbreGenealogique() {
         this.root = null;
+        this.registre = new RegistreMembres();
+    }
+
+    /**
+     * construit un arbre à partir d'un registre déjà rempli, par exemple lu dans un fichier
+     * @param registre les membres de l'arbre
+     * @param racine la personne racine, qui doit appartenir au registre, ou null
+     */
+    ArbreGenealogique(RegistreMembres registre, MembreFamille racine) {
+        this.registre = registre;
+        this.root = racine;
     }
 
     private MembreFamille root;
 
+    //tous les membres de l'arbre, indexés par identifiant et par nom
+    private RegistreMembres registre;
+
     /**
-     * sets the root
+     * sets the root. Si la racine appartient déjà à un arbre, celui-ci adopte son registre,
+     * sinon la racine est enregistrée dans le registre de l'arbre
      * @param newRoot
      */
     public void setRoot(MembreFamille newRoot){
+        if (newRoot != null) {
+            if (newRoot.getRegistre() == null) {
+                this.registre.ajouter(newRoot);
+            } else {
+                this.registre = newRoot.getRegistre();
+            }
+        }
         this.root = newRoot;
     }
 
@@ -42,4 +67,88 @@ public class ArbreGenealogique implements Serializable{
     public MembreFamille getRoot(){
         return this.root;
     }
+
+    /**
+     * @param id l'identifiant du membre
+     * @return le membre, ou null si aucun membre ne porte cet identifiant
+     */
+    public MembreFamille getMembre(int id) {
+        return this.registre.get(id);
+    }
+
+    /**
+     * @return le nombre de membres de l'arbre
+     */
+    public int nombreMembres() {
+        return this.registre.taille();
+    }
+
+    /**
+     * @return tous les membres de l'arbre rangés par identifiant
+     */
+    public List<MembreFamille> getMembres() {
+        return this.registre.tous();
+    }
+
+    /**
+     * @param nom le nom recherché, sans tenir compte de la casse
+     * @return les membres portant ce nom
+     */
+    public List<MembreFamille> trouverParNom(String nom) {
+        return this.registre.trouver(RegistreMembres.Champ.NOM, nom);
+    }
+
+    /**
+     * @param prenoms les prenoms recherchés, sans tenir compte de la casse
+     * @return les membres portant ces prenoms
+     */
+    public List<MembreFamille> trouverParPrenoms(String prenoms) {
+        return this.registre.trouver(RegistreMembres.Champ.PRENOMS, prenoms);
+    }
+
+    /**
+     * @param nomDeBaseDeLaMariee le nom de base de la mariée recherché, sans tenir compte de la casse
+     * @return les membres portant ce nom de base de la mariée
+     */
+    public List<MembreFamille> trouverParNomDeBaseDeLaMariee(String nomDeBaseDeLaMariee) {
+        return this.registre.trouver(RegistreMembres.Champ.NOMDEBASEDELAMARIEE, nomDeBaseDeLaMariee);
+    }
+
+    /**
+     * recherche approchée sur le nom, les prenoms et le nom de base de la mariée : début de mot,
+     * sans tenir compte des accents, même prononciation ou faute de frappe
+     * @param texte les mots recherchés
+     * @param limite le nombre maximal de membres retournés
+     * @return les membres trouvés, les plus proches d'abord
+     */
+    public List<MembreFamille> rechercher(String texte, int limite) {
+        return this.registre.rechercher(texte, limite);
+    }
+
+    /**
+     * fige l'arbre pour le parcourir depuis un autre fil, sans verrou, pendant qu'il continue d'être modifié.
+     * L'instantané se prend depuis le fil qui modifie l'arbre ; le premier charge tous les membres d'un fichier projeté
+     * @return la version courante de l'arbre, qui ne changera plus
+     */
+    public InstantaneArbre instantane() {
+        return this.registre.instantane(this.root == null ? -1 : this.root.getId());
+    }
+
+    /**
+     * @return le registre des membres de l'arbre
+     */
+    RegistreMembres getRegistre() {
+        return this.registre;
+    }
+
+    /**
+     * les fichiers enregistrés avant l'existence du registre ne contiennent que la racine : le registre est alors
+     * reconstruit en parcourant le graphe
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (this.registre == null) {
+            this.registre = RegistreMembres.reconstruire(this.root);
+        }
+    }
 }
@@ -0,0 +1,301 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+
+/**
+ * Calcul du lien de parenté entre deux membres (cousin germain, demi-sœur, grand-oncle, beau-frère...).
+ * <p>
+ * Un membre ayant deux parents, les liens forment un graphe et non un arbre : un ancêtre commun le plus proche
+ * par arbre couvrant (tour eulérien, sauts binaires) manquerait la moitié des lignées. On remonte donc les
+ * parents de l'index ({@link IndexGenealogique}) en largeur depuis les deux membres, sur au plus
+ * {@link #PROFONDEUR_MAX} générations, en s'arrêtant aux ancêtres communs. Les tableaux de travail sont
+ * alloués une fois et marqués par un numéro de passage : une requête ne coûte que le nombre d'ancêtres
+ * visités, indépendamment de la taille de l'arbre.
+ * <p>
+ * Le calcul n'est pas réentrant : une instance ne doit servir qu'à un fil d'exécution à la fois
+ * @author aklam
+ */
+final class CalculParente {
+
+    /**
+     * nombre maximal de générations remontées depuis chacun des deux membres
+     */
+    static final int PROFONDEUR_MAX = 20;
+
+    private final IndexGenealogique index;
+    private final RegistreMembres registre;
+
+    //un membre est visité dans le passage courant si sa marque vaut passage
+    private final int[] marqueA;
+    private final int[] distanceA;
+    private final int[] marqueB;
+    private final int[] distanceB;
+    private final int[] file;
+    private int passage;
+
+    CalculParente(IndexGenealogique index, RegistreMembres registre) {
+        this.index = index;
+        this.registre = registre;
+        int taille = index.taille();
+        this.marqueA = new int[taille];
+        this.distanceA = new int[taille];
+        this.marqueB = new int[taille];
+        this.distanceB = new int[taille];
+        this.file = new int[taille];
+    }
+
+    /**
+     * @return true si ce calcul porte encore sur l'index donné
+     */
+    boolean utilise(IndexGenealogique index) {
+        return this.index == index;
+    }
+
+    /**
+     * @param a le premier membre
+     * @param b le second membre
+     * @return le lien de a vers b : a est le (la) ... de b
+     */
+    LienParente lien(MembreFamille a, MembreFamille b) {
+        if (a.getId() == b.getId()) {
+            return new LienParente("même personne", 0, 0, false, false, a);
+        }
+        LienParente sang = consanguin(a.getId(), b.getId(), a.getGenre());
+        if (sang != null) {
+            return sang;
+        }
+        if (a.idConjoint() == b.getId()) {
+            return new LienParente(feminin(a.getGenre()) ? "épouse" : "époux", -1, -1, false, true, null);
+        }
+        //a est parent, frère, enfant... du conjoint de b
+        if (b.idConjoint() >= 0) {
+            LienParente lien = consanguin(a.getId(), b.idConjoint(), a.getGenre());
+            if (lien != null) {
+                return allianceParConjointDeB(lien, a.getGenre());
+            }
+        }
+        //le conjoint de a est parent, frère, enfant... de b
+        if (a.idConjoint() >= 0) {
+            MembreFamille conjoint = registre.get(a.idConjoint());
+            LienParente lien = consanguin(conjoint.getId(), b.getId(), conjoint.getGenre());
+            if (lien != null) {
+                return allianceParConjointDeA(lien, a.getGenre(), conjoint.getGenre());
+            }
+        }
+        return new LienParente("aucun lien connu", -1, -1, false, false, null);
+    }
+
+    //lien par le sang, null sans ancêtre commun à moins de PROFONDEUR_MAX générations
+    private LienParente consanguin(int a, int b, MembreFamille.Genre genre) {
+        nouveauPassage();
+        remonter(a);
+
+        //meilleur ancêtre commun : le moins de générations au total, puis l'écart le plus faible
+        int meilleureSomme = Integer.MAX_VALUE;
+        int meilleurA = -1;
+        int meilleurB = -1;
+        int ancetre = -1;
+        int nombre = 0;
+
+        int debut = 0;
+        int fin = 0;
+        file[fin++] = b;
+        marqueB[b] = passage;
+        distanceB[b] = 0;
+        while (debut < fin) {
+            int membre = file[debut++];
+            int generationsB = distanceB[membre];
+            if (generationsB > meilleureSomme) {
+                break;
+            }
+            if (marqueA[membre] == passage) {
+                int generationsA = distanceA[membre];
+                int somme = generationsA + generationsB;
+                int ecart = Math.max(generationsA, generationsB);
+                if (somme < meilleureSomme
+                        || (somme == meilleureSomme && ecart < Math.max(meilleurA, meilleurB))) {
+                    meilleureSomme = somme;
+                    meilleurA = generationsA;
+                    meilleurB = generationsB;
+                    ancetre = membre;
+                    nombre = 1;
+                } else if (generationsA == meilleurA && generationsB == meilleurB) {
+                    nombre++;
+                }
+                //les ancêtres d'un ancêtre commun sont forcément plus éloignés
+                continue;
+            }
+            if (generationsB == PROFONDEUR_MAX) {
+                continue;
+            }
+            for (int i = index.debutParents(membre); i < index.finParents(membre); i++) {
+                int parent = index.parent(i);
+                if (marqueB[parent] != passage) {
+                    marqueB[parent] = passage;
+                    distanceB[parent] = generationsB + 1;
+                    file[fin++] = parent;
+                }
+            }
+        }
+        if (ancetre < 0) {
+            return null;
+        }
+        //un seul ancêtre commun alors qu'il a un conjoint : les deux lignées passent par des unions différentes
+        boolean demi = meilleurA > 0 && meilleurB > 0 && nombre == 1 && registre.get(ancetre).idConjoint() >= 0;
+        return new LienParente(nommer(meilleurA, meilleurB, demi, feminin(genre)), meilleurA, meilleurB, demi, false,
+                registre.get(ancetre));
+    }
+
+    //parcours en largeur des parents, en notant la distance de chaque ancêtre
+    private void remonter(int depart) {
+        int debut = 0;
+        int fin = 0;
+        file[fin++] = depart;
+        marqueA[depart] = passage;
+        distanceA[depart] = 0;
+        while (debut < fin) {
+            int membre = file[debut++];
+            int generations = distanceA[membre];
+            if (generations == PROFONDEUR_MAX) {
+                continue;
+            }
+            for (int i = index.debutParents(membre); i < index.finParents(membre); i++) {
+                int parent = index.parent(i);
+                if (marqueA[parent] != passage) {
+                    marqueA[parent] = passage;
+                    distanceA[parent] = generations + 1;
+                    file[fin++] = parent;
+                }
+            }
+        }
+    }
+
+    private void nouveauPassage() {
+        passage++;
+        if (passage == 0) {
+            //après un tour complet des numéros, les anciennes marques pourraient être confondues
+            Arrays.fill(marqueA, 0);
+            Arrays.fill(marqueB, 0);
+            passage = 1;
+        }
+    }
+
+    /**
+     * nomme un lien par le sang
+     * @param generationsA générations entre a et l'ancêtre commun
+     * @param generationsB générations entre b et l'ancêtre commun
+     * @param demi true si un seul des parents du couple ancêtre est commun
+     * @param feminin genre de a
+     * @return le nom du lien de a vers b
+     */
+    static String nommer(int generationsA, int generationsB, boolean demi, boolean feminin) {
+        String prefixe = demi ? "demi-" : "";
+        if (generationsA == 0) {
+            //a est un ancêtre de b
+            switch (generationsB) {
+                case 1:
+                    return feminin ? "mère" : "père";
+                case 2:
+                    return feminin ? "grand-mère" : "grand-père";
+                default:
+                    return arriere(generationsB - 2) + (feminin ? "grand-mère" : "grand-père");
+            }
+        }
+        if (generationsB == 0) {
+            //a est un descendant de b
+            switch (generationsA) {
+                case 1:
+                    return feminin ? "fille" : "fils";
+                case 2:
+                    return feminin ? "petite-fille" : "petit-fils";
+                default:
+                    return arriere(generationsA - 2) + (feminin ? "petite-fille" : "petit-fils");
+            }
+        }
+        if (generationsA == 1 && generationsB == 1) {
+            return prefixe + (feminin ? "sœur" : "frère");
+        }
+        if (generationsA == 1) {
+            //a est un frère ou une sœur d'un ancêtre de b
+            if (generationsB == 2) {
+                return prefixe + (feminin ? "tante" : "oncle");
+            }
+            return prefixe + arriere(generationsB - 3) + (feminin ? "grand-tante" : "grand-oncle");
+        }
+        if (generationsB == 1) {
+            //a descend d'un frère ou d'une sœur de b
+            if (generationsA == 2) {
+                return prefixe + (feminin ? "nièce" : "neveu");
+            }
+            return prefixe + arriere(generationsA - 3) + (feminin ? "petite-nièce" : "petit-neveu");
+        }
+        int degre = Math.min(generationsA, generationsB) - 1;
+        int eloignement = Math.abs(generationsA - generationsB);
+        StringBuilder nom = new StringBuilder(prefixe);
+        if (degre == 1) {
+            nom.append(feminin ? "cousine germaine" : "cousin germain");
+        } else if (degre == 2) {
+            nom.append(feminin ? "cousine issue de germain" : "cousin issu de germain");
+        } else {
+            nom.append(feminin ? "cousine" : "cousin").append(" au ").append(degre).append("e degré");
+        }
+        if (eloignement > 0) {
+            nom.append(feminin ? ", éloignée de " : ", éloigné de ").append(eloignement)
+                    .append(eloignement == 1 ? " génération" : " générations");
+        }
+        return nom.toString();
+    }
+
+    //a est le (la) "lien" du conjoint de b
+    private static LienParente allianceParConjointDeB(LienParente lien, MembreFamille.Genre genre) {
+        boolean feminin = feminin(genre);
+        String nom;
+        if (lien.getGenerationsA() == 0 && lien.getGenerationsB() == 1) {
+            nom = feminin ? "belle-mère" : "beau-père";
+        } else if (lien.getGenerationsA() == 1 && lien.getGenerationsB() == 0) {
+            nom = feminin ? "belle-fille" : "beau-fils";
+        } else if (lien.getGenerationsA() == 1 && lien.getGenerationsB() == 1) {
+            nom = feminin ? "belle-sœur" : "beau-frère";
+        } else {
+            nom = lien.getLibelle() + " du conjoint";
+        }
+        return alliance(nom, lien);
+    }
+
+    //le conjoint de a est le (la) "lien" de b
+    private static LienParente allianceParConjointDeA(LienParente lien, MembreFamille.Genre genre,
+                                                      MembreFamille.Genre genreConjoint) {
+        boolean feminin = feminin(genre);
+        String nom;
+        if (lien.getGenerationsA() == 0 && lien.getGenerationsB() == 1) {
+            nom = feminin ? "belle-mère" : "beau-père";
+        } else if (lien.getGenerationsA() == 1 && lien.getGenerationsB() == 0) {
+            nom = feminin ? "belle-fille" : "gendre";
+        } else if (lien.getGenerationsA() == 1 && lien.getGenerationsB() == 1) {
+            nom = feminin ? "belle-sœur" : "beau-frère";
+        } else {
+            String libelle = lien.getLibelle();
+            String article = "aeiouéèh".indexOf(libelle.charAt(0)) >= 0 ? " de l'"
+                    : feminin(genreConjoint) ? " de la " : " du ";
+            nom = (feminin ? "conjointe" : "conjoint") + article + libelle;
+        }
+        return alliance(nom, lien);
+    }
+
+    private static LienParente alliance(String nom, LienParente lien) {
+        return new LienParente(nom, lien.getGenerationsA(), lien.getGenerationsB(), lien.estDemi(), true,
+                lien.getAncetreCommun());
+    }
+
+    private static String arriere(int nombre) {
+        StringBuilder prefixe = new StringBuilder();
+        for (int i = 0; i < nombre; i++) {
+            prefixe.append("arrière-");
+        }
+        return prefixe.toString();
+    }
+
+    private static boolean feminin(MembreFamille.Genre genre) {
+        return genre == MembreFamille.Genre.FEMININ;
+    }
+}
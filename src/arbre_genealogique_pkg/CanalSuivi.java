@@ -0,0 +1,51 @@
+package arbre_genealogique_pkg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Canal de lecture qui compte les octets lus et les signale à un {@link SuiviProgression}.
+ * Chaque lecture vérifie aussi l'annulation, ce qui permet d'interrompre n'importe quel lecteur
+ * (format binaire ou ancienne sérialisation) sans le modifier
+ * @author aklam
+ */
+final class CanalSuivi implements ReadableByteChannel {
+
+    private final ReadableByteChannel canal;
+    private final SuiviProgression suivi;
+    private final long total;
+    private long lus;
+
+    /**
+     * @param canal le canal lu
+     * @param suivi reçoit le nombre d'octets lus
+     * @param total la taille attendue, en octets
+     */
+    CanalSuivi(ReadableByteChannel canal, SuiviProgression suivi, long total) {
+        this.canal = canal;
+        this.suivi = suivi;
+        this.total = total;
+        this.lus = 0;
+    }
+
+    @Override
+    public int read(ByteBuffer tampon) throws IOException {
+        int n = canal.read(tampon);
+        if (n > 0) {
+            lus += n;
+        }
+        suivi.avancer(lus, total);
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return canal.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+}
@@ -0,0 +1,146 @@
+package arbre_genealogique_pkg;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codecs des blocs d'un fichier .ft compressé (voir {@link FichierArbre}). L'identifiant du codec est écrit
+ * dans l'en-tête du fichier, la lecture choisit donc le codec sans rien demander.
+ * Un nouveau codec s'ajoute ici avec un identifiant jamais utilisé
+ * @author aklam
+ */
+enum CodecBlocs {
+
+    /**
+     * pas de compression : le fichier est écrit au format de la version 2, qui peut être projeté en mémoire
+     */
+    AUCUN(0) {
+        @Override
+        int compresser(byte[] brut, int longueur, byte[] compresse) {
+            System.arraycopy(brut, 0, compresse, 0, longueur);
+            return longueur;
+        }
+
+        @Override
+        void decompresser(byte[] compresse, int longueur, byte[] brut, int tailleBrute) throws IOException {
+            if (longueur != tailleBrute) {
+                throw new IOException("Fichier corrompu: taille de bloc incohérente");
+            }
+            System.arraycopy(compresse, 0, brut, 0, longueur);
+        }
+
+        @Override
+        long tailleBruteMax(long taille) {
+            return taille;
+        }
+    },
+
+    /**
+     * Deflate sans en-tête zlib, au niveau le plus rapide : les varints et les identifiants voisins
+     * se compressent bien sans qu'un niveau plus élevé gagne beaucoup
+     */
+    DEFLATE(1) {
+        @Override
+        int compresser(byte[] brut, int longueur, byte[] compresse) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                deflater.setInput(brut, 0, longueur);
+                deflater.finish();
+                int taille = 0;
+                while (!deflater.finished()) {
+                    if (taille == compresse.length) {
+                        throw new IllegalStateException("Bloc compressé plus grand que prévu");
+                    }
+                    taille += deflater.deflate(compresse, taille, compresse.length - taille);
+                }
+                return taille;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        void decompresser(byte[] compresse, int longueur, byte[] brut, int tailleBrute) throws IOException {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compresse, 0, longueur);
+                int taille = 0;
+                while (taille < tailleBrute) {
+                    int n = inflater.inflate(brut, taille, tailleBrute - taille);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Fichier corrompu: bloc compressé tronqué");
+                    }
+                    taille += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Fichier corrompu: bloc compressé invalide", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        long tailleBruteMax(long taille) {
+            //Deflate ne rend jamais plus de 1032 octets par octet compressé
+            return taille * 1032;
+        }
+    };
+
+    private final int identifiant;
+
+    CodecBlocs(int identifiant) {
+        this.identifiant = identifiant;
+    }
+
+    /**
+     * @return l'identifiant écrit dans l'en-tête du fichier
+     */
+    int identifiant() {
+        return identifiant;
+    }
+
+    /**
+     * @param identifiant l'identifiant lu dans l'en-tête d'un fichier
+     * @return le codec correspondant
+     */
+    static CodecBlocs depuis(int identifiant) throws IOException {
+        for (CodecBlocs codec : values()) {
+            if (codec.identifiant == identifiant) {
+                return codec;
+            }
+        }
+        throw new IOException("Codec de fichier non pris en charge: " + identifiant);
+    }
+
+    /**
+     * @return la taille maximale d'un bloc de cette longueur une fois compressé, pour tous les codecs
+     */
+    static int tailleMax(int longueur) {
+        //Deflate ne grossit un bloc incompressible que de quelques octets tous les 16 Kio
+        return longueur + (longueur >>> 8) + 64;
+    }
+
+    /**
+     * @param brut les octets à compresser
+     * @param longueur leur nombre
+     * @param compresse reçoit le bloc compressé, d'au moins {@link #tailleMax(int)} octets
+     * @return la taille du bloc compressé
+     */
+    abstract int compresser(byte[] brut, int longueur, byte[] compresse);
+
+    /**
+     * @param compresse le bloc compressé
+     * @param longueur sa taille
+     * @param brut reçoit les octets décompressés
+     * @param tailleBrute le nombre d'octets attendus
+     */
+    abstract void decompresser(byte[] compresse, int longueur, byte[] brut, int tailleBrute) throws IOException;
+
+    /**
+     * @param taille la taille d'un fichier compressé avec ce codec
+     * @return le nombre maximal d'octets que sa décompression peut rendre
+     */
+    abstract long tailleBruteMax(long taille);
+}
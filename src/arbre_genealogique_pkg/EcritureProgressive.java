@@ -0,0 +1,208 @@
+package arbre_genealogique_pkg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Écriture d'un fichier .ft (format de {@link FichierArbre}) à partir de membres reçus un par un, sans garder
+ * l'arbre en mémoire. Les listes, les membres et leurs tables de positions sont écrits au fil de l'eau dans
+ * quatre fichiers temporaires, puis assemblés dans l'ordre du format par {@link #terminer(int)}. Seule la table
+ * des noms reste en mémoire : elle ne contient que les noms distincts.
+ * <p>
+ * Chaque membre a ses propres listes d'enfants et de frères et sœurs, comme ceux d'un fichier GEDCOM importé
+ * @author aklam
+ */
+final class EcritureProgressive implements GenerateurArbre.Recepteur, Closeable {
+
+    private static final int TAILLE_COPIE = 1 << 16;
+
+    private final Path cible;
+    private final Path temporaire;
+    private final Path fichierListes;
+    private final Path fichierMembres;
+    private final Path fichierPositionsListes;
+    private final Path fichierPositionsMembres;
+
+    private final SortieBinaire listes;
+    private final SortieBinaire membres;
+    private final SortieBinaire positionsListes;
+    private final SortieBinaire positionsMembres;
+
+    private final Map<String, Integer> indicesChaines = new HashMap<>();
+    private final List<String> chaines = new ArrayList<>();
+    private int nombreListes;
+    private int nombreMembres;
+
+    /**
+     * @param fichier le fichier à écrire, remplacé seulement par {@link #terminer(int)}
+     */
+    EcritureProgressive(File fichier) throws IOException {
+        this.cible = fichier.toPath().toAbsolutePath();
+        this.temporaire = voisin(".tmp");
+        this.fichierListes = voisin(".listes.tmp");
+        this.fichierMembres = voisin(".membres.tmp");
+        this.fichierPositionsListes = voisin(".positions-listes.tmp");
+        this.fichierPositionsMembres = voisin(".positions-membres.tmp");
+        this.listes = ouvrir(fichierListes);
+        this.membres = ouvrir(fichierMembres);
+        this.positionsListes = ouvrir(fichierPositionsListes);
+        this.positionsMembres = ouvrir(fichierPositionsMembres);
+    }
+
+    /**
+     * écrit un membre. Les membres doivent être reçus dans l'ordre de leurs identifiants, à partir de 0
+     */
+    @Override
+    public void recevoir(GenerateurArbre.Membre membre) throws IOException {
+        if (membre.id != nombreMembres) {
+            throw new IllegalArgumentException("Membre " + membre.id + " reçu au lieu du membre " + nombreMembres);
+        }
+        positionsMembres.ecrireLong(membres.position());
+        membres.ecrireVarint(chaine(membre.prenoms));
+        membres.ecrireVarint(chaine(membre.nom));
+        membres.ecrireVarint(chaine(membre.nomDeBaseDeLaMariee));
+        membres.ecrireOctet(membre.genre == null ? 0 : membre.genre.ordinal() + 1);
+        membres.ecrireVarint(membre.pere + 1);
+        membres.ecrireVarint(membre.mere + 1);
+        membres.ecrireVarint(membre.conjoint + 1);
+        membres.ecrireVarint(liste(membre.premierEnfant, membre.nombreEnfants, -1));
+        //la fratrie d'un membre ne le contient pas
+        membres.ecrireVarint(liste(membre.premierFrere, membre.nombreFreres, membre.id));
+        nombreMembres++;
+    }
+
+    /**
+     * assemble le fichier et remplace la cible
+     * @param racine l'identifiant de la racine, -1 s'il n'y en a pas
+     */
+    void terminer(int racine) throws IOException {
+        listes.close();
+        membres.close();
+        positionsListes.close();
+        positionsMembres.close();
+        try (SortieBinaire sortie = ouvrir(temporaire)) {
+            sortie.ecrireOctets(FichierArbre.MAGIQUE, 0, FichierArbre.MAGIQUE.length);
+            sortie.ecrireOctet(FichierArbre.VERSION);
+
+            long[] positionsChaines = new long[chaines.size()];
+            sortie.ecrireVarint(chaines.size());
+            for (int i = 0; i < chaines.size(); i++) {
+                positionsChaines[i] = sortie.position();
+                sortie.ecrireChaine(chaines.get(i));
+            }
+            sortie.ecrireVarint(nombreListes);
+            long debutListes = sortie.position();
+            copier(fichierListes, sortie);
+            sortie.ecrireVarint(nombreMembres);
+            long debutMembres = sortie.position();
+            copier(fichierMembres, sortie);
+            sortie.ecrireVarint(racine + 1);
+
+            //les positions des fichiers temporaires sont décalées du début de leur section
+            long tableChaines = sortie.position();
+            for (long position : positionsChaines) {
+                sortie.ecrireLong(position);
+            }
+            long tableListes = sortie.position();
+            copierPositions(fichierPositionsListes, debutListes, sortie);
+            long tableMembres = sortie.position();
+            copierPositions(fichierPositionsMembres, debutMembres, sortie);
+            sortie.ecrireLong(tableChaines);
+            sortie.ecrireLong(tableListes);
+            sortie.ecrireLong(tableMembres);
+            sortie.ecrireLong(racine + 1);
+            sortie.ecrireOctets(FichierArbre.MAGIQUE, 0, FichierArbre.MAGIQUE.length);
+        }
+        Files.move(temporaire, cible, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * supprime les fichiers temporaires ; la cible n'est pas modifiée si {@link #terminer(int)} n'a pas abouti
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            listes.close();
+            membres.close();
+            positionsListes.close();
+            positionsMembres.close();
+        } finally {
+            Files.deleteIfExists(fichierListes);
+            Files.deleteIfExists(fichierMembres);
+            Files.deleteIfExists(fichierPositionsListes);
+            Files.deleteIfExists(fichierPositionsMembres);
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    //écrit la liste des identifiants consécutifs, sauf l'exclu, et renvoie son indice
+    private int liste(int premier, int nombre, int exclu) throws IOException {
+        positionsListes.ecrireLong(listes.position());
+        boolean contientExclu = exclu >= premier && exclu < premier + nombre;
+        listes.ecrireVarint(contientExclu ? nombre - 1 : nombre);
+        for (int id = premier; id < premier + nombre; id++) {
+            if (id != exclu) {
+                listes.ecrireVarint(id);
+            }
+        }
+        return nombreListes++;
+    }
+
+    private int chaine(String chaine) {
+        Integer indice = indicesChaines.get(chaine);
+        if (indice == null) {
+            indice = chaines.size();
+            indicesChaines.put(chaine, indice);
+            chaines.add(chaine);
+        }
+        return indice;
+    }
+
+    private static void copier(Path fichier, SortieBinaire sortie) throws IOException {
+        byte[] octets = new byte[TAILLE_COPIE];
+        ByteBuffer tampon = ByteBuffer.wrap(octets);
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            while (canal.read(tampon) >= 0) {
+                sortie.ecrireOctets(octets, 0, tampon.position());
+                tampon.clear();
+            }
+        }
+    }
+
+    private static void copierPositions(Path fichier, long decalage, SortieBinaire sortie) throws IOException {
+        ByteBuffer tampon = ByteBuffer.allocate(TAILLE_COPIE);
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            while (canal.read(tampon) >= 0) {
+                tampon.flip();
+                while (tampon.remaining() >= 8) {
+                    sortie.ecrireLong(tampon.getLong() + decalage);
+                }
+                //une position coupée par la lecture est complétée à la lecture suivante
+                tampon.compact();
+            }
+        }
+        if (tampon.position() != 0) {
+            throw new IOException("Table de positions incomplète");
+        }
+    }
+
+    private Path voisin(String suffixe) {
+        return cible.resolveSibling(cible.getFileName() + suffixe);
+    }
+
+    private static SortieBinaire ouvrir(Path fichier) throws IOException {
+        return new SortieBinaire(FileChannel.open(fichier,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+}
@@ -0,0 +1,146 @@
+package arbre_genealogique_pkg;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lecture tamponnée depuis un canal NIO, pendant de {@link SortieBinaire}
+ * @author aklam
+ */
+class EntreeBinaire implements Closeable {
+
+    private static final int TAILLE_TAMPON = 1 << 16;
+
+    //aucun nom ne dépasse cette taille, une longueur plus grande signale un fichier corrompu
+    private static final int LONGUEUR_CHAINE_MAX = 1 << 16;
+
+    private final ReadableByteChannel canal;
+    private final ByteBuffer tampon;
+    //nombre maximal d'octets que le canal peut fournir, pour refuser les nombres d'éléments impossibles
+    private final long limite;
+    private long octetsLus;
+    private byte[] octetsChaine = new byte[64];
+
+    EntreeBinaire(ReadableByteChannel canal) {
+        this(canal, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param canal le canal à lire
+     * @param limite le nombre maximal d'octets que le canal peut fournir
+     */
+    EntreeBinaire(ReadableByteChannel canal, long limite) {
+        this.canal = canal;
+        this.tampon = ByteBuffer.allocateDirect(TAILLE_TAMPON);
+        this.tampon.limit(0);
+        this.limite = limite;
+        this.octetsLus = 0;
+    }
+
+    /**
+     * @return le nombre d'octets consommés depuis la création
+     */
+    long position() {
+        return octetsLus - tampon.remaining();
+    }
+
+    int lireOctet() throws IOException {
+        if (!tampon.hasRemaining() && !remplir()) {
+            throw new EOFException("Fin de fichier inattendue");
+        }
+        return tampon.get() & 0xFF;
+    }
+
+    void lireOctets(byte[] octets, int debut, int longueur) throws IOException {
+        while (longueur > 0) {
+            if (!tampon.hasRemaining() && !remplir()) {
+                throw new EOFException("Fin de fichier inattendue");
+            }
+            int n = Math.min(longueur, tampon.remaining());
+            tampon.get(octets, debut, n);
+            debut += n;
+            longueur -= n;
+        }
+    }
+
+    /**
+     * @return un entier écrit par {@link SortieBinaire#ecrireVarint(long)}
+     */
+    long lireVarintLong() throws IOException {
+        long valeur = 0;
+        for (int decalage = 0; decalage < 64; decalage += 7) {
+            int octet = lireOctet();
+            //le dixième octet ne porte que le bit 63
+            if (decalage == 63 && octet > 1) {
+                throw new IOException("Fichier corrompu: entier trop long");
+            }
+            valeur |= (long) (octet & 0x7F) << decalage;
+            if ((octet & 0x80) == 0) {
+                return valeur;
+            }
+        }
+        throw new IOException("Fichier corrompu: entier trop long");
+    }
+
+    /**
+     * @return un entier écrit par {@link SortieBinaire#ecrireVarint(long)}, qui doit tenir dans un int positif
+     */
+    int lireVarint() throws IOException {
+        long valeur = lireVarintLong();
+        if (valeur < 0 || valeur > Integer.MAX_VALUE) {
+            throw new IOException("Fichier corrompu: entier hors limites");
+        }
+        return (int) valeur;
+    }
+
+    /**
+     * lit le nombre d'éléments d'une table, avant de réserver de quoi les ranger
+     * @param octetsParElement le nombre minimal d'octets qu'occupe chaque élément dans le flux
+     * @return un nombre d'éléments que la suite du flux peut contenir
+     */
+    int lireNombre(int octetsParElement) throws IOException {
+        int nombre = lireVarint();
+        if (nombre > (limite - position()) / octetsParElement) {
+            throw new IOException("Fichier corrompu: nombre d'éléments hors limites");
+        }
+        return nombre;
+    }
+
+    /**
+     * @return une chaîne écrite par {@link SortieBinaire#ecrireChaine(String)}
+     */
+    String lireChaine() throws IOException {
+        int longueur = lireVarint();
+        if (longueur > LONGUEUR_CHAINE_MAX) {
+            throw new IOException("Fichier corrompu: chaîne trop longue");
+        }
+        if (longueur > octetsChaine.length) {
+            octetsChaine = new byte[Math.max(longueur, octetsChaine.length * 2)];
+        }
+        lireOctets(octetsChaine, 0, longueur);
+        return new String(octetsChaine, 0, longueur, StandardCharsets.UTF_8);
+    }
+
+    private boolean remplir() throws IOException {
+        tampon.clear();
+        int n = 0;
+        while (n == 0) {
+            n = canal.read(tampon);
+        }
+        tampon.flip();
+        if (n < 0) {
+            return false;
+        }
+        octetsLus += n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+}
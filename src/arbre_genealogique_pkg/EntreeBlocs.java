@@ -0,0 +1,101 @@
+package arbre_genealogique_pkg;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Canal de lecture des blocs écrits par {@link SortieBlocs} : chaque bloc est décompressé en entier
+ * puis son CRC32 est vérifié avant d'être rendu
+ * @author aklam
+ */
+final class EntreeBlocs implements ReadableByteChannel {
+
+    //les blocs écrits font 256 Kio, une taille plus grande signale un fichier corrompu
+    private static final int TAILLE_BLOC_MAX = 1 << 24;
+
+    private final ReadableByteChannel canal;
+    private final CodecBlocs codec;
+    private final ByteBuffer entete = ByteBuffer.allocate(SortieBlocs.TAILLE_ENTETE_BLOC);
+    private final CRC32 crc = new CRC32();
+    private byte[] brut = new byte[SortieBlocs.TAILLE_BLOC];
+    private byte[] compresse = new byte[CodecBlocs.tailleMax(SortieBlocs.TAILLE_BLOC)];
+    private int disponibles;
+    private int lus;
+    private boolean fin;
+
+    /**
+     * @param canal le canal placé au début du premier bloc, fermé avec celui-ci
+     * @param codec le codec lu dans l'en-tête du fichier
+     */
+    EntreeBlocs(ReadableByteChannel canal, CodecBlocs codec) {
+        this.canal = canal;
+        this.codec = codec;
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (lus == disponibles && !lireBloc()) {
+            return -1;
+        }
+        int n = Math.min(destination.remaining(), disponibles - lus);
+        destination.put(brut, lus, n);
+        lus += n;
+        return n;
+    }
+
+    //renvoie false à la fin du flux
+    private boolean lireBloc() throws IOException {
+        if (fin) {
+            return false;
+        }
+        entete.clear();
+        lireTout(entete);
+        entete.flip();
+        int tailleBrute = entete.getInt();
+        int taille = entete.getInt();
+        int attendu = entete.getInt();
+        if (tailleBrute == 0) {
+            fin = true;
+            return false;
+        }
+        if (tailleBrute < 0 || tailleBrute > TAILLE_BLOC_MAX
+                || taille < 0 || taille > CodecBlocs.tailleMax(tailleBrute)) {
+            throw new IOException("Fichier corrompu: taille de bloc invalide");
+        }
+        if (tailleBrute > brut.length) {
+            brut = new byte[tailleBrute];
+            compresse = new byte[CodecBlocs.tailleMax(tailleBrute)];
+        }
+        lireTout(ByteBuffer.wrap(compresse, 0, taille));
+        codec.decompresser(compresse, taille, brut, tailleBrute);
+        crc.reset();
+        crc.update(brut, 0, tailleBrute);
+        if ((int) crc.getValue() != attendu) {
+            throw new IOException("Fichier corrompu: somme de contrôle d'un bloc invalide");
+        }
+        disponibles = tailleBrute;
+        lus = 0;
+        return true;
+    }
+
+    private void lireTout(ByteBuffer octets) throws IOException {
+        while (octets.hasRemaining()) {
+            if (canal.read(octets) < 0) {
+                throw new EOFException("Fin de fichier inattendue");
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return canal.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+}
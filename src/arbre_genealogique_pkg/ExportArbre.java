@@ -0,0 +1,348 @@
+package arbre_genealogique_pkg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Export d'un arbre aux formats texte GEDCOM et CSV. Les membres sont parcourus par identifiant et écrits
+ * au fil de l'eau dans le tampon d'une {@link SortieBinaire} : aucune chaîne n'est construite pour une ligne
+ * et aucune table de tout l'arbre n'est gardée en mémoire. Un arbre projeté est lu membre par membre sans
+ * être chargé ({@link RegistreMembres#consulter(int)}), si bien que la mémoire utilisée ne dépend pas
+ * de la taille de l'arbre.
+ * <p>
+ * En GEDCOM, une famille est identifiée par son couple (pere, mere) : @F12X34@ pour le père d'identifiant
+ * 11 et la mère d'identifiant 33, 0 pour un parent inconnu. Chaque individu retrouve donc ses familles
+ * à partir de ses propres liens, sans table des familles. La personne racine est écrite en premier,
+ * car c'est la racine que retient {@link ImportGedcom}
+ * @author aklam
+ */
+final class ExportArbre {
+
+    //nombre de membres écrits entre deux signalements de l'avancement
+    private static final int PAS_PROGRESSION = 4096;
+
+    private static final byte[] ENTETE_CSV = octets(
+            "id,prenoms,nom,nom_de_base_de_la_mariee,genre,pere,mere,conjoint,enfants,freres_soeurs\n");
+
+    /**
+     * Écriture d'un fichier par l'un des formats
+     */
+    private interface Ecriture {
+        void ecrire(ArbreGenealogique arbre, SortieBinaire sortie, SuiviProgression suivi) throws IOException;
+    }
+
+    private ExportArbre() {
+    }
+
+    /**
+     * exporte l'arbre au format GEDCOM 5.5.1, encodé en UTF-8
+     * @param arbre l'arbre à exporter
+     * @param fichier le fichier à écrire, remplacé seulement une fois l'export terminé
+     * @param suivi reçoit le nombre de membres écrits, peut annuler l'export
+     */
+    static void exporterGedcom(ArbreGenealogique arbre, File fichier, SuiviProgression suivi) throws IOException {
+        exporter(arbre, fichier, suivi, ExportArbre::ecrireGedcom);
+    }
+
+    /**
+     * exporte l'arbre au format CSV : une ligne par membre, liens par identifiants, listes séparées par des ';'
+     * @param arbre l'arbre à exporter
+     * @param fichier le fichier à écrire, remplacé seulement une fois l'export terminé
+     * @param suivi reçoit le nombre de membres écrits, peut annuler l'export
+     */
+    static void exporterCsv(ArbreGenealogique arbre, File fichier, SuiviProgression suivi) throws IOException {
+        exporter(arbre, fichier, suivi, ExportArbre::ecrireCsv);
+    }
+
+    //même principe que l'enregistrement .ft : un fichier temporaire remplace la cible une fois complet
+    private static void exporter(ArbreGenealogique arbre, File fichier, SuiviProgression suivi, Ecriture ecriture)
+            throws IOException {
+        Path cible = fichier.toPath().toAbsolutePath();
+        Path temporaire = cible.resolveSibling(cible.getFileName() + ".tmp");
+        try {
+            try (SortieBinaire sortie = new SortieBinaire(FileChannel.open(temporaire,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                ecriture.ecrire(arbre, sortie, suivi);
+            }
+            Files.move(temporaire, cible, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    /**
+     * écrit l'arbre en GEDCOM : l'en-tête, un enregistrement INDI par membre, puis un enregistrement FAM
+     * par couple, écrit par son premier parent connu
+     */
+    static void ecrireGedcom(ArbreGenealogique arbre, SortieBinaire sortie, SuiviProgression suivi) throws IOException {
+        RegistreMembres registre = arbre.getRegistre();
+        int taille = registre.taille();
+        long total = 2L * taille;
+        int racine = arbre.hasRoot() ? arbre.getRoot().getId() : -1;
+
+        sortie.ecrireTexte("0 HEAD\n1 SOUR ArbreGenealogique\n1 GEDC\n2 VERS 5.5.1\n2 FORM LINEAGE-LINKED\n"
+                + "1 CHAR UTF-8\n");
+        Couples couples = new Couples();
+        for (int i = -1; i < taille; i++) {
+            //la racine d'abord, puis tous les autres membres
+            int id = i < 0 ? racine : i;
+            if (id < 0 || (i >= 0 && id == racine)) {
+                continue;
+            }
+            if (i % PAS_PROGRESSION == 0) {
+                suivi.avancer(i, total);
+            }
+            MembreFamille membre = registre.consulter(id);
+            ecrireIndividu(registre, id, membre, sortie, couples);
+        }
+        for (int id = 0; id < taille; id++) {
+            if (id % PAS_PROGRESSION == 0) {
+                suivi.avancer(taille + id, total);
+            }
+            MembreFamille membre = registre.consulter(id);
+            couples(registre, id, membre, couples);
+            for (int f = 0; f < couples.nombre; f++) {
+                int pere = pere(couples.valeurs[f]);
+                int mere = mere(couples.valeurs[f]);
+                //le premier parent connu écrit la famille, une seule fois
+                if ((pere >= 0 ? pere : mere) == id) {
+                    ecrireFamille(registre, membre, pere, mere, sortie);
+                }
+            }
+        }
+        sortie.ecrireTexte("0 TRLR\n");
+        suivi.avancer(total, total);
+    }
+
+    private static void ecrireIndividu(RegistreMembres registre, int id, MembreFamille membre, SortieBinaire sortie,
+                                       Couples couples) throws IOException {
+        ecrireReference(sortie, "0 @I", id + 1);
+        sortie.ecrireTexte(" INDI\n1 NAME ");
+        sortie.ecrireTexte(membre.getPrenoms());
+        //le nom de naissance est le nom principal, le nom d'usage d'une femme mariée est une variante
+        String nomDeBase = membre.getNomDeBaseDeLaMariee();
+        boolean mariee = nomDeBase != null && !nomDeBase.isEmpty();
+        sortie.ecrireTexte(" /");
+        sortie.ecrireTexte(mariee ? nomDeBase : membre.getNom());
+        sortie.ecrireTexte("/\n2 GIVN ");
+        sortie.ecrireTexte(membre.getPrenoms());
+        sortie.ecrireTexte("\n2 SURN ");
+        sortie.ecrireTexte(mariee ? nomDeBase : membre.getNom());
+        if (mariee) {
+            sortie.ecrireTexte("\n2 _MARNM ");
+            sortie.ecrireTexte(membre.getNom());
+        }
+        sortie.ecrireTexte("\n1 SEX ");
+        sortie.ecrireTexte(membre.getGenre() == MembreFamille.Genre.MASCULIN ? "M"
+                : membre.getGenre() == MembreFamille.Genre.FEMININ ? "F" : "U");
+        sortie.ecrireOctet('\n');
+        if (membre.idPere() >= 0 || membre.idMere() >= 0) {
+            sortie.ecrireTexte("1 FAMC ");
+            ecrireFamilleReference(sortie, membre.idPere(), membre.idMere());
+            sortie.ecrireOctet('\n');
+        }
+        couples(registre, id, membre, couples);
+        for (int f = 0; f < couples.nombre; f++) {
+            sortie.ecrireTexte("1 FAMS ");
+            ecrireFamilleReference(sortie, pere(couples.valeurs[f]), mere(couples.valeurs[f]));
+            sortie.ecrireOctet('\n');
+        }
+    }
+
+    private static void ecrireFamille(RegistreMembres registre, MembreFamille proprietaire, int pere, int mere,
+                                      SortieBinaire sortie) throws IOException {
+        sortie.ecrireTexte("0 ");
+        ecrireFamilleReference(sortie, pere, mere);
+        sortie.ecrireTexte(" FAM\n");
+        if (pere >= 0) {
+            ecrireReference(sortie, "1 HUSB @I", pere + 1);
+            sortie.ecrireTexte("\n");
+        }
+        if (mere >= 0) {
+            ecrireReference(sortie, "1 WIFE @I", mere + 1);
+            sortie.ecrireTexte("\n");
+        }
+        //les enfants du couple sont dans la liste du parent qui écrit la famille
+        ListeIds enfants = proprietaire.idsEnfants();
+        for (int i = 0; i < enfants.taille(); i++) {
+            int idEnfant = enfants.get(i);
+            MembreFamille enfant = registre.consulter(idEnfant);
+            if (enfant != null && enfant.idPere() == pere && enfant.idMere() == mere) {
+                ecrireReference(sortie, "1 CHIL @I", idEnfant + 1);
+                sortie.ecrireTexte("\n");
+            }
+        }
+    }
+
+    /**
+     * Couples (pere, mere) d'un membre, réutilisés d'un membre à l'autre
+     */
+    private static final class Couples {
+        private long[] valeurs = new long[4];
+        private int nombre;
+
+        //un membre a peu de couples, la recherche de doublons est linéaire
+        void ajouter(long famille) {
+            for (int i = 0; i < nombre; i++) {
+                if (valeurs[i] == famille) {
+                    return;
+                }
+            }
+            if (nombre == valeurs.length) {
+                valeurs = Arrays.copyOf(valeurs, nombre * 2);
+            }
+            valeurs[nombre++] = famille;
+        }
+    }
+
+    /**
+     * les couples (pere, mere) dont le membre fait partie : avec le conjoint, et avec l'autre parent de chacun
+     * de ses enfants
+     * @param couples reçoit les couples, vidé au préalable
+     */
+    private static void couples(RegistreMembres registre, int id, MembreFamille membre, Couples couples) {
+        couples.nombre = 0;
+        if (membre.idConjoint() >= 0) {
+            MembreFamille conjoint = registre.consulter(membre.idConjoint());
+            if (conjoint != null) {
+                couples.ajouter(couple(id, membre.getGenre(), membre.idConjoint(), conjoint.getGenre()));
+            }
+        }
+        ListeIds enfants = membre.idsEnfants();
+        for (int i = 0; i < enfants.taille(); i++) {
+            MembreFamille enfant = registre.consulter(enfants.get(i));
+            if (enfant != null && (enfant.idPere() == id || enfant.idMere() == id)) {
+                couples.ajouter(famille(enfant.idPere(), enfant.idMere()));
+            }
+        }
+    }
+
+    //le mari est le membre masculin, à défaut celui de genre inconnu ; à genre égal, le plus petit identifiant
+    private static long couple(int a, MembreFamille.Genre genreA, int b, MembreFamille.Genre genreB) {
+        int rangA = rang(genreA);
+        int rangB = rang(genreB);
+        boolean aEstMari = rangA < rangB || (rangA == rangB && a < b);
+        return aEstMari ? famille(a, b) : famille(b, a);
+    }
+
+    private static int rang(MembreFamille.Genre genre) {
+        return genre == MembreFamille.Genre.MASCULIN ? 0 : genre == null ? 1 : 2;
+    }
+
+    private static long famille(int pere, int mere) {
+        return ((long) (pere + 1) << 32) | (mere + 1);
+    }
+
+    private static int pere(long famille) {
+        return (int) (famille >>> 32) - 1;
+    }
+
+    private static int mere(long famille) {
+        return (int) famille - 1;
+    }
+
+    private static void ecrireFamilleReference(SortieBinaire sortie, int pere, int mere) throws IOException {
+        sortie.ecrireTexte("@F");
+        sortie.ecrireEntier(pere + 1);
+        sortie.ecrireOctet('X');
+        sortie.ecrireEntier(mere + 1);
+        sortie.ecrireOctet('@');
+    }
+
+    private static void ecrireReference(SortieBinaire sortie, String prefixe, int numero) throws IOException {
+        sortie.ecrireTexte(prefixe);
+        sortie.ecrireEntier(numero);
+        sortie.ecrireOctet('@');
+    }
+
+    /**
+     * écrit l'arbre en CSV, en-tête compris
+     */
+    static void ecrireCsv(ArbreGenealogique arbre, SortieBinaire sortie, SuiviProgression suivi) throws IOException {
+        RegistreMembres registre = arbre.getRegistre();
+        int taille = registre.taille();
+        sortie.ecrireOctets(ENTETE_CSV, 0, ENTETE_CSV.length);
+        for (int id = 0; id < taille; id++) {
+            if (id % PAS_PROGRESSION == 0) {
+                suivi.avancer(id, taille);
+            }
+            MembreFamille membre = registre.consulter(id);
+            sortie.ecrireEntier(id);
+            sortie.ecrireOctet(',');
+            ecrireChampCsv(sortie, membre.getPrenoms());
+            sortie.ecrireOctet(',');
+            ecrireChampCsv(sortie, membre.getNom());
+            sortie.ecrireOctet(',');
+            ecrireChampCsv(sortie, membre.getNomDeBaseDeLaMariee());
+            sortie.ecrireOctet(',');
+            if (membre.getGenre() != null) {
+                sortie.ecrireTexte(membre.getGenre().name());
+            }
+            sortie.ecrireOctet(',');
+            ecrireLienCsv(sortie, membre.idPere());
+            sortie.ecrireOctet(',');
+            ecrireLienCsv(sortie, membre.idMere());
+            sortie.ecrireOctet(',');
+            ecrireLienCsv(sortie, membre.idConjoint());
+            sortie.ecrireOctet(',');
+            ecrireListeCsv(sortie, membre.idsEnfants());
+            sortie.ecrireOctet(',');
+            ecrireListeCsv(sortie, membre.idsFreresSoeurs());
+            sortie.ecrireOctet('\n');
+        }
+        suivi.avancer(taille, taille);
+    }
+
+    //un champ n'est mis entre guillemets que s'il contient un séparateur, un guillemet ou un saut de ligne
+    private static void ecrireChampCsv(SortieBinaire sortie, String valeur) throws IOException {
+        if (valeur == null) {
+            return;
+        }
+        boolean guillemets = false;
+        for (int i = 0; i < valeur.length() && !guillemets; i++) {
+            char c = valeur.charAt(i);
+            guillemets = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!guillemets) {
+            sortie.ecrireTexte(valeur);
+            return;
+        }
+        sortie.ecrireOctet('"');
+        int debut = 0;
+        for (int i = 0; i < valeur.length(); i++) {
+            if (valeur.charAt(i) == '"') {
+                sortie.ecrireTexte(valeur.subSequence(debut, i + 1));
+                sortie.ecrireOctet('"');
+                debut = i + 1;
+            }
+        }
+        sortie.ecrireTexte(valeur.subSequence(debut, valeur.length()));
+        sortie.ecrireOctet('"');
+    }
+
+    private static void ecrireLienCsv(SortieBinaire sortie, int id) throws IOException {
+        if (id >= 0) {
+            sortie.ecrireEntier(id);
+        }
+    }
+
+    private static void ecrireListeCsv(SortieBinaire sortie, ListeIds ids) throws IOException {
+        for (int i = 0; i < ids.taille(); i++) {
+            if (i > 0) {
+                sortie.ecrireOctet(';');
+            }
+            sortie.ecrireEntier(ids.get(i));
+        }
+    }
+
+    private static byte[] octets(String texte) {
+        return texte.getBytes(StandardCharsets.UTF_8);
+    }
+}
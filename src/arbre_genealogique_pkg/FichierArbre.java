@@ -0,0 +1,512 @@
+package arbre_genealogique_pkg;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lecture et écriture des fichiers .ft dans un format binaire compact et versionné.
+ * Structure du fichier (entiers en varint) :
+ * <pre>
+ *  "FTAR" version
+ *  nombre de chaînes, puis chaque chaîne (longueur UTF-8, octets)      table des noms, sans doublons
+ *  nombre de listes, puis chaque liste (taille, identifiants)          listes d'enfants et de freres-soeurs
+ *  nombre de membres, puis chaque membre :
+ *      prenoms, nom, nom de base de la mariée (indices dans la table des noms), genre + 1,
+ *      pere + 1, mere + 1, conjoint + 1, liste des enfants, liste des freres-soeurs
+ *  racine + 1
+ *  version 2 : position de chaque chaîne, de chaque liste et de chaque membre, sur 8 octets
+ *  version 2 : pied de 36 octets : début de chacune des trois tables de positions, racine + 1, "FTAR"
+ * </pre>
+ * La version 3 est la version compressée : "FTAR" 3 puis l'identifiant du {@link CodecBlocs}, suivis du contenu
+ * de la version 2 sans l'en-tête ni les tables de positions, découpé en blocs compressés ({@link SortieBlocs}).
+ * Chaque nom n'y est écrit qu'une fois, dans la table des noms que tous les membres partagent.
+ * Un lien absent vaut 0, d'où le + 1. Les listes partagées entre plusieurs membres ne sont écrites qu'une fois.
+ * Les tables de positions permettent de projeter le fichier en mémoire et de ne lire un membre qu'au moment
+ * où on y accède (voir {@link SourceProjetee}), la lecture séquentielle les ignore. Un fichier compressé est
+ * toujours lu en entier.
+ * Les fichiers de l'ancien format (sérialisation Java) sont reconnus et relus par la sérialisation
+ * @author aklam
+ */
+final class FichierArbre {
+
+    static final byte[] MAGIQUE = {'F', 'T', 'A', 'R'};
+    static final int VERSION = 2;
+    static final int VERSION_COMPRESSEE = 3;
+
+    //taille du pied de la version 2 : trois positions, la racine et la signature
+    static final int TAILLE_PIED = 4 * 8 + 4;
+
+    //au-delà de cette taille, un fichier de version 2 est projeté en mémoire plutôt que lu en entier
+    static final long SEUIL_PROJECTION = 32L * 1024 * 1024;
+
+    //début de tout flux de sérialisation Java : les fichiers .ft de l'ancien format
+    private static final int MAGIQUE_SERIALISATION = 0xACED;
+
+    //nombre de membres traités entre deux signalements de l'avancement
+    private static final int PAS_PROGRESSION = 4096;
+
+    //capacité initiale maximale d'une liste lue, qui grandit ensuite à la demande
+    private static final int CAPACITE_LISTE_MAX = 1 << 16;
+
+    //un membre occupe au moins un octet par nom, par lien et par liste, et celui de son genre
+    private static final int OCTETS_MEMBRE_MIN = 9;
+
+    private FichierArbre() {
+    }
+
+    /**
+     * enregistre l'arbre dans le fichier, en écrasant son contenu
+     * @param arbre l'arbre à enregistrer
+     * @param fichier le fichier à écrire
+     */
+    static void enregistrer(ArbreGenealogique arbre, File fichier) throws IOException {
+        enregistrer(arbre, fichier, CodecBlocs.AUCUN, SuiviProgression.AUCUN);
+    }
+
+    /**
+     * enregistre l'arbre dans un fichier temporaire qui ne remplace le fichier qu'une fois complet et forcé
+     * sur le disque : une erreur, une annulation ou un arrêt brutal laisse l'ancien contenu intact
+     * @param arbre l'arbre à enregistrer
+     * @param fichier le fichier à écrire
+     * @param codec {@link CodecBlocs#AUCUN} pour la version 2, sinon le codec de la version compressée
+     * @param suivi reçoit le nombre de membres écrits, peut annuler l'enregistrement
+     */
+    static void enregistrer(ArbreGenealogique arbre, File fichier, CodecBlocs codec, SuiviProgression suivi)
+            throws IOException {
+        Path cible = fichier.toPath().toAbsolutePath();
+        Path temporaire = cible.resolveSibling(cible.getFileName() + ".tmp");
+        try {
+            try (FileChannel canal = FileChannel.open(temporaire,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (codec == CodecBlocs.AUCUN) {
+                    SortieBinaire sortie = new SortieBinaire(canal);
+                    ecrire(arbre, sortie, suivi);
+                    sortie.vider();
+                } else {
+                    ecrireCompresse(arbre, canal, codec, suivi);
+                }
+                //sans cela, le renommage pourrait atteindre le disque avant le contenu
+                canal.force(true);
+            }
+            remplacer(temporaire, cible);
+        } finally {
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    /**
+     * remplace la cible par le fichier en un seul renommage atomique quand le système le permet
+     */
+    static void remplacer(Path fichier, Path cible) throws IOException {
+        try {
+            Files.move(fichier, cible, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(fichier, cible, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * écrit l'arbre complet, en-tête compris
+     */
+    static void ecrire(ArbreGenealogique arbre, SortieBinaire sortie) throws IOException {
+        ecrire(arbre, sortie, SuiviProgression.AUCUN);
+    }
+
+    /**
+     * écrit l'arbre complet, en-tête compris, en signalant l'avancement en nombre de membres
+     */
+    static void ecrire(ArbreGenealogique arbre, SortieBinaire sortie, SuiviProgression suivi) throws IOException {
+        sortie.ecrireOctets(MAGIQUE, 0, MAGIQUE.length);
+        sortie.ecrireOctet(VERSION);
+        ecrireContenu(arbre, sortie, true, suivi);
+    }
+
+    /**
+     * écrit l'arbre au format compressé, en-tête compris, puis la fin du flux de blocs
+     * @param canal le canal du fichier, qui n'est pas fermé
+     */
+    static void ecrireCompresse(ArbreGenealogique arbre, WritableByteChannel canal, CodecBlocs codec,
+                                SuiviProgression suivi) throws IOException {
+        ByteBuffer entete = ByteBuffer.allocate(MAGIQUE.length + 2);
+        entete.put(MAGIQUE);
+        entete.put((byte) VERSION_COMPRESSEE);
+        entete.put((byte) codec.identifiant());
+        entete.flip();
+        while (entete.hasRemaining()) {
+            canal.write(entete);
+        }
+        SortieBlocs blocs = new SortieBlocs(canal, codec);
+        SortieBinaire sortie = new SortieBinaire(blocs);
+        ecrireContenu(arbre, sortie, false, suivi);
+        sortie.vider();
+        blocs.terminer();
+    }
+
+    /**
+     * écrit les tables des noms et des listes, les membres et la racine
+     * @param positions true pour écrire ensuite les tables de positions et le pied de la version 2
+     */
+    private static void ecrireContenu(ArbreGenealogique arbre, SortieBinaire sortie, boolean positions,
+                                      SuiviProgression suivi) throws IOException {
+        //un arbre projeté doit être entièrement en mémoire avant qu'on puisse réécrire son fichier
+        arbre.getRegistre().chargerTout();
+        List<MembreFamille> membres = arbre.getRegistre().tous();
+        //deux passages sur les membres : construction des tables puis écriture
+        long total = 2L * membres.size();
+
+        //table des noms et table des listes, construites en un passage
+        Map<String, Integer> indicesChaines = new HashMap<>();
+        List<String> chaines = new ArrayList<>();
+        Map<ListeIds, Integer> indicesListes = new IdentityHashMap<>();
+        List<ListeIds> listes = new ArrayList<>();
+        //indices des listes d'enfants et de freres-soeurs de chaque membre
+        int[] listesMembres = new int[2 * membres.size()];
+        for (MembreFamille membre : membres) {
+            if (membre.getId() % PAS_PROGRESSION == 0) {
+                suivi.avancer(membre.getId(), total);
+            }
+            indexer(membre.getPrenoms(), indicesChaines, chaines);
+            indexer(membre.getNom(), indicesChaines, chaines);
+            indexer(membre.getNomDeBaseDeLaMariee(), indicesChaines, chaines);
+            listesMembres[2 * membre.getId()] = indexerListe(membre.idsEnfants(), indicesListes, listes);
+            listesMembres[2 * membre.getId() + 1] = indexerListe(membre.idsFreresSoeurs(), indicesListes, listes);
+        }
+
+        //sans tables de positions, les tableaux ne sont pas remplis
+        long[] positionsChaines = new long[positions ? chaines.size() : 0];
+        sortie.ecrireVarint(chaines.size());
+        for (int i = 0; i < chaines.size(); i++) {
+            if (positions) {
+                positionsChaines[i] = sortie.position();
+            }
+            sortie.ecrireChaine(chaines.get(i));
+        }
+
+        long[] positionsListes = new long[positions ? listes.size() : 0];
+        sortie.ecrireVarint(listes.size());
+        for (int l = 0; l < listes.size(); l++) {
+            ListeIds liste = listes.get(l);
+            if (positions) {
+                positionsListes[l] = sortie.position();
+            }
+            sortie.ecrireVarint(liste.taille());
+            for (int i = 0; i < liste.taille(); i++) {
+                sortie.ecrireVarint(liste.get(i));
+            }
+        }
+
+        long[] positionsMembres = new long[positions ? membres.size() : 0];
+        sortie.ecrireVarint(membres.size());
+        for (MembreFamille membre : membres) {
+            if (membre.getId() % PAS_PROGRESSION == 0) {
+                suivi.avancer(membres.size() + membre.getId(), total);
+            }
+            if (positions) {
+                positionsMembres[membre.getId()] = sortie.position();
+            }
+            sortie.ecrireVarint(indicesChaines.get(membre.getPrenoms()));
+            sortie.ecrireVarint(indicesChaines.get(membre.getNom()));
+            sortie.ecrireVarint(indicesChaines.get(membre.getNomDeBaseDeLaMariee()));
+            sortie.ecrireOctet(membre.getGenre() == null ? 0 : membre.getGenre().ordinal() + 1);
+            sortie.ecrireVarint(membre.idPere() + 1);
+            sortie.ecrireVarint(membre.idMere() + 1);
+            sortie.ecrireVarint(membre.idConjoint() + 1);
+            sortie.ecrireVarint(listesMembres[2 * membre.getId()]);
+            sortie.ecrireVarint(listesMembres[2 * membre.getId() + 1]);
+        }
+
+        int racine = arbre.hasRoot() ? arbre.getRoot().getId() + 1 : 0;
+        sortie.ecrireVarint(racine);
+        if (!positions) {
+            suivi.avancer(total, total);
+            return;
+        }
+
+        long debutChaines = ecrirePositions(positionsChaines, sortie);
+        long debutListes = ecrirePositions(positionsListes, sortie);
+        long debutMembres = ecrirePositions(positionsMembres, sortie);
+        sortie.ecrireLong(debutChaines);
+        sortie.ecrireLong(debutListes);
+        sortie.ecrireLong(debutMembres);
+        sortie.ecrireLong(racine);
+        sortie.ecrireOctets(MAGIQUE, 0, MAGIQUE.length);
+        suivi.avancer(total, total);
+    }
+
+    private static long ecrirePositions(long[] positions, SortieBinaire sortie) throws IOException {
+        long debut = sortie.position();
+        for (long position : positions) {
+            sortie.ecrireLong(position);
+        }
+        return debut;
+    }
+
+    /**
+     * ouvre un fichier .ft, quel que soit son format. Les gros fichiers de version 2 sont projetés en mémoire
+     * @param fichier le fichier à lire
+     * @return l'arbre lu
+     */
+    static ArbreGenealogique ouvrir(File fichier) throws IOException {
+        return ouvrir(fichier, SuiviProgression.AUCUN);
+    }
+
+    /**
+     * ouvre un fichier .ft en signalant l'avancement en octets lus
+     * @param fichier le fichier à lire
+     * @param suivi reçoit le nombre d'octets lus, peut annuler la lecture
+     * @return l'arbre lu
+     */
+    static ArbreGenealogique ouvrir(File fichier, SuiviProgression suivi) throws IOException {
+        long longueur = fichier.length();
+        if (longueur >= SEUIL_PROJECTION && versionBinaire(fichier) == VERSION) {
+            //seul le pied est lu, l'opération est immédiate
+            ArbreGenealogique arbre = ouvrirProjete(fichier);
+            suivi.avancer(longueur, longueur);
+            return arbre;
+        }
+        try (FileChannel fichierLu = FileChannel.open(fichier.toPath(), StandardOpenOption.READ);
+             CanalSuivi canal = new CanalSuivi(fichierLu, suivi, longueur)) {
+            ByteBuffer entete = ByteBuffer.allocate(MAGIQUE.length + 2);
+            while (entete.hasRemaining() && fichierLu.read(entete) >= 0) {
+                //lire jusqu'à avoir l'en-tête complet ou la fin du fichier
+            }
+            entete.flip();
+            fichierLu.position(0);
+            if (entete.remaining() >= 2 && (entete.getShort(0) & 0xFFFF) == MAGIQUE_SERIALISATION) {
+                ArbreGenealogique arbre = lireAncienFormat(Channels.newInputStream(canal));
+                suivi.progression(longueur, longueur);
+                return arbre;
+            }
+            if (!estFormatBinaire(entete)) {
+                throw new IOException("Format de fichier inconnu");
+            }
+            if (entete.remaining() == MAGIQUE.length + 2 && entete.get(MAGIQUE.length) == VERSION_COMPRESSEE) {
+                //le codec est désigné par l'en-tête
+                CodecBlocs codec = CodecBlocs.depuis(entete.get(MAGIQUE.length + 1) & 0xFF);
+                fichierLu.position(MAGIQUE.length + 2);
+                ArbreGenealogique arbre = lireContenu(new EntreeBinaire(new EntreeBlocs(canal, codec),
+                        codec.tailleBruteMax(longueur)));
+                suivi.progression(longueur, longueur);
+                return arbre;
+            }
+            //la lecture séquentielle s'arrête avant les tables de positions
+            ArbreGenealogique arbre = lire(new EntreeBinaire(canal, longueur));
+            suivi.progression(longueur, longueur);
+            return arbre;
+        }
+    }
+
+    /**
+     * ouvre un fichier .ft de version 2 en le projetant en mémoire : seule la racine est construite,
+     * les autres membres le sont au premier accès
+     * @param fichier le fichier à projeter
+     * @return l'arbre adossé au fichier
+     */
+    static ArbreGenealogique ouvrirProjete(File fichier) throws IOException {
+        SourceProjetee source = SourceProjetee.projeter(fichier);
+        RegistreMembres registre = new RegistreMembres(source);
+        int racine = source.racine();
+        return new ArbreGenealogique(registre, racine < 0 ? null : registre.get(racine));
+    }
+
+    /**
+     * @return la version d'un fichier au format binaire, 0 si le fichier n'est pas au format binaire
+     */
+    private static int versionBinaire(File fichier) throws IOException {
+        ByteBuffer entete = lireEntete(fichier);
+        if (entete.remaining() < MAGIQUE.length + 1 || !estFormatBinaire(entete)) {
+            return 0;
+        }
+        return entete.get(MAGIQUE.length) & 0xFF;
+    }
+
+    /**
+     * @return le codec d'un fichier .ft lu dans son en-tête, {@link CodecBlocs#AUCUN} s'il n'est pas compressé
+     */
+    static CodecBlocs codec(File fichier) throws IOException {
+        ByteBuffer entete = lireEntete(fichier);
+        if (entete.remaining() < MAGIQUE.length + 2 || !estFormatBinaire(entete)
+                || entete.get(MAGIQUE.length) != VERSION_COMPRESSEE) {
+            return CodecBlocs.AUCUN;
+        }
+        return CodecBlocs.depuis(entete.get(MAGIQUE.length + 1) & 0xFF);
+    }
+
+    //la signature, la version et le codec, ou moins si le fichier est plus court
+    private static ByteBuffer lireEntete(File fichier) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichier.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer entete = ByteBuffer.allocate(MAGIQUE.length + 2);
+            while (entete.hasRemaining() && canal.read(entete) >= 0) {
+                //lire jusqu'à avoir l'en-tête complet ou la fin du fichier
+            }
+            entete.flip();
+            return entete;
+        }
+    }
+
+    /**
+     * lit un arbre complet, en-tête compris
+     */
+    static ArbreGenealogique lire(EntreeBinaire entree) throws IOException {
+        byte[] magique = new byte[MAGIQUE.length];
+        entree.lireOctets(magique, 0, magique.length);
+        if (!estFormatBinaire(ByteBuffer.wrap(magique))) {
+            throw new IOException("Format de fichier inconnu");
+        }
+        int version = entree.lireOctet();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Version de fichier non prise en charge: " + version);
+        }
+        return lireContenu(entree);
+    }
+
+    /**
+     * lit un arbre à partir de la table des noms, commune à toutes les versions
+     */
+    private static ArbreGenealogique lireContenu(EntreeBinaire entree) throws IOException {
+
+        //chaque nombre lu est borné par ce qui reste à lire : un fichier corrompu ne doit pas faire tout réserver
+        String[] chaines = new String[entree.lireNombre(1)];
+        for (int i = 0; i < chaines.length; i++) {
+            chaines[i] = ReserveNoms.canonique(entree.lireChaine());
+        }
+
+        ListeIds[] listes = new ListeIds[entree.lireNombre(1)];
+        for (int i = 0; i < listes.length; i++) {
+            int taille = entree.lireNombre(1);
+            //la taille lue n'est qu'une capacité initiale, la liste grandit ensuite à la demande
+            ListeIds liste = new ListeIds(Math.min(taille, CAPACITE_LISTE_MAX));
+            for (int j = 0; j < taille; j++) {
+                liste.ajouter(entree.lireVarint());
+            }
+            listes[i] = liste;
+        }
+
+        int nombreMembres = entree.lireNombre(OCTETS_MEMBRE_MIN);
+        if (nombreMembres > Integer.MAX_VALUE / 2) {
+            throw new IOException("Fichier corrompu: nombre de membres hors limites");
+        }
+        RegistreMembres registre = new RegistreMembres();
+        MembreFamille.Genre[] genres = MembreFamille.Genre.values();
+        int[] listesMembres = new int[2 * nombreMembres];
+        int[] references = new int[listes.length];
+        for (int i = 0; i < nombreMembres; i++) {
+            String prenoms = element(chaines, entree.lireVarint());
+            String nom = element(chaines, entree.lireVarint());
+            String nomDeBaseDeLaMariee = element(chaines, entree.lireVarint());
+            int genre = entree.lireOctet();
+            if (genre > genres.length) {
+                throw new IOException("Fichier corrompu: genre inconnu");
+            }
+            MembreFamille membre = MembreFamille.restaurer(prenoms, nom, nomDeBaseDeLaMariee,
+                    genre == 0 ? null : genres[genre - 1]);
+            membre.restaurerLiens(
+                    lien(entree.lireVarint(), nombreMembres),
+                    lien(entree.lireVarint(), nombreMembres),
+                    lien(entree.lireVarint(), nombreMembres),
+                    null, null);
+            listesMembres[2 * i] = indiceListe(entree.lireVarint(), references);
+            listesMembres[2 * i + 1] = indiceListe(entree.lireVarint(), references);
+            registre.ajouter(membre);
+        }
+        //une liste vide qu'un seul membre utilise n'est pas allouée, une liste vide partagée doit le rester
+        for (int l = 0; l < listes.length; l++) {
+            if (listes[l].estVide() && references[l] == 1) {
+                listes[l] = null;
+            }
+        }
+        for (int i = 0; i < nombreMembres; i++) {
+            MembreFamille membre = registre.get(i);
+            membre.setEnfants(listes[listesMembres[2 * i]]);
+            membre.setFreresSoeurs(listes[listesMembres[2 * i + 1]]);
+        }
+        for (ListeIds liste : listes) {
+            for (int i = 0; liste != null && i < liste.taille(); i++) {
+                lien(liste.get(i) + 1, nombreMembres);
+            }
+        }
+
+        int racine = lien(entree.lireVarint(), nombreMembres);
+        return new ArbreGenealogique(registre, racine < 0 ? null : registre.get(racine));
+    }
+
+    /**
+     * lit un fichier écrit par sérialisation Java avant l'existence du format binaire
+     */
+    private static ArbreGenealogique lireAncienFormat(InputStream flux) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(flux))) {
+            return (ArbreGenealogique) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Le fichier ne contient pas d'arbre généalogique", e);
+        }
+    }
+
+    private static boolean estFormatBinaire(ByteBuffer entete) {
+        if (entete.remaining() < MAGIQUE.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIQUE.length; i++) {
+            if (entete.get(i) != MAGIQUE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> void indexer(T valeur, Map<T, Integer> indices, List<T> valeurs) {
+        if (!indices.containsKey(valeur)) {
+            indices.put(valeur, valeurs.size());
+            valeurs.add(valeur);
+        }
+    }
+
+    //une liste non allouée n'est partagée avec aucun autre membre : elle reçoit sa propre entrée, vide
+    private static int indexerListe(ListeIds liste, Map<ListeIds, Integer> indices, List<ListeIds> listes) {
+        if (liste == ListeIds.VIDE) {
+            listes.add(liste);
+            return listes.size() - 1;
+        }
+        indexer(liste, indices, listes);
+        return indices.get(liste);
+    }
+
+    private static <T> T element(T[] tableau, int indice) throws IOException {
+        if (indice >= tableau.length) {
+            throw new IOException("Fichier corrompu: référence hors de la table");
+        }
+        return tableau[indice];
+    }
+
+    private static int indiceListe(int indice, int[] references) throws IOException {
+        if (indice >= references.length) {
+            throw new IOException("Fichier corrompu: référence hors de la table");
+        }
+        references[indice]++;
+        return indice;
+    }
+
+    //un lien est écrit + 1, 0 signifiant l'absence de lien
+    private static int lien(int valeur, int nombreMembres) throws IOException {
+        if (valeur > nombreMembres) {
+            throw new IOException("Fichier corrompu: membre inconnu");
+        }
+        return valeur - 1;
+    }
+}
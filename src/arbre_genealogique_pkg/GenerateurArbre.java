@@ -0,0 +1,449 @@
+package arbre_genealogique_pkg;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Générateur d'arbres de test reproductibles, pour les mesures et les essais de charge de l'interface et des
+ * fichiers. Depuis une racine masculine, chaque descendant se marie avec une probabilité donnée ; un couple a
+ * de 0 à fratrieMax enfants (loi binomiale de moyenne ramification). La dernière génération ne se marie pas.
+ * <p>
+ * Les identifiants sont attribués génération par génération : les descendants d'une génération, puis leurs
+ * conjoints. Chaque décision (genre, mariage, nombre d'enfants, prénoms, nom) est tirée d'un hachage de
+ * la graine et de l'identifiant du membre : elle peut être recalculée à tout moment, si bien que les membres
+ * sont produits un par un, dans l'ordre des identifiants, sans garder l'arbre. Seuls les noms de famille
+ * des deux dernières générations sont conservés, sur deux octets par membre.
+ * <p>
+ * {@link #genererArbre()} construit l'arbre en mémoire par les règles de liaison de {@link MembreFamille},
+ * comme l'interface ; {@link #genererFichier(File)} écrit directement un fichier .ft, quelle que soit sa taille
+ * @author aklam
+ */
+public final class GenerateurArbre {
+
+    private static final String[] PRENOMS_MASCULINS = {
+            "Jean", "Pierre", "Luc", "Paul", "Louis", "Marc", "Henri", "Jacques", "André", "Michel", "Nicolas",
+            "Antoine", "François", "Étienne", "Julien", "Hugo", "Gabriel", "Arthur", "Jules", "Léon"
+    };
+    private static final String[] PRENOMS_FEMININS = {
+            "Marie", "Jeanne", "Anne", "Louise", "Claire", "Élodie", "Zoé", "Hélène", "Sophie", "Camille", "Alice",
+            "Léa", "Chloé", "Manon", "Emma", "Juliette", "Margot", "Agathe", "Céline", "Inès"
+    };
+    private static final String[] NOMS = {
+            "Dupont", "Martin", "Bernard", "Durand", "Lefèvre", "Moreau", "Laurent", "Simon", "Michel", "Garnier",
+            "Roux", "Fournier", "Girard", "Bonnet", "Mercier", "Blanc", "Guérin", "Muller", "Henry", "Rousseau",
+            "Faure", "Lambert", "Fontaine", "Chevalier", "Robin", "Masson", "Sanchez", "Gauthier", "Perrin", "Morel",
+            "Nicolas", "Lemaire", "Dumont", "Leclerc", "Marchand", "Barbier", "Brunet", "Meunier", "Caron", "Giraud"
+    };
+
+    //nature du tirage, mélangée à l'identifiant : chaque décision d'un membre est indépendante des autres
+    private static final int TIRAGE_GENRE = 1;
+    private static final int TIRAGE_MARIAGE = 2;
+    private static final int TIRAGE_ENFANTS = 3;
+    private static final int TIRAGE_PRENOMS = 4;
+    private static final int TIRAGE_NOM = 5;
+
+    //nombre de membres produits entre deux signalements de l'avancement
+    private static final int PAS_PROGRESSION = 4096;
+
+    private final int generations;
+    private final double tauxConjoint;
+    private final int fratrieMax;
+    private final long graine;
+    //probabilités cumulées du nombre d'enfants d'un couple
+    private final double[] repartition;
+
+    /**
+     * générateur aux proportions courantes : 2 enfants par couple en moyenne, au plus 6,
+     * 90 % des descendants mariés
+     * @param generations nombre de générations de descendants, racine comprise
+     * @param graine deux générateurs de même graine et de mêmes paramètres produisent le même arbre
+     */
+    public GenerateurArbre(int generations, long graine) {
+        this(generations, 2.0, 0.9, 6, graine);
+    }
+
+    /**
+     * @param generations nombre de générations de descendants, racine comprise
+     * @param ramification nombre moyen d'enfants d'un couple
+     * @param tauxConjoint probabilité qu'un descendant soit marié, entre 0 et 1 (la racine l'est toujours)
+     * @param fratrieMax nombre maximal d'enfants d'un couple, au moins la ramification
+     * @param graine deux générateurs de même graine et de mêmes paramètres produisent le même arbre
+     */
+    public GenerateurArbre(int generations, double ramification, double tauxConjoint, int fratrieMax, long graine) {
+        if (generations < 1) {
+            throw new IllegalArgumentException("Il faut au moins une génération");
+        }
+        if (fratrieMax < 0 || !(ramification >= 0 && ramification <= fratrieMax)) {
+            throw new IllegalArgumentException("La ramification doit être comprise entre 0 et la fratrie maximale");
+        }
+        if (!(tauxConjoint >= 0 && tauxConjoint <= 1)) {
+            throw new IllegalArgumentException("Le taux de conjoints doit être compris entre 0 et 1");
+        }
+        this.generations = generations;
+        this.tauxConjoint = tauxConjoint;
+        this.fratrieMax = fratrieMax;
+        this.graine = graine;
+        this.repartition = repartitionBinomiale(fratrieMax, fratrieMax == 0 ? 0 : ramification / fratrieMax);
+    }
+
+    /**
+     * @return le nombre de membres de l'arbre généré, calculé sans le générer
+     */
+    public long taille() {
+        long taille = 0;
+        int debut = 0;
+        int descendants = 1;
+        for (int g = 0; g < generations && descendants > 0; g++) {
+            Generation generation = new Generation(g, debut, descendants);
+            taille += descendants + generation.conjoints;
+            debut = generation.debutSuivante();
+            descendants = generation.descendantsSuivants;
+        }
+        return taille;
+    }
+
+    /**
+     * construit l'arbre en mémoire, membre par membre, par ajouterLienRelatif comme dans l'interface
+     * @return l'arbre généré
+     */
+    public ArbreGenealogique genererArbre() {
+        Construction construction = new Construction();
+        try {
+            generer(construction, SuiviProgression.AUCUN);
+        } catch (IOException e) {
+            //la construction en mémoire n'écrit rien
+            throw new IllegalStateException(e);
+        }
+        return construction.arbre;
+    }
+
+    /**
+     * écrit l'arbre généré dans un fichier .ft sans le construire en mémoire
+     * @param fichier le fichier à écrire, remplacé seulement une fois complet
+     */
+    public void genererFichier(File fichier) throws IOException {
+        genererFichier(fichier, SuiviProgression.AUCUN);
+    }
+
+    void genererFichier(File fichier, SuiviProgression suivi) throws IOException {
+        try (EcritureProgressive ecriture = new EcritureProgressive(fichier)) {
+            generer(ecriture, suivi);
+            ecriture.terminer(0);
+        }
+    }
+
+    /**
+     * Membre produit par le générateur. L'objet est réutilisé d'un membre à l'autre
+     */
+    static final class Membre {
+        int id;
+        String prenoms;
+        String nom;
+        String nomDeBaseDeLaMariee;
+        MembreFamille.Genre genre;
+        //-1 s'il n'y a pas de lien
+        int pere;
+        int mere;
+        int conjoint;
+        //les enfants d'un couple et les membres d'une fratrie ont des identifiants consécutifs
+        int premierEnfant;
+        int nombreEnfants;
+        //la fratrie comprend le membre lui-même
+        int premierFrere;
+        int nombreFreres;
+    }
+
+    /**
+     * Reçoit les membres générés, dans l'ordre croissant des identifiants : les parents d'un descendant
+     * sont reçus avant lui, un allié est reçu après son conjoint descendant
+     */
+    interface Recepteur {
+        void recevoir(Membre membre) throws IOException;
+    }
+
+    /**
+     * produit tous les membres de l'arbre
+     * @param recepteur reçoit chaque membre
+     * @param suivi reçoit le nombre de membres produits, peut annuler la génération
+     */
+    void generer(Recepteur recepteur, SuiviProgression suivi) throws IOException {
+        long total = taille();
+        Membre membre = new Membre();
+        long produits = 0;
+
+        //la racine, seule de sa fratrie
+        Generation courante = new Generation(0, 0, 1);
+        short[] noms = {(short) tirer(0, TIRAGE_NOM, NOMS.length)};
+        Curseur racine = new Curseur(courante);
+        racine.suivant();
+        decrireDescendant(membre, racine, -1, -1, 0, 1, noms[0]);
+        recepteur.recevoir(membre);
+        produits += 1 + recevoirConjoints(recepteur, membre, courante, noms, suivi, produits + 1, total);
+
+        for (int g = 1; g < generations && courante.descendantsSuivants > 0; g++) {
+            Generation precedente = courante;
+            short[] nomsPrecedents = noms;
+            courante = new Generation(g, precedente.debutSuivante(), precedente.descendantsSuivants);
+            noms = new short[courante.descendants];
+
+            //les enfants de chaque couple de la génération précédente, dans l'ordre des couples
+            Curseur parents = new Curseur(precedente);
+            Curseur enfants = new Curseur(courante);
+            while (parents.suivant()) {
+                int parent = parents.id;
+                int conjointParent = parents.conjoint;
+                boolean pereDescendant = genre(parent) == MembreFamille.Genre.MASCULIN;
+                //le nom de famille est celui du père
+                short nomPere = pereDescendant ? nomsPrecedents[parent - precedente.debut]
+                        : (short) tirer(conjointParent, TIRAGE_NOM, NOMS.length);
+                for (int i = 0; i < parents.nombreEnfants; i++) {
+                    enfants.suivant();
+                    if (produits % PAS_PROGRESSION == 0) {
+                        suivi.avancer(produits, total);
+                    }
+                    noms[enfants.id - courante.debut] = nomPere;
+                    decrireDescendant(membre, enfants, pereDescendant ? parent : conjointParent,
+                            pereDescendant ? conjointParent : parent, parents.premierEnfant, parents.nombreEnfants,
+                            nomPere);
+                    recepteur.recevoir(membre);
+                    produits++;
+                }
+            }
+            produits += recevoirConjoints(recepteur, membre, courante, noms, suivi, produits, total);
+        }
+        suivi.avancer(total, total);
+    }
+
+    /**
+     * produit les conjoints des descendants mariés d'une génération, dans l'ordre des descendants
+     * @return le nombre de conjoints produits
+     */
+    private int recevoirConjoints(Recepteur recepteur, Membre membre, Generation generation, short[] noms,
+                                  SuiviProgression suivi, long produits, long total) throws IOException {
+        Curseur descendants = new Curseur(generation);
+        int nombre = 0;
+        while (descendants.suivant()) {
+            if (descendants.conjoint < 0) {
+                continue;
+            }
+            if ((produits + nombre) % PAS_PROGRESSION == 0) {
+                suivi.avancer(produits + nombre, total);
+            }
+            int id = descendants.conjoint;
+            membre.id = id;
+            membre.genre = oppose(genre(descendants.id));
+            membre.prenoms = prenoms(id, membre.genre);
+            String nomDeNaissance = NOMS[tirer(id, TIRAGE_NOM, NOMS.length)];
+            if (membre.genre == MembreFamille.Genre.FEMININ) {
+                //la mariée prend le nom de son mari
+                membre.nom = NOMS[noms[descendants.id - generation.debut]];
+                membre.nomDeBaseDeLaMariee = nomDeNaissance;
+            } else {
+                membre.nom = nomDeNaissance;
+                membre.nomDeBaseDeLaMariee = "";
+            }
+            membre.pere = -1;
+            membre.mere = -1;
+            membre.conjoint = descendants.id;
+            membre.premierEnfant = descendants.premierEnfant;
+            membre.nombreEnfants = descendants.nombreEnfants;
+            membre.premierFrere = id;
+            membre.nombreFreres = 0;
+            recepteur.recevoir(membre);
+            nombre++;
+        }
+        return nombre;
+    }
+
+    /**
+     * décrit le descendant sur lequel se trouve le curseur
+     * @param nom indice du nom de naissance, celui du père
+     */
+    private void decrireDescendant(Membre membre, Curseur descendant, int pere, int mere, int premierFrere,
+                                   int nombreFreres, short nom) {
+        membre.id = descendant.id;
+        membre.genre = genre(descendant.id);
+        membre.prenoms = prenoms(descendant.id, membre.genre);
+        if (membre.genre == MembreFamille.Genre.FEMININ && descendant.conjoint >= 0) {
+            //mariée à un allié, dont le nom est tiré sur son identifiant
+            membre.nom = NOMS[tirer(descendant.conjoint, TIRAGE_NOM, NOMS.length)];
+            membre.nomDeBaseDeLaMariee = NOMS[nom];
+        } else {
+            membre.nom = NOMS[nom];
+            membre.nomDeBaseDeLaMariee = "";
+        }
+        membre.pere = pere;
+        membre.mere = mere;
+        membre.conjoint = descendant.conjoint;
+        membre.premierEnfant = descendant.premierEnfant;
+        membre.nombreEnfants = descendant.nombreEnfants;
+        membre.premierFrere = premierFrere;
+        membre.nombreFreres = nombreFreres;
+    }
+
+    /**
+     * Effectifs d'une génération, calculés par un premier passage sur ses descendants
+     */
+    private final class Generation {
+        final int numero;
+        //identifiant du premier descendant ; les conjoints suivent les descendants
+        final int debut;
+        final int descendants;
+        final int conjoints;
+        final int descendantsSuivants;
+
+        Generation(int numero, int debut, int descendants) {
+            this.numero = numero;
+            this.debut = debut;
+            this.descendants = descendants;
+            int conjoints = 0;
+            long enfants = 0;
+            for (int id = debut; id < debut + descendants; id++) {
+                if (marie(id, numero)) {
+                    conjoints++;
+                    enfants += enfants(id);
+                }
+            }
+            if ((long) debut + descendants + conjoints + enfants > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Arbre trop grand pour des identifiants entiers");
+            }
+            this.conjoints = conjoints;
+            this.descendantsSuivants = (int) enfants;
+        }
+
+        int debutSuivante() {
+            return debut + descendants + conjoints;
+        }
+    }
+
+    /**
+     * Parcourt les descendants d'une génération dans l'ordre, en calculant l'identifiant du conjoint
+     * et du premier enfant de chacun
+     */
+    private final class Curseur {
+        private final Generation generation;
+        private int prochain;
+        private int conjoints;
+        private int enfants;
+
+        int id;
+        //-1 pour un descendant non marié
+        int conjoint;
+        int premierEnfant;
+        int nombreEnfants;
+
+        Curseur(Generation generation) {
+            this.generation = generation;
+            this.prochain = generation.debut;
+        }
+
+        /**
+         * @return false après le dernier descendant
+         */
+        boolean suivant() {
+            if (prochain == generation.debut + generation.descendants) {
+                return false;
+            }
+            id = prochain++;
+            premierEnfant = generation.debutSuivante() + enfants;
+            if (marie(id, generation.numero)) {
+                conjoint = generation.debut + generation.descendants + conjoints++;
+                nombreEnfants = enfants(id);
+                enfants += nombreEnfants;
+            } else {
+                conjoint = -1;
+                nombreEnfants = 0;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Construction de l'arbre en mémoire : chaque membre est rattaché à un membre déjà créé,
+     * un enfant à son père, un allié à son conjoint descendant
+     */
+    private static final class Construction implements Recepteur {
+        final ArbreGenealogique arbre = new ArbreGenealogique();
+
+        @Override
+        public void recevoir(Membre genere) {
+            MembreFamille membre = new MembreFamille(genere.prenoms, genere.nom, genere.genre);
+            if (!genere.nomDeBaseDeLaMariee.isEmpty()) {
+                membre.setNomDeBaseDeLaMariee(genere.nomDeBaseDeLaMariee);
+            }
+            if (genere.id == 0) {
+                arbre.setRoot(membre);
+            } else if (genere.pere >= 0) {
+                //le père a déjà pour conjoint la mère : ajouterEnfant fixe les deux parents
+                arbre.getMembre(genere.pere).ajouterLienRelatif(MembreFamille.LienDeParente.ENFANT, membre);
+            } else {
+                arbre.getMembre(genere.conjoint).ajouterLienRelatif(MembreFamille.LienDeParente.CONJOINT, membre);
+            }
+            if (membre.getId() != genere.id) {
+                throw new IllegalStateException("Identifiant inattendu: " + membre.getId() + " au lieu de " + genere.id);
+            }
+        }
+    }
+
+    private boolean marie(int id, int generation) {
+        if (generation == generations - 1) {
+            return false;
+        }
+        return id == 0 || uniforme(id, TIRAGE_MARIAGE) < tauxConjoint;
+    }
+
+    private int enfants(int id) {
+        double tirage = uniforme(id, TIRAGE_ENFANTS);
+        int nombre = 0;
+        while (nombre < fratrieMax && tirage >= repartition[nombre]) {
+            nombre++;
+        }
+        return nombre;
+    }
+
+    private MembreFamille.Genre genre(int id) {
+        if (id == 0) {
+            return MembreFamille.Genre.MASCULIN;
+        }
+        return (hacher(id, TIRAGE_GENRE) & 1) == 0 ? MembreFamille.Genre.MASCULIN : MembreFamille.Genre.FEMININ;
+    }
+
+    private String prenoms(int id, MembreFamille.Genre genre) {
+        String[] prenoms = genre == MembreFamille.Genre.FEMININ ? PRENOMS_FEMININS : PRENOMS_MASCULINS;
+        return prenoms[tirer(id, TIRAGE_PRENOMS, prenoms.length)];
+    }
+
+    private int tirer(int id, int tirage, int bornes) {
+        return (int) ((hacher(id, tirage) >>> 33) % bornes);
+    }
+
+    private double uniforme(int id, int tirage) {
+        return (hacher(id, tirage) >>> 11) * 0x1.0p-53;
+    }
+
+    //mélange de SplitMix64 : des entrées voisines donnent des sorties indépendantes
+    private long hacher(int id, int tirage) {
+        long z = graine + (((long) id << 3) | tirage) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double[] repartitionBinomiale(int n, double p) {
+        double[] repartition = new double[n + 1];
+        double cumul = 0;
+        double coefficient = 1;
+        for (int k = 0; k <= n; k++) {
+            cumul += coefficient * Math.pow(p, k) * Math.pow(1 - p, n - k);
+            repartition[k] = cumul;
+            coefficient = coefficient * (n - k) / (k + 1);
+        }
+        //les arrondis ne doivent pas laisser de tirage au-delà de la dernière valeur
+        repartition[n] = 1;
+        return repartition;
+    }
+
+    private static MembreFamille.Genre oppose(MembreFamille.Genre genre) {
+        return genre == MembreFamille.Genre.MASCULIN ? MembreFamille.Genre.FEMININ : MembreFamille.Genre.MASCULIN;
+    }
+}
@@ -0,0 +1,133 @@
+package arbre_genealogique_pkg;
+
+import java.util.ArrayDeque;
+import java.util.function.IntSupplier;
+
+/**
+ * Historique des modifications faites par un {@link MoteurArbre}, pour les annuler puis les refaire.
+ * Chaque étape ne garde que ce qui a changé (l'ancienne valeur d'un nom, les liens d'avant un ajout) :
+ * annuler ou refaire coûte O(1) en temps et en mémoire, quelle que soit la taille de l'arbre.
+ * Les étapes ne valent que pour l'état de l'arbre qui les suit : si les liens ont été modifiés sans passer
+ * par le moteur, l'historique est abandonné
+ * @author aklam
+ */
+final class HistoriqueArbre {
+
+    //au-delà, les étapes les plus anciennes sont oubliées : une centaine d'octets par étape
+    static final int CAPACITE = 100_000;
+
+    private final ArrayDeque<Etape> annulables = new ArrayDeque<>();
+    private final ArrayDeque<Etape> refaisables = new ArrayDeque<>();
+
+    //nombre de modifications du registre, lu après la dernière étape
+    private final IntSupplier etat;
+    private int modifications;
+
+    /**
+     * Une modification qui sait se défaire et se refaire, par le moteur pour être journalisée
+     */
+    interface Etape {
+        void annuler();
+
+        void refaire();
+    }
+
+    /**
+     * @param etat le nombre de modifications du registre de l'arbre (voir {@link RegistreMembres#modifications()})
+     */
+    HistoriqueArbre(IntSupplier etat) {
+        this.etat = etat;
+        this.modifications = etat.getAsInt();
+    }
+
+    /**
+     * ajoute une modification qui vient d'être faite ; les modifications annulées ne peuvent plus être refaites
+     * @param etape la modification
+     * @param avant le nombre de modifications du registre avant elle
+     */
+    void noter(Etape etape, int avant) {
+        if (avant != modifications) {
+            vider();
+        }
+        refaisables.clear();
+        annulables.addLast(etape);
+        if (annulables.size() > CAPACITE) {
+            annulables.pollFirst();
+        }
+        modifications = etat.getAsInt();
+    }
+
+    /**
+     * @return true si une modification peut être annulée
+     */
+    boolean peutAnnuler() {
+        verifier();
+        return !annulables.isEmpty();
+    }
+
+    /**
+     * @return true si une modification annulée peut être refaite
+     */
+    boolean peutRefaire() {
+        verifier();
+        return !refaisables.isEmpty();
+    }
+
+    /**
+     * annule la dernière modification
+     * @return false s'il n'y avait rien à annuler
+     */
+    boolean annuler() {
+        if (!peutAnnuler()) {
+            return false;
+        }
+        Etape etape = annulables.pollLast();
+        appliquer(etape, true);
+        refaisables.addLast(etape);
+        return true;
+    }
+
+    /**
+     * refait la dernière modification annulée
+     * @return false s'il n'y avait rien à refaire
+     */
+    boolean refaire() {
+        if (!peutRefaire()) {
+            return false;
+        }
+        Etape etape = refaisables.pollLast();
+        appliquer(etape, false);
+        annulables.addLast(etape);
+        return true;
+    }
+
+    /**
+     * oublie toutes les étapes, par exemple après avoir rejoué le journal d'un fichier
+     */
+    void vider() {
+        annulables.clear();
+        refaisables.clear();
+        modifications = etat.getAsInt();
+    }
+
+    private void appliquer(Etape etape, boolean annuler) {
+        try {
+            if (annuler) {
+                etape.annuler();
+            } else {
+                etape.refaire();
+            }
+        } catch (RuntimeException e) {
+            //l'arbre n'est peut-être plus dans l'état que supposent les autres étapes
+            vider();
+            throw e;
+        }
+        modifications = etat.getAsInt();
+    }
+
+    private void verifier() {
+        if (etat.getAsInt() != modifications) {
+            vider();
+        }
+    }
+}
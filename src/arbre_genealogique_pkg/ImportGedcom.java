@@ -0,0 +1,415 @@
+package arbre_genealogique_pkg;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Import d'un fichier GEDCOM (format d'échange des logiciels de généalogie), lu ligne à ligne en une seule passe.
+ * <p>
+ * Un individu (enregistrement INDI) devient un membre dès la fin de son enregistrement : seules ses lignes
+ * sont gardées en mémoire, jamais le fichier. Les références à des individus pas encore lus (une famille
+ * placée avant ses membres) passent par une table des identifiants GEDCOM : le membre est créé à la première
+ * référence, puis complété quand son enregistrement arrive. Les familles (FAM, ainsi que FAMC et FAMS
+ * des individus) ne sont gardées que sous forme d'identifiants, et les liens pere, mere, conjoint,
+ * enfants et freres-soeurs sont posés une fois le fichier lu.
+ * <p>
+ * Seules les informations connues du modèle sont reprises : nom, prenoms, sexe, nom d'épouse (_MARNM) et
+ * familles. Les caractères refusés par {@link ValidateurNom} sont remplacés par des espaces. Le fichier
+ * est supposé encodé en UTF-8
+ * @author aklam
+ */
+final class ImportGedcom {
+
+    //nom et prenoms des membres dont l'enregistrement est vide ou absent du fichier
+    static final String INCONNU = "Inconnu";
+
+    private final RegistreMembres registre = new RegistreMembres();
+    //identifiant GEDCOM (@I12@) vers l'identifiant du membre dans le registre
+    private final Map<String, Integer> individus = new HashMap<>();
+    //dans l'ordre du fichier, pour que le choix du conjoint ne dépende que des données
+    private final Map<String, Famille> familles = new LinkedHashMap<>();
+    //membres déjà complétés par leur propre enregistrement
+    private final BitSet lus = new BitSet();
+    private int racine = -1;
+    private long lignes;
+
+    /**
+     * Une famille GEDCOM : un couple et ses enfants, par identifiants de membres
+     */
+    private static final class Famille {
+        int mari = -1;
+        int femme = -1;
+        final ListeIds enfants = new ListeIds();
+    }
+
+    /**
+     * Résultat d'un import : l'arbre et le débit obtenu
+     */
+    static final class Bilan {
+        final ArbreGenealogique arbre;
+        final long lignes;
+        final int individus;
+        final int familles;
+        final long nanosecondes;
+
+        Bilan(ArbreGenealogique arbre, long lignes, int individus, int familles, long nanosecondes) {
+            this.arbre = arbre;
+            this.lignes = lignes;
+            this.individus = individus;
+            this.familles = familles;
+            this.nanosecondes = nanosecondes;
+        }
+
+        /**
+         * @return le nombre de lignes lues par seconde
+         */
+        long lignesParSeconde() {
+            return nanosecondes == 0 ? lignes : lignes * 1_000_000_000L / nanosecondes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lignes, %d individus, %d familles en %.2f s (%d lignes/s)",
+                    lignes, individus, familles, nanosecondes / 1e9, lignesParSeconde());
+        }
+    }
+
+    private ImportGedcom() {
+    }
+
+    /**
+     * importe un fichier GEDCOM
+     * @param fichier le fichier .ged
+     * @param suivi reçoit le nombre d'octets lus et peut interrompre l'import
+     * @return l'arbre importé, dont la racine est le premier individu du fichier, et le débit obtenu
+     */
+    static Bilan importer(File fichier, SuiviProgression suivi) throws IOException {
+        long debut = System.nanoTime();
+        ImportGedcom importGedcom = new ImportGedcom();
+        try (FileChannel canal = FileChannel.open(fichier.toPath(), StandardOpenOption.READ);
+             BufferedReader lecteur = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(new CanalSuivi(canal, suivi, canal.size())),
+                     StandardCharsets.UTF_8), 1 << 16)) {
+            //le canal signale l'avancement et interrompt la lecture en cas d'annulation
+            importGedcom.lire(lecteur);
+        }
+        ArbreGenealogique arbre = importGedcom.lier();
+        return new Bilan(arbre, importGedcom.lignes, importGedcom.registre.taille(), importGedcom.familles.size(),
+                System.nanoTime() - debut);
+    }
+
+    private void lire(BufferedReader lecteur) throws IOException {
+        Individu individu = null;
+        Famille famille = null;
+        //étiquette de la dernière ligne de niveau 1, à laquelle se rapportent les sous-lignes (2 _MARNM)
+        String etiquetteNiveau1 = null;
+        String ligne;
+        while ((ligne = lecteur.readLine()) != null) {
+            lignes++;
+            Ligne l = Ligne.decouper(ligne, lignes);
+            if (l == null) {
+                continue;
+            }
+            if (l.niveau == 0) {
+                if (individu != null) {
+                    individu.terminer();
+                }
+                individu = null;
+                famille = null;
+                if ("INDI".equals(l.etiquette) && l.reference != null) {
+                    individu = new Individu(idIndividu(l.reference));
+                } else if ("FAM".equals(l.etiquette) && l.reference != null) {
+                    famille = famille(l.reference);
+                }
+                continue;
+            }
+            if (l.niveau == 1) {
+                etiquetteNiveau1 = l.etiquette;
+            }
+            if (individu != null) {
+                individu.lire(l, etiquetteNiveau1);
+            } else if (famille != null && l.niveau == 1 && l.estReference()) {
+                switch (l.etiquette) {
+                    case "HUSB":
+                        famille.mari = idIndividu(l.valeur);
+                        break;
+                    case "WIFE":
+                        famille.femme = idIndividu(l.valeur);
+                        break;
+                    case "CHIL":
+                        famille.enfants.ajouterSiAbsent(idIndividu(l.valeur));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        if (individu != null) {
+            individu.terminer();
+        }
+    }
+
+    //le membre d'un identifiant GEDCOM, créé vide à sa première référence
+    private int idIndividu(String reference) {
+        Integer id = individus.get(reference);
+        if (id == null) {
+            id = registre.ajouter(MembreFamille.restaurer(INCONNU, INCONNU, "", null));
+            individus.put(reference, id);
+        }
+        return id;
+    }
+
+    private Famille famille(String reference) {
+        return familles.computeIfAbsent(reference, r -> new Famille());
+    }
+
+    /**
+     * pose les liens de chaque famille : un seul conjoint par membre (le premier rencontré), une liste d'enfants
+     * partagée par le couple comme le fait {@link MembreFamille#setConjoint}, et pour chaque enfant ses
+     * parents et ses freres-soeurs. Un membre qui a eu plusieurs unions garde sa propre liste d'enfants,
+     * pour ne pas mêler les enfants des différents couples
+     */
+    private ArbreGenealogique lier() {
+        int[] unions = new int[registre.taille()];
+        for (Famille famille : familles.values()) {
+            if (famille.mari >= 0) {
+                unions[famille.mari]++;
+            }
+            if (famille.femme >= 0) {
+                unions[famille.femme]++;
+            }
+        }
+        for (Famille famille : familles.values()) {
+            MembreFamille mari = famille.mari < 0 ? null : registre.get(famille.mari);
+            MembreFamille femme = famille.femme < 0 ? null : registre.get(famille.femme);
+            if (mari != null && femme != null && mari != femme
+                    && mari.idConjoint() < 0 && femme.idConjoint() < 0) {
+                mari.restaurerLiens(mari.idPere(), mari.idMere(), femme.getId(), mari.idsEnfants(), mari.idsFreresSoeurs());
+                femme.restaurerLiens(femme.idPere(), femme.idMere(), mari.getId(), femme.idsEnfants(), femme.idsFreresSoeurs());
+                if (unions[mari.getId()] == 1 && unions[femme.getId()] == 1) {
+                    femme.setEnfants(mari.enfantsModifiables());
+                }
+            }
+            for (int i = 0; i < famille.enfants.taille(); i++) {
+                int idEnfant = famille.enfants.get(i);
+                MembreFamille enfant = registre.get(idEnfant);
+                int pere = enfant.idPere() < 0 && mari != null ? mari.getId() : enfant.idPere();
+                int mere = enfant.idMere() < 0 && femme != null ? femme.getId() : enfant.idMere();
+                enfant.restaurerLiens(pere, mere, enfant.idConjoint(), enfant.idsEnfants(), enfant.idsFreresSoeurs());
+                if (mari != null) {
+                    mari.enfantsModifiables().ajouterSiAbsent(idEnfant);
+                }
+                if (femme != null && (mari == null || femme.enfantsModifiables() != mari.enfantsModifiables())) {
+                    femme.enfantsModifiables().ajouterSiAbsent(idEnfant);
+                }
+                for (int j = 0; j < famille.enfants.taille(); j++) {
+                    if (j != i) {
+                        enfant.freresSoeursModifiables().ajouterSiAbsent(famille.enfants.get(j));
+                    }
+                }
+            }
+        }
+        return new ArbreGenealogique(registre, racine < 0 ? null : registre.get(racine));
+    }
+
+    /**
+     * Un enregistrement INDI en cours de lecture
+     */
+    private final class Individu {
+        private final int id;
+        private String prenoms;
+        private String nom;
+        private String nomEpouse;
+        private MembreFamille.Genre genre;
+        //familles où l'individu est conjoint : son rôle dépend de son sexe, connu seulement en fin d'enregistrement
+        private final List<String> famillesConjoint = new ArrayList<>(1);
+
+        Individu(int id) {
+            this.id = id;
+        }
+
+        void lire(Ligne l, String etiquetteNiveau1) {
+            if (l.niveau == 1) {
+                switch (l.etiquette) {
+                    case "NAME":
+                        //seul le premier nom est retenu, les suivants sont des variantes
+                        if (nom == null && prenoms == null) {
+                            lireNom(l.valeur);
+                        }
+                        break;
+                    case "SEX":
+                        if (l.valeur.startsWith("M")) {
+                            genre = MembreFamille.Genre.MASCULIN;
+                        } else if (l.valeur.startsWith("F")) {
+                            genre = MembreFamille.Genre.FEMININ;
+                        }
+                        break;
+                    case "FAMS":
+                        if (l.estReference()) {
+                            famille(l.valeur);
+                            famillesConjoint.add(l.valeur);
+                        }
+                        break;
+                    case "FAMC":
+                        if (l.estReference()) {
+                            famille(l.valeur).enfants.ajouterSiAbsent(id);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } else if (l.niveau == 2 && "NAME".equals(etiquetteNiveau1) && "_MARNM".equals(l.etiquette)) {
+                nomEpouse = l.valeur;
+            }
+        }
+
+        //"Jean Pierre /Dupont/" : les prenoms avant les barres obliques, le nom entre elles
+        private void lireNom(String valeur) {
+            int debut = valeur.indexOf('/');
+            if (debut < 0) {
+                prenoms = valeur;
+                return;
+            }
+            int fin = valeur.indexOf('/', debut + 1);
+            prenoms = valeur.substring(0, debut) + (fin < 0 ? "" : " " + valeur.substring(fin + 1));
+            nom = valeur.substring(debut + 1, fin < 0 ? valeur.length() : fin);
+        }
+
+        void terminer() {
+            if (lus.get(id)) {
+                //identifiant GEDCOM en double : le premier enregistrement est gardé
+                return;
+            }
+            lus.set(id);
+            MembreFamille membre = registre.get(id);
+            membre.setGenre(genre);
+            membre.setPrenoms(nettoyer(prenoms));
+            if (genre == MembreFamille.Genre.FEMININ && nomEpouse != null && !nettoyer(nomEpouse).equals(INCONNU)) {
+                //le modèle garde le nom d'usage comme nom et le nom de naissance comme nom de base de la mariée
+                membre.setNom(nettoyer(nomEpouse));
+                membre.setNomDeBaseDeLaMariee(nettoyer(nom));
+            } else {
+                membre.setNom(nettoyer(nom));
+            }
+            for (String reference : famillesConjoint) {
+                Famille famille = famille(reference);
+                if (genre == MembreFamille.Genre.FEMININ) {
+                    famille.femme = id;
+                } else {
+                    famille.mari = id;
+                }
+            }
+            if (racine < 0) {
+                racine = id;
+            }
+        }
+    }
+
+    /**
+     * remplace les caractères refusés dans un nom par des espaces
+     * @return un nom accepté par {@link ValidateurNom}, {@link #INCONNU} s'il ne reste rien
+     */
+    static String nettoyer(String valeur) {
+        if (valeur == null) {
+            return INCONNU;
+        }
+        StringBuilder nettoye = new StringBuilder(valeur.length());
+        boolean espace = false;
+        for (int i = 0; i < valeur.length(); i++) {
+            char c = valeur.charAt(i);
+            if (Character.isLetter(c) || c == '.' || c == '\'' || c == '-') {
+                if (espace && nettoye.length() > 0) {
+                    nettoye.append(' ');
+                }
+                espace = false;
+                nettoye.append(c);
+            } else {
+                espace = true;
+            }
+        }
+        String resultat = ValidateurNom.valider(nettoye.toString());
+        return resultat == null ? INCONNU : resultat;
+    }
+
+    /**
+     * Une ligne GEDCOM : niveau, référence facultative (@I1@), étiquette et valeur
+     */
+    private static final class Ligne {
+        final int niveau;
+        final String reference;
+        final String etiquette;
+        final String valeur;
+
+        private Ligne(int niveau, String reference, String etiquette, String valeur) {
+            this.niveau = niveau;
+            this.reference = reference;
+            this.etiquette = etiquette;
+            this.valeur = valeur;
+        }
+
+        boolean estReference() {
+            return valeur.length() > 2 && valeur.charAt(0) == '@' && valeur.charAt(valeur.length() - 1) == '@';
+        }
+
+        /**
+         * @return la ligne découpée, null pour une ligne vide
+         * @throws IOException si la ligne ne commence pas par un niveau
+         */
+        static Ligne decouper(String ligne, long numero) throws IOException {
+            int i = 0;
+            int longueur = ligne.length();
+            //marque d'ordre des octets en tête de fichier, et indentation tolérée par certains logiciels
+            while (i < longueur && (ligne.charAt(i) == '\uFEFF' || ligne.charAt(i) == ' ' || ligne.charAt(i) == '\t')) {
+                i++;
+            }
+            if (i == longueur) {
+                return null;
+            }
+            int niveau = 0;
+            int debutNiveau = i;
+            while (i < longueur && ligne.charAt(i) >= '0' && ligne.charAt(i) <= '9') {
+                niveau = niveau * 10 + (ligne.charAt(i) - '0');
+                i++;
+            }
+            if (i == debutNiveau || i - debutNiveau > 2) {
+                throw new IOException("Ligne GEDCOM " + numero + " invalide: " + ligne);
+            }
+            i = sauterEspaces(ligne, i);
+            String reference = null;
+            if (i < longueur && ligne.charAt(i) == '@') {
+                int fin = ligne.indexOf('@', i + 1);
+                if (fin < 0) {
+                    throw new IOException("Ligne GEDCOM " + numero + " invalide: " + ligne);
+                }
+                reference = ligne.substring(i, fin + 1);
+                i = sauterEspaces(ligne, fin + 1);
+            }
+            int finEtiquette = i;
+            while (finEtiquette < longueur && ligne.charAt(finEtiquette) != ' ') {
+                finEtiquette++;
+            }
+            String etiquette = ligne.substring(i, finEtiquette);
+            String valeur = finEtiquette < longueur ? ligne.substring(finEtiquette + 1).trim() : "";
+            return new Ligne(niveau, reference, etiquette, valeur);
+        }
+
+        private static int sauterEspaces(String ligne, int i) {
+            while (i < ligne.length() && ligne.charAt(i) == ' ') {
+                i++;
+            }
+            return i;
+        }
+    }
+}
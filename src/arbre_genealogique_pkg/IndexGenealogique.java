@@ -0,0 +1,400 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Index précalculé des liens parent-enfant d'un arbre, pour les requêtes sur plusieurs générations :
+ * ancêtres, descendants jusqu'à une profondeur, numéro de génération et test "A est-il un ancêtre de B".
+ * <p>
+ * Les liens sont rangés en CSR (un tableau de débuts et un tableau d'identifiants) dans les deux sens.
+ * Un parcours en profondeur numérote chaque membre à l'entrée (pre) et à la sortie (post) : si l'intervalle
+ * de B est inclus dans celui de A, B descend de A. Un membre ayant deux parents n'est rattaché qu'à l'un
+ * des deux dans ce parcours, d'où un second intervalle [bas, post] où bas est le plus petit post de tous
+ * les descendants : s'il ne contient pas celui de B, B ne descend pas de A. Avec la génération,
+ * ces deux tests répondent en O(1) dans presque tous les cas ; sinon une recherche élaguée par les mêmes
+ * tests tranche.
+ * <p>
+ * L'index est une photographie : il doit être reconstruit après une modification des liens
+ * (voir {@link #estAJour(RegistreMembres)})
+ * @author aklam
+ */
+final class IndexGenealogique {
+
+    private final RegistreMembres registre;
+    private final int modifications;
+    private final int taille;
+
+    //enfants de chaque membre : enfants[debutEnfants[id] .. debutEnfants[id + 1][
+    private final int[] debutEnfants;
+    private final int[] enfants;
+    private final int[] debutParents;
+    private final int[] parents;
+
+    //0 pour un membre sans parent connu, 1 + la plus grande génération de ses parents sinon
+    private final int[] generations;
+    private final int[] pre;
+    private final int[] post;
+    private final int[] bas;
+
+    //faux si les liens forment un cycle (données incohérentes) : les tests rapides ne sont alors plus valables
+    private final boolean acyclique;
+
+    private IndexGenealogique(RegistreMembres registre) {
+        this.registre = registre;
+        this.modifications = registre.modifications();
+        this.taille = registre.taille();
+
+        int[][] csr = construireEnfants(registre, taille);
+        this.debutEnfants = csr[0];
+        this.enfants = csr[1];
+        int[][] inverse = inverser(debutEnfants, enfants, taille);
+        this.debutParents = inverse[0];
+        this.parents = inverse[1];
+
+        this.generations = new int[taille];
+        this.acyclique = calculerGenerations();
+        this.pre = new int[taille];
+        this.post = new int[taille];
+        this.bas = new int[taille];
+        numeroter();
+    }
+
+    /**
+     * construit l'index de tous les membres d'un registre. Les membres pas encore lus d'un fichier projeté
+     * sont lus sans être gardés dans le registre
+     * @param registre les membres à indexer
+     * @return l'index
+     */
+    static IndexGenealogique construire(RegistreMembres registre) {
+        return new IndexGenealogique(registre);
+    }
+
+    /**
+     * @return true si l'index correspond encore aux liens actuels du registre
+     */
+    boolean estAJour(RegistreMembres registre) {
+        return this.registre == registre && this.modifications == registre.modifications();
+    }
+
+    /**
+     * @return le nombre de membres indexés
+     */
+    int taille() {
+        return taille;
+    }
+
+    /**
+     * @return le premier indice des parents du membre, à lire avec {@link #parent(int)}
+     */
+    int debutParents(int id) {
+        return debutParents[id];
+    }
+
+    /**
+     * @return l'indice qui suit le dernier parent du membre
+     */
+    int finParents(int id) {
+        return debutParents[id + 1];
+    }
+
+    /**
+     * @param indice un indice entre {@link #debutParents(int)} et {@link #finParents(int)}
+     * @return l'identifiant du parent
+     */
+    int parent(int indice) {
+        return parents[indice];
+    }
+
+    /**
+     * @return la génération du membre, 0 pour un membre sans parent connu
+     */
+    int generation(int id) {
+        verifier(id);
+        return generations[id];
+    }
+
+    /**
+     * @return true si le premier membre est un ancêtre (strict) du second
+     */
+    boolean estAncetre(int ancetre, int descendant) {
+        verifier(ancetre);
+        verifier(descendant);
+        if (ancetre == descendant) {
+            return false;
+        }
+        if (!acyclique) {
+            return rechercher(ancetre, descendant, false);
+        }
+        int reponse = testRapide(ancetre, descendant);
+        if (reponse != 0) {
+            return reponse > 0;
+        }
+        return rechercher(ancetre, descendant, true);
+    }
+
+    /**
+     * @return les identifiants de tous les ancêtres du membre, génération par génération
+     */
+    int[] ancetres(int id) {
+        verifier(id);
+        return parcourir(id, debutParents, parents, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param id le membre
+     * @param profondeurMin première génération retenue, 1 pour les enfants
+     * @param profondeurMax dernière génération retenue
+     * @return les identifiants des descendants entre ces deux profondeurs, génération par génération
+     */
+    int[] descendants(int id, int profondeurMin, int profondeurMax) {
+        verifier(id);
+        return parcourir(id, debutEnfants, enfants, profondeurMin, profondeurMax);
+    }
+
+    //1 si descendant de façon certaine, -1 si certainement pas, 0 si les intervalles ne suffisent pas
+    private int testRapide(int a, int b) {
+        if (generations[a] >= generations[b]) {
+            return -1;
+        }
+        if (pre[a] <= pre[b] && post[b] <= post[a]) {
+            return 1;
+        }
+        if (bas[a] > bas[b] || post[b] > post[a]) {
+            return -1;
+        }
+        return 0;
+    }
+
+    //recherche en profondeur depuis a, en écartant les branches que les tests rapides excluent
+    private boolean rechercher(int a, int b, boolean elaguer) {
+        BitSet visites = new BitSet(taille);
+        int[] pile = new int[16];
+        int sommet = 0;
+        pile[sommet++] = a;
+        visites.set(a);
+        while (sommet > 0) {
+            int membre = pile[--sommet];
+            for (int i = debutEnfants[membre]; i < debutEnfants[membre + 1]; i++) {
+                int enfant = enfants[i];
+                if (enfant == b) {
+                    return true;
+                }
+                if (visites.get(enfant)) {
+                    continue;
+                }
+                visites.set(enfant);
+                if (elaguer) {
+                    int reponse = testRapide(enfant, b);
+                    if (reponse > 0) {
+                        return true;
+                    }
+                    if (reponse < 0) {
+                        continue;
+                    }
+                }
+                if (sommet == pile.length) {
+                    pile = Arrays.copyOf(pile, pile.length * 2);
+                }
+                pile[sommet++] = enfant;
+            }
+        }
+        return false;
+    }
+
+    //parcours en largeur sur les tableaux CSR, chaque membre n'étant retenu qu'une fois
+    private int[] parcourir(int depart, int[] debuts, int[] voisins, int profondeurMin, int profondeurMax) {
+        BitSet visites = new BitSet(taille);
+        visites.set(depart);
+        int[] file = new int[16];
+        int debut = 0;
+        int fin = 0;
+        file[fin++] = depart;
+        int[] resultat = new int[16];
+        int nombre = 0;
+        int profondeur = 0;
+        while (debut < fin && profondeur < profondeurMax) {
+            //une génération complète à la fois
+            int finGeneration = fin;
+            profondeur++;
+            for (; debut < finGeneration; debut++) {
+                int membre = file[debut];
+                for (int i = debuts[membre]; i < debuts[membre + 1]; i++) {
+                    int voisin = voisins[i];
+                    if (visites.get(voisin)) {
+                        continue;
+                    }
+                    visites.set(voisin);
+                    if (fin == file.length) {
+                        file = Arrays.copyOf(file, file.length * 2);
+                    }
+                    file[fin++] = voisin;
+                    if (profondeur >= profondeurMin) {
+                        if (nombre == resultat.length) {
+                            resultat = Arrays.copyOf(resultat, resultat.length * 2);
+                        }
+                        resultat[nombre++] = voisin;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(resultat, nombre);
+    }
+
+    //tri topologique (algorithme de Kahn) : la génération d'un enfant est connue quand tous ses parents sont traités
+    private boolean calculerGenerations() {
+        int[] parentsRestants = new int[taille];
+        int[] file = new int[taille];
+        int fin = 0;
+        for (int id = 0; id < taille; id++) {
+            parentsRestants[id] = debutParents[id + 1] - debutParents[id];
+            if (parentsRestants[id] == 0) {
+                file[fin++] = id;
+            }
+        }
+        for (int debut = 0; debut < fin; debut++) {
+            int membre = file[debut];
+            for (int i = debutEnfants[membre]; i < debutEnfants[membre + 1]; i++) {
+                int enfant = enfants[i];
+                generations[enfant] = Math.max(generations[enfant], generations[membre] + 1);
+                if (--parentsRestants[enfant] == 0) {
+                    file[fin++] = enfant;
+                }
+            }
+        }
+        return fin == taille;
+    }
+
+    //parcours en profondeur itératif depuis chaque membre sans parent, puis depuis les membres restants (cycles)
+    private void numeroter() {
+        int[] pile = new int[Math.max(1, taille)];
+        int[] prochain = new int[taille];
+        boolean[] vus = new boolean[taille];
+        int compteurPre = 0;
+        int compteurPost = 0;
+        for (int passe = 0; passe < 2; passe++) {
+            for (int racine = 0; racine < taille; racine++) {
+                if (vus[racine] || (passe == 0 && debutParents[racine] != debutParents[racine + 1])) {
+                    continue;
+                }
+                int sommet = 0;
+                pile[sommet++] = racine;
+                vus[racine] = true;
+                pre[racine] = compteurPre++;
+                prochain[racine] = debutEnfants[racine];
+                bas[racine] = Integer.MAX_VALUE;
+                while (sommet > 0) {
+                    int membre = pile[sommet - 1];
+                    if (prochain[membre] < debutEnfants[membre + 1]) {
+                        int enfant = enfants[prochain[membre]++];
+                        if (!vus[enfant]) {
+                            vus[enfant] = true;
+                            pre[enfant] = compteurPre++;
+                            prochain[enfant] = debutEnfants[enfant];
+                            bas[enfant] = Integer.MAX_VALUE;
+                            pile[sommet++] = enfant;
+                        }
+                    } else {
+                        //tous les descendants sont numérotés : bas est le plus petit post du sous-graphe
+                        sommet--;
+                        post[membre] = compteurPost++;
+                        int minimum = post[membre];
+                        for (int i = debutEnfants[membre]; i < debutEnfants[membre + 1]; i++) {
+                            minimum = Math.min(minimum, bas[enfants[i]]);
+                        }
+                        bas[membre] = minimum;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * liens parent vers enfant, sans doublon : pere et mere de chaque membre, plus sa liste d'enfants
+     * (qui contient aussi les enfants du conjoint)
+     */
+    private static int[][] construireEnfants(RegistreMembres registre, int taille) {
+        int[] sources = new int[Math.max(16, taille * 2)];
+        int[] cibles = new int[sources.length];
+        int nombre = 0;
+        for (int id = 0; id < taille; id++) {
+            MembreFamille membre = registre.consulter(id);
+            int[] parentsMembre = {membre.idPere(), membre.idMere()};
+            for (int parent : parentsMembre) {
+                if (parent >= 0 && parent != id) {
+                    if (nombre == sources.length) {
+                        sources = Arrays.copyOf(sources, nombre * 2);
+                        cibles = Arrays.copyOf(cibles, nombre * 2);
+                    }
+                    sources[nombre] = parent;
+                    cibles[nombre++] = id;
+                }
+            }
+            ListeIds enfantsMembre = membre.idsEnfants();
+            for (int i = 0; i < enfantsMembre.taille(); i++) {
+                int enfant = enfantsMembre.get(i);
+                if (enfant != id && enfant < taille) {
+                    if (nombre == sources.length) {
+                        sources = Arrays.copyOf(sources, nombre * 2);
+                        cibles = Arrays.copyOf(cibles, nombre * 2);
+                    }
+                    sources[nombre] = id;
+                    cibles[nombre++] = enfant;
+                }
+            }
+        }
+        //tri par comptage sur le parent, puis suppression des doublons de chaque ligne
+        int[] debuts = new int[taille + 1];
+        for (int i = 0; i < nombre; i++) {
+            debuts[sources[i] + 1]++;
+        }
+        for (int id = 0; id < taille; id++) {
+            debuts[id + 1] += debuts[id];
+        }
+        int[] positions = Arrays.copyOf(debuts, taille);
+        int[] lignes = new int[nombre];
+        for (int i = 0; i < nombre; i++) {
+            lignes[positions[sources[i]]++] = cibles[i];
+        }
+        int[] marques = new int[taille];
+        int[] debutsUniques = new int[taille + 1];
+        int uniques = 0;
+        for (int id = 0; id < taille; id++) {
+            debutsUniques[id] = uniques;
+            for (int i = debuts[id]; i < debuts[id + 1]; i++) {
+                int enfant = lignes[i];
+                //marque id + 1 : l'enfant a déjà été retenu pour ce parent
+                if (marques[enfant] != id + 1) {
+                    marques[enfant] = id + 1;
+                    lignes[uniques++] = enfant;
+                }
+            }
+        }
+        debutsUniques[taille] = uniques;
+        return new int[][]{debutsUniques, Arrays.copyOf(lignes, uniques)};
+    }
+
+    private static int[][] inverser(int[] debuts, int[] cibles, int taille) {
+        int[] debutsInverses = new int[taille + 1];
+        for (int cible : cibles) {
+            debutsInverses[cible + 1]++;
+        }
+        for (int id = 0; id < taille; id++) {
+            debutsInverses[id + 1] += debutsInverses[id];
+        }
+        int[] positions = Arrays.copyOf(debutsInverses, taille);
+        int[] sources = new int[cibles.length];
+        for (int id = 0; id < taille; id++) {
+            for (int i = debuts[id]; i < debuts[id + 1]; i++) {
+                sources[positions[cibles[i]]++] = id;
+            }
+        }
+        return new int[][]{debutsInverses, sources};
+    }
+
+    private void verifier(int id) {
+        if (id < 0 || id >= taille) {
+            throw new IllegalArgumentException("Membre absent de l'index: " + id);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package arbre_genealogique_pkg;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index de recherche approchée sur les noms, prenoms et noms de base de la mariée des membres.
+ * <p>
+ * Chaque valeur est découpée en mots normalisés (minuscules, sans accents : "Élodie" devient "elodie").
+ * Chaque mot distinct est un terme, numéroté, qui pointe vers les membres qui le portent. Un mot cherché
+ * est comparé aux termes de quatre façons, de la plus précise à la plus large :
+ * <ul>
+ *     <li>égalité, puis préfixe, grâce au dictionnaire trié des termes ;</li>
+ *     <li>même clé phonétique ("Dupond" et "Dupont", "Philippe" et "Filip") ;</li>
+ *     <li>distance d'édition (fautes de frappe) : les termes candidats sont ceux qui partagent assez de
+ *     trigrammes avec le mot, puis la distance de Levenshtein est calculée sur eux seuls.</li>
+ * </ul>
+ * Le travail d'une requête dépend donc du nombre de termes proches, pas du nombre de membres.
+ * L'index est mis à jour par {@link RegistreMembres} à chaque ajout ou modification de nom
+ * @author aklam
+ */
+final class IndexRecherche {
+
+    //catégories de correspondance, de la plus précise à la plus large
+    private static final int EXACT = 0;
+    private static final int PREFIXE = 1;
+    private static final int PHONETIQUE = 2;
+    private static final int APPROCHE = 3;
+
+    //longueur maximale de la clé phonétique
+    private static final int LONGUEUR_CLE = 6;
+
+    //dictionnaire trié, pour les recherches par préfixe
+    private final TreeMap<String, Terme> termes = new TreeMap<>();
+    //les termes par numéro
+    private final List<Terme> parNumero = new ArrayList<>();
+    //trigramme ou clé phonétique vers les numéros des termes
+    private final Map<String, ListeIds> trigrammes = new HashMap<>();
+    private final Map<String, ListeIds> phonetiques = new HashMap<>();
+
+    //par numéro de terme : déjà retenu par la requête, et nombre de trigrammes communs avec le mot cherché.
+    //une case n'est valable que si sa marque vaut le numéro de passage courant, ce qui évite de tout effacer
+    private int[] retenus = new int[0];
+    private int[] vus = new int[0];
+    private int[] compteurs = new int[0];
+    private int passage;
+
+    /**
+     * Un mot distinct et les membres qui le portent, par identifiant croissant (un membre apparaît une fois
+     * par occurrence du mot). Le tri permet de retrouver un membre par dichotomie quand il change de nom
+     */
+    private static final class Terme {
+        final String texte;
+        final int numero;
+        final ListeIds membres = new ListeIds();
+
+        Terme(String texte, int numero) {
+            this.texte = texte;
+            this.numero = numero;
+        }
+    }
+
+    /**
+     * indexe une valeur d'un champ d'un membre
+     * @param id l'identifiant du membre
+     * @param valeur le nom, les prenoms ou le nom de base de la mariée, peut être null
+     */
+    void ajouter(int id, String valeur) {
+        for (String mot : mots(valeur)) {
+            Terme terme = termes.get(mot);
+            if (terme == null) {
+                terme = nouveauTerme(mot);
+            }
+            terme.membres.insererTrie(id);
+        }
+    }
+
+    /**
+     * retire une valeur précédemment indexée avec {@link #ajouter(int, String)}
+     */
+    void retirer(int id, String valeur) {
+        for (String mot : mots(valeur)) {
+            Terme terme = termes.get(mot);
+            if (terme != null) {
+                //le terme reste dans le dictionnaire ; sans membre il n'est simplement plus jamais retenu
+                terme.membres.retirerTrie(id);
+            }
+        }
+    }
+
+    /**
+     * @param texte un ou plusieurs mots ; un membre doit correspondre à chacun des mots
+     * @param limite le nombre maximal de résultats
+     * @return les identifiants des membres trouvés, les correspondances exactes d'abord
+     */
+    int[] rechercher(String texte, int limite) {
+        List<String> motsCherches = mots(texte);
+        if (motsCherches.isEmpty() || limite <= 0) {
+            return new int[0];
+        }
+        //pour chaque mot, les termes qui lui correspondent rangés par catégorie
+        List<List<List<Terme>>> correspondances = new ArrayList<>(motsCherches.size());
+        int meilleur = 0;
+        long plusPetit = Long.MAX_VALUE;
+        for (String mot : motsCherches) {
+            List<List<Terme>> parCategorie = correspondances(mot);
+            long total = 0;
+            for (List<Terme> categorie : parCategorie) {
+                for (Terme terme : categorie) {
+                    total += terme.membres.taille();
+                }
+            }
+            if (total == 0) {
+                return new int[0];
+            }
+            //le mot le plus rare guide la recherche, les autres servent de filtre
+            if (total < plusPetit) {
+                plusPetit = total;
+                meilleur = correspondances.size();
+            }
+            correspondances.add(parCategorie);
+        }
+
+        //les autres mots sont réunis en ensembles d'identifiants, testés en O(1) pour chaque candidat
+        List<BitSet> filtres = new ArrayList<>(correspondances.size() - 1);
+        for (int m = 0; m < correspondances.size(); m++) {
+            if (m != meilleur) {
+                filtres.add(ensemble(correspondances.get(m)));
+            }
+        }
+        ListeIds resultat = new ListeIds();
+        for (List<Terme> categorie : correspondances.get(meilleur)) {
+            for (Terme terme : categorie) {
+                for (int i = 0; i < terme.membres.taille(); i++) {
+                    int id = terme.membres.get(i);
+                    if (!resultat.contient(id) && correspondA(id, filtres)) {
+                        resultat.ajouter(id);
+                        if (resultat.taille() == limite) {
+                            return copie(resultat);
+                        }
+                    }
+                }
+            }
+        }
+        return copie(resultat);
+    }
+
+    private static boolean correspondA(int id, List<BitSet> filtres) {
+        for (BitSet filtre : filtres) {
+            if (!filtre.get(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BitSet ensemble(List<List<Terme>> parCategorie) {
+        BitSet ensemble = new BitSet();
+        for (List<Terme> categorie : parCategorie) {
+            for (Terme terme : categorie) {
+                for (int i = 0; i < terme.membres.taille(); i++) {
+                    ensemble.set(terme.membres.get(i));
+                }
+            }
+        }
+        return ensemble;
+    }
+
+    //les termes correspondant à un mot, chacun dans sa meilleure catégorie
+    private List<List<Terme>> correspondances(String mot) {
+        List<List<Terme>> parCategorie = new ArrayList<>(4);
+        for (int i = EXACT; i <= APPROCHE; i++) {
+            parCategorie.add(new ArrayList<>());
+        }
+        nouveauPassage();
+        for (Terme terme : termes.subMap(mot, true, mot + Character.MAX_VALUE, false).values()) {
+            retenir(parCategorie, terme, terme.texte.equals(mot) ? EXACT : PREFIXE);
+        }
+        ListeIds memeCle = phonetiques.get(cle(mot));
+        if (memeCle != null) {
+            for (int i = 0; i < memeCle.taille(); i++) {
+                retenir(parCategorie, parNumero.get(memeCle.get(i)), PHONETIQUE);
+            }
+        }
+        approcher(mot, parCategorie);
+        return parCategorie;
+    }
+
+    private void retenir(List<List<Terme>> parCategorie, Terme terme, int categorie) {
+        if (retenus[terme.numero] == passage || terme.membres.estVide()) {
+            return;
+        }
+        retenus[terme.numero] = passage;
+        parCategorie.get(categorie).add(terme);
+    }
+
+    //termes à faible distance d'édition, parmi ceux qui partagent assez de trigrammes avec le mot
+    private void approcher(String mot, List<List<Terme>> parCategorie) {
+        int distanceMax = distanceTolere(mot.length());
+        if (distanceMax == 0) {
+            return;
+        }
+        //une modification change au plus trois trigrammes
+        List<String> trigrammesMot = trigrammes(mot);
+        int seuil = Math.max(1, trigrammesMot.size() - 3 * distanceMax);
+        for (String trigramme : trigrammesMot) {
+            ListeIds numeros = trigrammes.get(trigramme);
+            if (numeros == null) {
+                continue;
+            }
+            for (int i = 0; i < numeros.taille(); i++) {
+                int numero = numeros.get(i);
+                if (retenus[numero] == passage) {
+                    continue;
+                }
+                if (vus[numero] != passage) {
+                    vus[numero] = passage;
+                    compteurs[numero] = 0;
+                }
+                if (++compteurs[numero] == seuil) {
+                    Terme terme = parNumero.get(numero);
+                    if (Math.abs(terme.texte.length() - mot.length()) <= distanceMax
+                            && distance(mot, terme.texte, distanceMax) <= distanceMax) {
+                        retenir(parCategorie, terme, APPROCHE);
+                    }
+                }
+            }
+        }
+    }
+
+    private void nouveauPassage() {
+        passage++;
+        if (passage == Integer.MAX_VALUE) {
+            Arrays.fill(retenus, 0);
+            Arrays.fill(vus, 0);
+            passage = 1;
+        }
+    }
+
+    private Terme nouveauTerme(String mot) {
+        Terme terme = new Terme(mot, parNumero.size());
+        termes.put(mot, terme);
+        parNumero.add(terme);
+        if (terme.numero >= retenus.length) {
+            int capacite = Math.max(16, retenus.length * 2);
+            retenus = Arrays.copyOf(retenus, capacite);
+            vus = Arrays.copyOf(vus, capacite);
+            compteurs = Arrays.copyOf(compteurs, capacite);
+        }
+        for (String trigramme : trigrammes(mot)) {
+            trigrammes.computeIfAbsent(trigramme, k -> new ListeIds()).ajouterSiAbsent(terme.numero);
+        }
+        phonetiques.computeIfAbsent(cle(mot), k -> new ListeIds()).ajouter(terme.numero);
+        return terme;
+    }
+
+    /**
+     * découpe une valeur en mots normalisés : minuscules, sans accents ni ligatures. Les espaces, tirets,
+     * points et apostrophes séparent les mots
+     * @param valeur la valeur, peut être null
+     * @return les mots, éventuellement aucun
+     */
+    static List<String> mots(String valeur) {
+        List<String> resultat = new ArrayList<>(2);
+        if (valeur == null || valeur.isEmpty()) {
+            return resultat;
+        }
+        String texte = sansAccents(valeur);
+        StringBuilder mot = new StringBuilder();
+        for (int i = 0; i <= texte.length(); i++) {
+            char c = i < texte.length() ? texte.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                switch (c) {
+                    case 'œ':
+                        mot.append("oe");
+                        break;
+                    case 'æ':
+                        mot.append("ae");
+                        break;
+                    case 'ß':
+                        mot.append("ss");
+                        break;
+                    default:
+                        mot.append(c);
+                }
+            } else if (mot.length() > 0) {
+                resultat.add(mot.toString());
+                mot.setLength(0);
+            }
+        }
+        return resultat;
+    }
+
+    private static String sansAccents(String valeur) {
+        String minuscules = valeur.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < minuscules.length(); i++) {
+            if (minuscules.charAt(i) >= 0x80) {
+                //la décomposition sépare chaque lettre de ses accents, qui sont ensuite retirés
+                return Normalizer.normalize(minuscules, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+            }
+        }
+        return minuscules;
+    }
+
+    //trigrammes du mot encadré par des marqueurs de début et de fin
+    private static List<String> trigrammes(String mot) {
+        String encadre = "^" + mot + "$";
+        List<String> resultat = new ArrayList<>(encadre.length() - 2);
+        for (int i = 0; i + 3 <= encadre.length(); i++) {
+            resultat.add(encadre.substring(i, i + 3));
+        }
+        return resultat;
+    }
+
+    //nombre de fautes tolérées selon la longueur du mot
+    private static int distanceTolere(int longueur) {
+        if (longueur <= 3) {
+            return 0;
+        }
+        return longueur <= 6 ? 1 : 2;
+    }
+
+    /**
+     * distance de Levenshtein bornée : le calcul s'arrête dès qu'elle dépasse le maximum
+     * @return la distance, ou maximum + 1 si elle le dépasse
+     */
+    static int distance(String a, String b, int maximum) {
+        int[] precedente = new int[b.length() + 1];
+        int[] courante = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            precedente[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            courante[0] = i;
+            int minimumLigne = courante[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cout = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                courante[j] = Math.min(Math.min(courante[j - 1] + 1, precedente[j] + 1), precedente[j - 1] + cout);
+                minimumLigne = Math.min(minimumLigne, courante[j]);
+            }
+            if (minimumLigne > maximum) {
+                return maximum + 1;
+            }
+            int[] echange = precedente;
+            precedente = courante;
+            courante = echange;
+        }
+        return precedente[b.length()];
+    }
+
+    /**
+     * clé phonétique simplifiée pour le français : les graphies d'un même son sont ramenées à une seule
+     * (ph, qu, c dur, g doux...), les consonnes finales muettes sont retirées, puis les consonnes sont
+     * codées par groupe de sons proches et les voyelles ignorées après la première lettre
+     * @param mot un mot normalisé par {@link #mots(String)}
+     * @return la clé
+     */
+    static String cle(String mot) {
+        StringBuilder sons = new StringBuilder(mot.length());
+        for (int i = 0; i < mot.length(); i++) {
+            char c = mot.charAt(i);
+            char suivante = i + 1 < mot.length() ? mot.charAt(i + 1) : ' ';
+            switch (c) {
+                case 'p':
+                    if (suivante == 'h') {
+                        sons.append('f');
+                        i++;
+                    } else {
+                        sons.append('p');
+                    }
+                    break;
+                case 'q':
+                    sons.append('k');
+                    if (suivante == 'u') {
+                        i++;
+                    }
+                    break;
+                case 'c':
+                    if (suivante == 'h') {
+                        sons.append('x');
+                        i++;
+                    } else if (suivante == 'e' || suivante == 'i' || suivante == 'y') {
+                        sons.append('s');
+                    } else {
+                        sons.append('k');
+                    }
+                    break;
+                case 'g':
+                    if (suivante == 'e' || suivante == 'i' || suivante == 'y') {
+                        sons.append('j');
+                    } else {
+                        sons.append('g');
+                        if (suivante == 'u') {
+                            i++;
+                        }
+                    }
+                    break;
+                case 'h':
+                    break;
+                case 'w':
+                    sons.append('v');
+                    break;
+                case 'y':
+                    sons.append('i');
+                    break;
+                case 'z':
+                    sons.append('s');
+                    break;
+                default:
+                    sons.append(c);
+            }
+        }
+        //consonnes finales généralement muettes
+        while (sons.length() > 1 && "stdxe".indexOf(sons.charAt(sons.length() - 1)) >= 0) {
+            sons.setLength(sons.length() - 1);
+        }
+        if (sons.length() == 0) {
+            return "";
+        }
+        StringBuilder cle = new StringBuilder(LONGUEUR_CLE);
+        cle.append(sons.charAt(0));
+        char dernier = groupe(sons.charAt(0));
+        for (int i = 1; i < sons.length() && cle.length() < LONGUEUR_CLE; i++) {
+            char code = groupe(sons.charAt(i));
+            if (code != dernier && code != '0') {
+                cle.append(code);
+            }
+            dernier = code;
+        }
+        return cle.toString();
+    }
+
+    //groupe de sons d'une lettre, '0' pour les voyelles
+    private static char groupe(char c) {
+        switch (c) {
+            case 'b':
+            case 'p':
+                return '1';
+            case 'k':
+            case 'g':
+                return '2';
+            case 'd':
+            case 't':
+                return '3';
+            case 'l':
+                return '4';
+            case 'm':
+            case 'n':
+                return '5';
+            case 'r':
+                return '6';
+            case 'j':
+            case 'x':
+                return '7';
+            case 's':
+                return '8';
+            case 'f':
+            case 'v':
+                return '9';
+            default:
+                return Character.isLetter(c) ? '0' : c;
+        }
+    }
+
+    private static int[] copie(ListeIds ids) {
+        int[] resultat = new int[ids.taille()];
+        for (int i = 0; i < resultat.length; i++) {
+            resultat[i] = ids.get(i);
+        }
+        return resultat;
+    }
+}
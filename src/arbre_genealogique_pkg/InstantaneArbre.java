@@ -0,0 +1,222 @@
+package arbre_genealogique_pkg;
+
+/**
+ * Version figée d'un arbre généalogique, obtenue par {@link ArbreGenealogique#instantane()}. Elle ne change plus :
+ * un long traitement (export, statistiques) la parcourt sans verrou depuis un autre fil pendant que l'arbre
+ * continue d'être modifié. Les instantanés successifs partagent tout ce qui n'a pas changé entre eux
+ * (voir {@link VecteurPersistant}) : en prendre un ne coûte que les membres modifiés depuis le précédent
+ * @author aklam
+ */
+public final class InstantaneArbre {
+
+    private static final int[] SANS_IDS = new int[0];
+
+    private final VecteurPersistant<Fiche> membres;
+    //contenu des listes d'enfants et de freres-soeurs, désignées par numéro dans les fiches pour rester partagées.
+    //un numéro qu'aucune fiche ne désigne plus est vide
+    private final VecteurPersistant<int[]> listes;
+    //les cases au-delà sont celles de membres retirés depuis leur publication, vidées
+    private final int nombreMembres;
+    private final int racine;
+
+    InstantaneArbre(VecteurPersistant<Fiche> membres, VecteurPersistant<int[]> listes, int nombreMembres, int racine) {
+        this.membres = membres;
+        this.listes = listes;
+        this.nombreMembres = nombreMembres;
+        this.racine = racine;
+    }
+
+    /**
+     * @return le nombre de membres de l'arbre au moment de l'instantané
+     */
+    public int nombreMembres() {
+        return nombreMembres;
+    }
+
+    /**
+     * @return l'identifiant de la racine, -1 s'il n'y en a pas
+     */
+    public int racine() {
+        return racine;
+    }
+
+    public String prenoms(int id) {
+        return fiche(id).prenoms;
+    }
+
+    public String nom(int id) {
+        return fiche(id).nom;
+    }
+
+    public String nomDeBaseDeLaMariee(int id) {
+        return fiche(id).nomDeBaseDeLaMariee;
+    }
+
+    public MembreFamille.Genre genre(int id) {
+        return fiche(id).genre;
+    }
+
+    /**
+     * @return l'identifiant du pere, -1 s'il n'y en a pas
+     */
+    public int pere(int id) {
+        return fiche(id).idPere;
+    }
+
+    /**
+     * @return l'identifiant de la mere, -1 s'il n'y en a pas
+     */
+    public int mere(int id) {
+        return fiche(id).idMere;
+    }
+
+    /**
+     * @return l'identifiant du conjoint, -1 s'il n'y en a pas
+     */
+    public int conjoint(int id) {
+        return fiche(id).idConjoint;
+    }
+
+    /**
+     * @return une copie des identifiants des enfants
+     */
+    public int[] enfants(int id) {
+        return liste(fiche(id).enfants).clone();
+    }
+
+    /**
+     * @return une copie des identifiants des freresSoeurs
+     */
+    public int[] freresSoeurs(int id) {
+        return liste(fiche(id).freresSoeurs).clone();
+    }
+
+    /**
+     * construit un arbre dont les membres sont lus dans l'instantané au premier accès, pour lui appliquer
+     * les traitements écrits pour un arbre (export, enregistrement). C'est une copie : la modifier ne change
+     * ni l'instantané ni l'arbre d'origine
+     * @return l'arbre de l'instantané
+     */
+    public ArbreGenealogique arbre() {
+        RegistreMembres registre = new RegistreMembres(new Source());
+        return new ArbreGenealogique(registre, racine < 0 ? null : registre.get(racine));
+    }
+
+    /**
+     * @return la taille de la table des listes, numéros libérés compris
+     */
+    int nombreListes() {
+        return listes.taille();
+    }
+
+    private Fiche fiche(int id) {
+        if (id < 0 || id >= nombreMembres) {
+            throw new IllegalArgumentException("Membre inconnu: " + id);
+        }
+        return membres.get(id);
+    }
+
+    private int[] liste(int numero) {
+        return numero < 0 ? SANS_IDS : listes.get(numero);
+    }
+
+    /**
+     * État figé d'un membre. Ses listes sont des numéros dans la table des listes de l'instantané, -1 pour
+     * une liste vide
+     */
+    static final class Fiche {
+        private final String prenoms;
+        private final String nom;
+        private final String nomDeBaseDeLaMariee;
+        private final MembreFamille.Genre genre;
+        private final int idPere;
+        private final int idMere;
+        private final int idConjoint;
+        private final int enfants;
+        private final int freresSoeurs;
+
+        Fiche(MembreFamille membre, int enfants, int freresSoeurs) {
+            this.prenoms = membre.getPrenoms();
+            this.nom = membre.getNom();
+            this.nomDeBaseDeLaMariee = membre.getNomDeBaseDeLaMariee();
+            this.genre = membre.getGenre();
+            this.idPere = membre.idPere();
+            this.idMere = membre.idMere();
+            this.idConjoint = membre.idConjoint();
+            this.enfants = enfants;
+            this.freresSoeurs = freresSoeurs;
+        }
+
+        int numeroEnfants() {
+            return enfants;
+        }
+
+        int numeroFreresSoeurs() {
+            return freresSoeurs;
+        }
+    }
+
+    /**
+     * Les membres de l'instantané, construits à la demande pour le registre de {@link #arbre()}.
+     * Comme pour un fichier projeté, les membres chargés partagent leurs listes et les membres consultés non
+     */
+    private final class Source implements SourceMembres {
+        //listes déjà construites pour les membres chargés, par numéro
+        private final ListeIds[] chargees = new ListeIds[listes.taille()];
+
+        @Override
+        public int nombreMembres() {
+            return nombreMembres;
+        }
+
+        @Override
+        public MembreFamille charger(int id) {
+            return construire(id, true);
+        }
+
+        @Override
+        public MembreFamille consulter(int id) {
+            return construire(id, false);
+        }
+
+        @Override
+        public String champ(int id, RegistreMembres.Champ champ) {
+            Fiche fiche = membres.get(id);
+            switch (champ) {
+                case PRENOMS:
+                    return fiche.prenoms;
+                case NOM:
+                    return fiche.nom;
+                default:
+                    return fiche.nomDeBaseDeLaMariee;
+            }
+        }
+
+        private MembreFamille construire(int id, boolean garder) {
+            Fiche fiche = membres.get(id);
+            MembreFamille membre = MembreFamille.restaurer(fiche.prenoms, fiche.nom, fiche.nomDeBaseDeLaMariee,
+                    fiche.genre);
+            membre.restaurerLiens(fiche.idPere, fiche.idMere, fiche.idConjoint, liste(fiche.enfants, garder),
+                    liste(fiche.freresSoeurs, garder));
+            return membre;
+        }
+
+        private ListeIds liste(int numero, boolean garder) {
+            if (numero < 0) {
+                return null;
+            }
+            if (garder && chargees[numero] != null) {
+                return chargees[numero];
+            }
+            int[] ids = listes.get(numero);
+            ListeIds liste = new ListeIds(ids.length);
+            for (int id : ids) {
+                liste.ajouter(id);
+            }
+            if (garder) {
+                chargees[numero] = liste;
+            }
+            return liste;
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package arbre_genealogique_pkg;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des modifications d'un fichier .ft, écrit à côté de lui (arbre.ft.journal). Chaque modification
+ * faite par le {@link MoteurArbre} y est ajoutée avant d'être appliquée : création de la racine, ajout d'un
+ * membre lié, modification d'un nom ou du genre, retrait du dernier membre ajouté (annulation). Enregistrer n'écrit plus l'arbre entier mais une marque de
+ * validation forcée sur le disque : le coût ne dépend que des modifications faites depuis.
+ * <p>
+ * Structure du fichier :
+ * <pre>
+ *  "FTAJ" version, taille du fichier .ft sur 8 octets, CRC32 de ses 4 premiers et 4 derniers Kio
+ *  puis des enregistrements : longueur sur 4 octets, contenu (type puis champs, entiers en varint), CRC32
+ * </pre>
+ * À l'ouverture, seuls les enregistrements suivis d'une validation sont rejoués : une modification non
+ * enregistrée est perdue comme avant, et un enregistrement coupé par un arrêt brutal est ignoré.
+ * Un journal dont l'en-tête ne correspond pas au fichier .ft (fichier remplacé depuis) est ignoré.
+ * Le compactage réécrit l'arbre à côté, le renomme à la place du fichier .ft puis recommence le journal ;
+ * un arrêt entre les deux laisse un journal qui ne correspond plus, ou dont les enregistrements sont
+ * déjà dans l'arbre : les membres déjà créés ne sont pas recréés et les noms reprennent leur valeur finale
+ * @author aklam
+ */
+final class JournalArbre implements Closeable {
+
+    private static final byte[] MAGIQUE = {'F', 'T', 'A', 'J'};
+    //version 2 : retrait du dernier membre ajouté, pour l'annulation d'un ajout
+    private static final int VERSION = 2;
+    private static final int TAILLE_ENTETE = MAGIQUE.length + 1 + 8 + 4;
+
+    //parties du fichier .ft couvertes par l'empreinte, au début et à la fin
+    private static final int TAILLE_EMPREINTE = 4096;
+
+    //trois noms et quelques entiers : une longueur plus grande signale un journal corrompu
+    private static final int LONGUEUR_MAX = 1 << 20;
+
+    //le journal est compacté quand il dépasse le quart de l'arbre, et au moins cette taille
+    private static final long COMPACTAGE_MIN = 1L << 20;
+
+    //types d'enregistrements
+    private static final int RACINE = 1;
+    private static final int LIEN = 2;
+    private static final int PRENOMS = 3;
+    private static final int NOM = 4;
+    private static final int NOMDEBASEDELAMARIEE = 5;
+    private static final int GENRE = 6;
+    private static final int VALIDATION = 7;
+    private static final int RETRAIT = 8;
+
+    private final File fichier;
+    private final FileChannel canal;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer tampon = ByteBuffer.allocate(256);
+    //taille du fichier .ft au début du journal
+    private long tailleArbre;
+    //une écriture incomplète n'a pas pu être effacée : la suite du journal serait illisible
+    private boolean defaillant;
+
+    private JournalArbre(File fichier, FileChannel canal) {
+        this.fichier = fichier;
+        this.canal = canal;
+        this.tailleArbre = fichier.length();
+    }
+
+    /**
+     * @return le journal du fichier .ft
+     */
+    static File fichierJournal(File fichier) {
+        return new File(fichier.getPath() + ".journal");
+    }
+
+    /**
+     * rejoue sur l'arbre lu dans le fichier les modifications validées de son journal, sans modifier le journal
+     * @param fichier le fichier .ft dont l'arbre vient d'être lu
+     * @param moteur le moteur sur cet arbre, sans journal
+     * @return la position de la fin de la dernière validation, -1 s'il n'y a pas de journal valable
+     */
+    static long rejouer(File fichier, MoteurArbre moteur) throws IOException {
+        Path journal = fichierJournal(fichier).toPath();
+        if (!Files.exists(journal)) {
+            return -1;
+        }
+        //premier passage pour trouver la dernière validation, le second applique ce qui la précède
+        long fin = parcourir(journal, fichier, Long.MAX_VALUE, null);
+        if (fin > TAILLE_ENTETE) {
+            parcourir(journal, fichier, fin, moteur);
+        }
+        return fin;
+    }
+
+    /**
+     * ouvre le journal pour y ajouter des modifications. Les enregistrements qui suivent la dernière validation
+     * sont effacés ; un journal absent ou qui ne correspond plus au fichier est recommencé
+     * @param fichier le fichier .ft, dont l'arbre en mémoire doit avoir le contenu (après {@link #rejouer})
+     * @param fin la valeur rendue par {@link #rejouer}, -1 pour recommencer le journal
+     * @return le journal ouvert
+     */
+    static JournalArbre reprendre(File fichier, long fin) throws IOException {
+        FileChannel canal = FileChannel.open(fichierJournal(fichier).toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            JournalArbre journal = new JournalArbre(fichier, canal);
+            if (fin < 0) {
+                journal.recommencer();
+            } else {
+                canal.truncate(fin);
+                //un journal d'une version précédente reçoit des enregistrements de la version courante
+                canal.write(ByteBuffer.wrap(new byte[]{(byte) VERSION}), MAGIQUE.length);
+                canal.position(fin);
+            }
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true si le journal est celui de ce fichier .ft
+     */
+    boolean concerne(File autre) {
+        return normaliser(fichier).equals(normaliser(autre));
+    }
+
+    /**
+     * note la création de la racine, avant de l'ajouter à l'arbre
+     * @param nouvelId l'identifiant que la racine va recevoir
+     * @param racine la nouvelle racine, pas encore rattachée
+     */
+    void noterRacine(int nouvelId, MembreFamille racine) throws IOException {
+        commencer(RACINE);
+        ecrireVarint(nouvelId);
+        ecrireMembre(racine);
+        terminer();
+    }
+
+    /**
+     * note l'ajout d'un membre lié, avant de l'ajouter à l'arbre
+     * @param membre le membre existant
+     * @param lien le lien du nouveau membre avec le membre existant
+     * @param nouvelId l'identifiant que le nouveau membre va recevoir
+     * @param nouveauMembre le nouveau membre, pas encore rattaché
+     */
+    void noterLien(MembreFamille membre, MembreFamille.LienDeParente lien, int nouvelId,
+                   MembreFamille nouveauMembre) throws IOException {
+        commencer(LIEN);
+        ecrireVarint(membre.getId());
+        ecrireOctet(lien.ordinal());
+        ecrireVarint(nouvelId);
+        ecrireMembre(nouveauMembre);
+        terminer();
+    }
+
+    /**
+     * note la modification d'un nom, avant de l'appliquer
+     */
+    void noterChamp(MembreFamille membre, RegistreMembres.Champ champ, String valeur) throws IOException {
+        switch (champ) {
+            case PRENOMS:
+                commencer(PRENOMS);
+                break;
+            case NOM:
+                commencer(NOM);
+                break;
+            default:
+                commencer(NOMDEBASEDELAMARIEE);
+                break;
+        }
+        ecrireVarint(membre.getId());
+        ecrireChaine(valeur);
+        terminer();
+    }
+
+    /**
+     * note la modification du genre, avant de l'appliquer
+     */
+    void noterGenre(MembreFamille membre, MembreFamille.Genre genre) throws IOException {
+        commencer(GENRE);
+        ecrireVarint(membre.getId());
+        ecrireOctet(genre == null ? 0 : genre.ordinal() + 1);
+        terminer();
+    }
+
+    /**
+     * note le retrait du dernier membre ajouté, avant de l'appliquer
+     * @param membre le membre retiré
+     * @param racineChangee true si la racine redevient l'ancienne racine
+     * @param ancienneRacine l'identifiant de l'ancienne racine, -1 s'il n'y en avait pas
+     * @param etats les liens à rétablir sur les membres auxquels il avait été lié
+     */
+    void noterRetrait(MembreFamille membre, boolean racineChangee, int ancienneRacine,
+                      MembreFamille.EtatLiens[] etats) throws IOException {
+        commencer(RETRAIT);
+        ecrireVarint(membre.getId());
+        ecrireOctet(racineChangee ? 1 : 0);
+        if (racineChangee) {
+            ecrireVarint(ancienneRacine + 1);
+        }
+        ecrireVarint(etats.length);
+        //les identifiants absents (-1) sont écrits +1 pour rester positifs
+        for (MembreFamille.EtatLiens etat : etats) {
+            ecrireVarint(etat.id);
+            ecrireVarint(etat.idPere + 1);
+            ecrireVarint(etat.idMere + 1);
+            ecrireVarint(etat.idConjoint + 1);
+            ecrireVarint(etat.enfants + 1);
+            ecrireVarint(etat.freresSoeurs + 1);
+        }
+        terminer();
+    }
+
+    /**
+     * valide les modifications notées jusqu'ici et attend qu'elles soient sur le disque
+     */
+    void valider() throws IOException {
+        commencer(VALIDATION);
+        terminer();
+        canal.force(false);
+    }
+
+    /**
+     * @return true si le journal est devenu assez gros pour que réécrire l'arbre vaille la peine
+     */
+    boolean compactageConseille() throws IOException {
+        return canal.size() > Math.max(COMPACTAGE_MIN, tailleArbre / 4);
+    }
+
+    /**
+     * réécrit l'arbre à la place du fichier .ft puis recommence le journal
+     * @param arbre l'arbre, qui contient toutes les modifications du journal
+     * @param codec le codec du fichier réécrit
+     * @param suivi reçoit l'avancement de l'écriture de l'arbre
+     */
+    void compacter(ArbreGenealogique arbre, CodecBlocs codec, SuiviProgression suivi) throws IOException {
+        FichierArbre.enregistrer(arbre, fichier, codec, suivi);
+        tailleArbre = fichier.length();
+        recommencer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    /**
+     * lit les enregistrements jusqu'à la limite, en appliquant ceux qui ne sont pas des validations
+     * @param moteur le moteur sur lequel appliquer les modifications, null pour seulement lire
+     * @return la position de la fin de la dernière validation lue, -1 si le journal ne correspond pas au fichier
+     */
+    private static long parcourir(Path journal, File fichier, long limite, MoteurArbre moteur) throws IOException {
+        try (EntreeBinaire entree = new EntreeBinaire(FileChannel.open(journal, StandardOpenOption.READ))) {
+            if (!lireEntete(entree, fichier)) {
+                return -1;
+            }
+            long fin = entree.position();
+            byte[] contenu = new byte[256];
+            CRC32 controle = new CRC32();
+            while (entree.position() < limite) {
+                int longueur;
+                try {
+                    longueur = lireInt(entree);
+                    if (longueur <= 0 || longueur > LONGUEUR_MAX) {
+                        break;
+                    }
+                    if (longueur > contenu.length) {
+                        contenu = new byte[Math.max(longueur, contenu.length * 2)];
+                    }
+                    entree.lireOctets(contenu, 0, longueur);
+                    controle.reset();
+                    controle.update(contenu, 0, longueur);
+                    if ((int) controle.getValue() != lireInt(entree)) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    //enregistrement coupé par un arrêt brutal
+                    break;
+                }
+                if (contenu[0] == VALIDATION) {
+                    fin = entree.position();
+                } else if (moteur != null) {
+                    appliquer(ByteBuffer.wrap(contenu, 0, longueur), moteur);
+                }
+            }
+            return fin;
+        }
+    }
+
+    /**
+     * applique un enregistrement par les mêmes méthodes du moteur que la modification d'origine.
+     * Une modification refusée à l'origine (IllegalArgumentException) l'est de nouveau, sans autre effet
+     */
+    private static void appliquer(ByteBuffer contenu, MoteurArbre moteur) throws IOException {
+        int type = contenu.get();
+        int taille = moteur.getArbre().nombreMembres();
+        try {
+            switch (type) {
+                case RACINE: {
+                    int nouvelId = lireVarint(contenu);
+                    String prenoms = lireChaine(contenu);
+                    String nom = lireChaine(contenu);
+                    String nomDeBaseDeLaMariee = lireChaine(contenu);
+                    MembreFamille.Genre genre = lireGenre(contenu);
+                    if (nouveau(nouvelId, taille)) {
+                        moteur.definirRacine(prenoms, nom, nomDeBaseDeLaMariee, genre);
+                    }
+                    return;
+                }
+                case LIEN: {
+                    int id = membre(lireVarint(contenu), taille);
+                    int lien = contenu.get();
+                    MembreFamille.LienDeParente[] liens = MembreFamille.LienDeParente.values();
+                    if (lien < 0 || lien >= liens.length) {
+                        throw new IOException("Journal corrompu: lien inconnu");
+                    }
+                    int nouvelId = lireVarint(contenu);
+                    String prenoms = lireChaine(contenu);
+                    String nom = lireChaine(contenu);
+                    String nomDeBaseDeLaMariee = lireChaine(contenu);
+                    MembreFamille.Genre genre = lireGenre(contenu);
+                    if (nouveau(nouvelId, taille)) {
+                        moteur.ajouterLien(moteur.getMembre(id), liens[lien], prenoms, nom, nomDeBaseDeLaMariee, genre);
+                    }
+                    return;
+                }
+                case PRENOMS: {
+                    MembreFamille membre = moteur.getMembre(membre(lireVarint(contenu), taille));
+                    moteur.modifierPrenoms(membre, lireChaine(contenu));
+                    return;
+                }
+                case NOM: {
+                    MembreFamille membre = moteur.getMembre(membre(lireVarint(contenu), taille));
+                    moteur.modifierNom(membre, lireChaine(contenu));
+                    return;
+                }
+                case NOMDEBASEDELAMARIEE: {
+                    MembreFamille membre = moteur.getMembre(membre(lireVarint(contenu), taille));
+                    moteur.modifierNomDeBaseDeLaMariee(membre, lireChaine(contenu));
+                    return;
+                }
+                case GENRE: {
+                    MembreFamille membre = moteur.getMembre(membre(lireVarint(contenu), taille));
+                    moteur.modifierGenre(membre, lireGenre(contenu));
+                    return;
+                }
+                case RETRAIT: {
+                    int id = membre(lireVarint(contenu), taille);
+                    boolean racineChangee = octet(contenu) != 0;
+                    int ancienneRacine = racineChangee ? lireVarint(contenu) - 1 : -1;
+                    MembreFamille.EtatLiens[] etats = new MembreFamille.EtatLiens[lireVarint(contenu)];
+                    if (etats.length > 2) {
+                        throw new IOException("Journal corrompu: retrait trop long");
+                    }
+                    for (int i = 0; i < etats.length; i++) {
+                        etats[i] = new MembreFamille.EtatLiens(membre(lireVarint(contenu), taille),
+                                lireVarint(contenu) - 1, lireVarint(contenu) - 1, lireVarint(contenu) - 1,
+                                lireVarint(contenu) - 1, lireVarint(contenu) - 1);
+                    }
+                    moteur.retirerMembre(moteur.getMembre(id), racineChangee, ancienneRacine, etats);
+                    return;
+                }
+                default:
+                    throw new IOException("Journal corrompu: enregistrement inconnu");
+            }
+        } catch (IllegalArgumentException e) {
+            //la modification d'origine a échoué de la même façon
+        }
+    }
+
+    //un membre déjà créé vient d'un journal compacté juste avant un arrêt : il n'est pas recréé
+    private static boolean nouveau(int nouvelId, int taille) throws IOException {
+        if (nouvelId > taille) {
+            throw new IOException("Journal incohérent: membre " + nouvelId + " attendu après " + taille + " membres");
+        }
+        return nouvelId == taille;
+    }
+
+    private static int membre(int id, int taille) throws IOException {
+        if (id >= taille) {
+            throw new IOException("Journal incohérent: membre inconnu " + id);
+        }
+        return id;
+    }
+
+    private static boolean lireEntete(EntreeBinaire entree, File fichier) throws IOException {
+        byte[] entete = new byte[TAILLE_ENTETE];
+        try {
+            entree.lireOctets(entete, 0, entete.length);
+        } catch (EOFException e) {
+            return false;
+        }
+        ByteBuffer lu = ByteBuffer.wrap(entete);
+        for (byte octet : MAGIQUE) {
+            if (lu.get() != octet) {
+                return false;
+            }
+        }
+        int version = lu.get() & 0xFF;
+        if (version > VERSION) {
+            throw new IOException("Version de journal non prise en charge: " + version);
+        }
+        return lu.getLong() == fichier.length() && lu.getInt() == empreinte(fichier);
+    }
+
+    /**
+     * @return le CRC32 du début et de la fin du fichier, qui avec sa taille identifie un contenu
+     * sans le lire en entier
+     */
+    private static int empreinte(File fichier) throws IOException {
+        CRC32 empreinte = new CRC32();
+        try (FileChannel canal = FileChannel.open(fichier.toPath(), StandardOpenOption.READ)) {
+            long taille = canal.size();
+            int n = (int) Math.min(TAILLE_EMPREINTE, taille);
+            ByteBuffer octets = ByteBuffer.allocate(n);
+            lire(canal, octets, 0);
+            empreinte.update(octets.array(), 0, n);
+            octets.clear();
+            lire(canal, octets, taille - n);
+            empreinte.update(octets.array(), 0, n);
+        }
+        return (int) empreinte.getValue();
+    }
+
+    private static void lire(FileChannel canal, ByteBuffer octets, long position) throws IOException {
+        while (octets.hasRemaining()) {
+            if (canal.read(octets, position + octets.position()) < 0) {
+                throw new EOFException("Fin de fichier inattendue");
+            }
+        }
+    }
+
+    private static int lireInt(EntreeBinaire entree) throws IOException {
+        int valeur = 0;
+        for (int i = 0; i < 4; i++) {
+            valeur = (valeur << 8) | entree.lireOctet();
+        }
+        return valeur;
+    }
+
+    private static int lireVarint(ByteBuffer contenu) throws IOException {
+        int valeur = 0;
+        for (int decalage = 0; decalage < 32; decalage += 7) {
+            int octet = octet(contenu);
+            valeur |= (octet & 0x7F) << decalage;
+            if ((octet & 0x80) == 0) {
+                return valeur;
+            }
+        }
+        throw new IOException("Journal corrompu: entier trop long");
+    }
+
+    private static String lireChaine(ByteBuffer contenu) throws IOException {
+        int longueur = lireVarint(contenu);
+        if (longueur < 0 || longueur > contenu.remaining()) {
+            throw new IOException("Journal corrompu: chaîne tronquée");
+        }
+        String chaine = new String(contenu.array(), contenu.arrayOffset() + contenu.position(), longueur,
+                StandardCharsets.UTF_8);
+        contenu.position(contenu.position() + longueur);
+        return chaine;
+    }
+
+    private static MembreFamille.Genre lireGenre(ByteBuffer contenu) throws IOException {
+        int genre = octet(contenu);
+        MembreFamille.Genre[] genres = MembreFamille.Genre.values();
+        if (genre > genres.length) {
+            throw new IOException("Journal corrompu: genre inconnu");
+        }
+        return genre == 0 ? null : genres[genre - 1];
+    }
+
+    private static int octet(ByteBuffer contenu) throws IOException {
+        if (!contenu.hasRemaining()) {
+            throw new IOException("Journal corrompu: enregistrement tronqué");
+        }
+        return contenu.get() & 0xFF;
+    }
+
+    private static Path normaliser(File fichier) {
+        return fichier.toPath().toAbsolutePath().normalize();
+    }
+
+    private void recommencer() throws IOException {
+        ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE);
+        entete.put(MAGIQUE);
+        entete.put((byte) VERSION);
+        entete.putLong(fichier.length());
+        entete.putInt(empreinte(fichier));
+        entete.flip();
+        canal.truncate(0);
+        canal.position(0);
+        while (entete.hasRemaining()) {
+            canal.write(entete);
+        }
+        canal.force(false);
+        defaillant = false;
+    }
+
+    private void commencer(int type) throws IOException {
+        if (defaillant) {
+            throw new IOException("Journal inutilisable, l'arbre doit être enregistré sous un autre nom");
+        }
+        tampon.clear();
+        //la longueur est écrite à la fin
+        tampon.position(4);
+        tampon.put((byte) type);
+    }
+
+    //écrit l'enregistrement en une fois ; en cas d'échec, l'écriture partielle est effacée
+    private void terminer() throws IOException {
+        int longueur = tampon.position() - 4;
+        crc.reset();
+        crc.update(tampon.array(), 4, longueur);
+        reserver(4);
+        tampon.putInt((int) crc.getValue());
+        tampon.putInt(0, longueur);
+        tampon.flip();
+        long debut = canal.position();
+        try {
+            while (tampon.hasRemaining()) {
+                canal.write(tampon);
+            }
+        } catch (IOException e) {
+            try {
+                canal.truncate(debut);
+                canal.position(debut);
+            } catch (IOException effacement) {
+                defaillant = true;
+            }
+            throw e;
+        }
+    }
+
+    private void ecrireMembre(MembreFamille membre) {
+        ecrireChaine(membre.getPrenoms());
+        ecrireChaine(membre.getNom());
+        ecrireChaine(membre.getNomDeBaseDeLaMariee());
+        ecrireOctet(membre.getGenre() == null ? 0 : membre.getGenre().ordinal() + 1);
+    }
+
+    private void ecrireOctet(int octet) {
+        reserver(1);
+        tampon.put((byte) octet);
+    }
+
+    private void ecrireVarint(int valeur) {
+        while ((valeur & ~0x7F) != 0) {
+            ecrireOctet((valeur & 0x7F) | 0x80);
+            valeur >>>= 7;
+        }
+        ecrireOctet(valeur);
+    }
+
+    private void ecrireChaine(String chaine) {
+        byte[] octets = chaine.getBytes(StandardCharsets.UTF_8);
+        ecrireVarint(octets.length);
+        reserver(octets.length);
+        tampon.put(octets);
+    }
+
+    private void reserver(int octets) {
+        if (tampon.remaining() < octets) {
+            ByteBuffer agrandi = ByteBuffer.allocate(Math.max(tampon.capacity() * 2, tampon.position() + octets));
+            tampon.flip();
+            agrandi.put(tampon);
+            tampon = agrandi;
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package arbre_genealogique_pkg;
 
+import java.awt.GraphicsEnvironment;
+
 /**
- * Classe contenant la fonction main
+ * Classe contenant la fonction main.
+ * Sans argument, lance l'interface graphique ; avec des arguments, ou sur une machine sans affichage,
+ * exécute une commande de {@link LigneDeCommande}
  * @author Aklam
  */
 public class Lancement {
 
     public static void main(String[] args) {
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            int code = LigneDeCommande.executer(args);
+            if (code != 0) {
+                System.exit(code);
+            }
+            return;
+        }
         ArbreGUI treeGUI = new ArbreGUI();
     }
 }
 
-
@@ -0,0 +1,73 @@
+package arbre_genealogique_pkg;
+
+/**
+ * Résultat du calcul du lien de parenté entre deux membres A et B : le nom du lien ("cousine germaine",
+ * "demi-frère", "beau-père"...) vu depuis A, et les distances jusqu'à l'ancêtre commun le plus proche
+ * @author aklam
+ */
+public final class LienParente {
+
+    private final String libelle;
+    private final int generationsA;
+    private final int generationsB;
+    private final boolean demi;
+    private final boolean parAlliance;
+    private final MembreFamille ancetreCommun;
+
+    LienParente(String libelle, int generationsA, int generationsB, boolean demi, boolean parAlliance,
+                MembreFamille ancetreCommun) {
+        this.libelle = libelle;
+        this.generationsA = generationsA;
+        this.generationsB = generationsB;
+        this.demi = demi;
+        this.parAlliance = parAlliance;
+        this.ancetreCommun = ancetreCommun;
+    }
+
+    /**
+     * @return le nom du lien : A est le (la) ... de B
+     */
+    public String getLibelle() {
+        return libelle;
+    }
+
+    /**
+     * @return le nombre de générations entre A et l'ancêtre commun, -1 sans ancêtre commun
+     */
+    public int getGenerationsA() {
+        return generationsA;
+    }
+
+    /**
+     * @return le nombre de générations entre B et l'ancêtre commun, -1 sans ancêtre commun
+     */
+    public int getGenerationsB() {
+        return generationsB;
+    }
+
+    /**
+     * @return true si A et B ne descendent que d'un seul des deux membres du couple ancêtre
+     */
+    public boolean estDemi() {
+        return demi;
+    }
+
+    /**
+     * @return true si le lien passe par un conjoint
+     */
+    public boolean estParAlliance() {
+        return parAlliance;
+    }
+
+    /**
+     * @return l'un des ancêtres communs les plus proches, null s'il n'y en a pas
+     */
+    public MembreFamille getAncetreCommun() {
+        return ancetreCommun;
+    }
+
+    @Override
+    public String toString() {
+        return libelle;
+    }
+}
@@ -0,0 +1,396 @@
+package arbre_genealogique_pkg;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Mode ligne de commande de {@link Lancement}, pour les traitements par lots sans affichage.
+ * Les membres sont écrits une ligne chacun, champs séparés par des tabulations :
+ * identifiant, prenoms, nom, nom de base de la mariée, genre
+ * @author aklam
+ */
+final class LigneDeCommande {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Utilisation :",
+            "  info <fichier>                          nombre de membres et personne racine",
+            "  memoire <fichier>                       mémoire des noms, partagés ou non entre les membres",
+            "  chercher <fichier> <nom>                membres portant ce nom ou ces prenoms",
+            "  rechercher <fichier> <texte>            recherche approchée (début de mot, accents, fautes)",
+            "  petits-enfants <fichier> <id>           petits-enfants d'un membre",
+            "  descendants <fichier> <id> <profondeur> descendants d'un membre",
+            "  ancetres <fichier> <id>                 tous les ancêtres d'un membre",
+            "  generation <fichier> <id>               génération d'un membre (0 sans parent connu)",
+            "  est-ancetre <fichier> <id> <id>         oui si le premier membre est un ancêtre du second",
+            "  lien <fichier> <id> <id>                lien de parenté du premier membre vers le second",
+            "  verifier <fichier>                      vérifie la cohérence des liens de tout l'arbre",
+            "  statistiques <fichier>                  générations, genres, noms les plus portés, enfants par couple",
+            "  convertir <source> <destination> [codec]",
+            "                                          réécrit un fichier au format binaire actuel, compressé",
+            "                                          si le codec est deflate (défaut : celui de la source)",
+            "  importer-gedcom <gedcom> <destination>  convertit un fichier GEDCOM (UTF-8) en fichier .ft",
+            "  exporter-gedcom <fichier> <gedcom>      exporte l'arbre au format GEDCOM (UTF-8)",
+            "  exporter-csv <fichier> <csv>            exporte l'arbre au format CSV (UTF-8), une ligne par membre",
+            "  generer <destination> <generations> [ramification] [taux-conjoint] [fratrie-max] [graine]",
+            "                                          écrit un arbre de test reproductible (défauts : 2 0.9 6 1)",
+            "  executer <fichier> [script]             exécute les commandes du script (ou de l'entrée standard)",
+            "",
+            "Commandes d'un script, une par ligne, champs séparés par ';' :",
+            "  racine;prenoms;nom;genre",
+            "  ajouter;id;lien;prenoms;nom;genre       lien : PERE, MERE, ENFANT, CONJOINT, FRERESOEUR",
+            "  nom;id;nom  |  prenoms;id;prenoms  |  mariee;id;nom",
+            "  afficher;id",
+            "  enregistrer[;fichier]                   sans fichier, valide le journal du fichier de l'arbre",
+            "Les lignes vides et celles commençant par # sont ignorées. Les modifications d'un fichier existant",
+            "sont notées dans son journal (<fichier>.journal) ; une modification non enregistrée est abandonnée.");
+
+    //nombre maximal de résultats d'une recherche approchée
+    private static final int LIMITE_RECHERCHE = 100;
+
+    private final PrintStream sortie;
+
+    private LigneDeCommande(PrintStream sortie) {
+        this.sortie = sortie;
+    }
+
+    /**
+     * exécute une commande
+     * @param args la commande et ses arguments
+     * @return le code de sortie du programme, 0 en cas de succès
+     */
+    static int executer(String[] args) {
+        PrintStream sortie;
+        try {
+            //sortie tamponnée : les traitements par lots écrivent beaucoup de lignes
+            sortie = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                    false, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            new LigneDeCommande(sortie).lancer(args);
+            return 0;
+        } catch (IllegalArgumentException | IOException e) {
+            sortie.flush();
+            System.err.println("Erreur: " + e.getMessage());
+            return 1;
+        } catch (UncheckedIOException e) {
+            //source projetée illisible ou journal impossible à écrire : rapportée comme son IOException
+            sortie.flush();
+            System.err.println("Erreur: " + e.getCause().getMessage());
+            return 1;
+        } catch (RuntimeException e) {
+            //fichier incohérent ou erreur imprévue : un message et un code d'erreur plutôt qu'une trace de pile
+            sortie.flush();
+            System.err.println("Erreur: " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            return 1;
+        } finally {
+            sortie.flush();
+        }
+    }
+
+    private void lancer(String[] args) throws IOException {
+        if (args.length == 0 || args[0].equals("aide")) {
+            sortie.println(USAGE);
+            return;
+        }
+        switch (args[0]) {
+            case "info":
+                verifierArguments(args, 2);
+                info(MoteurArbre.ouvrir(new File(args[1])));
+                break;
+            case "memoire":
+                verifierArguments(args, 2);
+                memoire(MoteurArbre.ouvrir(new File(args[1])));
+                break;
+            case "chercher":
+                verifierArguments(args, 3);
+                chercher(MoteurArbre.ouvrir(new File(args[1])), args[2]);
+                break;
+            case "rechercher":
+                verifierArguments(args, 3);
+                afficher(MoteurArbre.ouvrir(new File(args[1])).rechercher(args[2], LIMITE_RECHERCHE));
+                break;
+            case "petits-enfants": {
+                verifierArguments(args, 3);
+                MoteurArbre moteur = MoteurArbre.ouvrir(new File(args[1]));
+                afficher(moteur.petitsEnfants(moteur.getMembre(entier(args[2]))));
+                break;
+            }
+            case "descendants": {
+                verifierArguments(args, 4);
+                MoteurArbre moteur = MoteurArbre.ouvrir(new File(args[1]));
+                afficher(moteur.descendants(moteur.getMembre(entier(args[2])), entier(args[3])));
+                break;
+            }
+            case "ancetres": {
+                verifierArguments(args, 3);
+                MoteurArbre moteur = MoteurArbre.ouvrir(new File(args[1]));
+                afficher(moteur.ancetres(moteur.getMembre(entier(args[2]))));
+                break;
+            }
+            case "generation": {
+                verifierArguments(args, 3);
+                MoteurArbre moteur = MoteurArbre.ouvrir(new File(args[1]));
+                sortie.println(moteur.generation(moteur.getMembre(entier(args[2]))));
+                break;
+            }
+            case "est-ancetre": {
+                verifierArguments(args, 4);
+                MoteurArbre moteur = MoteurArbre.ouvrir(new File(args[1]));
+                boolean ancetre = moteur.estAncetre(moteur.getMembre(entier(args[2])), moteur.getMembre(entier(args[3])));
+                sortie.println(ancetre ? "oui" : "non");
+                break;
+            }
+            case "lien": {
+                verifierArguments(args, 4);
+                MoteurArbre moteur = MoteurArbre.ouvrir(new File(args[1]));
+                sortie.println(moteur.lien(moteur.getMembre(entier(args[2])), moteur.getMembre(entier(args[3]))));
+                break;
+            }
+            case "verifier": {
+                verifierArguments(args, 2);
+                RapportVerification rapport = MoteurArbre.ouvrir(new File(args[1])).verifier();
+                sortie.println(rapport);
+                if (!rapport.estValide()) {
+                    throw new IllegalArgumentException(rapport.total() + " incohérence(s) dans " + args[1]);
+                }
+                break;
+            }
+            case "statistiques":
+                verifierArguments(args, 2);
+                sortie.println(MoteurArbre.ouvrir(new File(args[1])).statistiques());
+                break;
+            case "convertir": {
+                if (args.length != 3 && args.length != 4) {
+                    throw new IllegalArgumentException("Nombre d'arguments incorrect pour convertir");
+                }
+                MoteurArbre moteur = MoteurArbre.ouvrir(new File(args[1]));
+                if (args.length == 4) {
+                    moteur.choisirCodec(codec(args[3]));
+                }
+                moteur.enregistrer(new File(args[2]));
+                break;
+            }
+            case "importer-gedcom": {
+                verifierArguments(args, 3);
+                ImportGedcom.Bilan bilan = ImportGedcom.importer(new File(args[1]), SuiviProgression.AUCUN);
+                new MoteurArbre(bilan.arbre).enregistrer(new File(args[2]));
+                sortie.println(bilan);
+                break;
+            }
+            case "exporter-gedcom":
+                verifierArguments(args, 3);
+                MoteurArbre.ouvrir(new File(args[1])).exporterGedcom(new File(args[2]));
+                break;
+            case "exporter-csv":
+                verifierArguments(args, 3);
+                MoteurArbre.ouvrir(new File(args[1])).exporterCsv(new File(args[2]));
+                break;
+            case "generer": {
+                if (args.length < 3 || args.length > 7) {
+                    throw new IllegalArgumentException("Nombre d'arguments incorrect pour generer");
+                }
+                GenerateurArbre generateur = new GenerateurArbre(entier(args[2]),
+                        args.length > 3 ? decimal(args[3]) : 2.0, args.length > 4 ? decimal(args[4]) : 0.9,
+                        args.length > 5 ? entier(args[5]) : 6, args.length > 6 ? entier(args[6]) : 1);
+                generateur.genererFichier(new File(args[1]));
+                sortie.println("membres\t" + generateur.taille());
+                break;
+            }
+            case "executer":
+                if (args.length != 2 && args.length != 3) {
+                    throw new IllegalArgumentException("Nombre d'arguments incorrect pour executer");
+                }
+                executerScript(new File(args[1]), args.length == 3 ? new File(args[2]) : null);
+                break;
+            default:
+                throw new IllegalArgumentException("Commande inconnue: " + args[0] + System.lineSeparator() + USAGE);
+        }
+    }
+
+    private void info(MoteurArbre moteur) {
+        sortie.println("membres\t" + moteur.getArbre().nombreMembres());
+        if (moteur.getArbre().hasRoot()) {
+            sortie.print("racine\t");
+            afficher(moteur.getArbre().getRoot());
+        }
+    }
+
+    private void memoire(MoteurArbre moteur) {
+        ReserveNoms.Bilan bilan = ReserveNoms.mesurer(moteur.getArbre().getRegistre());
+        sortie.println("noms\t" + bilan.references());
+        sortie.println("distincts\t" + bilan.distinctes());
+        sortie.println("octets\t" + bilan.octets());
+        sortie.println("octets sans partage\t" + bilan.octetsSansPartage());
+    }
+
+    private void chercher(MoteurArbre moteur, String texte) {
+        List<MembreFamille> parNom = moteur.trouverParNom(texte);
+        afficher(parNom);
+        for (MembreFamille membre : moteur.trouverParPrenoms(texte)) {
+            //un membre dont le nom et les prenoms sont identiques n'est affiché qu'une fois
+            if (!parNom.contains(membre)) {
+                afficher(membre);
+            }
+        }
+    }
+
+    /**
+     * exécute un script de commandes sur un arbre. Le fichier est créé s'il n'existe pas encore,
+     * sinon ses modifications sont journalisées et enregistrer ne fait que valider le journal
+     */
+    private void executerScript(File fichier, File script) throws IOException {
+        MoteurArbre moteur = fichier.exists() ? MoteurArbre.ouvrirJournalise(fichier) : new MoteurArbre();
+        try (BufferedReader lecteur = script == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(script.toPath(), StandardCharsets.UTF_8)) {
+            String ligne;
+            int numero = 0;
+            while ((ligne = lecteur.readLine()) != null) {
+                numero++;
+                ligne = ligne.trim();
+                if (ligne.isEmpty() || ligne.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    executerLigne(moteur, fichier, ligne.split(";", -1));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("ligne " + numero + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            moteur.fermerJournal();
+        }
+    }
+
+    private void executerLigne(MoteurArbre moteur, File fichier, String[] champs) throws IOException {
+        switch (champs[0].trim().toLowerCase(Locale.ROOT)) {
+            case "racine":
+                verifierChamps(champs, 4);
+                afficher(moteur.definirRacine(champs[1], champs[2], genre(champs[3])));
+                break;
+            case "ajouter":
+                verifierChamps(champs, 6);
+                afficher(moteur.ajouterLien(moteur.getMembre(entier(champs[1])), lien(champs[2]),
+                        champs[3], champs[4], genre(champs[5])));
+                break;
+            case "nom":
+                verifierChamps(champs, 3);
+                moteur.modifierNom(moteur.getMembre(entier(champs[1])), champs[2]);
+                break;
+            case "prenoms":
+                verifierChamps(champs, 3);
+                moteur.modifierPrenoms(moteur.getMembre(entier(champs[1])), champs[2]);
+                break;
+            case "mariee":
+                verifierChamps(champs, 3);
+                moteur.modifierNomDeBaseDeLaMariee(moteur.getMembre(entier(champs[1])), champs[2]);
+                break;
+            case "afficher":
+                verifierChamps(champs, 2);
+                afficher(moteur.getMembre(entier(champs[1])));
+                break;
+            case "enregistrer":
+                if (champs.length > 2) {
+                    throw new IllegalArgumentException("Nombre de champs incorrect pour enregistrer");
+                }
+                if (champs.length == 2) {
+                    moteur.enregistrer(new File(champs[1].trim()));
+                } else {
+                    moteur.enregistrer(fichier);
+                    moteur.journaliser(fichier);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Commande inconnue: " + champs[0]);
+        }
+    }
+
+    private void afficher(List<MembreFamille> membres) {
+        for (MembreFamille membre : membres) {
+            afficher(membre);
+        }
+    }
+
+    private void afficher(MembreFamille membre) {
+        sortie.print(membre.getId());
+        sortie.print('\t');
+        sortie.print(membre.getPrenoms());
+        sortie.print('\t');
+        sortie.print(membre.getNom());
+        sortie.print('\t');
+        sortie.print(membre.getNomDeBaseDeLaMariee() == null ? "" : membre.getNomDeBaseDeLaMariee());
+        sortie.print('\t');
+        sortie.println(membre.getGenre() == null ? "" : membre.getGenre().name());
+    }
+
+    private static void verifierArguments(String[] args, int attendus) {
+        if (args.length != attendus) {
+            throw new IllegalArgumentException("Nombre d'arguments incorrect pour " + args[0]);
+        }
+    }
+
+    private static void verifierChamps(String[] champs, int attendus) {
+        if (champs.length != attendus) {
+            throw new IllegalArgumentException("Nombre de champs incorrect pour " + champs[0]);
+        }
+    }
+
+    private static int entier(String valeur) {
+        try {
+            return Integer.parseInt(valeur.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Nombre invalide: " + valeur);
+        }
+    }
+
+    private static double decimal(String valeur) {
+        try {
+            return Double.parseDouble(valeur.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Nombre invalide: " + valeur);
+        }
+    }
+
+    private static MembreFamille.Genre genre(String valeur) {
+        switch (valeur.trim().toUpperCase(Locale.ROOT)) {
+            case "M":
+            case "MASCULIN":
+                return MembreFamille.Genre.MASCULIN;
+            case "F":
+            case "FEMININ":
+                return MembreFamille.Genre.FEMININ;
+            default:
+                throw new IllegalArgumentException("Genre inconnu: " + valeur);
+        }
+    }
+
+    private static CodecBlocs codec(String valeur) {
+        try {
+            return CodecBlocs.valueOf(valeur.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Codec inconnu: " + valeur);
+        }
+    }
+
+    private static MembreFamille.LienDeParente lien(String valeur) {
+        try {
+            return MembreFamille.LienDeParente.valueOf(valeur.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Lien de parenté inconnu: " + valeur);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package arbre_genealogique_pkg;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Liste compacte d'identifiants de membres, stockée dans un tableau d'entiers qui grandit à la demande.
+ * Elle remplace les LinkedList de membres : un lien coûte 4 octets au lieu d'un nœud de liste.
+ * Au-delà de quelques éléments, une table de hachage à adressage ouvert rend le test de présence O(1).
+ * Le tableau n'est alloué qu'au premier ajout : une liste vide ne coûte que son objet
+ * @author aklam
+ */
+final class ListeIds implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    //en dessous de ce seuil, un parcours linéaire du tableau est plus rapide que le hachage
+    private static final int SEUIL_INDEX = 8;
+
+    private static final int[] SANS_IDS = new int[0];
+
+    /**
+     * liste vide commune, en lecture seule, rendue pour les liens d'un membre qui n'a encore ni enfant
+     * ni frere-soeur (voir {@link MembreFamille#idsEnfants()})
+     */
+    static final ListeIds VIDE = new ListeIds();
+
+    private int[] ids;
+    private int taille;
+
+    //table de hachage des identifiants (stockés +1, 0 signifie case vide), construite seulement au-delà du seuil
+    private transient int[] index;
+    //un identifiant indexé figure plusieurs fois dans la liste : l'index ne peut plus être défait identifiant par identifiant
+    private transient boolean doublons;
+
+    ListeIds() {
+        this.ids = SANS_IDS;
+        this.taille = 0;
+    }
+
+    /**
+     * @param capacite le nombre d'identifiants prévus, pour une liste lue dont on connaît la taille
+     */
+    ListeIds(int capacite) {
+        this.ids = capacite == 0 ? SANS_IDS : new int[capacite];
+        this.taille = 0;
+    }
+
+    /**
+     * @return le nombre d'identifiants de la liste
+     */
+    int taille() {
+        return taille;
+    }
+
+    boolean estVide() {
+        return taille == 0;
+    }
+
+    /**
+     * @param i la position
+     * @return l'identifiant à la position i
+     */
+    int get(int i) {
+        if (i < 0 || i >= taille) {
+            throw new IndexOutOfBoundsException("Position " + i + " hors de la liste de taille " + taille);
+        }
+        return ids[i];
+    }
+
+    /**
+     * copie les identifiants sans verrou : pendant une modification la copie peut être incohérente,
+     * elle ne vaut qu'après validation du verrou qui protège la liste (voir {@link ArbreConcurrent})
+     * @return les identifiants de la liste
+     */
+    int[] copie() {
+        int[] lus = ids;
+        return Arrays.copyOf(lus, Math.min(taille, lus.length));
+    }
+
+    /**
+     * @param id l'identifiant recherché
+     * @return true si la liste contient l'identifiant
+     */
+    boolean contient(int id) {
+        if (taille <= SEUIL_INDEX) {
+            for (int i = 0; i < taille; i++) {
+                if (ids[i] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (index == null) {
+            reconstruireIndex();
+        }
+        int masque = index.length - 1;
+        for (int i = melanger(id) & masque; index[i] != 0; i = (i + 1) & masque) {
+            if (index[i] == id + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ajoute un identifiant à la fin de la liste, même s'il y est déjà
+     * @param id l'identifiant à ajouter
+     */
+    void ajouter(int id) {
+        verifierModifiable();
+        if (taille == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(2, taille * 2));
+        }
+        ids[taille++] = id;
+        if (index != null) {
+            if (taille * 2 > index.length) {
+                reconstruireIndex();
+            } else {
+                insererDansIndex(id);
+            }
+        }
+    }
+
+    /**
+     * ajoute un identifiant seulement s'il n'est pas déjà dans la liste
+     * @param id l'identifiant à ajouter
+     * @return true si l'identifiant a été ajouté
+     */
+    boolean ajouterSiAbsent(int id) {
+        if (contient(id)) {
+            return false;
+        }
+        ajouter(id);
+        return true;
+    }
+
+    /**
+     * retire la première occurrence d'un identifiant en conservant l'ordre des autres
+     * @param id l'identifiant à retirer
+     * @return true si l'identifiant était présent
+     */
+    boolean retirer(int id) {
+        verifierModifiable();
+        for (int i = 0; i < taille; i++) {
+            if (ids[i] == id) {
+                System.arraycopy(ids, i + 1, ids, i, taille - i - 1);
+                taille--;
+                //l'identifiant peut encore être présent en double, l'index est simplement reconstruit au besoin
+                index = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * retire la dernière occurrence d'un identifiant, en cherchant depuis la fin : O(1) pour un identifiant
+     * qui vient d'être ajouté, comme celui du dernier membre d'un arbre dont on annule l'ajout
+     * @param id l'identifiant à retirer
+     * @return true si l'identifiant était présent
+     */
+    boolean retirerDernier(int id) {
+        verifierModifiable();
+        for (int i = taille - 1; i >= 0; i--) {
+            if (ids[i] == id) {
+                System.arraycopy(ids, i + 1, ids, i, taille - i - 1);
+                taille--;
+                index = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * insère un identifiant à sa place dans une liste triée par ordre croissant, même s'il y est déjà :
+     * recherche dichotomique puis décalage des suivants, O(1) pour un identifiant plus grand que les autres
+     * @param id l'identifiant à insérer
+     */
+    void insererTrie(int id) {
+        int position = positionApres(id);
+        if (position == taille) {
+            ajouter(id);
+            return;
+        }
+        verifierModifiable();
+        if (taille == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(2, taille * 2));
+        }
+        System.arraycopy(ids, position, ids, position + 1, taille - position);
+        ids[position] = id;
+        taille++;
+        if (index != null) {
+            if (taille * 2 > index.length) {
+                reconstruireIndex();
+            } else {
+                insererDansIndex(id);
+            }
+        }
+    }
+
+    /**
+     * retire une occurrence d'un identifiant d'une liste triée par ordre croissant, trouvée par dichotomie
+     * @param id l'identifiant à retirer
+     * @return true si l'identifiant était présent
+     */
+    boolean retirerTrie(int id) {
+        verifierModifiable();
+        int position = positionApres(id) - 1;
+        if (position < 0 || ids[position] != id) {
+            return false;
+        }
+        System.arraycopy(ids, position + 1, ids, position, taille - position - 1);
+        taille--;
+        index = null;
+        return true;
+    }
+
+    /**
+     * ramène la liste à ses premiers identifiants, pour défaire des ajouts en fin de liste
+     * @param nouvelleTaille le nombre d'identifiants conservés, au plus la taille actuelle
+     */
+    void tronquer(int nouvelleTaille) {
+        verifierModifiable();
+        if (nouvelleTaille < 0 || nouvelleTaille > taille) {
+            throw new IndexOutOfBoundsException("Taille " + nouvelleTaille + " hors de la liste de taille " + taille);
+        }
+        if (index != null && !doublons) {
+            //chaque identifiant retiré n'était qu'une fois dans la liste : il suffit de l'effacer de l'index
+            for (int i = nouvelleTaille; i < taille; i++) {
+                retirerDeIndex(ids[i]);
+            }
+        } else if (nouvelleTaille < taille) {
+            index = null;
+        }
+        taille = nouvelleTaille;
+    }
+
+    //position du premier identifiant plus grand que id dans une liste triée
+    private int positionApres(int id) {
+        int debut = 0;
+        int fin = taille;
+        while (debut < fin) {
+            int milieu = (debut + fin) >>> 1;
+            if (ids[milieu] <= id) {
+                debut = milieu + 1;
+            } else {
+                fin = milieu;
+            }
+        }
+        return debut;
+    }
+
+    private void verifierModifiable() {
+        if (this == VIDE) {
+            throw new UnsupportedOperationException("La liste vide commune ne peut pas être modifiée");
+        }
+    }
+
+    private void reconstruireIndex() {
+        int capacite = Integer.highestOneBit(Math.max(taille, SEUIL_INDEX) * 4 - 1);
+        index = new int[capacite];
+        doublons = false;
+        for (int i = 0; i < taille; i++) {
+            insererDansIndex(ids[i]);
+        }
+    }
+
+    private void insererDansIndex(int id) {
+        int masque = index.length - 1;
+        int i = melanger(id) & masque;
+        while (index[i] != 0) {
+            if (index[i] == id + 1) {
+                doublons = true;
+                return;
+            }
+            i = (i + 1) & masque;
+        }
+        index[i] = id + 1;
+    }
+
+    //efface un identifiant de l'index en ramenant les suivants de la même suite de collisions, sans laisser de trou
+    private void retirerDeIndex(int id) {
+        int masque = index.length - 1;
+        int i = melanger(id) & masque;
+        while (index[i] != id + 1) {
+            if (index[i] == 0) {
+                return;
+            }
+            i = (i + 1) & masque;
+        }
+        for (int j = (i + 1) & masque; index[j] != 0; j = (j + 1) & masque) {
+            int origine = melanger(index[j] - 1) & masque;
+            //la case j reste accessible si son origine se trouve entre le trou et elle
+            boolean accessible = i <= j ? (i < origine && origine <= j) : (i < origine || origine <= j);
+            if (!accessible) {
+                index[i] = index[j];
+                i = j;
+            }
+        }
+        index[i] = 0;
+    }
+
+    //les identifiants sont consécutifs, on les disperse pour éviter les longues suites de collisions
+    private static int melanger(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,8 +1,19 @@
 
 package arbre_genealogique_pkg;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.WeakHashMap;
 
 /**
  * Classe de membre de la famille qui permet la construction d'un seul membre de la famille.
@@ -10,16 +21,38 @@ import java.util.LinkedList;
  * @author aklam
  */
 public class MembreFamille implements Serializable{
-
+    //valeur calculée sur la première version de la classe, conservée pour pouvoir relire les anciens fichiers
+    private static final long serialVersionUID = -7754646316514333624L;
+
+    //forme sérialisée, indépendante de la disposition en mémoire : le genre y reste une référence
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("prenoms", String.class),
+            new ObjectStreamField("nom", String.class),
+            new ObjectStreamField("nomDeBaseDeLaMariee", String.class),
+            new ObjectStreamField("genre", Genre.class),
+            new ObjectStreamField("idMere", int.class),
+            new ObjectStreamField("idPere", int.class),
+            new ObjectStreamField("idConjoint", int.class),
+            new ObjectStreamField("enfants", ListeIds.class),
+            new ObjectStreamField("freresSoeurs", ListeIds.class),
+            new ObjectStreamField("id", int.class),
+            new ObjectStreamField("registre", RegistreMembres.class)
+    };
+
+    private static final Genre[] GENRES = Genre.values();
+
+    //liens lus dans un fichier de l'ancien format, en attente de conversion en identifiants.
+    //rangés à part pour ne pas alourdir tous les membres d'un champ qui ne sert qu'à la lecture de ces fichiers
+    private static final Map<MembreFamille, Object[]> LIENS_HERITES = Collections.synchronizedMap(new WeakHashMap<>());
 
     @Override
     public String toString() {
         //affiche une belle représentation en chaîne d'une personne. le () signifie qu'ils ont
         //un nom de jeune fille et il utilise les symboles de genre pour les identifier
         String s = null;
-        if (this.genre == Genre.MASCULIN){
+        if (this.getGenre() == Genre.MASCULIN){
             s = "♂ ";
-        }else if (this.genre == Genre.FEMININ){
+        }else if (this.getGenre() == Genre.FEMININ){
             s = "♀ ";
         }
         s += this.getPrenoms() + " " + this.getNom();
@@ -43,26 +76,71 @@ public class MembreFamille implements Serializable{
         this.setGenre(genre);
 
 
-        this.mere = null;
-        this.pere = null;
-        this.conjoint = null;
-        this.enfants = new LinkedList<>();
-        this.freresSoeurs = new LinkedList<>();
+        this.idMere = -1;
+        this.idPere = -1;
+        this.idConjoint = -1;
+        //les listes sont allouées au premier lien
+        this.enfants = null;
+        this.freresSoeurs = null;
 
     }
+    /**
+     * constructeur sans validation, réservé à {@link #restaurer}
+     */
+    private MembreFamille() {
+    }
+
+    /**
+     * reconstruit un membre lu dans un fichier. Les noms ont été validés avant l'enregistrement,
+     * ils ne repassent donc pas par les setters ; les liens sont fixés ensuite par {@link #restaurerLiens}.
+     * Le lecteur passe sa table de noms par {@link ReserveNoms} une fois pour toutes, les noms reçus sont déjà communs
+     * @param prenoms
+     * @param nom
+     * @param nomDeBaseDeLaMariee
+     * @param genre
+     * @return le membre, sans liens et rattaché à aucun arbre
+     */
+    static MembreFamille restaurer(String prenoms, String nom, String nomDeBaseDeLaMariee, Genre genre) {
+        MembreFamille membre = new MembreFamille();
+        membre.prenoms = prenoms;
+        membre.nom = nom;
+        membre.nomDeBaseDeLaMariee = nomDeBaseDeLaMariee;
+        membre.setGenre(genre);
+        membre.idMere = -1;
+        membre.idPere = -1;
+        membre.idConjoint = -1;
+        return membre;
+    }
+
+    /**
+     * fixe directement les liens d'un membre lu dans un fichier, sans appliquer les règles de liaison.
+     * Une liste null ou {@link ListeIds#VIDE} laisse la liste non allouée
+     */
+    void restaurerLiens(int idPere, int idMere, int idConjoint, ListeIds enfants, ListeIds freresSoeurs) {
+        this.idPere = idPere;
+        this.idMere = idMere;
+        this.idConjoint = idConjoint;
+        setEnfants(enfants);
+        setFreresSoeurs(freresSoeurs);
+    }
+
     private String prenoms;
     private String nom;
     private String nomDeBaseDeLaMariee;
-    private Genre genre;
-    //regex pour correspondre à un nom valide. permet tout caractère unicode avec certains
-    // des cas particuliers tels que Aklam Moses Crack. ou L'ourve D'Marche
-    private final String nomRegex = "^[\\p{L} .'-]+$";
-
-    private MembreFamille mere;
-    private MembreFamille pere;
-    private MembreFamille conjoint;
-    private LinkedList<MembreFamille> enfants;
-    private LinkedList<MembreFamille> freresSoeurs;
+    //rang du genre dans Genre + 1, 0 si le genre est inconnu : un octet au lieu d'une référence
+    private byte genre;
+    //les liens sont des identifiants dans le registre de l'arbre, -1 s'il n'y a pas de lien.
+    //les listes d'enfants et de freres-soeurs peuvent être partagées entre plusieurs membres (conjoints, fratrie).
+    //une liste null est vide et propre au membre : elle n'est allouée qu'au premier ajout ou partage
+    private int idMere;
+    private int idPere;
+    private int idConjoint;
+    private ListeIds enfants;
+    private ListeIds freresSoeurs;
+
+    //identifiant stable du membre dans le registre de son arbre, -1 tant qu'il n'est rattaché à aucun arbre
+    private int id = -1;
+    private RegistreMembres registre;
 
     /**
      * Types d'attributs utilisés pour vérifier si un membre de la famille possède l'un de ces attributs
@@ -108,8 +186,14 @@ public class MembreFamille implements Serializable{
      * @param prenoms
      */
     public final void setPrenoms(String prenoms) {
-        if (prenoms.trim().matches(nomRegex)) {
-            this.prenoms = prenoms.trim();
+        String valeur = ValidateurNom.valider(prenoms);
+        if (valeur != null) {
+            String anciens = this.prenoms;
+            this.prenoms = ReserveNoms.canonique(valeur);
+            if (this.registre != null) {
+                this.registre.reindexer(this, RegistreMembres.Champ.PRENOMS, anciens, this.prenoms);
+                this.registre.marquer(this);
+            }
         }else{
             throw new IllegalArgumentException("Prenoms invalides");
         }
@@ -124,12 +208,18 @@ public class MembreFamille implements Serializable{
     }
 
     /**
-     *fixe le nom et verifie s'il est valide avec le nomRegex
+     *fixe le nom et verifie s'il est valide avec le ValidateurNom
      * @param nom
      */
     public final void setNom(String nom) {
-        if (nom.trim().matches(nomRegex)) {
-            this.nom = nom.trim();
+        String valeur = ValidateurNom.valider(nom);
+        if (valeur != null) {
+            String ancien = this.nom;
+            this.nom = ReserveNoms.canonique(valeur);
+            if (this.registre != null) {
+                this.registre.reindexer(this, RegistreMembres.Champ.NOM, ancien, this.nom);
+                this.registre.marquer(this);
+            }
         }else{
             throw new IllegalArgumentException("Nom invalide");
         }
@@ -147,32 +237,69 @@ public class MembreFamille implements Serializable{
      * @param nomDeBaseDeLaMariee
      */
     public void setNomDeBaseDeLaMariee(String nomDeBaseDeLaMariee) {
-        if (nomDeBaseDeLaMariee.trim().matches(nomRegex)) {
-            if (this.genre == Genre.FEMININ){
-                this.nomDeBaseDeLaMariee = nomDeBaseDeLaMariee.trim();
+        String valeur = ValidateurNom.valider(nomDeBaseDeLaMariee);
+        if (valeur != null) {
+            if (this.getGenre() == Genre.FEMININ){
+                modifierNomDeBaseDeLaMariee(valeur);
             }else{
                 throw new IllegalArgumentException("Le nom de base de la mariee est uniquement pour les femmes");
             }
 
         }else if (nomDeBaseDeLaMariee.isEmpty()){
-            this.nomDeBaseDeLaMariee = "";
+            modifierNomDeBaseDeLaMariee("");
         }else{
             throw new IllegalArgumentException("Nom de base nde la mariee invalide");
         }
     }
 
+    private void modifierNomDeBaseDeLaMariee(String nomDeBaseDeLaMariee) {
+        String ancien = this.nomDeBaseDeLaMariee;
+        this.nomDeBaseDeLaMariee = ReserveNoms.canonique(nomDeBaseDeLaMariee);
+        if (this.registre != null) {
+            this.registre.reindexer(this, RegistreMembres.Champ.NOMDEBASEDELAMARIEE, ancien, this.nomDeBaseDeLaMariee);
+            this.registre.marquer(this);
+        }
+    }
+
     /**
      * @return le genre
      */
     public Genre getGenre() {
-        return genre;
+        return genre == 0 ? null : GENRES[genre - 1];
     }
 
     /**
      * @param genre
      */
     public final void setGenre(Genre genre) {
-        this.genre = genre;
+        this.genre = genre == null ? 0 : (byte) (genre.ordinal() + 1);
+        marquer();
+    }
+
+    /**
+     * vérifie qu'un nouveau genre garde les liens du membre valides : le père d'un enfant reste un homme,
+     * la mère une femme, et le conjoint est toujours du sexe opposé
+     * @param genre le nouveau genre
+     * @throws IllegalArgumentException si l'un de ces liens ne le serait plus
+     */
+    void verifierGenre(Genre genre) {
+        if (genre == getGenre()) {
+            return;
+        }
+        ListeIds enfants = idsEnfants();
+        for (int i = 0; i < enfants.taille(); i++) {
+            MembreFamille enfant = resoudre(enfants.get(i));
+            if (enfant != null && enfant.idPere == this.id) {
+                throw new IllegalArgumentException("Un pere ne peut etre que de genre masculin");
+            }
+            if (enfant != null && enfant.idMere == this.id) {
+                throw new IllegalArgumentException("Une mere ne peut etre que de genre feminin");
+            }
+        }
+        MembreFamille conjoint = getConjoint();
+        if (conjoint != null && conjoint.getGenre() == genre) {
+            throw new IllegalArgumentException("Le conjoint doit etre du sexe opposé de son conjoint");
+        }
     }
 
 
@@ -181,14 +308,15 @@ public class MembreFamille implements Serializable{
      * @param enfant l'enfant à ajouter à l'ensemble des enfants
      */
     public void ajouterEnfant(MembreFamille enfant) {
+        rattacherAuMemeArbre(this, enfant);
         //Pere
-        if (this.genre == Genre.MASCULIN) {
+        if (this.getGenre() == Genre.MASCULIN) {
             //si l'enfant n'a pas de père qui le fixe
             if (!enfant.has(Attribut.PERE)) {
                 enfant.setPere(this);
             }
             if (!enfant.has(Attribut.FRERESSOEURS)) {
-                enfant.setFreresSoeurs(this.getFreresSoeurs());
+                enfant.setFreresSoeurs(this.freresSoeursModifiables());
             }
             //si le membre de la famille a un conjoint qui le définit comme la mère
             if (this.has(Attribut.CONJOINT)) {
@@ -197,13 +325,13 @@ public class MembreFamille implements Serializable{
                 }
             }
             //Mere
-        }else if (this.genre == Genre.FEMININ){
+        }else if (this.getGenre() == Genre.FEMININ){
             //si l'enfant n'a pas de mère qui le fixe
             if (!enfant.has(Attribut.MERE)) {
                 enfant.setMere(this);
             }
             if (!enfant.has(Attribut.FRERESSOEURS)) {
-                enfant.setFreresSoeurs(this.getFreresSoeurs());
+                enfant.setFreresSoeurs(this.freresSoeursModifiables());
             }
             //si le membre de la famille a un conjoint qui le définit comme la pere
             if (this.has(Attribut.CONJOINT)) {
@@ -213,9 +341,7 @@ public class MembreFamille implements Serializable{
             }
         }
         //veiller à ne pas dupliquer les objets des enfants
-        if(!this.getEnfants().contains(enfant)){
-            this.getEnfants().add(enfant);
-        }
+        this.enfantsModifiables().ajouterSiAbsent(enfant.id);
     }
     /**
      * ajoute un un frere ou une soeur  au membre de la famille. Par conséquent, l'ajout du conjoint et du membre actuel de la famille comme parents, s'ils existent
@@ -223,8 +349,9 @@ public class MembreFamille implements Serializable{
      */
     public void ajouterFrereSoeur(MembreFamille frereSoeur) {
 
-        if(this.genre == Genre.FEMININ || this.genre == Genre.MASCULIN ){
-            this.getFreresSoeurs().add(frereSoeur);
+        if(this.genre != 0){
+            rattacherAuMemeArbre(this, frereSoeur);
+            this.freresSoeursModifiables().ajouter(frereSoeur.id);
         }
     }
 
@@ -234,7 +361,7 @@ public class MembreFamille implements Serializable{
      */
 
     public int nombreEnfants(){
-        return this.getEnfants().size();
+        return this.idsEnfants().taille();
     }
 
     /**
@@ -243,14 +370,14 @@ public class MembreFamille implements Serializable{
      */
 
     public int nombreFreresSoeurs(){
-        return this.getFreresSoeurs().size();
+        return this.idsFreresSoeurs().taille();
     }
 
     /**
      * @return la mere
      */
     public MembreFamille getMere() {
-        return mere;
+        return resoudre(idMere);
     }
 
     /**
@@ -261,22 +388,11 @@ public class MembreFamille implements Serializable{
     public void setMere(MembreFamille mere) {
         if (!this.has(Attribut.MERE)) {
             if (mere.getGenre() == Genre.FEMININ) {
-                if (!mere.getEnfants().contains(this)){
-                    mere.getEnfants().add(this);
-                }
-                this.mere = mere;
-
-                if(!mere.getFreresSoeurs().contains(this)) {
-                        mere.getFreresSoeurs().add(this);
-                }
-                this.mere = mere;
-
-
-
-
-
-
-
+                rattacherAuMemeArbre(this, mere);
+                mere.enfantsModifiables().ajouterSiAbsent(this.id);
+                mere.freresSoeursModifiables().ajouterSiAbsent(this.id);
+                this.idMere = mere.id;
+                marquer();
             }else{
                 throw new IllegalArgumentException("Une mere ne peut etre que de genre feminin");
             }
@@ -291,7 +407,7 @@ public class MembreFamille implements Serializable{
      * @return le pere
      */
     public MembreFamille getPere() {
-        return pere;
+        return resoudre(idPere);
     }
 
     /**
@@ -302,11 +418,10 @@ public class MembreFamille implements Serializable{
     public void setPere(MembreFamille pere) {
         if (!this.has(Attribut.PERE)) {
             if (pere.getGenre() == Genre.MASCULIN) {
-                if (!pere.getEnfants().contains(this)){
-                    pere.getEnfants().add(this);
-                }
-                this.pere = pere;
-
+                rattacherAuMemeArbre(this, pere);
+                pere.enfantsModifiables().ajouterSiAbsent(this.id);
+                this.idPere = pere.id;
+                marquer();
 
             }else{
                 throw new IllegalArgumentException("Un pere ne peut etre que de genre masculin");
@@ -322,7 +437,7 @@ public class MembreFamille implements Serializable{
      * @return le conjoint
      */
     public MembreFamille getConjoint() {
-        return conjoint;
+        return resoudre(idConjoint);
     }
 
     /**
@@ -332,10 +447,12 @@ public class MembreFamille implements Serializable{
     public void setConjoint(MembreFamille conjoint) {
         if (!this.has(Attribut.CONJOINT)) {
             if(conjoint.getGenre() != this.getGenre()){
-                conjoint.setEnfants(this.getEnfants());
-                conjoint.setFreresSoeurs(this.getFreresSoeurs());
-                this.conjoint = conjoint;
-                if (!this.getConjoint().has(Attribut.CONJOINT)) {
+                rattacherAuMemeArbre(this, conjoint);
+                conjoint.setEnfants(this.enfantsModifiables());
+                conjoint.setFreresSoeurs(this.freresSoeursModifiables());
+                this.idConjoint = conjoint.id;
+                marquer();
+                if (!conjoint.has(Attribut.CONJOINT)) {
                     conjoint.setConjoint(this);
                 }
 
@@ -349,31 +466,355 @@ public class MembreFamille implements Serializable{
     }
 
     /**
-     * @return les enfants
+     * @return les enfants, en lecture seule
      */
-    public LinkedList<MembreFamille> getEnfants() {
-        return enfants;
+    public List<MembreFamille> getEnfants() {
+        return new VueMembres(registre, idsEnfants());
     }
 
     /**
-     * @return les freresSoeurs
+     * @return les freresSoeurs, en lecture seule
      */
-    public LinkedList<MembreFamille> getFreresSoeurs() {
-        return freresSoeurs;
+    public List<MembreFamille> getFreresSoeurs() {
+        return new VueMembres(registre, idsFreresSoeurs());
     }
 
     /**
      * @param enfants the children to set
      */
-    public void setEnfants(LinkedList<MembreFamille> enfants) {
-        this.enfants = enfants;
+    void setEnfants(ListeIds enfants) {
+        this.enfants = enfants == ListeIds.VIDE ? null : enfants;
+        marquer();
     }
 
     /**
      * @param freresSoeurs the children to set
      */
-    public void setFreresSoeurs(LinkedList<MembreFamille> freresSoeurs) {
-        this.freresSoeurs = freresSoeurs;
+    void setFreresSoeurs(ListeIds freresSoeurs) {
+        this.freresSoeurs = freresSoeurs == ListeIds.VIDE ? null : freresSoeurs;
+        marquer();
+    }
+
+    /**
+     * @return l'identifiant du pere, -1 s'il n'y en a pas
+     */
+    int idPere() {
+        return idPere;
+    }
+
+    /**
+     * @return l'identifiant de la mere, -1 s'il n'y en a pas
+     */
+    int idMere() {
+        return idMere;
+    }
+
+    /**
+     * @return l'identifiant du conjoint, -1 s'il n'y en a pas
+     */
+    int idConjoint() {
+        return idConjoint;
+    }
+
+    /**
+     * @return les identifiants des enfants, {@link ListeIds#VIDE} si la liste n'est pas encore allouée
+     */
+    ListeIds idsEnfants() {
+        return enfants == null ? ListeIds.VIDE : enfants;
+    }
+
+    /**
+     * @return les identifiants des freresSoeurs, {@link ListeIds#VIDE} si la liste n'est pas encore allouée
+     */
+    ListeIds idsFreresSoeurs() {
+        return freresSoeurs == null ? ListeIds.VIDE : freresSoeurs;
+    }
+
+    /**
+     * @return la liste des enfants, allouée si besoin pour être modifiée ou partagée
+     */
+    ListeIds enfantsModifiables() {
+        if (enfants == null) {
+            enfants = new ListeIds();
+        }
+        marquer();
+        return enfants;
+    }
+
+    /**
+     * @return la liste des freresSoeurs, allouée si besoin pour être modifiée ou partagée
+     */
+    ListeIds freresSoeursModifiables() {
+        if (freresSoeurs == null) {
+            freresSoeurs = new ListeIds();
+        }
+        marquer();
+        return freresSoeurs;
+    }
+
+    /**
+     * @return les liens actuels du membre, pour les rétablir par {@link #retablirLiens} après un ajout annulé
+     */
+    EtatLiens etatLiens() {
+        return new EtatLiens(id, idPere, idMere, idConjoint, enfants == null ? -1 : enfants.taille(),
+                freresSoeurs == null ? -1 : freresSoeurs.taille());
+    }
+
+    /**
+     * rétablit les liens relevés avant l'ajout d'un membre. Un ajout ne fait que fixer des liens vides, allouer
+     * des listes et ajouter en fin de liste : les listes, partagées ou non, sont ramenées à leur taille d'avant
+     * @param etat les liens relevés par {@link #etatLiens()} sur ce membre
+     */
+    void retablirLiens(EtatLiens etat) {
+        this.idPere = etat.idPere;
+        this.idMere = etat.idMere;
+        this.idConjoint = etat.idConjoint;
+        this.enfants = retablir(this.enfants, etat.enfants);
+        this.freresSoeurs = retablir(this.freresSoeurs, etat.freresSoeurs);
+        marquer();
+        if (registre != null) {
+            registre.signalerModification();
+        }
+    }
+
+    private static ListeIds retablir(ListeIds liste, int taille) {
+        if (taille < 0 || liste == null) {
+            return null;
+        }
+        liste.tronquer(taille);
+        return liste;
+    }
+
+    /**
+     * rend au membre retiré de son registre l'état d'un membre qui vient d'être créé, pour pouvoir l'ajouter de nouveau.
+     * Réservé au registre
+     */
+    void detacher() {
+        this.registre = null;
+        this.id = -1;
+        this.idPere = -1;
+        this.idMere = -1;
+        this.idConjoint = -1;
+        this.enfants = null;
+        this.freresSoeurs = null;
+    }
+
+    //toute modification d'un membre, ou d'une liste obtenue pour être modifiée, est signalée aux instantanés
+    private void marquer() {
+        if (registre != null) {
+            registre.marquer(this);
+        }
+    }
+
+    private MembreFamille resoudre(int idLien) {
+        return idLien < 0 ? null : registre.get(idLien);
+    }
+
+    /**
+     * @return l'identifiant du membre dans son arbre, -1 s'il n'est rattaché à aucun arbre
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return le registre de l'arbre auquel appartient le membre, null s'il n'est rattaché à aucun arbre
+     */
+    RegistreMembres getRegistre() {
+        return registre;
+    }
+
+    /**
+     * fixe le registre et l'identifiant du membre. Réservé au registre
+     */
+    void rattacher(RegistreMembres registre, int id) {
+        this.registre = registre;
+        this.id = id;
+    }
+
+    /**
+     * @return les membres directement liés à celui-ci dans un fichier de l'ancien format,
+     * utilisé pour parcourir le graphe avant que les membres aient un identifiant
+     */
+    List<MembreFamille> liensHerites() {
+        List<MembreFamille> voisins = new ArrayList<>();
+        Object[] liensHerites = LIENS_HERITES.get(this);
+        if (liensHerites != null) {
+            for (int i = 0; i < 3; i++) {
+                voisins.add((MembreFamille) liensHerites[i]);
+            }
+            for (int i = 3; i < 5; i++) {
+                if (liensHerites[i] != null) {
+                    for (Object voisin : (Collection<?>) liensHerites[i]) {
+                        voisins.add((MembreFamille) voisin);
+                    }
+                }
+            }
+        }
+        return voisins;
+    }
+
+    /**
+     * convertit les liens de l'ancien format en identifiants une fois tous les membres enregistrés.
+     * Les listes partagées dans l'ancien format restent partagées
+     * @param listes correspondance entre les anciennes listes et les nouvelles
+     */
+    void convertirLiensHerites(Map<Object, ListeIds> listes) {
+        Object[] liensHerites = LIENS_HERITES.remove(this);
+        if (liensHerites == null) {
+            return;
+        }
+        idPere = idHerite(liensHerites[0]);
+        idMere = idHerite(liensHerites[1]);
+        idConjoint = idHerite(liensHerites[2]);
+        enfants = listeHeritee(liensHerites[3], listes);
+        freresSoeurs = listeHeritee(liensHerites[4], listes);
+    }
+
+    private static int idHerite(Object membre) {
+        return membre == null ? -1 : ((MembreFamille) membre).id;
+    }
+
+    private static ListeIds listeHeritee(Object ancienne, Map<Object, ListeIds> listes) {
+        if (ancienne == null) {
+            return null;
+        }
+        ListeIds liste = listes.get(ancienne);
+        if (liste == null) {
+            liste = new ListeIds();
+            for (Object membre : (Collection<?>) ancienne) {
+                liste.ajouter(((MembreFamille) membre).id);
+            }
+            listes.put(ancienne, liste);
+        }
+        return liste;
+    }
+
+    /**
+     * lit un membre sérialisé. Les fichiers de l'ancien format contiennent des références directes
+     * (mere, pere, conjoint, enfants, freresSoeurs) qui sont mises de côté jusqu'à la reconstruction du registre
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField champs = in.readFields();
+        //la sérialisation ne partage que les instances déjà partagées à l'écriture
+        this.prenoms = ReserveNoms.canonique((String) champs.get("prenoms", null));
+        this.nom = ReserveNoms.canonique((String) champs.get("nom", null));
+        this.nomDeBaseDeLaMariee = ReserveNoms.canonique((String) champs.get("nomDeBaseDeLaMariee", ""));
+        this.setGenre((Genre) champs.get("genre", null));
+        if (champs.getObjectStreamClass().getField("idPere") == null) {
+            //ancien format
+            LIENS_HERITES.put(this, new Object[]{
+                    champs.get("pere", null),
+                    champs.get("mere", null),
+                    champs.get("conjoint", null),
+                    champs.get("enfants", null),
+                    champs.get("freresSoeurs", null)
+            });
+            this.idPere = -1;
+            this.idMere = -1;
+            this.idConjoint = -1;
+            this.id = -1;
+            this.registre = null;
+        } else {
+            this.idPere = champs.get("idPere", -1);
+            this.idMere = champs.get("idMere", -1);
+            this.idConjoint = champs.get("idConjoint", -1);
+            this.enfants = (ListeIds) champs.get("enfants", null);
+            this.freresSoeurs = (ListeIds) champs.get("freresSoeurs", null);
+            this.id = champs.get("id", -1);
+            this.registre = (RegistreMembres) champs.get("registre", null);
+        }
+    }
+
+    /**
+     * écrit un membre sous la forme décrite par serialPersistentFields
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField champs = out.putFields();
+        champs.put("prenoms", prenoms);
+        champs.put("nom", nom);
+        champs.put("nomDeBaseDeLaMariee", nomDeBaseDeLaMariee);
+        champs.put("genre", getGenre());
+        champs.put("idMere", idMere);
+        champs.put("idPere", idPere);
+        champs.put("idConjoint", idConjoint);
+        champs.put("enfants", enfants);
+        champs.put("freresSoeurs", freresSoeurs);
+        champs.put("id", id);
+        champs.put("registre", registre);
+        out.writeFields();
+    }
+
+    /**
+     * Liens d'un membre à un moment donné : identifiants de ses proches et taille de ses listes,
+     * -1 pour une liste non allouée. Quelques entiers, quelle que soit la taille des listes
+     */
+    static final class EtatLiens {
+        final int id;
+        final int idPere;
+        final int idMere;
+        final int idConjoint;
+        final int enfants;
+        final int freresSoeurs;
+
+        EtatLiens(int id, int idPere, int idMere, int idConjoint, int enfants, int freresSoeurs) {
+            this.id = id;
+            this.idPere = idPere;
+            this.idMere = idMere;
+            this.idConjoint = idConjoint;
+            this.enfants = enfants;
+            this.freresSoeurs = freresSoeurs;
+        }
+    }
+
+    /**
+     * Vue en lecture seule d'une liste d'identifiants sous forme de liste de membres
+     */
+    private static final class VueMembres extends AbstractList<MembreFamille> implements RandomAccess {
+        private final RegistreMembres registre;
+        private final ListeIds ids;
+
+        VueMembres(RegistreMembres registre, ListeIds ids) {
+            this.registre = registre;
+            this.ids = ids;
+        }
+
+        @Override
+        public MembreFamille get(int index) {
+            return registre.get(ids.get(index));
+        }
+
+        @Override
+        public int size() {
+            return ids.taille();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof MembreFamille
+                    && ((MembreFamille) o).registre == registre
+                    && ids.contient(((MembreFamille) o).id);
+        }
+    }
+
+    /**
+     * s'assure que deux membres que l'on va lier appartiennent au même registre. Un membre nouvellement créé
+     * rejoint le registre de l'autre ; si aucun des deux n'est rattaché, un nouveau registre est créé
+     */
+    private static void rattacherAuMemeArbre(MembreFamille a, MembreFamille b) {
+        if (a.registre == null && b.registre == null) {
+            RegistreMembres registre = new RegistreMembres();
+            registre.ajouter(a);
+            registre.ajouter(b);
+        } else if (a.registre == null) {
+            b.registre.ajouter(a);
+        } else if (b.registre == null) {
+            a.registre.ajouter(b);
+        } else if (a.registre != b.registre) {
+            throw new IllegalArgumentException("Les membres appartiennent à deux arbres différents");
+        }
+        //tout lien passe par ici : les index précalculés de l'arbre ne sont plus à jour
+        a.registre.signalerModification();
     }
 
     /**
@@ -386,9 +827,9 @@ public class MembreFamille implements Serializable{
             case PERE:
                 return this.getPere() != null;
             case ENFANTS:
-                return !this.getEnfants().isEmpty();
+                return !this.idsEnfants().estVide();
             case FRERESSOEURS:
-                return !this.getFreresSoeurs().isEmpty();
+                return !this.idsFreresSoeurs().estVide();
             case MERE:
                 return this.getMere() != null;
             case CONJOINT:
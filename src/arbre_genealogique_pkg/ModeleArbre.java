@@ -0,0 +1,591 @@
+package arbre_genealogique_pkg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import javax.swing.tree.TreePath;
+
+/**
+ * Modèle du jTree de l'arbre généalogique. Les nœuds d'un membre ne sont créés qu'au moment où le jTree
+ * les demande, c'est-à-dire quand leur parent est déplié. Après une modification, seuls les nœuds déjà créés
+ * sont comparés aux données et le jTree est prévenu par des événements ciblés (insertion, suppression,
+ * modification) au lieu d'être reconstruit.
+ * Un membre n'est développé qu'à un seul endroit, le premier où il apparaît : ses autres apparitions
+ * sont des renvois sans enfants, ce qui évite de dupliquer des sous-arbres entiers (voir {@link ParcoursArbre})
+ * @author aklam
+ */
+class ModeleArbre extends DefaultTreeModel {
+    private static final long serialVersionUID = 1;
+
+    static final String PARENTS = "Parents";
+    static final String CONJOINT = "Conjoint";
+    static final String ENFANTS = "Enfants";
+    static final String FRERES_SOEURS = "Freres-Soeurs";
+
+    private final ArbreGenealogique arbreGenealogique;
+
+    //tous les nœuds déjà créés pour chaque membre, pour les retrouver lors d'une modification
+    private final Map<MembreFamille, List<NoeudMembre>> noeudsParMembre = new IdentityHashMap<>();
+
+    //les nœuds développables qui affichent chaque liste d'enfants ou de freres-soeurs. Les listes sont partagées
+    //entre plusieurs membres : un ajout retrouve ainsi tous les nœuds qui affichent une liste qu'il a modifiée
+    private final Map<ListeIds, List<NoeudMembre>> noeudsParListe = new IdentityHashMap<>();
+
+    //les membres qui ont déjà un nœud développable
+    private final ParcoursArbre parcours = new ParcoursArbre(ParcoursArbre.PROFONDEUR_AFFICHAGE);
+
+    /**
+     * crée le modèle d'un arbre. le nœud principal est caché et contient la personne racine,
+     * ou un message si l'arbre est vide
+     * @param arbreGenealogique l'arbre à afficher
+     */
+    ModeleArbre(ArbreGenealogique arbreGenealogique) {
+        super(new DefaultMutableTreeNode("Main"));
+        this.arbreGenealogique = arbreGenealogique;
+        DefaultMutableTreeNode main = (DefaultMutableTreeNode) getRoot();
+        if (arbreGenealogique.hasRoot()) {
+            parcours.decouvrir(arbreGenealogique.getRoot());
+            main.add(new NoeudMembre(arbreGenealogique.getRoot(), 0));
+        } else {
+            main.add(new DefaultMutableTreeNode("Aucune donnée d'arbre trouvée."));
+        }
+    }
+
+    /**
+     * @return le nœud de la personne racine, null si l'arbre est vide
+     */
+    NoeudMembre getNoeudRacine() {
+        TreeNode top = ((TreeNode) getRoot()).getChildAt(0);
+        return top instanceof NoeudMembre ? (NoeudMembre) top : null;
+    }
+
+    /**
+     * prévient le jTree que les informations d'un membre ont changé, pour chacun des nœuds qui l'affichent
+     * @param membre le membre modifié
+     */
+    void membreModifie(MembreFamille membre) {
+        List<NoeudMembre> noeuds = noeudsParMembre.get(membre);
+        if (noeuds != null) {
+            for (NoeudMembre noeud : new ArrayList<>(noeuds)) {
+                nodeChanged(noeud);
+            }
+        }
+    }
+
+    /**
+     * prévient le jTree que les informations de membres inconnus ont pu changer (après une annulation) :
+     * tous les nœuds déjà créés sont redessinés
+     */
+    void membresModifies() {
+        for (List<NoeudMembre> noeuds : new ArrayList<>(noeudsParMembre.values())) {
+            for (NoeudMembre noeud : new ArrayList<>(noeuds)) {
+                nodeChanged(noeud);
+            }
+        }
+    }
+
+    /**
+     * compare tous les nœuds déjà créés aux liens actuels des membres, quand on ne sait pas quels liens ont changé
+     * (après une annulation) ; les nœuds jamais dépliés n'ont rien à mettre à jour
+     */
+    void liensModifies() {
+        List<NoeudMembre> noeuds = new ArrayList<>();
+        for (List<NoeudMembre> liste : noeudsParMembre.values()) {
+            noeuds.addAll(liste);
+        }
+        synchroniser(noeuds);
+    }
+
+    /**
+     * met à jour les nœuds touchés par l'ajout d'un lien : ceux des membres dont les liens ont changé
+     * (le membre, son conjoint et le nouveau membre) et ceux des autres membres qui partagent l'une de leurs listes.
+     * Un ajout n'alloue ou ne partage de listes qu'entre ces membres : les autres nœuds restent inscrits sous les
+     * listes actuelles de leur membre
+     * @param membres les membres dont les liens ont changé, les valeurs null sont ignorées
+     */
+    void liensModifies(MembreFamille... membres) {
+        Set<NoeudMembre> noeuds = new LinkedHashSet<>();
+        for (MembreFamille membre : membres) {
+            if (membre == null) {
+                continue;
+            }
+            List<NoeudMembre> propres = noeudsParMembre.get(membre);
+            if (propres != null) {
+                noeuds.addAll(propres);
+            }
+            for (ListeIds liste : new ListeIds[]{membre.idsEnfants(), membre.idsFreresSoeurs()}) {
+                List<NoeudMembre> partages = noeudsParListe.get(liste);
+                if (partages != null) {
+                    noeuds.addAll(partages);
+                }
+            }
+        }
+        synchroniser(noeuds);
+    }
+
+    private void synchroniser(Collection<NoeudMembre> noeuds) {
+        for (NoeudMembre noeud : noeuds) {
+            //un nœud retiré pendant la synchronisation d'un autre n'a plus à être mis à jour
+            if (noeud.getParent() != null) {
+                noeud.synchroniser();
+            }
+        }
+    }
+
+    private void enregistrer(NoeudMembre noeud) {
+        noeudsParMembre.computeIfAbsent(noeud.getMembre(), m -> new ArrayList<>(1)).add(noeud);
+    }
+
+    private void inscrire(ListeIds liste, NoeudMembre noeud) {
+        //la liste vide commune à tous les membres sans liste n'est jamais modifiée
+        if (liste != ListeIds.VIDE) {
+            noeudsParListe.computeIfAbsent(liste, l -> new ArrayList<>(2)).add(noeud);
+        }
+    }
+
+    private void desinscrire(ListeIds liste, NoeudMembre noeud) {
+        List<NoeudMembre> noeuds = noeudsParListe.get(liste);
+        if (noeuds != null) {
+            noeuds.remove(noeud);
+            if (noeuds.isEmpty()) {
+                noeudsParListe.remove(liste);
+            }
+        }
+    }
+
+    private void oublier(TreeNode noeud) {
+        if (noeud instanceof NoeudMembre) {
+            NoeudMembre noeudMembre = (NoeudMembre) noeud;
+            List<NoeudMembre> noeuds = noeudsParMembre.get(noeudMembre.getMembre());
+            if (noeuds != null) {
+                noeuds.remove(noeudMembre);
+                if (noeuds.isEmpty()) {
+                    noeudsParMembre.remove(noeudMembre.getMembre());
+                }
+            }
+            if (!(noeudMembre instanceof NoeudFeuille)) {
+                //le membre pourra être développé ailleurs
+                parcours.oublier(noeudMembre.getMembre(), noeudMembre.id);
+                desinscrire(noeudMembre.enfantsInscrits, noeudMembre);
+                desinscrire(noeudMembre.freresSoeursInscrits, noeudMembre);
+            }
+            if (!noeudMembre.charge) {
+                return;
+            }
+        }
+        for (int i = 0; i < noeud.getChildCount(); i++) {
+            oublier(noeud.getChildAt(i));
+        }
+    }
+
+    /**
+     * Nœud d'un membre de la famille, dont les enfants sont calculés au premier accès
+     */
+    class NoeudMembre extends DefaultMutableTreeNode {
+        private static final long serialVersionUID = 1;
+
+        //nombre de membres entre la personne racine et ce nœud
+        private final int profondeur;
+        //identifiant du membre à la création du nœud, sous lequel il est marqué dans le parcours
+        private final int id;
+        private boolean charge;
+        //les listes du membre sous lesquelles le nœud est inscrit, VIDE pour aucune
+        private ListeIds enfantsInscrits = ListeIds.VIDE;
+        private ListeIds freresSoeursInscrits = ListeIds.VIDE;
+
+        NoeudMembre(MembreFamille membre, int profondeur) {
+            super(membre);
+            this.profondeur = profondeur;
+            this.id = membre.getId();
+            this.charge = false;
+            enregistrer(this);
+            //une feuille n'affiche pas les listes de son membre
+            if (!(this instanceof NoeudFeuille)) {
+                inscrireListes();
+            }
+        }
+
+        //suit les listes actuelles du membre, qui ne changent que lorsqu'il fait partie des membres d'un ajout
+        private void inscrireListes() {
+            MembreFamille membre = getMembre();
+            if (membre.idsEnfants() != enfantsInscrits) {
+                desinscrire(enfantsInscrits, this);
+                enfantsInscrits = membre.idsEnfants();
+                inscrire(enfantsInscrits, this);
+            }
+            if (membre.idsFreresSoeurs() != freresSoeursInscrits) {
+                desinscrire(freresSoeursInscrits, this);
+                freresSoeursInscrits = membre.idsFreresSoeurs();
+                inscrire(freresSoeursInscrits, this);
+            }
+        }
+
+        void marquerCharge() {
+            charge = true;
+        }
+
+        MembreFamille getMembre() {
+            return (MembreFamille) getUserObject();
+        }
+
+        @Override
+        public int getChildCount() {
+            charger();
+            return super.getChildCount();
+        }
+
+        @Override
+        public TreeNode getChildAt(int index) {
+            charger();
+            return super.getChildAt(index);
+        }
+
+        @Override
+        public int getIndex(TreeNode noeud) {
+            charger();
+            return super.getIndex(noeud);
+        }
+
+        //children() de Java 8 rend une énumération brute : les enfants sont énumérés par getChildAt
+        @Override
+        public Enumeration<TreeNode> children() {
+            charger();
+            List<TreeNode> enfants = new ArrayList<>(super.getChildCount());
+            for (int i = 0; i < super.getChildCount(); i++) {
+                enfants.add(super.getChildAt(i));
+            }
+            return Collections.enumeration(enfants);
+        }
+
+        /**
+         * un nœud pas encore chargé répond à partir des attributs du membre, sans créer ses enfants
+         */
+        @Override
+        public boolean isLeaf() {
+            if (charge) {
+                return super.getChildCount() == 0;
+            }
+            MembreFamille membre = getMembre();
+            return !(afficheParents() || membre.has(MembreFamille.Attribut.CONJOINT)
+                    || membre.has(MembreFamille.Attribut.ENFANTS) || membre.has(MembreFamille.Attribut.FRERESSOEURS));
+        }
+
+        //seule la personne racine affiche ses parents
+        private boolean afficheParents() {
+            return getMembre() == arbreGenealogique.getRoot() && getMembre().has(MembreFamille.Attribut.PARENTS);
+        }
+
+        private void charger() {
+            if (charge) {
+                return;
+            }
+            charge = true;
+            for (Categorie categorie : creerCategories()) {
+                DefaultMutableTreeNode noeudCategorie = new DefaultMutableTreeNode(categorie.libelle);
+                for (MembreFamille membre : categorie.membres) {
+                    noeudCategorie.add(creerNoeud(categorie, membre));
+                }
+                super.insert(noeudCategorie, super.getChildCount());
+            }
+        }
+
+        /**
+         * les catégories à afficher sous ce membre : parents (pour la racine), conjoint, enfants et freres-soeurs
+         */
+        private List<Categorie> creerCategories() {
+            MembreFamille membre = getMembre();
+            List<Categorie> categories = new ArrayList<>(4);
+            if (afficheParents()) {
+                Categorie parents = new Categorie(PARENTS);
+                if (membre.has(MembreFamille.Attribut.PERE)) {
+                    parents.membres.add(membre.getPere());
+                }
+                if (membre.has(MembreFamille.Attribut.MERE)) {
+                    parents.membres.add(membre.getMere());
+                }
+                categories.add(parents);
+            }
+            if (membre.has(MembreFamille.Attribut.CONJOINT)) {
+                Categorie conjoint = new Categorie(CONJOINT);
+                conjoint.membres.add(membre.getConjoint());
+                categories.add(conjoint);
+            }
+            if (membre.has(MembreFamille.Attribut.ENFANTS)) {
+                Categorie enfants = new Categorie(ENFANTS);
+                enfants.membres.addAll(membre.getEnfants());
+                categories.add(enfants);
+            }
+            if (membre.has(MembreFamille.Attribut.FRERESSOEURS)) {
+                Categorie freresSoeurs = new Categorie(FRERES_SOEURS);
+                freresSoeurs.membres.addAll(membre.getFreresSoeurs());
+                categories.add(freresSoeurs);
+            }
+            return categories;
+        }
+
+        //les parents et le conjoint sont affichés sans leur propre sous-arbre.
+        //un enfant ou frere-soeur déjà développé ailleurs devient un renvoi
+        private NoeudMembre creerNoeud(Categorie categorie, MembreFamille membre) {
+            int profondeurEnfant = profondeur + 1;
+            if (!categorie.libelle.equals(ENFANTS) && !categorie.libelle.equals(FRERES_SOEURS)
+                    || !parcours.peutDevelopper(profondeurEnfant)) {
+                return new NoeudFeuille(membre, profondeurEnfant);
+            }
+            if (!parcours.decouvrir(membre)) {
+                return new NoeudRenvoi(membre, profondeurEnfant);
+            }
+            return new NoeudMembre(membre, profondeurEnfant);
+        }
+
+        /**
+         * met les nœuds enfants déjà créés en accord avec les liens actuels du membre,
+         * en prévenant le jTree de chaque insertion et suppression
+         */
+        void synchroniser() {
+            inscrireListes();
+            if (!charge) {
+                //seule l'icône de dépliage peut avoir changé
+                nodeChanged(this);
+                return;
+            }
+            List<Categorie> categories = creerCategories();
+            int position = 0;
+            for (Categorie categorie : categories) {
+                DefaultMutableTreeNode noeudCategorie = trouverCategorie(categorie.libelle, position);
+                if (noeudCategorie == null) {
+                    noeudCategorie = new DefaultMutableTreeNode(categorie.libelle);
+                    for (MembreFamille membre : categorie.membres) {
+                        noeudCategorie.add(creerNoeud(categorie, membre));
+                    }
+                    super.insert(noeudCategorie, position);
+                    nodesWereInserted(this, new int[]{position});
+                } else {
+                    while (super.getIndex(noeudCategorie) > position) {
+                        retirer(this, position);
+                    }
+                    synchroniserCategorie(noeudCategorie, categorie);
+                }
+                position++;
+            }
+            while (super.getChildCount() > position) {
+                retirer(this, position);
+            }
+        }
+
+        private DefaultMutableTreeNode trouverCategorie(String libelle, int depuis) {
+            for (int i = depuis; i < super.getChildCount(); i++) {
+                DefaultMutableTreeNode noeud = (DefaultMutableTreeNode) super.getChildAt(i);
+                if (libelle.equals(noeud.getUserObject())) {
+                    return noeud;
+                }
+            }
+            return null;
+        }
+
+        //les listes ne font que grandir dans la plupart des cas : on garde les nœuds en place et on insère les nouveaux
+        private void synchroniserCategorie(DefaultMutableTreeNode noeudCategorie, Categorie categorie) {
+            //dernière position de chaque membre de la catégorie : un nœud qui y apparaît plus loin est gardé
+            Map<MembreFamille, Integer> dernieres = new IdentityHashMap<>();
+            for (int k = 0; k < categorie.membres.size(); k++) {
+                dernieres.put(categorie.membres.get(k), k);
+            }
+            int i = 0;
+            for (int k = 0; k < categorie.membres.size(); k++) {
+                MembreFamille membre = categorie.membres.get(k);
+                while (i < noeudCategorie.getChildCount() && membreDe(noeudCategorie.getChildAt(i)) != membre
+                        && dernieres.getOrDefault(membreDe(noeudCategorie.getChildAt(i)), -1) < k) {
+                    retirer(noeudCategorie, i);
+                }
+                if (i < noeudCategorie.getChildCount() && membreDe(noeudCategorie.getChildAt(i)) == membre) {
+                    i++;
+                    continue;
+                }
+                noeudCategorie.insert(creerNoeud(categorie, membre), i);
+                nodesWereInserted(noeudCategorie, new int[]{i});
+                i++;
+            }
+            while (noeudCategorie.getChildCount() > i) {
+                retirer(noeudCategorie, i);
+            }
+        }
+
+        private void retirer(DefaultMutableTreeNode parent, int index) {
+            TreeNode enfant = parent.getChildAt(index);
+            parent.remove(index);
+            nodesWereRemoved(parent, new int[]{index}, new Object[]{enfant});
+            oublier(enfant);
+        }
+    }
+
+    /**
+     * Nœud feuille d'un parent, d'un conjoint ou d'un membre trop profond,
+     * qui reste associé au membre pour les mises à jour de nom
+     */
+    class NoeudFeuille extends NoeudMembre {
+        private static final long serialVersionUID = 1;
+
+        NoeudFeuille(MembreFamille membre, int profondeur) {
+            super(membre, profondeur);
+            //rien à charger
+            marquerCharge();
+        }
+
+        @Override
+        void synchroniser() {
+            //une feuille n'a pas d'enfants à synchroniser
+        }
+    }
+
+    /**
+     * Nœud d'un membre déjà développé à un autre endroit de l'arbre
+     */
+    class NoeudRenvoi extends NoeudFeuille {
+        private static final long serialVersionUID = 1;
+
+        NoeudRenvoi(MembreFamille membre, int profondeur) {
+            super(membre, profondeur);
+        }
+
+        @Override
+        public String toString() {
+            return getMembre() + " (déjà affiché)";
+        }
+    }
+
+    /**
+     * @param noeud un nœud de l'arbre
+     * @return le chemin jusqu'au nœud
+     */
+    TreePath chemin(TreeNode noeud) {
+        return new TreePath(getPathToRoot(noeud));
+    }
+
+    /**
+     * cherche le chemin jusqu'à un membre, en chargeant les nœuds nécessaires. Les membres sont reliés à la
+     * personne racine par un parcours en largeur sur les liens affichés, puis ce parcours est suivi dans le
+     * modèle ; un renvoi mène au nœud où le membre est développé
+     * @param membre le membre à afficher
+     * @return le chemin jusqu'à l'un des nœuds du membre, null si le membre n'est pas affiché dans l'arbre
+     */
+    TreePath cheminVers(MembreFamille membre) {
+        NoeudMembre noeud = noeudPrincipal(membre);
+        if (noeud != null) {
+            return chemin(noeud);
+        }
+        NoeudMembre racine = getNoeudRacine();
+        if (racine == null) {
+            return null;
+        }
+        List<MembreFamille> etapes = etapesDepuisRacine(membre);
+        if (etapes == null) {
+            return null;
+        }
+        noeud = racine;
+        for (MembreFamille etape : etapes) {
+            NoeudMembre suivant = null;
+            for (int i = 0; i < noeud.getChildCount() && suivant == null; i++) {
+                TreeNode categorie = noeud.getChildAt(i);
+                for (int j = 0; j < categorie.getChildCount(); j++) {
+                    if (membreDe(categorie.getChildAt(j)) == etape) {
+                        suivant = (NoeudMembre) categorie.getChildAt(j);
+                        break;
+                    }
+                }
+            }
+            if (suivant instanceof NoeudRenvoi) {
+                suivant = noeudPrincipal(etape);
+            }
+            if (suivant == null || suivant instanceof NoeudFeuille && etape != membre) {
+                //membre trop profond pour être développé
+                return null;
+            }
+            noeud = suivant;
+        }
+        return chemin(noeud);
+    }
+
+    //le nœud où le membre est développé, à défaut l'un de ses nœuds feuilles
+    private NoeudMembre noeudPrincipal(MembreFamille membre) {
+        List<NoeudMembre> noeuds = noeudsParMembre.get(membre);
+        if (noeuds == null || noeuds.isEmpty()) {
+            return null;
+        }
+        for (NoeudMembre noeud : noeuds) {
+            if (!(noeud instanceof NoeudFeuille)) {
+                return noeud;
+            }
+        }
+        return noeuds.get(0);
+    }
+
+    //les membres entre la racine (exclue) et le membre cherché (inclus), en suivant les liens que l'arbre développe :
+    //enfants et freres-soeurs. Parents de la racine et conjoints sont des feuilles, atteintes en dernière étape
+    private List<MembreFamille> etapesDepuisRacine(MembreFamille cherche) {
+        MembreFamille racine = arbreGenealogique.getRoot();
+        Map<MembreFamille, MembreFamille> precedents = new IdentityHashMap<>();
+        Map<MembreFamille, Integer> profondeurs = new IdentityHashMap<>();
+        ArrayDeque<MembreFamille> aVisiter = new ArrayDeque<>();
+        precedents.put(racine, racine);
+        profondeurs.put(racine, 0);
+        aVisiter.add(racine);
+        if (racine.getPere() == cherche || racine.getMere() == cherche) {
+            return Collections.singletonList(cherche);
+        }
+        while (!aVisiter.isEmpty()) {
+            MembreFamille membre = aVisiter.poll();
+            if (membre == cherche) {
+                List<MembreFamille> etapes = new ArrayList<>();
+                for (MembreFamille m = membre; m != racine; m = precedents.get(m)) {
+                    etapes.add(m);
+                }
+                Collections.reverse(etapes);
+                return etapes;
+            }
+            if (membre.getConjoint() == cherche) {
+                precedents.put(cherche, membre);
+                aVisiter.addFirst(cherche);
+                continue;
+            }
+            int profondeur = profondeurs.get(membre);
+            if (!parcours.peutDevelopper(profondeur + 1)) {
+                continue;
+            }
+            List<MembreFamille> voisins = new ArrayList<>(membre.getEnfants());
+            voisins.addAll(membre.getFreresSoeurs());
+            for (MembreFamille voisin : voisins) {
+                if (!precedents.containsKey(voisin)) {
+                    precedents.put(voisin, membre);
+                    profondeurs.put(voisin, profondeur + 1);
+                    aVisiter.add(voisin);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static MembreFamille membreDe(TreeNode noeud) {
+        return noeud instanceof NoeudMembre ? ((NoeudMembre) noeud).getMembre() : null;
+    }
+
+    /**
+     * Une catégorie de liens d'un membre et les membres qu'elle contient
+     */
+    private static final class Categorie {
+        private final String libelle;
+        private final List<MembreFamille> membres = new ArrayList<>();
+
+        Categorie(String libelle) {
+            this.libelle = libelle;
+        }
+    }
+}
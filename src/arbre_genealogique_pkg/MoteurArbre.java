@@ -0,0 +1,739 @@
+package arbre_genealogique_pkg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Accès à un arbre généalogique sans interface graphique : lecture, modification, requêtes et enregistrement.
+ * Utilisé par l'interface graphique comme par la ligne de commande ({@link LigneDeCommande}),
+ * il permet d'écrire des traitements par lots sur un serveur sans affichage.
+ * Les modifications doivent passer par le moteur pour être notées dans le journal du fichier ({@link JournalArbre})
+ * et pouvoir être annulées ({@link #annuler()})
+ * @author aklam
+ */
+public class MoteurArbre {
+
+    private final ArbreGenealogique arbre;
+
+    //index des requêtes sur plusieurs générations, construit à la première requête
+    private IndexGenealogique index;
+    //tableaux de travail du calcul des liens de parenté, rattachés à l'index courant
+    private CalculParente parente;
+    //journal des modifications du fichier de l'arbre, null si elles ne sont pas journalisées
+    private JournalArbre journal;
+    //codec des enregistrements, celui du fichier ouvert
+    private CodecBlocs codec = CodecBlocs.AUCUN;
+    //modifications faites par le moteur depuis l'ouverture, à annuler ou refaire
+    private final HistoriqueArbre historique;
+
+    /**
+     * crée un moteur sur un arbre vide
+     */
+    public MoteurArbre() {
+        this(new ArbreGenealogique());
+    }
+
+    /**
+     * @param arbre l'arbre à manipuler
+     */
+    public MoteurArbre(ArbreGenealogique arbre) {
+        if (arbre == null) {
+            throw new IllegalArgumentException("Arbre manquant");
+        }
+        this.arbre = arbre;
+        this.historique = new HistoriqueArbre(() -> this.arbre.getRegistre().modifications());
+    }
+
+    /**
+     * ouvre un fichier .ft, quel que soit son format, avec les modifications enregistrées dans son journal.
+     * Le journal n'est pas modifié et les modifications suivantes ne sont pas journalisées
+     * @param fichier le fichier à lire
+     * @return le moteur sur l'arbre lu
+     */
+    public static MoteurArbre ouvrir(File fichier) throws IOException {
+        return ouvrir(fichier, SuiviProgression.AUCUN);
+    }
+
+    static MoteurArbre ouvrir(File fichier, SuiviProgression suivi) throws IOException {
+        MoteurArbre moteur = new MoteurArbre(FichierArbre.ouvrir(fichier, suivi));
+        moteur.codec = FichierArbre.codec(fichier);
+        JournalArbre.rejouer(fichier, moteur);
+        //les modifications du journal font partie du fichier, elles ne s'annulent pas
+        moteur.historique.vider();
+        return moteur;
+    }
+
+    /**
+     * ouvre un fichier .ft et journalise les modifications suivantes : {@link #enregistrer(File)} sur ce fichier
+     * ne fait plus que valider le journal
+     * @param fichier le fichier à lire
+     * @return le moteur sur l'arbre lu
+     */
+    public static MoteurArbre ouvrirJournalise(File fichier) throws IOException {
+        return ouvrirJournalise(fichier, SuiviProgression.AUCUN);
+    }
+
+    static MoteurArbre ouvrirJournalise(File fichier, SuiviProgression suivi) throws IOException {
+        MoteurArbre moteur = new MoteurArbre(FichierArbre.ouvrir(fichier, suivi));
+        moteur.codec = FichierArbre.codec(fichier);
+        long fin = JournalArbre.rejouer(fichier, moteur);
+        moteur.historique.vider();
+        moteur.journal = JournalArbre.reprendre(fichier, fin);
+        return moteur;
+    }
+
+    /**
+     * importe un fichier GEDCOM en une seule passe
+     * @param fichier le fichier .ged, encodé en UTF-8
+     * @return le moteur sur l'arbre importé
+     */
+    public static MoteurArbre importerGedcom(File fichier) throws IOException {
+        return new MoteurArbre(ImportGedcom.importer(fichier, SuiviProgression.AUCUN).arbre);
+    }
+
+    /**
+     * enregistre l'arbre au format binaire .ft, avec le codec du fichier ouvert. Si les modifications sont
+     * journalisées pour ce fichier, seul le journal est validé ; l'arbre n'est réécrit que lorsque le journal
+     * devient trop gros ou que le codec a changé
+     * @param fichier le fichier à écrire
+     */
+    public void enregistrer(File fichier) throws IOException {
+        enregistrer(fichier, SuiviProgression.AUCUN);
+    }
+
+    void enregistrer(File fichier, SuiviProgression suivi) throws IOException {
+        if (journal != null && journal.concerne(fichier)) {
+            journal.valider();
+            if (journal.compactageConseille() || FichierArbre.codec(fichier) != codec) {
+                journal.compacter(arbre, codec, suivi);
+            }
+        } else {
+            FichierArbre.enregistrer(arbre, fichier, codec, suivi);
+        }
+    }
+
+    /**
+     * @return le codec des prochains enregistrements
+     */
+    CodecBlocs codec() {
+        return codec;
+    }
+
+    /**
+     * @param codec le codec des prochains enregistrements, {@link CodecBlocs#AUCUN} pour un fichier non compressé
+     */
+    void choisirCodec(CodecBlocs codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec manquant");
+        }
+        this.codec = codec;
+    }
+
+    /**
+     * journalise les modifications suivantes dans le journal du fichier, à la place du journal actuel.
+     * L'arbre doit venir d'être enregistré dans ce fichier
+     * @param fichier le fichier .ft
+     */
+    public void journaliser(File fichier) throws IOException {
+        if (journal != null && journal.concerne(fichier)) {
+            return;
+        }
+        fermerJournal();
+        journal = JournalArbre.reprendre(fichier, -1);
+    }
+
+    /**
+     * ferme le journal ; les modifications qui n'ont pas été enregistrées depuis sont abandonnées
+     */
+    public void fermerJournal() throws IOException {
+        if (journal != null) {
+            JournalArbre ferme = journal;
+            journal = null;
+            ferme.close();
+        }
+    }
+
+    /**
+     * @return la version courante de l'arbre, à parcourir depuis un autre fil pendant que le moteur le modifie
+     */
+    public InstantaneArbre instantane() {
+        return arbre.instantane();
+    }
+
+    /**
+     * exporte l'arbre au format GEDCOM 5.5.1 (UTF-8), sans charger les membres d'un fichier projeté
+     * @param fichier le fichier .ged à écrire
+     */
+    public void exporterGedcom(File fichier) throws IOException {
+        exporterGedcom(fichier, SuiviProgression.AUCUN);
+    }
+
+    void exporterGedcom(File fichier, SuiviProgression suivi) throws IOException {
+        ExportArbre.exporterGedcom(arbre, fichier, suivi);
+    }
+
+    /**
+     * exporte l'arbre au format CSV (UTF-8), une ligne par membre
+     * @param fichier le fichier .csv à écrire
+     */
+    public void exporterCsv(File fichier) throws IOException {
+        exporterCsv(fichier, SuiviProgression.AUCUN);
+    }
+
+    void exporterCsv(File fichier, SuiviProgression suivi) throws IOException {
+        ExportArbre.exporterCsv(arbre, fichier, suivi);
+    }
+
+    /**
+     * @return l'arbre manipulé
+     */
+    public ArbreGenealogique getArbre() {
+        return arbre;
+    }
+
+    /**
+     * @param id l'identifiant du membre
+     * @return le membre
+     * @throws IllegalArgumentException si aucun membre ne porte cet identifiant
+     */
+    public MembreFamille getMembre(int id) {
+        MembreFamille membre = arbre.getMembre(id);
+        if (membre == null) {
+            throw new IllegalArgumentException("Membre inconnu: " + id);
+        }
+        return membre;
+    }
+
+    /**
+     * crée la personne racine de l'arbre
+     * @return la nouvelle racine
+     */
+    public MembreFamille definirRacine(String prenoms, String nom, MembreFamille.Genre genre) {
+        return definirRacine(prenoms, nom, "", genre);
+    }
+
+    /**
+     * crée la personne racine de l'arbre
+     * @param nomDeBaseDeLaMariee le nom de base de la mariée, vide s'il n'y en a pas
+     * @return la nouvelle racine
+     */
+    public MembreFamille definirRacine(String prenoms, String nom, String nomDeBaseDeLaMariee,
+                                       MembreFamille.Genre genre) {
+        MembreFamille racine = nouveauMembre(prenoms, nom, nomDeBaseDeLaMariee, genre);
+        MembreFamille ancienne = arbre.getRoot();
+        int avant = modifications();
+        noter(journal -> journal.noterRacine(arbre.nombreMembres(), racine));
+        arbre.setRoot(racine);
+        historique.noter(new AjoutMembre(null, null, racine, new MembreFamille.EtatLiens[0], true,
+                ancienne == null ? -1 : ancienne.getId()), avant);
+        return racine;
+    }
+
+    /**
+     * crée un membre et le relie à un membre existant
+     * @param membre le membre existant
+     * @param lien le lien du nouveau membre avec le membre existant
+     * @return le nouveau membre, qui a reçu un identifiant
+     */
+    public MembreFamille ajouterLien(MembreFamille membre, MembreFamille.LienDeParente lien,
+                                     String prenoms, String nom, MembreFamille.Genre genre) {
+        return ajouterLien(membre, lien, prenoms, nom, "", genre);
+    }
+
+    /**
+     * crée un membre et le relie à un membre existant
+     * @param membre le membre existant
+     * @param lien le lien du nouveau membre avec le membre existant
+     * @param nomDeBaseDeLaMariee le nom de base de la mariée, vide s'il n'y en a pas
+     * @return le nouveau membre, qui a reçu un identifiant
+     */
+    public MembreFamille ajouterLien(MembreFamille membre, MembreFamille.LienDeParente lien, String prenoms,
+                                     String nom, String nomDeBaseDeLaMariee, MembreFamille.Genre genre) {
+        idDans(membre);
+        MembreFamille nouveauMembre = nouveauMembre(prenoms, nom, nomDeBaseDeLaMariee, genre);
+        //un ajout ne touche, en dehors du nouveau membre, qu'aux liens du membre et de son conjoint
+        MembreFamille conjoint = membre.getConjoint();
+        MembreFamille.EtatLiens[] etats = conjoint == null
+                ? new MembreFamille.EtatLiens[]{membre.etatLiens()}
+                : new MembreFamille.EtatLiens[]{membre.etatLiens(), conjoint.etatLiens()};
+        int avant = modifications();
+        noter(journal -> journal.noterLien(membre, lien, arbre.nombreMembres(), nouveauMembre));
+        try {
+            membre.ajouterLienRelatif(lien, nouveauMembre);
+        } finally {
+            //un lien refusé après l'enregistrement du nouveau membre (frere-soeur dont la mere existe) l'a tout de même ajouté
+            if (nouveauMembre.getRegistre() != null) {
+                historique.noter(new AjoutMembre(membre, lien, nouveauMembre, etats, false, -1), avant);
+            }
+        }
+        return nouveauMembre;
+    }
+
+    /**
+     * retire le dernier membre ajouté et rétablit les liens des membres auxquels il avait été lié.
+     * Utilisé pour annuler un ajout, et par le journal pour rejouer cette annulation
+     * @param membre le dernier membre ajouté
+     * @param racineChangee true si l'ajout avait remplacé la racine
+     * @param ancienneRacine l'identifiant de la racine à rétablir, -1 s'il n'y en avait pas
+     * @param etats les liens relevés avant l'ajout sur les membres auxquels il a été lié
+     */
+    void retirerMembre(MembreFamille membre, boolean racineChangee, int ancienneRacine,
+                       MembreFamille.EtatLiens[] etats) {
+        if (idDans(membre) != arbre.nombreMembres() - 1) {
+            throw new IllegalArgumentException("Seul le dernier membre ajouté peut être retiré");
+        }
+        noter(journal -> journal.noterRetrait(membre, racineChangee, ancienneRacine, etats));
+        arbre.getRegistre().retirerDernier(membre);
+        for (MembreFamille.EtatLiens etat : etats) {
+            getMembre(etat.id).retablirLiens(etat);
+        }
+        if (racineChangee) {
+            arbre.setRoot(ancienneRacine < 0 ? null : getMembre(ancienneRacine));
+        }
+    }
+
+    /**
+     * @param prenoms les nouveaux prenoms du membre
+     */
+    public void modifierPrenoms(MembreFamille membre, String prenoms) {
+        historique.noter(changerChamp(membre, RegistreMembres.Champ.PRENOMS, prenoms), modifications());
+    }
+
+    /**
+     * @param nom le nouveau nom du membre
+     */
+    public void modifierNom(MembreFamille membre, String nom) {
+        historique.noter(changerChamp(membre, RegistreMembres.Champ.NOM, nom), modifications());
+    }
+
+    /**
+     * @param nomDeBaseDeLaMariee le nouveau nom de base de la mariée, vide pour l'effacer
+     */
+    public void modifierNomDeBaseDeLaMariee(MembreFamille membre, String nomDeBaseDeLaMariee) {
+        historique.noter(changerChamp(membre, RegistreMembres.Champ.NOMDEBASEDELAMARIEE, nomDeBaseDeLaMariee),
+                modifications());
+    }
+
+    /**
+     * @param genre le nouveau genre du membre
+     * @throws IllegalArgumentException si le membre est le père ou la mère d'un enfant, ou si son conjoint
+     * a déjà ce genre
+     */
+    public void modifierGenre(MembreFamille membre, MembreFamille.Genre genre) {
+        historique.noter(changerGenre(membre, genre), modifications());
+    }
+
+    /**
+     * modifie les informations d'un membre en une seule étape d'annulation. Seuls les champs qui changent
+     * sont modifiés, dans l'ordre des paramètres ; si l'un est refusé, les précédents restent modifiés
+     * @param nomDeBaseDeLaMariee le nouveau nom de base de la mariée, vide pour l'effacer
+     */
+    public void modifierMembre(MembreFamille membre, String nom, String prenoms, String nomDeBaseDeLaMariee,
+                               MembreFamille.Genre genre) {
+        idDans(membre);
+        int avant = modifications();
+        List<HistoriqueArbre.Etape> etapes = new ArrayList<>(4);
+        try {
+            if (!nom.equals(membre.getNom())) {
+                etapes.add(changerChamp(membre, RegistreMembres.Champ.NOM, nom));
+            }
+            if (!prenoms.equals(membre.getPrenoms())) {
+                etapes.add(changerChamp(membre, RegistreMembres.Champ.PRENOMS, prenoms));
+            }
+            if (!nomDeBaseDeLaMariee.equals(membre.getNomDeBaseDeLaMariee())) {
+                etapes.add(changerChamp(membre, RegistreMembres.Champ.NOMDEBASEDELAMARIEE, nomDeBaseDeLaMariee));
+            }
+            if (genre != membre.getGenre()) {
+                etapes.add(changerGenre(membre, genre));
+            }
+        } finally {
+            if (!etapes.isEmpty()) {
+                historique.noter(new Groupe(etapes), avant);
+            }
+        }
+    }
+
+    /**
+     * annule la dernière modification faite par le moteur (création de la racine, ajout d'un membre lié,
+     * modification d'un membre), en O(1). L'annulation est journalisée comme une modification
+     * @return false s'il n'y avait rien à annuler
+     */
+    public boolean annuler() {
+        return historique.annuler();
+    }
+
+    /**
+     * refait la dernière modification annulée, tant qu'aucune autre modification n'a été faite depuis
+     * @return false s'il n'y avait rien à refaire
+     */
+    public boolean refaire() {
+        return historique.refaire();
+    }
+
+    /**
+     * @return true si une modification peut être annulée
+     */
+    public boolean peutAnnuler() {
+        return historique.peutAnnuler();
+    }
+
+    /**
+     * @return true si une modification annulée peut être refaite
+     */
+    public boolean peutRefaire() {
+        return historique.peutRefaire();
+    }
+
+    /**
+     * @param nom le nom recherché, sans tenir compte de la casse
+     * @return les membres portant ce nom
+     */
+    public List<MembreFamille> trouverParNom(String nom) {
+        return arbre.trouverParNom(nom);
+    }
+
+    /**
+     * @param prenoms les prenoms recherchés, sans tenir compte de la casse
+     * @return les membres portant ces prenoms
+     */
+    public List<MembreFamille> trouverParPrenoms(String prenoms) {
+        return arbre.trouverParPrenoms(prenoms);
+    }
+
+    /**
+     * @param texte les mots recherchés, en entier ou en partie, avec ou sans accents
+     * @param limite le nombre maximal de membres retournés
+     * @return les membres trouvés, les plus proches d'abord
+     */
+    public List<MembreFamille> rechercher(String texte, int limite) {
+        return arbre.rechercher(texte, limite);
+    }
+
+    /**
+     * construit l'index de la recherche approchée, que la première recherche construirait sinon elle-même.
+     * L'arbre ne doit pas être modifié pendant la construction
+     * @param suivi reçoit le nombre de membres indexés, peut annuler la construction
+     */
+    void preparerRecherche(SuiviProgression suivi) throws IOException {
+        arbre.getRegistre().preparerRecherche(suivi);
+    }
+
+    /**
+     * @return true si la recherche approchée peut répondre sans construire son index
+     */
+    boolean recherchePrete() {
+        return arbre.getRegistre().recherchePrete();
+    }
+
+    /**
+     * requête locale qui ne construit pas l'index : l'interface l'appelle à chaque sélection,
+     * même sur un arbre projeté dont la plupart des membres ne sont pas lus
+     * @param membre le grand-parent
+     * @return les enfants des enfants du membre, chacun une seule fois
+     */
+    public List<MembreFamille> petitsEnfants(MembreFamille membre) {
+        List<MembreFamille> resultat = new ArrayList<>();
+        new ParcoursArbre(2).parcourirDescendants(membre, (descendant, profondeur) -> {
+            if (profondeur == 2) {
+                resultat.add(descendant);
+            }
+            return true;
+        });
+        return resultat;
+    }
+
+    /**
+     * @param membre l'ancêtre
+     * @param profondeurMax le nombre maximal de générations, 1 pour les enfants seulement
+     * @return les descendants du membre jusqu'à cette profondeur, génération par génération
+     */
+    public List<MembreFamille> descendants(MembreFamille membre, int profondeurMax) {
+        return membres(index().descendants(idDans(membre), 1, profondeurMax));
+    }
+
+    /**
+     * @param membre le descendant
+     * @return tous les ancêtres connus du membre, génération par génération
+     */
+    public List<MembreFamille> ancetres(MembreFamille membre) {
+        return membres(index().ancetres(idDans(membre)));
+    }
+
+    /**
+     * @param membre le membre
+     * @return sa génération : 0 sans parent connu, sinon 1 + la plus grande génération de ses parents
+     */
+    public int generation(MembreFamille membre) {
+        return index().generation(idDans(membre));
+    }
+
+    /**
+     * @return true si le premier membre est un ancêtre du second
+     */
+    public boolean estAncetre(MembreFamille ancetre, MembreFamille descendant) {
+        return index().estAncetre(idDans(ancetre), idDans(descendant));
+    }
+
+    /**
+     * @return le lien de parenté du premier membre vers le second ("cousin germain", "belle-sœur"...)
+     */
+    public LienParente lien(MembreFamille a, MembreFamille b) {
+        idDans(a);
+        idDans(b);
+        IndexGenealogique courant = index();
+        if (parente == null || !parente.utilise(courant)) {
+            parente = new CalculParente(courant, arbre.getRegistre());
+        }
+        return parente.lien(a, b);
+    }
+
+    /**
+     * vérifie la cohérence de tout l'arbre en parallèle, sur les fils communs du {@link ForkJoinPool}.
+     * L'arbre ne doit pas être modifié pendant la vérification
+     * @return les incohérences trouvées (voir {@link VerificationArbre})
+     */
+    public RapportVerification verifier() {
+        return VerificationArbre.verifier(arbre.getRegistre(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * calcule les statistiques de population de l'arbre en parallèle, sur les fils communs du {@link ForkJoinPool}.
+     * L'arbre ne doit pas être modifié pendant le calcul
+     * @return membres par génération, genres, noms les plus portés et enfants par couple
+     */
+    public RapportStatistiques statistiques() {
+        return StatistiquesArbre.calculer(arbre.getRegistre(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return l'index des liens parent-enfant, reconstruit seulement si l'arbre a été modifié depuis
+     */
+    IndexGenealogique index() {
+        RegistreMembres registre = arbre.getRegistre();
+        if (index == null || !index.estAJour(registre)) {
+            index = IndexGenealogique.construire(registre);
+        }
+        return index;
+    }
+
+    //le membre est validé avant d'être noté : le journal ne contient que des noms valides
+    static MembreFamille nouveauMembre(String prenoms, String nom, String nomDeBaseDeLaMariee,
+                                       MembreFamille.Genre genre) {
+        MembreFamille membre = new MembreFamille(prenoms, nom, genre);
+        if (!nomDeBaseDeLaMariee.isEmpty()) {
+            membre.setNomDeBaseDeLaMariee(nomDeBaseDeLaMariee);
+        }
+        return membre;
+    }
+
+    //modifie un nom et rend l'étape qui l'annule
+    private HistoriqueArbre.Etape changerChamp(MembreFamille membre, RegistreMembres.Champ champ, String valeur) {
+        idDans(membre);
+        String ancienne = champ(membre, champ);
+        appliquerChamp(membre, champ, valeur);
+        return new ChangementChamp(membre, champ, ancienne, champ(membre, champ));
+    }
+
+    private void appliquerChamp(MembreFamille membre, RegistreMembres.Champ champ, String valeur) {
+        noter(journal -> journal.noterChamp(membre, champ, valeur));
+        switch (champ) {
+            case PRENOMS:
+                membre.setPrenoms(valeur);
+                break;
+            case NOM:
+                membre.setNom(valeur);
+                break;
+            default:
+                membre.setNomDeBaseDeLaMariee(valeur);
+                break;
+        }
+    }
+
+    private static String champ(MembreFamille membre, RegistreMembres.Champ champ) {
+        switch (champ) {
+            case PRENOMS:
+                return membre.getPrenoms();
+            case NOM:
+                return membre.getNom();
+            default:
+                return membre.getNomDeBaseDeLaMariee();
+        }
+    }
+
+    private HistoriqueArbre.Etape changerGenre(MembreFamille membre, MembreFamille.Genre genre) {
+        idDans(membre);
+        //avant le journal et l'historique : un changement refusé ne laisse aucune trace
+        membre.verifierGenre(genre);
+        MembreFamille.Genre ancien = membre.getGenre();
+        appliquerGenre(membre, genre);
+        return new ChangementGenre(membre, ancien, genre);
+    }
+
+    private void appliquerGenre(MembreFamille membre, MembreFamille.Genre genre) {
+        noter(journal -> journal.noterGenre(membre, genre));
+        membre.setGenre(genre);
+    }
+
+    private int modifications() {
+        return arbre.getRegistre().modifications();
+    }
+
+    /**
+     * note une modification dans le journal avant de l'appliquer. Si le journal ne peut pas être écrit,
+     * la modification n'est pas appliquée
+     */
+    private void noter(Note note) {
+        if (journal != null) {
+            try {
+                note.ecrire(journal);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private interface Note {
+        void ecrire(JournalArbre journal) throws IOException;
+    }
+
+    /**
+     * Modification d'un nom : l'ancienne et la nouvelle valeur
+     */
+    private final class ChangementChamp implements HistoriqueArbre.Etape {
+        private final MembreFamille membre;
+        private final RegistreMembres.Champ champ;
+        private final String ancienne;
+        private final String nouvelle;
+
+        ChangementChamp(MembreFamille membre, RegistreMembres.Champ champ, String ancienne, String nouvelle) {
+            this.membre = membre;
+            this.champ = champ;
+            this.ancienne = ancienne;
+            this.nouvelle = nouvelle;
+        }
+
+        @Override
+        public void annuler() {
+            appliquerChamp(membre, champ, ancienne);
+        }
+
+        @Override
+        public void refaire() {
+            appliquerChamp(membre, champ, nouvelle);
+        }
+    }
+
+    /**
+     * Modification du genre
+     */
+    private final class ChangementGenre implements HistoriqueArbre.Etape {
+        private final MembreFamille membre;
+        private final MembreFamille.Genre ancien;
+        private final MembreFamille.Genre nouveau;
+
+        ChangementGenre(MembreFamille membre, MembreFamille.Genre ancien, MembreFamille.Genre nouveau) {
+            this.membre = membre;
+            this.ancien = ancien;
+            this.nouveau = nouveau;
+        }
+
+        @Override
+        public void annuler() {
+            appliquerGenre(membre, ancien);
+        }
+
+        @Override
+        public void refaire() {
+            appliquerGenre(membre, nouveau);
+        }
+    }
+
+    /**
+     * Ajout d'un membre, lié à un membre existant ou comme nouvelle racine. L'annulation retire le nouveau membre,
+     * qui est le dernier de l'arbre, et rétablit les liens relevés avant l'ajout ; refaire l'ajoute de nouveau,
+     * avec le même identifiant
+     */
+    private final class AjoutMembre implements HistoriqueArbre.Etape {
+        //null pour une nouvelle racine
+        private final MembreFamille membre;
+        private final MembreFamille.LienDeParente lien;
+        private final MembreFamille nouveau;
+        private final MembreFamille.EtatLiens[] etats;
+        private final boolean racineChangee;
+        private final int ancienneRacine;
+
+        AjoutMembre(MembreFamille membre, MembreFamille.LienDeParente lien, MembreFamille nouveau,
+                    MembreFamille.EtatLiens[] etats, boolean racineChangee, int ancienneRacine) {
+            this.membre = membre;
+            this.lien = lien;
+            this.nouveau = nouveau;
+            this.etats = etats;
+            this.racineChangee = racineChangee;
+            this.ancienneRacine = ancienneRacine;
+        }
+
+        @Override
+        public void annuler() {
+            retirerMembre(nouveau, racineChangee, ancienneRacine, etats);
+        }
+
+        @Override
+        public void refaire() {
+            if (membre == null) {
+                noter(journal -> journal.noterRacine(arbre.nombreMembres(), nouveau));
+                arbre.setRoot(nouveau);
+                return;
+            }
+            noter(journal -> journal.noterLien(membre, lien, arbre.nombreMembres(), nouveau));
+            try {
+                membre.ajouterLienRelatif(lien, nouveau);
+            } catch (IllegalArgumentException e) {
+                //refusé de la même façon qu'à l'origine, après avoir ajouté le membre
+            }
+        }
+    }
+
+    /**
+     * Plusieurs modifications annulées et refaites ensemble
+     */
+    private static final class Groupe implements HistoriqueArbre.Etape {
+        private final List<HistoriqueArbre.Etape> etapes;
+
+        Groupe(List<HistoriqueArbre.Etape> etapes) {
+            this.etapes = etapes;
+        }
+
+        @Override
+        public void annuler() {
+            for (int i = etapes.size() - 1; i >= 0; i--) {
+                etapes.get(i).annuler();
+            }
+        }
+
+        @Override
+        public void refaire() {
+            for (HistoriqueArbre.Etape etape : etapes) {
+                etape.refaire();
+            }
+        }
+    }
+
+    private int idDans(MembreFamille membre) {
+        if (membre.getRegistre() != arbre.getRegistre()) {
+            throw new IllegalArgumentException("Le membre n'appartient pas à cet arbre");
+        }
+        return membre.getId();
+    }
+
+    private List<MembreFamille> membres(int[] ids) {
+        List<MembreFamille> resultat = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            resultat.add(arbre.getMembre(id));
+        }
+        return resultat;
+    }
+}
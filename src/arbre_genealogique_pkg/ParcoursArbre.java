@@ -0,0 +1,143 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Parcours des liens de parenté avec mémoire des membres déjà visités et profondeur maximale, pour l'affichage
+ * de l'arbre et les descendants proches d'un membre.
+ * Les listes d'enfants étant partagées, un même membre est atteint par plusieurs chemins :
+ * il n'est développé que la première fois, ce qui rend le parcours linéaire en nombre de membres et de liens.
+ * Les membres visités sont marqués par identifiant dans un BitSet
+ * @author aklam
+ */
+final class ParcoursArbre {
+
+    /**
+     * profondeur utilisée pour l'affichage de l'arbre : au-delà, les membres ne sont plus développés
+     */
+    static final int PROFONDEUR_AFFICHAGE = 128;
+
+    /**
+     * Reçoit chaque membre atteint, une seule fois
+     */
+    interface Visiteur {
+        /**
+         * @param membre le membre atteint
+         * @param profondeur le nombre de liens depuis le départ
+         * @return true pour suivre aussi les liens de ce membre
+         */
+        boolean visiter(MembreFamille membre, int profondeur);
+    }
+
+    private final int profondeurMax;
+    private final BitSet visites;
+    //un membre seul n'a pas encore d'identifiant
+    private final Set<MembreFamille> visitesSansId;
+
+    /**
+     * @param profondeurMax nombre maximal de liens entre le départ et un membre développé
+     */
+    ParcoursArbre(int profondeurMax) {
+        if (profondeurMax < 0) {
+            throw new IllegalArgumentException("Profondeur négative: " + profondeurMax);
+        }
+        this.profondeurMax = profondeurMax;
+        this.visites = new BitSet();
+        this.visitesSansId = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * marque un membre comme visité
+     * @param membre le membre atteint
+     * @return true si c'est la première fois que le membre est atteint
+     */
+    boolean decouvrir(MembreFamille membre) {
+        int id = membre.getId();
+        if (id < 0) {
+            return visitesSansId.add(membre);
+        }
+        if (visites.get(id)) {
+            return false;
+        }
+        visites.set(id);
+        return true;
+    }
+
+    /**
+     * retire la marque d'un membre, qui pourra de nouveau être développé
+     * @param membre le membre
+     * @param id son identifiant quand il a été marqué : un membre retiré de l'arbre (ajout annulé) n'en a plus,
+     *           et son identifiant sera repris par le prochain membre ajouté
+     */
+    void oublier(MembreFamille membre, int id) {
+        if (id < 0) {
+            visitesSansId.remove(membre);
+        } else {
+            visites.clear(id);
+        }
+    }
+
+    /**
+     * @return true si un membre situé à cette profondeur peut encore être développé
+     */
+    boolean peutDevelopper(int profondeur) {
+        return profondeur < profondeurMax;
+    }
+
+    /**
+     * parcours en largeur des descendants d'un membre. Les membres déjà visités, y compris lors d'un parcours
+     * précédent avec la même instance, ne sont pas visités à nouveau
+     * @param depart le premier membre visité, à la profondeur 0
+     * @param visiteur reçoit chaque membre atteint
+     */
+    void parcourirDescendants(MembreFamille depart, Visiteur visiteur) {
+        if (!decouvrir(depart)) {
+            return;
+        }
+        RegistreMembres registre = depart.getRegistre();
+        if (!visiteur.visiter(depart, 0) || registre == null || !peutDevelopper(0)) {
+            //un membre sans registre n'a aucun lien
+            return;
+        }
+        //file d'identifiants et de profondeurs, sans objet par élément
+        int[] file = new int[16];
+        int[] profondeurs = new int[16];
+        int debut = 0;
+        int fin = 0;
+        file[fin] = depart.getId();
+        profondeurs[fin++] = 0;
+        while (debut < fin) {
+            MembreFamille membre = registre.get(file[debut]);
+            int profondeur = profondeurs[debut++] + 1;
+            ListeIds enfants = membre.idsEnfants();
+            for (int i = 0; i < enfants.taille(); i++) {
+                fin = suivre(registre, enfants.get(i), profondeur, visiteur, file, profondeurs, fin);
+                file = agrandir(file, fin);
+                profondeurs = agrandir(profondeurs, fin);
+            }
+        }
+    }
+
+    //visite un voisin pas encore atteint et le met en file s'il doit être développé. renvoie la nouvelle fin de file
+    private int suivre(RegistreMembres registre, int id, int profondeur, Visiteur visiteur,
+                       int[] file, int[] profondeurs, int fin) {
+        if (id < 0 || visites.get(id)) {
+            return fin;
+        }
+        visites.set(id);
+        if (visiteur.visiter(registre.get(id), profondeur) && peutDevelopper(profondeur)) {
+            file[fin] = id;
+            profondeurs[fin] = profondeur;
+            return fin + 1;
+        }
+        return fin;
+    }
+
+    private static int[] agrandir(int[] tableau, int fin) {
+        return fin < tableau.length ? tableau : Arrays.copyOf(tableau, tableau.length * 2);
+    }
+}
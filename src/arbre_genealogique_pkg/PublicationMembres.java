@@ -0,0 +1,178 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Dernière version publiée des membres d'un registre, tenue à jour pour les instantanés ({@link InstantaneArbre}).
+ * Elle n'existe qu'à partir du premier instantané. Ensuite, chaque modification d'un membre ne fait que le marquer,
+ * en O(1) ; l'instantané suivant republie les membres marqués et partage tout le reste avec le précédent.
+ * Le premier instantané, qui publie tous les membres, coûte donc O(n). Les marques sont réparties en bandes selon
+ * l'identifiant : des fils qui modifient des membres différents ne se disputent pas un même verrou
+ * @author aklam
+ */
+final class PublicationMembres {
+
+    private static final int BITS_BANDES = 6;
+
+    private final RegistreMembres registre;
+
+    private VecteurPersistant<InstantaneArbre.Fiche> membres = VecteurPersistant.vide();
+    private VecteurPersistant<int[]> listes = VecteurPersistant.vide();
+    //numéro de chaque liste publiée : une liste partagée entre plusieurs membres n'est publiée qu'une fois
+    private final Map<ListeIds, Integer> numeros = new IdentityHashMap<>();
+    //par numéro, la liste publiée et le nombre de fiches qui la désignent. Une liste qu'aucune fiche ne désigne plus
+    //(remplacée par setEnfants, par le rétablissement des liens d'une annulation) est oubliée et son numéro resservira
+    private ListeIds[] listesNumerotees = new ListeIds[16];
+    private int[] designations = new int[16];
+    private final ListeIds numerosLibres = new ListeIds();
+
+    //membres modifiés depuis le dernier instantané, chacun une seule fois, répartis en bandes
+    private final Bande[] bandes = new Bande[1 << BITS_BANDES];
+
+    /**
+     * publie tous les membres du registre, qui doivent être en mémoire
+     * @param registre le registre à publier
+     */
+    PublicationMembres(RegistreMembres registre) {
+        this.registre = registre;
+        for (int i = 0; i < bandes.length; i++) {
+            bandes[i] = new Bande();
+        }
+        for (int id = 0; id < registre.taille(); id++) {
+            marquer(id);
+        }
+    }
+
+    /**
+     * note qu'un membre a changé depuis le dernier instantané : ses champs, ses liens ou le contenu de ses listes
+     * @param id l'identifiant du membre
+     */
+    void marquer(int id) {
+        Bande bande = bandes[id & (bandes.length - 1)];
+        synchronized (bande) {
+            int rang = id >>> BITS_BANDES;
+            if (!bande.marque.get(rang)) {
+                bande.marque.set(rang);
+                bande.marques.ajouter(id);
+            }
+        }
+    }
+
+    //relève les marques de toutes les bandes et les efface
+    private ListeIds relever() {
+        ListeIds releves = new ListeIds();
+        for (Bande bande : bandes) {
+            synchronized (bande) {
+                for (int i = 0; i < bande.marques.taille(); i++) {
+                    int id = bande.marques.get(i);
+                    bande.marque.clear(id >>> BITS_BANDES);
+                    releves.ajouter(id);
+                }
+                bande.marques.tronquer(0);
+            }
+        }
+        return releves;
+    }
+
+    /**
+     * @param racine l'identifiant de la racine, -1 s'il n'y en a pas
+     * @return l'instantané des membres, après publication des membres marqués
+     */
+    synchronized InstantaneArbre publier(int racine) {
+        int taille = registre.taille();
+        ListeIds marques = relever();
+        if (!marques.estVide()) {
+            VecteurPersistant.Edition<InstantaneArbre.Fiche> editionMembres = membres.edition();
+            VecteurPersistant.Edition<int[]> editionListes = listes.edition();
+            //une liste partagée par plusieurs membres marqués n'est recopiée qu'une fois par instantané
+            Map<ListeIds, Integer> publiees = new IdentityHashMap<>();
+            for (int i = 0; i < marques.taille(); i++) {
+                int id = marques.get(i);
+                InstantaneArbre.Fiche ancienne = id < membres.taille() ? membres.get(id) : null;
+                if (id >= taille) {
+                    //membre retiré depuis (ajout annulé) : sa case, au-delà du nombre de membres, est vidée
+                    if (ancienne != null) {
+                        editionMembres.remplacer(id, null);
+                        oublier(ancienne, editionListes);
+                    }
+                    continue;
+                }
+                MembreFamille membre = registre.get(id);
+                InstantaneArbre.Fiche fiche = new InstantaneArbre.Fiche(membre,
+                        publier(membre.idsEnfants(), editionListes, publiees),
+                        publier(membre.idsFreresSoeurs(), editionListes, publiees));
+                //les identifiants sont denses : un nouveau membre est toujours le suivant
+                while (editionMembres.taille() <= id) {
+                    editionMembres.ajouter(null);
+                }
+                editionMembres.remplacer(id, fiche);
+                //après la nouvelle fiche, pour qu'une liste que le membre garde ne soit pas oubliée entre les deux
+                if (ancienne != null) {
+                    oublier(ancienne, editionListes);
+                }
+            }
+            membres = editionMembres.figer();
+            listes = editionListes.figer();
+        }
+        return new InstantaneArbre(membres, listes, taille, racine);
+    }
+
+    private int publier(ListeIds liste, VecteurPersistant.Edition<int[]> edition, Map<ListeIds, Integer> publiees) {
+        //une liste allouée mais encore vide est numérotée : elle peut être partagée et remplie plus tard
+        if (liste == ListeIds.VIDE) {
+            return -1;
+        }
+        Integer numero = publiees.get(liste);
+        if (numero == null) {
+            numero = numeros.get(liste);
+            if (numero == null) {
+                numero = numeroLibre(edition);
+                numeros.put(liste, numero);
+                listesNumerotees[numero] = liste;
+            }
+            edition.remplacer(numero, liste.copie());
+            publiees.put(liste, numero);
+        }
+        designations[numero]++;
+        return numero;
+    }
+
+    private int numeroLibre(VecteurPersistant.Edition<int[]> edition) {
+        if (!numerosLibres.estVide()) {
+            int numero = numerosLibres.get(numerosLibres.taille() - 1);
+            numerosLibres.tronquer(numerosLibres.taille() - 1);
+            return numero;
+        }
+        int numero = edition.taille();
+        edition.ajouter(null);
+        if (numero == listesNumerotees.length) {
+            listesNumerotees = Arrays.copyOf(listesNumerotees, numero * 2);
+            designations = Arrays.copyOf(designations, numero * 2);
+        }
+        return numero;
+    }
+
+    //retire les désignations d'une fiche remplacée ; une liste qui n'est plus désignée libère son numéro
+    private void oublier(InstantaneArbre.Fiche fiche, VecteurPersistant.Edition<int[]> edition) {
+        oublier(fiche.numeroEnfants(), edition);
+        oublier(fiche.numeroFreresSoeurs(), edition);
+    }
+
+    private void oublier(int numero, VecteurPersistant.Edition<int[]> edition) {
+        if (numero < 0 || --designations[numero] > 0) {
+            return;
+        }
+        numeros.remove(listesNumerotees[numero]);
+        listesNumerotees[numero] = null;
+        edition.remplacer(numero, null);
+        numerosLibres.ajouter(numero);
+    }
+
+    private static final class Bande {
+        private final ListeIds marques = new ListeIds();
+        private final BitSet marque = new BitSet();
+    }
+}
@@ -0,0 +1,123 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Statistiques d'un arbre (voir {@link MoteurArbre#statistiques()}) : membres par génération, genres,
+ * noms les plus portés et nombre d'enfants par couple
+ * @author aklam
+ */
+public final class RapportStatistiques {
+
+    private final int nombreMembres;
+    private final long[] genres;
+    private final long[] parGeneration;
+    private final Map<String, Long> nomsFrequents;
+    private final int nombreNoms;
+    private final long couples;
+    private final long enfantsDesCouples;
+    private final long nanosecondes;
+
+    RapportStatistiques(int nombreMembres, long[] genres, long[] parGeneration, Map<String, Long> nomsFrequents,
+                        int nombreNoms, long couples, long enfantsDesCouples, long nanosecondes) {
+        this.nombreMembres = nombreMembres;
+        this.genres = genres;
+        this.parGeneration = parGeneration;
+        this.nomsFrequents = Collections.unmodifiableMap(nomsFrequents);
+        this.nombreNoms = nombreNoms;
+        this.couples = couples;
+        this.enfantsDesCouples = enfantsDesCouples;
+        this.nanosecondes = nanosecondes;
+    }
+
+    /**
+     * @return le nombre de membres de l'arbre
+     */
+    public int nombreMembres() {
+        return nombreMembres;
+    }
+
+    /**
+     * @param genre le genre compté, null pour les membres dont le genre est inconnu
+     * @return le nombre de membres de ce genre
+     */
+    public long nombre(MembreFamille.Genre genre) {
+        return genres[genre == null ? 0 : genre.ordinal() + 1];
+    }
+
+    /**
+     * @return le nombre d'hommes pour une femme, 0 s'il n'y a aucune femme
+     */
+    public double hommesParFemme() {
+        long femmes = nombre(MembreFamille.Genre.FEMININ);
+        return femmes == 0 ? 0 : (double) nombre(MembreFamille.Genre.MASCULIN) / femmes;
+    }
+
+    /**
+     * @return le nombre de membres de chaque génération, la génération 0 étant celle des membres sans parent connu
+     */
+    public long[] membresParGeneration() {
+        return parGeneration.clone();
+    }
+
+    /**
+     * @return la plus grande génération, -1 pour un arbre vide
+     */
+    public int profondeurMax() {
+        return parGeneration.length - 1;
+    }
+
+    /**
+     * @return les noms les plus portés et leur nombre de porteurs, du plus fréquent au moins fréquent
+     */
+    public Map<String, Long> nomsFrequents() {
+        return nomsFrequents;
+    }
+
+    /**
+     * @return le nombre de noms différents
+     */
+    public int nombreNoms() {
+        return nombreNoms;
+    }
+
+    /**
+     * @return le nombre de couples, chaque paire de conjoints comptant une fois
+     */
+    public long nombreCouples() {
+        return couples;
+    }
+
+    /**
+     * @return le nombre moyen d'enfants d'un couple, 0 s'il n'y a aucun couple
+     */
+    public double enfantsParCouple() {
+        return couples == 0 ? 0 : (double) enfantsDesCouples / couples;
+    }
+
+    /**
+     * @return la durée du calcul, en nanosecondes
+     */
+    public long nanosecondes() {
+        return nanosecondes;
+    }
+
+    @Override
+    public String toString() {
+        String ligne = System.lineSeparator();
+        StringBuilder texte = new StringBuilder(String.format("%d membres, %d générations, calculé en %.2f s",
+                nombreMembres, parGeneration.length, nanosecondes / 1e9));
+        texte.append(ligne).append(String.format("hommes %d, femmes %d, inconnus %d (%.2f homme(s) par femme)",
+                nombre(MembreFamille.Genre.MASCULIN), nombre(MembreFamille.Genre.FEMININ), nombre(null),
+                hommesParFemme()));
+        texte.append(ligne).append(String.format("%d couples, %.2f enfant(s) par couple", couples, enfantsParCouple()));
+        texte.append(ligne).append("membres par génération : ").append(Arrays.toString(parGeneration));
+        texte.append(ligne).append(String.format("%d noms différents, les plus portés :", nombreNoms));
+        for (Map.Entry<String, Long> nom : nomsFrequents.entrySet()) {
+            texte.append(ligne).append(String.format("  %-8d %s", nom.getValue(), nom.getKey()));
+        }
+        return texte.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+
+/**
+ * Résultat de la vérification d'un arbre (voir {@link MoteurArbre#verifier()}) : pour chaque sorte
+ * d'incohérence, le nombre de fois où elle a été trouvée et quelques membres concernés en exemple
+ * @author aklam
+ */
+public final class RapportVerification {
+
+    /**
+     * Les incohérences détectées, chacune comptée sur le membre qui la porte
+     */
+    public enum Probleme {
+        LIEN_INCONNU("lien vers un membre inconnu"),
+        ENFANT_ABSENT("absent des enfants de son parent"),
+        ENFANT_SANS_PARENT("enfant dont ni le membre ni son conjoint n'est le parent"),
+        CONJOINT_NON_RECIPROQUE("conjoint qui n'a pas le membre pour conjoint"),
+        CONJOINT_MEME_GENRE("conjoint du même genre"),
+        PERE_NON_MASCULIN("père qui n'est pas un homme"),
+        MERE_NON_FEMININ("mère qui n'est pas une femme"),
+        NOM_DE_BASE_NON_FEMININ("nom de base de la mariée pour un homme"),
+        PROPRE_ANCETRE("membre qui est son propre ancêtre");
+
+        private final String libelle;
+
+        Probleme(String libelle) {
+            this.libelle = libelle;
+        }
+
+        /**
+         * @return la description du problème, en français
+         */
+        public String getLibelle() {
+            return libelle;
+        }
+    }
+
+    private final int nombreMembres;
+    private final long[] nombres;
+    private final int[][] exemples;
+    private final long nanosecondes;
+
+    RapportVerification(int nombreMembres, long[] nombres, int[][] exemples, long nanosecondes) {
+        this.nombreMembres = nombreMembres;
+        this.nombres = nombres;
+        this.exemples = exemples;
+        this.nanosecondes = nanosecondes;
+    }
+
+    /**
+     * @return le nombre de membres vérifiés
+     */
+    public int nombreMembres() {
+        return nombreMembres;
+    }
+
+    /**
+     * @param probleme la sorte d'incohérence
+     * @return le nombre de fois où elle a été trouvée
+     */
+    public long nombre(Probleme probleme) {
+        return nombres[probleme.ordinal()];
+    }
+
+    /**
+     * @param probleme la sorte d'incohérence
+     * @return les identifiants de quelques membres concernés, dans l'ordre croissant
+     */
+    public int[] exemples(Probleme probleme) {
+        return exemples[probleme.ordinal()].clone();
+    }
+
+    /**
+     * @return le nombre total d'incohérences trouvées
+     */
+    public long total() {
+        long total = 0;
+        for (long nombre : nombres) {
+            total += nombre;
+        }
+        return total;
+    }
+
+    /**
+     * @return true si aucune incohérence n'a été trouvée
+     */
+    public boolean estValide() {
+        return total() == 0;
+    }
+
+    /**
+     * @return la durée de la vérification, en nanosecondes
+     */
+    public long nanosecondes() {
+        return nanosecondes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texte = new StringBuilder(String.format("%d membres vérifiés en %.2f s : %s",
+                nombreMembres, nanosecondes / 1e9,
+                estValide() ? "aucune incohérence" : total() + " incohérence(s)"));
+        for (Probleme probleme : Probleme.values()) {
+            if (nombre(probleme) > 0) {
+                texte.append(System.lineSeparator()).append(String.format("  %-8d %s, par exemple %s",
+                        nombre(probleme), probleme.getLibelle(), Arrays.toString(exemples[probleme.ordinal()])));
+            }
+        }
+        return texte.toString();
+    }
+}
@@ -0,0 +1,673 @@
+package arbre_genealogique_pkg;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Registre de tous les membres d'un arbre généalogique. Chaque membre y reçoit un identifiant numérique stable
+ * (sa position dans le registre) et il est indexé par nom, prenoms et nom de base de la mariée.
+ * La recherche par identifiant se fait en O(1), la recherche par nom en O(1) en moyenne.
+ * Un registre peut être adossé à une {@link SourceMembres} : les membres ne sont alors construits
+ * qu'au premier accès, et les index de noms au premier appel de {@link #trouver}.
+ * Un registre partagé entre plusieurs fils (voir {@link ArbreConcurrent}) protège ses pages et ses index par un verrou :
+ * les ajouts et les index le prennent en écriture, la lecture d'un membre par identifiant se fait sans verrou.
+ * La lecture à la demande dans la source se fait sous le moniteur du registre : l'affichage peut lire des membres
+ * pendant qu'un enregistrement en arrière-plan construit tous les autres
+ * @author aklam
+ */
+class RegistreMembres implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    //les membres sont rangés par pages pour ne réserver de la place que pour les parties réellement chargées
+    private static final int BITS_PAGE = 12;
+    private static final int TAILLE_PAGE = 1 << BITS_PAGE;
+
+    //nombre de membres indexés entre deux signalements de l'avancement
+    private static final int PAS_PROGRESSION = 4096;
+
+    //l'identifiant d'un membre est sa position dans les pages
+    private MembreFamille[][] pages;
+    private int taille;
+
+    //source des membres pas encore construits, null si tous les membres sont en mémoire.
+    //volatile : le fil qui la détache après avoir tout construit publie ainsi les membres construits
+    private transient volatile SourceMembres source;
+
+    //nombre de modifications des membres ou des liens, pour savoir si un index précalculé est encore valable
+    private transient volatile int modifications;
+    private static final AtomicIntegerFieldUpdater<RegistreMembres> MODIFICATIONS =
+            AtomicIntegerFieldUpdater.newUpdater(RegistreMembres.class, "modifications");
+
+    //null tant que le registre n'est utilisé que par un seul fil
+    private transient StampedLock verrou;
+
+    //versions publiées des membres pour les instantanés, null tant qu'aucun instantané n'a été pris
+    private transient volatile PublicationMembres publication;
+
+    //index secondaires, de la valeur en minuscules vers les identifiants. construits à la demande
+    private HashMap<String, ListeIds> parNom;
+    private HashMap<String, ListeIds> parPrenoms;
+    private HashMap<String, ListeIds> parNomDeBaseDeLaMariee;
+
+    //index de recherche approchée, construit à la première recherche et jamais enregistré
+    private transient IndexRecherche recherche;
+
+    /**
+     * Les champs indexés d'un membre
+     */
+    enum Champ {
+        NOM,
+        PRENOMS,
+        NOMDEBASEDELAMARIEE
+    }
+
+    /**
+     * construit un registre vide
+     */
+    RegistreMembres() {
+        this.pages = new MembreFamille[1][];
+        this.taille = 0;
+        this.source = null;
+        this.parNom = new HashMap<>();
+        this.parPrenoms = new HashMap<>();
+        this.parNomDeBaseDeLaMariee = new HashMap<>();
+    }
+
+    /**
+     * construit un registre dont les membres seront lus dans la source au premier accès
+     * @param source la source des membres
+     */
+    RegistreMembres(SourceMembres source) {
+        this.taille = source.nombreMembres();
+        this.pages = new MembreFamille[Math.max(1, (taille + TAILLE_PAGE - 1) >>> BITS_PAGE)][];
+        this.source = source;
+        this.parNom = null;
+        this.parPrenoms = null;
+        this.parNomDeBaseDeLaMariee = null;
+    }
+
+    /**
+     * enregistre un membre qui n'appartient encore à aucun registre et lui attribue un identifiant
+     * @param membre le membre à enregistrer
+     * @return l'identifiant attribué
+     */
+    int ajouter(MembreFamille membre) {
+        if (verrou == null) {
+            return inscrire(membre);
+        }
+        long tampon = verrou.writeLock();
+        try {
+            return inscrire(membre);
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+    }
+
+    private int inscrire(MembreFamille membre) {
+        if (membre.getRegistre() != null) {
+            throw new IllegalArgumentException("Le membre appartient déjà à un arbre");
+        }
+        int id = taille;
+        placer(id, membre);
+        taille++;
+        signalerModification();
+        marquer(membre);
+        if (estIndexe()) {
+            indexer(parNom, membre.getNom(), id);
+            indexer(parPrenoms, membre.getPrenoms(), id);
+            indexer(parNomDeBaseDeLaMariee, membre.getNomDeBaseDeLaMariee(), id);
+        }
+        if (recherche != null) {
+            recherche.ajouter(id, membre.getNom());
+            recherche.ajouter(id, membre.getPrenoms());
+            recherche.ajouter(id, membre.getNomDeBaseDeLaMariee());
+        }
+        return id;
+    }
+
+    /**
+     * retire le dernier membre enregistré, pour annuler son ajout : les identifiants des autres membres ne changent pas.
+     * Le membre n'appartient plus à aucun registre et n'a plus de liens, il peut être ajouté de nouveau
+     * @param membre le membre qui a reçu le dernier identifiant
+     */
+    void retirerDernier(MembreFamille membre) {
+        if (verrou == null) {
+            desinscrire(membre);
+            return;
+        }
+        long tampon = verrou.writeLock();
+        try {
+            desinscrire(membre);
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+    }
+
+    private void desinscrire(MembreFamille membre) {
+        int id = membre.getId();
+        SourceMembres lue = source;
+        if (membre.getRegistre() != this || id != taille - 1 || (lue != null && id < lue.nombreMembres())) {
+            throw new IllegalArgumentException("Seul le dernier membre ajouté peut être retiré");
+        }
+        if (estIndexe()) {
+            desindexer(parNom, membre.getNom(), id);
+            desindexer(parPrenoms, membre.getPrenoms(), id);
+            desindexer(parNomDeBaseDeLaMariee, membre.getNomDeBaseDeLaMariee(), id);
+        }
+        if (recherche != null) {
+            recherche.retirer(id, membre.getNom());
+            recherche.retirer(id, membre.getPrenoms());
+            recherche.retirer(id, membre.getNomDeBaseDeLaMariee());
+        }
+        pages[id >>> BITS_PAGE][id & (TAILLE_PAGE - 1)] = null;
+        taille--;
+        signalerModification();
+        membre.detacher();
+    }
+
+    /**
+     * @param id l'identifiant du membre
+     * @return le membre, ou null si l'identifiant est inconnu
+     */
+    MembreFamille get(int id) {
+        if (verrou != null) {
+            return lirePartage(id);
+        }
+        if (id < 0 || id >= taille) {
+            return null;
+        }
+        //lue une seule fois : chargerTout peut détacher la source depuis un autre fil
+        SourceMembres lue = source;
+        return lue == null ? charge(id) : charger(lue, id);
+    }
+
+    //les pages ne sont lues et remplies que sous le moniteur tant qu'une source est attachée
+    private synchronized MembreFamille charger(SourceMembres lue, int id) {
+        MembreFamille membre = charge(id);
+        if (membre == null) {
+            membre = lue.charger(id);
+            placer(id, membre);
+        }
+        return membre;
+    }
+
+    /**
+     * lit un membre sans le garder dans le registre, pour parcourir une seule fois un arbre projeté
+     * sans le charger en entier. Le membre d'une source n'est rattaché à aucun registre : ses liens se lisent
+     * par identifiants
+     * @param id l'identifiant du membre
+     * @return le membre, ou null si l'identifiant est inconnu
+     */
+    MembreFamille consulter(int id) {
+        if (id < 0 || id >= taille) {
+            return null;
+        }
+        SourceMembres lue = source;
+        MembreFamille membre = construit(lue, id);
+        return membre != null || lue == null ? membre : lue.consulter(id);
+    }
+
+    /**
+     * @return le nombre de membres enregistrés, construits ou non
+     */
+    int taille() {
+        if (verrou == null) {
+            return taille;
+        }
+        long tampon = verrou.tryOptimisticRead();
+        int lue = taille;
+        if (!verrou.validate(tampon)) {
+            tampon = verrou.readLock();
+            try {
+                lue = taille;
+            } finally {
+                verrou.unlockRead(tampon);
+            }
+        }
+        return lue;
+    }
+
+    /**
+     * @return une vue non modifiable de tous les membres, rangés par identifiant
+     */
+    List<MembreFamille> tous() {
+        return new VueRegistre();
+    }
+
+    /**
+     * @return le nombre de modifications des liens depuis la création du registre
+     */
+    int modifications() {
+        return modifications;
+    }
+
+    /**
+     * signale qu'un lien entre deux membres du registre va être modifié
+     */
+    void signalerModification() {
+        //atomique : plusieurs fils peuvent lier des membres en même temps
+        MODIFICATIONS.incrementAndGet(this);
+    }
+
+    /**
+     * signale aux instantanés qu'un membre du registre a changé
+     * @param membre le membre modifié
+     */
+    void marquer(MembreFamille membre) {
+        PublicationMembres publiee = publication;
+        if (publiee != null) {
+            publiee.marquer(membre.getId());
+        }
+    }
+
+    /**
+     * @return true si un instantané a déjà été pris : les suivants ne republient que les membres modifiés
+     */
+    boolean estPublie() {
+        return publication != null;
+    }
+
+    /**
+     * fige l'état courant des membres. Le premier instantané construit tous les membres et les publie en entier,
+     * les suivants ne republient que les membres modifiés entre-temps
+     * @param racine l'identifiant de la racine, -1 s'il n'y en a pas
+     * @return l'instantané
+     */
+    InstantaneArbre instantane(int racine) {
+        PublicationMembres publiee = publication;
+        if (publiee == null) {
+            synchronized (this) {
+                publiee = publication;
+                if (publiee == null) {
+                    chargerTout();
+                    publiee = new PublicationMembres(this);
+                    publication = publiee;
+                }
+            }
+        }
+        return publiee.publier(racine);
+    }
+
+    /**
+     * prépare le registre à être partagé entre plusieurs fils : tous les membres sont construits (la lecture
+     * à la demande dans une source modifierait le registre pendant une simple lecture) puis le verrou est créé.
+     * À appeler avant de partager le registre
+     */
+    void activerConcurrence() {
+        chargerTout();
+        if (verrou == null) {
+            verrou = new StampedLock();
+        }
+    }
+
+    /**
+     * @return true si des membres restent à lire dans la source
+     */
+    boolean estPartiel() {
+        return source != null;
+    }
+
+    /**
+     * construit tous les membres pas encore lus puis détache la source, par exemple avant de réécrire
+     * le fichier dont elle provient. Le moniteur est pris membre par membre : un autre fil peut lire
+     * des membres pendant ce temps
+     */
+    void chargerTout() {
+        SourceMembres lue = source;
+        if (lue == null) {
+            return;
+        }
+        for (int id = 0; id < taille; id++) {
+            charger(lue, id);
+        }
+        synchronized (this) {
+            source = null;
+        }
+    }
+
+    /**
+     * @param champ le champ recherché
+     * @param valeur la valeur recherchée, sans tenir compte de la casse
+     * @return les membres dont le champ vaut la valeur
+     */
+    List<MembreFamille> trouver(Champ champ, String valeur) {
+        if (verrou == null) {
+            ListeIds resultat = ids(champ, valeur);
+            return resultat == null ? Collections.<MembreFamille>emptyList() : new VueIds(resultat);
+        }
+        //en écriture : l'index peut être construit ici. Le résultat est copié, la liste de l'index change avec les ajouts
+        ListeIds copie = new ListeIds();
+        long tampon = verrou.writeLock();
+        try {
+            ListeIds resultat = ids(champ, valeur);
+            for (int i = 0; resultat != null && i < resultat.taille(); i++) {
+                copie.ajouter(resultat.get(i));
+            }
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+        return copie.estVide() ? Collections.<MembreFamille>emptyList() : new VueIds(copie);
+    }
+
+    private ListeIds ids(Champ champ, String valeur) {
+        if (!estIndexe()) {
+            construireIndex();
+        }
+        return index(champ).get(cle(valeur));
+    }
+
+    /**
+     * recherche approchée sur le nom, les prenoms et le nom de base de la mariée : préfixe, sans accents,
+     * phonétique et fautes de frappe (voir {@link IndexRecherche})
+     * @param texte un ou plusieurs mots, chacun devant correspondre à l'un des champs du membre
+     * @param limite le nombre maximal de membres retournés
+     * @return les membres trouvés, les correspondances exactes d'abord
+     */
+    List<MembreFamille> rechercher(String texte, int limite) {
+        long tampon = verrou == null ? 0 : verrou.writeLock();
+        try {
+            if (recherche == null) {
+                construireRecherche(SuiviProgression.AUCUN);
+            }
+            ListeIds resultat = new ListeIds();
+            for (int id : recherche.rechercher(texte, limite)) {
+                resultat.ajouter(id);
+            }
+            return new VueIds(resultat);
+        } finally {
+            if (verrou != null) {
+                verrou.unlockWrite(tampon);
+            }
+        }
+    }
+
+    /**
+     * construit l'index de recherche approchée s'il ne l'est pas encore, pour que les recherches suivantes
+     * répondent sans attendre. L'arbre ne doit pas être modifié pendant la construction
+     * @param suivi reçoit le nombre de membres indexés, peut annuler la construction
+     */
+    void preparerRecherche(SuiviProgression suivi) throws IOException {
+        long tampon = verrou == null ? 0 : verrou.writeLock();
+        try {
+            if (recherche == null && !construireRecherche(suivi)) {
+                throw new InterruptedIOException("Opération annulée");
+            }
+        } finally {
+            if (verrou != null) {
+                verrou.unlockWrite(tampon);
+            }
+        }
+    }
+
+    /**
+     * @return true si l'index de recherche approchée est construit
+     */
+    boolean recherchePrete() {
+        return recherche != null;
+    }
+
+    /**
+     * met à jour l'index d'un champ après sa modification sur un membre
+     * @param membre le membre modifié
+     * @param champ le champ modifié
+     * @param ancienneValeur la valeur avant modification
+     * @param nouvelleValeur la valeur après modification
+     */
+    void reindexer(MembreFamille membre, Champ champ, String ancienneValeur, String nouvelleValeur) {
+        if (verrou == null) {
+            mettreAJourIndex(membre, champ, ancienneValeur, nouvelleValeur);
+            return;
+        }
+        long tampon = verrou.writeLock();
+        try {
+            mettreAJourIndex(membre, champ, ancienneValeur, nouvelleValeur);
+        } finally {
+            verrou.unlockWrite(tampon);
+        }
+    }
+
+    private void mettreAJourIndex(MembreFamille membre, Champ champ, String ancienneValeur, String nouvelleValeur) {
+        if (recherche != null) {
+            recherche.retirer(membre.getId(), ancienneValeur);
+            recherche.ajouter(membre.getId(), nouvelleValeur);
+        }
+        if (!estIndexe()) {
+            //l'index sera construit à partir des valeurs courantes
+            return;
+        }
+        Map<String, ListeIds> index = index(champ);
+        String ancienneCle = cle(ancienneValeur);
+        if (ancienneCle.equals(cle(nouvelleValeur))) {
+            return;
+        }
+        ListeIds anciens = index.get(ancienneCle);
+        if (anciens != null) {
+            anciens.retirer(membre.getId());
+            if (anciens.estVide()) {
+                index.remove(ancienneCle);
+            }
+        }
+        indexer(index, nouvelleValeur, membre.getId());
+    }
+
+    /**
+     * reconstruit un registre en parcourant le graphe à partir d'une racine. Utilisé pour les fichiers
+     * enregistrés avant l'existence du registre
+     * @param racine la personne racine, peut être null
+     * @return le registre contenant tous les membres atteignables depuis la racine
+     */
+    static RegistreMembres reconstruire(MembreFamille racine) {
+        RegistreMembres registre = new RegistreMembres();
+        if (racine == null) {
+            return registre;
+        }
+        //parcours en largeur itératif pour ne pas dépasser la pile sur les longues lignées
+        Map<MembreFamille, Boolean> visites = new IdentityHashMap<>();
+        ArrayDeque<MembreFamille> aVisiter = new ArrayDeque<>();
+        aVisiter.add(racine);
+        visites.put(racine, Boolean.TRUE);
+        while (!aVisiter.isEmpty()) {
+            MembreFamille membre = aVisiter.poll();
+            registre.ajouter(membre);
+            for (MembreFamille voisin : membre.liensHerites()) {
+                if (voisin != null && visites.put(voisin, Boolean.TRUE) == null) {
+                    aVisiter.add(voisin);
+                }
+            }
+        }
+        //les anciennes listes partagées entre conjoints ou freres-soeurs doivent le rester
+        Map<Object, ListeIds> listes = new IdentityHashMap<>();
+        for (int id = 0; id < registre.taille; id++) {
+            registre.get(id).convertirLiensHerites(listes);
+        }
+        return registre;
+    }
+
+    //le membre s'il est déjà construit, sous le moniteur tant que la source lue est attachée
+    private MembreFamille construit(SourceMembres lue, int id) {
+        if (lue == null) {
+            return charge(id);
+        }
+        synchronized (this) {
+            return charge(id);
+        }
+    }
+
+    //le membre s'il est déjà en mémoire, sans passer par la source
+    private MembreFamille charge(int id) {
+        MembreFamille[] page = pages[id >>> BITS_PAGE];
+        return page == null ? null : page[id & (TAILLE_PAGE - 1)];
+    }
+
+    //lecture optimiste, validée par le tampon du verrou : sans verrou, la lecture peut voir des pages en cours
+    //d'agrandissement, elle ne doit alors ni échouer ni être utilisée
+    private MembreFamille lirePartage(int id) {
+        long tampon = verrou.tryOptimisticRead();
+        MembreFamille membre = null;
+        MembreFamille[][] lues = pages;
+        int page = id >>> BITS_PAGE;
+        if (id >= 0 && id < taille && page < lues.length && lues[page] != null) {
+            membre = lues[page][id & (TAILLE_PAGE - 1)];
+        }
+        if (!verrou.validate(tampon)) {
+            tampon = verrou.readLock();
+            try {
+                membre = id >= 0 && id < taille ? charge(id) : null;
+            } finally {
+                verrou.unlockRead(tampon);
+            }
+        }
+        return membre;
+    }
+
+    private void placer(int id, MembreFamille membre) {
+        int page = id >>> BITS_PAGE;
+        if (page >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+        }
+        if (pages[page] == null) {
+            pages[page] = new MembreFamille[TAILLE_PAGE];
+        }
+        pages[page][id & (TAILLE_PAGE - 1)] = membre;
+        membre.rattacher(this, id);
+    }
+
+    private boolean estIndexe() {
+        return parNom != null;
+    }
+
+    //les membres déjà construits ont peut-être été modifiés, les autres sont lus directement dans la source
+    private void construireIndex() {
+        parNom = new HashMap<>();
+        parPrenoms = new HashMap<>();
+        parNomDeBaseDeLaMariee = new HashMap<>();
+        SourceMembres lue = source;
+        for (int id = 0; id < taille; id++) {
+            MembreFamille membre = construit(lue, id);
+            if (membre != null) {
+                indexer(parNom, membre.getNom(), id);
+                indexer(parPrenoms, membre.getPrenoms(), id);
+                indexer(parNomDeBaseDeLaMariee, membre.getNomDeBaseDeLaMariee(), id);
+            } else {
+                indexer(parNom, lue.champ(id, Champ.NOM), id);
+                indexer(parPrenoms, lue.champ(id, Champ.PRENOMS), id);
+                indexer(parNomDeBaseDeLaMariee, lue.champ(id, Champ.NOMDEBASEDELAMARIEE), id);
+            }
+        }
+    }
+
+    //l'index n'est installé qu'une fois complet : une construction annulée ne laisse rien
+    private boolean construireRecherche(SuiviProgression suivi) {
+        IndexRecherche construit = new IndexRecherche();
+        SourceMembres lue = source;
+        for (int id = 0; id < taille; id++) {
+            if (id % PAS_PROGRESSION == 0) {
+                suivi.progression(id, taille);
+                if (suivi.estAnnule()) {
+                    return false;
+                }
+            }
+            MembreFamille membre = construit(lue, id);
+            if (membre != null) {
+                construit.ajouter(id, membre.getNom());
+                construit.ajouter(id, membre.getPrenoms());
+                construit.ajouter(id, membre.getNomDeBaseDeLaMariee());
+            } else {
+                construit.ajouter(id, lue.champ(id, Champ.NOM));
+                construit.ajouter(id, lue.champ(id, Champ.PRENOMS));
+                construit.ajouter(id, lue.champ(id, Champ.NOMDEBASEDELAMARIEE));
+            }
+        }
+        recherche = construit;
+        return true;
+    }
+
+    private Map<String, ListeIds> index(Champ champ) {
+        switch (champ) {
+            case NOM:
+                return parNom;
+            case PRENOMS:
+                return parPrenoms;
+            default:
+                return parNomDeBaseDeLaMariee;
+        }
+    }
+
+    private static void indexer(Map<String, ListeIds> index, String valeur, int id) {
+        //le nom de base de la mariée est vide pour la plupart des membres, inutile de l'indexer
+        if (valeur == null || valeur.isEmpty()) {
+            return;
+        }
+        index.computeIfAbsent(cle(valeur), k -> new ListeIds()).ajouter(id);
+    }
+
+    private static void desindexer(Map<String, ListeIds> index, String valeur, int id) {
+        if (valeur == null || valeur.isEmpty()) {
+            return;
+        }
+        String cle = cle(valeur);
+        ListeIds ids = index.get(cle);
+        if (ids != null) {
+            ids.retirerDernier(id);
+            if (ids.estVide()) {
+                index.remove(cle);
+            }
+        }
+    }
+
+    private static String cle(String valeur) {
+        return valeur == null ? "" : valeur.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Vue de tous les membres du registre, construits au fil de la lecture
+     */
+    private final class VueRegistre extends AbstractList<MembreFamille> implements RandomAccess {
+        @Override
+        public MembreFamille get(int index) {
+            if (index < 0 || index >= taille) {
+                throw new IndexOutOfBoundsException("Identifiant " + index);
+            }
+            return RegistreMembres.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return taille;
+        }
+    }
+
+    /**
+     * Vue des membres d'une liste de résultats de l'index
+     */
+    private final class VueIds extends AbstractList<MembreFamille> implements RandomAccess {
+        private final ListeIds ids;
+
+        VueIds(ListeIds ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public MembreFamille get(int index) {
+            return RegistreMembres.this.get(ids.get(index));
+        }
+
+        @Override
+        public int size() {
+            return ids.taille();
+        }
+    }
+}
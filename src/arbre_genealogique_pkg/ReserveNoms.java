@@ -0,0 +1,160 @@
+package arbre_genealogique_pkg;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Réserve commune des noms et prenoms des membres. Les noms se répètent beaucoup dans un arbre (noms de famille,
+ * prenoms courants) : chaque nom est ramené à une seule instance, partagée par tous les membres et tous les arbres.
+ * Les membres y passent leurs noms à la construction et à la modification, les lecteurs de fichiers leur table de noms.
+ * La réserve ne retient pas les noms : un nom que plus aucun membre n'utilise est libéré par le ramasse-miettes.
+ * Elle est découpée en segments verrouillés séparément, pour que des imports parallèles ne s'attendent pas
+ * @author aklam
+ */
+final class ReserveNoms {
+
+    //le nom sert de clé faible et de valeur faible : la réserve ne garde aucun nom en vie
+    private static final int SEGMENTS = 16;
+    private static final Map<String, WeakReference<String>>[] NOMS = creerSegments();
+
+    private ReserveNoms() {
+    }
+
+    /**
+     * @param nom le nom à partager, éventuellement null
+     * @return l'instance commune égale au nom, le nom lui-même s'il n'est pas encore dans la réserve
+     */
+    static String canonique(String nom) {
+        if (nom == null) {
+            return null;
+        }
+        if (nom.isEmpty()) {
+            return "";
+        }
+        Map<String, WeakReference<String>> segment = NOMS[segment(nom)];
+        synchronized (segment) {
+            WeakReference<String> reference = segment.get(nom);
+            String commun = reference == null ? null : reference.get();
+            if (commun == null) {
+                segment.put(nom, new WeakReference<>(nom));
+                commun = nom;
+            }
+            return commun;
+        }
+    }
+
+    /**
+     * @return le nombre de noms actuellement dans la réserve
+     */
+    static int taille() {
+        int taille = 0;
+        for (Map<String, WeakReference<String>> segment : NOMS) {
+            synchronized (segment) {
+                taille += segment.size();
+            }
+        }
+        return taille;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, WeakReference<String>>[] creerSegments() {
+        Map<String, WeakReference<String>>[] segments = new Map[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new WeakHashMap<>();
+        }
+        return segments;
+    }
+
+    //les bits de poids fort du hachage, ceux de poids faible servent déjà à la table du segment
+    private static int segment(String nom) {
+        int h = nom.hashCode() * 0x9E3779B9;
+        return h >>> (32 - Integer.numberOfTrailingZeros(SEGMENTS));
+    }
+
+    /**
+     * mesure la mémoire occupée par les noms des membres d'un registre, construits ou non
+     * @param registre le registre à mesurer
+     * @return le bilan, comparé à des membres qui auraient chacun leurs propres chaînes
+     */
+    static Bilan mesurer(RegistreMembres registre) {
+        Set<String> distinctes = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        Bilan bilan = new Bilan();
+        for (int id = 0; id < registre.taille(); id++) {
+            MembreFamille membre = registre.consulter(id);
+            bilan.compter(membre.getPrenoms(), distinctes);
+            bilan.compter(membre.getNom(), distinctes);
+            bilan.compter(membre.getNomDeBaseDeLaMariee(), distinctes);
+        }
+        bilan.distinctes = distinctes.size();
+        return bilan;
+    }
+
+    /**
+     * estimation de la taille d'une chaîne sur une JVM 64 bits à pointeurs compressés : 24 octets pour l'objet,
+     * 16 pour l'en-tête du tableau, puis un octet par caractère latin-1 ou deux sinon (chaînes compactes)
+     */
+    static long tailleChaine(String chaine) {
+        int parCaractere = 1;
+        for (int i = 0; i < chaine.length(); i++) {
+            if (chaine.charAt(i) > 0xFF) {
+                parCaractere = 2;
+                break;
+            }
+        }
+        return 24 + ((16L + (long) chaine.length() * parCaractere + 7) & ~7L);
+    }
+
+    /**
+     * Mémoire occupée par les noms d'un arbre, les noms vides ne sont pas comptés
+     */
+    static final class Bilan {
+        private long references;
+        private int distinctes;
+        private long octets;
+        private long octetsSansPartage;
+
+        private void compter(String nom, Set<String> vues) {
+            if (nom == null || nom.isEmpty()) {
+                return;
+            }
+            long taille = tailleChaine(nom);
+            references++;
+            octetsSansPartage += taille;
+            if (vues.add(nom)) {
+                octets += taille;
+            }
+        }
+
+        /**
+         * @return le nombre de noms portés par les membres
+         */
+        long references() {
+            return references;
+        }
+
+        /**
+         * @return le nombre d'instances distinctes de ces noms
+         */
+        int distinctes() {
+            return distinctes;
+        }
+
+        /**
+         * @return la taille estimée des instances distinctes
+         */
+        long octets() {
+            return octets;
+        }
+
+        /**
+         * @return la taille estimée si chaque nom de chaque membre était une instance à part
+         */
+        long octetsSansPartage() {
+            return octetsSansPartage;
+        }
+    }
+}
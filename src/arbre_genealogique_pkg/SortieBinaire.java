@@ -0,0 +1,187 @@
+package arbre_genealogique_pkg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Écriture tamponnée sur un canal NIO : octets, entiers variables (varint) et chaînes UTF-8.
+ * Les chaînes sont encodées directement dans le tampon, sans tableau d'octets intermédiaire
+ * @author aklam
+ */
+class SortieBinaire implements Closeable {
+
+    private static final int TAILLE_TAMPON = 1 << 16;
+
+    private final WritableByteChannel canal;
+    private final ByteBuffer tampon;
+    private long octetsEcrits;
+
+    SortieBinaire(WritableByteChannel canal) {
+        this.canal = canal;
+        this.tampon = ByteBuffer.allocateDirect(TAILLE_TAMPON);
+        this.octetsEcrits = 0;
+    }
+
+    /**
+     * @return le nombre d'octets écrits depuis la création, tampon compris
+     */
+    long position() {
+        return octetsEcrits + tampon.position();
+    }
+
+    void ecrireOctet(int octet) throws IOException {
+        if (!tampon.hasRemaining()) {
+            vider();
+        }
+        tampon.put((byte) octet);
+    }
+
+    void ecrireOctets(byte[] octets, int debut, int longueur) throws IOException {
+        while (longueur > 0) {
+            if (!tampon.hasRemaining()) {
+                vider();
+            }
+            int n = Math.min(longueur, tampon.remaining());
+            tampon.put(octets, debut, n);
+            debut += n;
+            longueur -= n;
+        }
+    }
+
+    /**
+     * écrit un entier positif sur 1 à 10 octets, 7 bits par octet
+     * @param valeur l'entier à écrire, jamais négatif
+     */
+    void ecrireVarint(long valeur) throws IOException {
+        if (valeur < 0) {
+            throw new IllegalArgumentException("Entier négatif: " + valeur);
+        }
+        while ((valeur & ~0x7FL) != 0) {
+            ecrireOctet((int) ((valeur & 0x7F) | 0x80));
+            valeur >>>= 7;
+        }
+        ecrireOctet((int) valeur);
+    }
+
+    /**
+     * écrit un entier sur 8 octets, poids fort en premier, pour les tables lues par accès direct
+     * @param valeur l'entier à écrire
+     */
+    void ecrireLong(long valeur) throws IOException {
+        for (int decalage = 56; decalage >= 0; decalage -= 8) {
+            ecrireOctet((int) (valeur >>> decalage));
+        }
+    }
+
+    /**
+     * écrit un entier en chiffres décimaux ASCII, pour les formats texte, sans passer par une chaîne
+     * @param valeur l'entier à écrire
+     */
+    void ecrireEntier(long valeur) throws IOException {
+        if (valeur < 0) {
+            ecrireOctet('-');
+            if (valeur == Long.MIN_VALUE) {
+                //-(MIN_VALUE) n'est pas représentable
+                ecrireEntier(-(valeur / 10));
+                ecrireOctet('8');
+                return;
+            }
+            valeur = -valeur;
+        }
+        long puissance = 1;
+        while (puissance <= valeur / 10) {
+            puissance *= 10;
+        }
+        for (; puissance > 0; puissance /= 10) {
+            ecrireOctet((int) ('0' + valeur / puissance % 10));
+        }
+    }
+
+    /**
+     * écrit une chaîne précédée de sa longueur en octets UTF-8
+     * @param chaine la chaîne à écrire
+     */
+    void ecrireChaine(String chaine) throws IOException {
+        ecrireVarint(longueurUtf8(chaine));
+        ecrireTexte(chaine);
+    }
+
+    /**
+     * écrit le texte encodé en UTF-8, sans longueur
+     * @param texte le texte à écrire
+     */
+    void ecrireTexte(CharSequence texte) throws IOException {
+        int n = texte.length();
+        for (int i = 0; i < n; i++) {
+            char c = texte.charAt(i);
+            if (c < 0x80) {
+                ecrireOctet(c);
+            } else if (c < 0x800) {
+                ecrireOctet(0xC0 | (c >> 6));
+                ecrireOctet(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texte.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, texte.charAt(++i));
+                ecrireOctet(0xF0 | (codePoint >> 18));
+                ecrireOctet(0x80 | ((codePoint >> 12) & 0x3F));
+                ecrireOctet(0x80 | ((codePoint >> 6) & 0x3F));
+                ecrireOctet(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                //surrogate isolé : remplacé comme le fait String.getBytes
+                ecrireOctet('?');
+            } else {
+                ecrireOctet(0xE0 | (c >> 12));
+                ecrireOctet(0x80 | ((c >> 6) & 0x3F));
+                ecrireOctet(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * @return la longueur en octets de la chaîne encodée en UTF-8
+     */
+    static int longueurUtf8(CharSequence texte) {
+        int n = texte.length();
+        int longueur = 0;
+        for (int i = 0; i < n; i++) {
+            char c = texte.charAt(i);
+            if (c < 0x80) {
+                longueur += 1;
+            } else if (c < 0x800) {
+                longueur += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texte.charAt(i + 1))) {
+                longueur += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                longueur += 1;
+            } else {
+                longueur += 3;
+            }
+        }
+        return longueur;
+    }
+
+    /**
+     * envoie le contenu du tampon sur le canal
+     */
+    void vider() throws IOException {
+        tampon.flip();
+        while (tampon.hasRemaining()) {
+            octetsEcrits += canal.write(tampon);
+        }
+        tampon.clear();
+    }
+
+    /**
+     * vide le tampon et ferme le canal
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            vider();
+        } finally {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package arbre_genealogique_pkg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Canal d'écriture qui découpe ce qu'on y écrit en blocs compressés par un {@link CodecBlocs}.
+ * Chaque bloc est précédé de sa taille brute, de sa taille compressée et du CRC32 des octets bruts,
+ * sur 4 octets chacun ; un bloc de taille brute nulle termine le flux (voir {@link EntreeBlocs})
+ * @author aklam
+ */
+final class SortieBlocs implements WritableByteChannel {
+
+    static final int TAILLE_BLOC = 1 << 18;
+    static final int TAILLE_ENTETE_BLOC = 12;
+
+    private final WritableByteChannel canal;
+    private final CodecBlocs codec;
+    private final byte[] brut = new byte[TAILLE_BLOC];
+    private final byte[] compresse = new byte[CodecBlocs.tailleMax(TAILLE_BLOC)];
+    private final ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE_BLOC);
+    private final CRC32 crc = new CRC32();
+    private int rempli;
+    private boolean termine;
+
+    /**
+     * @param canal le canal qui reçoit les blocs, fermé avec celui-ci
+     * @param codec le codec des blocs
+     */
+    SortieBlocs(WritableByteChannel canal, CodecBlocs codec) {
+        this.canal = canal;
+        this.codec = codec;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        int ecrits = source.remaining();
+        while (source.hasRemaining()) {
+            int n = Math.min(source.remaining(), TAILLE_BLOC - rempli);
+            source.get(brut, rempli, n);
+            rempli += n;
+            if (rempli == TAILLE_BLOC) {
+                ecrireBloc();
+            }
+        }
+        return ecrits;
+    }
+
+    /**
+     * écrit le dernier bloc et la fin du flux, sans fermer le canal
+     */
+    void terminer() throws IOException {
+        if (termine) {
+            return;
+        }
+        if (rempli > 0) {
+            ecrireBloc();
+        }
+        entete.clear();
+        entete.putInt(0).putInt(0).putInt(0);
+        entete.flip();
+        ecrireTout(entete);
+        termine = true;
+    }
+
+    private void ecrireBloc() throws IOException {
+        int taille = codec.compresser(brut, rempli, compresse);
+        crc.reset();
+        crc.update(brut, 0, rempli);
+        entete.clear();
+        entete.putInt(rempli).putInt(taille).putInt((int) crc.getValue());
+        entete.flip();
+        ecrireTout(entete);
+        ecrireTout(ByteBuffer.wrap(compresse, 0, taille));
+        rempli = 0;
+    }
+
+    private void ecrireTout(ByteBuffer octets) throws IOException {
+        while (octets.hasRemaining()) {
+            canal.write(octets);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return canal.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            terminer();
+        } finally {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package arbre_genealogique_pkg;
+
+/**
+ * Source à partir de laquelle un registre matérialise ses membres à la demande,
+ * par exemple un fichier .ft projeté en mémoire
+ * @author aklam
+ */
+interface SourceMembres {
+
+    /**
+     * @return le nombre de membres disponibles dans la source
+     */
+    int nombreMembres();
+
+    /**
+     * construit le membre d'identifiant donné, sans le rattacher au registre
+     * @param id l'identifiant du membre
+     * @return le membre, avec ses liens
+     */
+    MembreFamille charger(int id);
+
+    /**
+     * construit le membre d'identifiant donné sans garder ce qui a été décodé pour lui, pour parcourir
+     * toute la source avec une mémoire constante. Ses listes ne sont pas partagées avec les autres membres
+     * @param id l'identifiant du membre
+     * @return le membre, avec ses liens
+     */
+    MembreFamille consulter(int id);
+
+    /**
+     * lit un champ indexé sans construire le membre, pour indexer toute la source à moindre coût
+     * @param id l'identifiant du membre
+     * @param champ le champ à lire
+     * @return la valeur du champ
+     */
+    String champ(int id, RegistreMembres.Champ champ);
+}
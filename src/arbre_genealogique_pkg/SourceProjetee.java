@@ -0,0 +1,255 @@
+package arbre_genealogique_pkg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fichier .ft de version 2 projeté en mémoire avec FileChannel.map. Un membre n'est décodé que lorsqu'on le
+ * demande, grâce aux tables de positions écrites à la fin du fichier : ouvrir un très gros arbre ne coûte
+ * que la lecture du pied, et la mémoire utilisée est proportionnelle aux membres réellement consultés
+ * @author aklam
+ */
+final class SourceProjetee implements SourceMembres {
+
+    //une projection est limitée à 2 Go, le fichier est donc découpé en segments de 1 Go
+    private static final int BITS_SEGMENT = 30;
+    private static final long TAILLE_SEGMENT = 1L << BITS_SEGMENT;
+
+    private final MappedByteBuffer[] segments;
+    private final long longueur;
+
+    private final long debutChaines;
+    private final long debutListes;
+    private final long debutMembres;
+    private final int nombreChaines;
+    private final int nombreListes;
+    private final int nombreMembres;
+    private final int racine;
+
+    //chaînes et listes déjà décodées. une liste partagée par plusieurs membres doit rester le même objet
+    private final Map<Integer, String> chaines = new HashMap<>();
+    private final Map<Integer, ListeIds> listes = new HashMap<>();
+
+    private SourceProjetee(MappedByteBuffer[] segments, long longueur) throws IOException {
+        this.segments = segments;
+        this.longueur = longueur;
+        if (longueur < FichierArbre.MAGIQUE.length + 1 + FichierArbre.TAILLE_PIED) {
+            throw new IOException("Fichier corrompu: trop court");
+        }
+        for (int i = 0; i < FichierArbre.MAGIQUE.length; i++) {
+            if (octet(i) != FichierArbre.MAGIQUE[i]
+                    || octet(longueur - FichierArbre.MAGIQUE.length + i) != FichierArbre.MAGIQUE[i]) {
+                throw new IOException("Format de fichier inconnu");
+            }
+        }
+        if (octet(FichierArbre.MAGIQUE.length) < 2) {
+            throw new IOException("Seuls les fichiers de version 2 peuvent être projetés");
+        }
+        long pied = longueur - FichierArbre.TAILLE_PIED;
+        this.debutChaines = entierLong(pied);
+        this.debutListes = entierLong(pied + 8);
+        this.debutMembres = entierLong(pied + 16);
+        long racineLue = entierLong(pied + 24);
+        if (debutChaines < 0 || debutChaines > debutListes || debutListes > debutMembres || debutMembres > pied) {
+            throw new IOException("Fichier corrompu: tables de positions invalides");
+        }
+        this.nombreChaines = (int) ((debutListes - debutChaines) / 8);
+        this.nombreListes = (int) ((debutMembres - debutListes) / 8);
+        this.nombreMembres = (int) ((pied - debutMembres) / 8);
+        if (racineLue < 0 || racineLue > nombreMembres) {
+            throw new IOException("Fichier corrompu: racine inconnue");
+        }
+        this.racine = (int) racineLue - 1;
+    }
+
+    /**
+     * projette un fichier en mémoire et lit son pied
+     * @param fichier le fichier .ft de version 2
+     * @return la source des membres du fichier
+     */
+    static SourceProjetee projeter(File fichier) throws IOException {
+        //la projection reste valide après la fermeture du canal
+        try (FileChannel canal = FileChannel.open(fichier.toPath(), StandardOpenOption.READ)) {
+            long longueur = canal.size();
+            int nombreSegments = (int) ((longueur + TAILLE_SEGMENT - 1) >>> BITS_SEGMENT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[nombreSegments];
+            for (int i = 0; i < nombreSegments; i++) {
+                long debut = (long) i << BITS_SEGMENT;
+                segments[i] = canal.map(FileChannel.MapMode.READ_ONLY, debut, Math.min(TAILLE_SEGMENT, longueur - debut));
+            }
+            return new SourceProjetee(segments, longueur);
+        }
+    }
+
+    /**
+     * @return l'identifiant de la racine, -1 s'il n'y en a pas
+     */
+    int racine() {
+        return racine;
+    }
+
+    @Override
+    public int nombreMembres() {
+        return nombreMembres;
+    }
+
+    @Override
+    public synchronized MembreFamille charger(int id) {
+        return lire(id, true);
+    }
+
+    @Override
+    public synchronized MembreFamille consulter(int id) {
+        return lire(id, false);
+    }
+
+    //garder : conserver les chaînes et listes décodées pour les membres lus ensuite
+    private MembreFamille lire(int id, boolean garder) {
+        Curseur curseur = new Curseur(position(debutMembres, id, nombreMembres));
+        String prenoms = chaine(curseur.varint(), garder);
+        String nom = chaine(curseur.varint(), garder);
+        String nomDeBaseDeLaMariee = chaine(curseur.varint(), garder);
+        int genre = curseur.octet();
+        MembreFamille.Genre[] genres = MembreFamille.Genre.values();
+        if (genre > genres.length) {
+            throw corrompu("genre inconnu");
+        }
+        MembreFamille membre = MembreFamille.restaurer(prenoms, nom, nomDeBaseDeLaMariee,
+                genre == 0 ? null : genres[genre - 1]);
+        membre.restaurerLiens(lien(curseur.varint()), lien(curseur.varint()), lien(curseur.varint()),
+                liste(curseur.varint(), garder), liste(curseur.varint(), garder));
+        return membre;
+    }
+
+    @Override
+    public synchronized String champ(int id, RegistreMembres.Champ champ) {
+        Curseur curseur = new Curseur(position(debutMembres, id, nombreMembres));
+        //ordre des champs dans l'enregistrement : prenoms, nom, nom de base de la mariée
+        int prenoms = curseur.varint();
+        int nom = curseur.varint();
+        int nomDeBaseDeLaMariee = curseur.varint();
+        switch (champ) {
+            case PRENOMS:
+                return chaine(prenoms, true);
+            case NOM:
+                return chaine(nom, true);
+            default:
+                return chaine(nomDeBaseDeLaMariee, true);
+        }
+    }
+
+    private String chaine(int indice, boolean garder) {
+        String chaine = chaines.get(indice);
+        if (chaine == null) {
+            Curseur curseur = new Curseur(position(debutChaines, indice, nombreChaines));
+            int taille = curseur.varint();
+            if (curseur.position + taille > longueur) {
+                throw corrompu("chaîne hors du fichier");
+            }
+            byte[] octets = new byte[taille];
+            for (int i = 0; i < taille; i++) {
+                octets[i] = (byte) curseur.octet();
+            }
+            chaine = ReserveNoms.canonique(new String(octets, StandardCharsets.UTF_8));
+            if (garder) {
+                chaines.put(indice, chaine);
+            }
+        }
+        return chaine;
+    }
+
+    private ListeIds liste(int indice, boolean garder) {
+        ListeIds liste = listes.get(indice);
+        if (liste == null) {
+            Curseur curseur = new Curseur(position(debutListes, indice, nombreListes));
+            int taille = curseur.varint();
+            //chaque identifiant occupe au moins un octet
+            if (taille > longueur - curseur.position) {
+                throw corrompu("liste hors du fichier");
+            }
+            liste = new ListeIds(taille);
+            for (int i = 0; i < taille; i++) {
+                liste.ajouter(lien(curseur.varint() + 1));
+            }
+            if (garder) {
+                listes.put(indice, liste);
+            }
+        }
+        return liste;
+    }
+
+    private int lien(int valeur) {
+        if (valeur > nombreMembres) {
+            throw corrompu("membre inconnu");
+        }
+        return valeur - 1;
+    }
+
+    //position de l'élément d'indice donné, lue dans une table de positions
+    private long position(long table, int indice, int taille) {
+        if (indice < 0 || indice >= taille) {
+            throw corrompu("référence hors de la table");
+        }
+        long position = entierLong(table + 8L * indice);
+        if (position < 0 || position >= longueur) {
+            throw corrompu("position hors du fichier");
+        }
+        return position;
+    }
+
+    private int octet(long position) {
+        return segments[(int) (position >>> BITS_SEGMENT)].get((int) (position & (TAILLE_SEGMENT - 1))) & 0xFF;
+    }
+
+    private long entierLong(long position) {
+        long valeur = 0;
+        for (int i = 0; i < 8; i++) {
+            valeur = (valeur << 8) | octet(position + i);
+        }
+        return valeur;
+    }
+
+    private static UncheckedIOException corrompu(String raison) {
+        return new UncheckedIOException(new IOException("Fichier corrompu: " + raison));
+    }
+
+    /**
+     * Position de lecture dans la projection
+     */
+    private final class Curseur {
+        private long position;
+
+        Curseur(long position) {
+            this.position = position;
+        }
+
+        int octet() {
+            if (position >= longueur) {
+                throw corrompu("fin de fichier inattendue");
+            }
+            return SourceProjetee.this.octet(position++);
+        }
+
+        int varint() {
+            long valeur = 0;
+            for (int decalage = 0; decalage < 35; decalage += 7) {
+                int octet = octet();
+                valeur |= (long) (octet & 0x7F) << decalage;
+                if ((octet & 0x80) == 0) {
+                    if (valeur > Integer.MAX_VALUE) {
+                        throw corrompu("entier hors limites");
+                    }
+                    return (int) valeur;
+                }
+            }
+            throw corrompu("entier trop long");
+        }
+    }
+}
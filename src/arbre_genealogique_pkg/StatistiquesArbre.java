@@ -0,0 +1,231 @@
+package arbre_genealogique_pkg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Statistiques de population d'un arbre : genres, noms, couples et enfants, membres par génération.
+ * <p>
+ * Les identifiants sont découpés en tranches lues en parallèle par un {@link ForkJoinPool} : chaque tranche compte
+ * ses genres, ses noms et ses couples, et recopie le père et la mère de ses membres dans deux tableaux plats.
+ * Les comptes des tranches sont additionnés en remontant. Les générations sont ensuite calculées en O(n)
+ * sur un seul fil à partir de ces tableaux, sans construire l'index des liens.
+ * <p>
+ * Comme pour la vérification (voir {@link VerificationArbre}), l'arbre ne doit pas être modifié pendant le calcul,
+ * et un arbre projeté dont tous les membres ne sont pas lus est parcouru sur un seul fil, sans rien charger
+ * @author aklam
+ */
+final class StatistiquesArbre {
+
+    //plus petite tranche lue sans la redécouper
+    static final int SEUIL = 1 << 14;
+    //nombre de noms gardés dans le rapport
+    static final int NOMS = 10;
+
+    private static final int NON_CALCULEE = -1;
+    private static final int EN_COURS = -2;
+
+    private final RegistreMembres registre;
+    private final int taille;
+    private final int seuil;
+
+    private final int[] pere;
+    private final int[] mere;
+
+    private StatistiquesArbre(RegistreMembres registre, ForkJoinPool pool) {
+        this.registre = registre;
+        this.taille = registre.taille();
+        //chaque tranche a sa table de noms : assez peu de tranches pour que leur fusion reste négligeable
+        this.seuil = registre.estPartiel() ? Integer.MAX_VALUE
+                : Math.max(SEUIL, taille / (4 * pool.getParallelism()));
+        this.pere = new int[taille];
+        this.mere = new int[taille];
+    }
+
+    /**
+     * calcule les statistiques de tous les membres du registre
+     * @param registre les membres
+     * @param pool les fils qui se partagent les tranches
+     * @return les statistiques
+     */
+    static RapportStatistiques calculer(RegistreMembres registre, ForkJoinPool pool) {
+        long debut = System.nanoTime();
+        StatistiquesArbre statistiques = new StatistiquesArbre(registre, pool);
+        Decompte decompte = pool.invoke(statistiques.new Tranche(0, statistiques.taille));
+        long[] parGeneration = statistiques.compterGenerations();
+        return new RapportStatistiques(statistiques.taille, decompte.genres, parGeneration,
+                decompte.nomsFrequents(), decompte.noms.size(), decompte.couples, decompte.enfantsDesCouples,
+                System.nanoTime() - debut);
+    }
+
+    /**
+     * Une tranche d'identifiants [debut, fin[, coupée en deux tant qu'elle dépasse le seuil
+     */
+    private final class Tranche extends RecursiveTask<Decompte> {
+        private static final long serialVersionUID = 1;
+
+        private final int debut;
+        private final int fin;
+
+        Tranche(int debut, int fin) {
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        @Override
+        protected Decompte compute() {
+            if (fin - debut <= seuil) {
+                Decompte decompte = new Decompte();
+                for (int id = debut; id < fin; id++) {
+                    compter(id, decompte);
+                }
+                return decompte;
+            }
+            int milieu = (debut + fin) >>> 1;
+            Tranche gauche = new Tranche(debut, milieu);
+            gauche.fork();
+            Decompte droite = new Tranche(milieu, fin).compute();
+            return gauche.join().ajouter(droite);
+        }
+    }
+
+    private void compter(int id, Decompte decompte) {
+        MembreFamille membre = registre.consulter(id);
+        pere[id] = estConnu(membre.idPere()) ? membre.idPere() : -1;
+        mere[id] = estConnu(membre.idMere()) ? membre.idMere() : -1;
+        MembreFamille.Genre genre = membre.getGenre();
+        decompte.genres[genre == null ? 0 : genre.ordinal() + 1]++;
+        long[] porteurs = decompte.noms.get(membre.getNom());
+        if (porteurs == null) {
+            decompte.noms.put(membre.getNom(), new long[]{1});
+        } else {
+            porteurs[0]++;
+        }
+        //un couple est compté par celui des deux conjoints qui a le plus petit identifiant, avec leur liste d'enfants
+        int conjoint = membre.idConjoint();
+        if (conjoint > id && conjoint < taille) {
+            decompte.couples++;
+            decompte.enfantsDesCouples += membre.idsEnfants().taille();
+        }
+    }
+
+    private boolean estConnu(int id) {
+        return id >= 0 && id < taille;
+    }
+
+    /**
+     * génération de chaque membre, comme {@link IndexGenealogique#generation(int)} : 0 sans parent connu,
+     * 1 + la plus grande génération de ses parents sinon. Les parents pas encore calculés sont empilés avant
+     * leur enfant ; un parent déjà en cours de calcul ferme un cycle (arbre incohérent) et n'est pas compté
+     * @return le nombre de membres de chaque génération
+     */
+    private long[] compterGenerations() {
+        int[] generations = new int[taille];
+        Arrays.fill(generations, NON_CALCULEE);
+        int[] pile = new int[taille];
+        int max = -1;
+        for (int depart = 0; depart < taille; depart++) {
+            if (generations[depart] != NON_CALCULEE) {
+                continue;
+            }
+            int hauteur = 0;
+            pile[hauteur++] = depart;
+            generations[depart] = EN_COURS;
+            while (hauteur > 0) {
+                int id = pile[hauteur - 1];
+                int p = pere[id];
+                int m = mere[id];
+                if (p >= 0 && generations[p] == NON_CALCULEE) {
+                    generations[p] = EN_COURS;
+                    pile[hauteur++] = p;
+                    continue;
+                }
+                if (m >= 0 && generations[m] == NON_CALCULEE) {
+                    generations[m] = EN_COURS;
+                    pile[hauteur++] = m;
+                    continue;
+                }
+                int generation = 0;
+                if (p >= 0 && generations[p] >= 0) {
+                    generation = generations[p] + 1;
+                }
+                if (m >= 0 && generations[m] >= 0) {
+                    generation = Math.max(generation, generations[m] + 1);
+                }
+                generations[id] = generation;
+                max = Math.max(max, generation);
+                hauteur--;
+            }
+        }
+        long[] parGeneration = new long[max + 1];
+        for (int generation : generations) {
+            parGeneration[generation]++;
+        }
+        return parGeneration;
+    }
+
+    /**
+     * Les comptes d'une tranche
+     */
+    private static final class Decompte {
+
+        //indice 0 pour un genre inconnu, rang du genre + 1 sinon
+        private final long[] genres = new long[MembreFamille.Genre.values().length + 1];
+        //nombre de porteurs de chaque nom, dans un tableau pour ne pas recréer d'objet à chaque membre
+        private Map<String, long[]> noms = new HashMap<>();
+        private long couples;
+        private long enfantsDesCouples;
+
+        Decompte ajouter(Decompte autre) {
+            for (int i = 0; i < genres.length; i++) {
+                genres[i] += autre.genres[i];
+            }
+            //la plus petite table est versée dans la plus grande
+            Map<String, long[]> petite = autre.noms;
+            if (petite.size() > noms.size()) {
+                petite = noms;
+                noms = autre.noms;
+            }
+            for (Map.Entry<String, long[]> nom : petite.entrySet()) {
+                long[] porteurs = noms.get(nom.getKey());
+                if (porteurs == null) {
+                    noms.put(nom.getKey(), nom.getValue());
+                } else {
+                    porteurs[0] += nom.getValue()[0];
+                }
+            }
+            couples += autre.couples;
+            enfantsDesCouples += autre.enfantsDesCouples;
+            return this;
+        }
+
+        //les noms les plus portés, à égalité dans l'ordre alphabétique : un tas des NOMS meilleurs, sans trier tous les noms
+        Map<String, Long> nomsFrequents() {
+            Comparator<Map.Entry<String, long[]>> ordre = Comparator
+                    .comparingLong((Map.Entry<String, long[]> nom) -> -nom.getValue()[0])
+                    .thenComparing(Map.Entry::getKey);
+            PriorityQueue<Map.Entry<String, long[]>> meilleurs = new PriorityQueue<>(ordre.reversed());
+            for (Map.Entry<String, long[]> nom : noms.entrySet()) {
+                meilleurs.add(nom);
+                if (meilleurs.size() > NOMS) {
+                    meilleurs.poll();
+                }
+            }
+            List<Map.Entry<String, long[]>> tries = new ArrayList<>(meilleurs);
+            tries.sort(ordre);
+            Map<String, Long> frequents = new LinkedHashMap<>();
+            for (Map.Entry<String, long[]> nom : tries) {
+                frequents.put(nom.getKey(), nom.getValue()[0]);
+            }
+            return frequents;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package arbre_genealogique_pkg;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Suivi d'une opération longue (lecture ou écriture d'un fichier) : reçoit l'avancement
+ * et indique si l'utilisateur a demandé l'annulation
+ * @author aklam
+ */
+interface SuiviProgression {
+
+    /**
+     * suivi qui ignore l'avancement et n'annule jamais
+     */
+    SuiviProgression AUCUN = new SuiviProgression() {
+        @Override
+        public void progression(long fait, long total) {
+        }
+
+        @Override
+        public boolean estAnnule() {
+            return false;
+        }
+    };
+
+    /**
+     * @param fait la quantité déjà traitée
+     * @param total la quantité totale, dans la même unité
+     */
+    void progression(long fait, long total);
+
+    /**
+     * @return true si l'opération doit s'arrêter au plus tôt
+     */
+    boolean estAnnule();
+
+    /**
+     * signale l'avancement puis arrête l'opération si elle a été annulée
+     * @throws InterruptedIOException si l'opération a été annulée
+     */
+    default void avancer(long fait, long total) throws IOException {
+        progression(fait, total);
+        if (estAnnule()) {
+            throw new InterruptedIOException("Opération annulée");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package arbre_genealogique_pkg;
+
+/**
+ * Validation des noms et prenoms des membres. Un nom valide, une fois débarrassé de ses espaces de début et de fin,
+ * n'est composé que de lettres unicode, d'espaces, de points, d'apostrophes et de tirets
+ * (des cas particuliers tels que Aklam Moses Crack. ou L'ourve D'Marche). C'est l'équivalent de l'expression
+ * régulière {@code ^[\p{L} .'-]+$}, mais vérifié par un parcours des caractères qui n'alloue rien
+ * @author aklam
+ */
+final class ValidateurNom {
+
+    private ValidateurNom() {
+    }
+
+    /**
+     * vérifie un nom et le renvoie débarrassé de ses espaces de début et de fin.
+     * Aucune chaîne n'est créée si le nom n'a pas d'espaces à retirer
+     * @param nom le nom à vérifier
+     * @return le nom sans ses espaces de début et de fin, ou null s'il est invalide
+     */
+    static String valider(String nom) {
+        if (nom == null) {
+            return null;
+        }
+        int debut = debut(nom);
+        int fin = fin(nom, debut);
+        if (!estValide(nom, debut, fin)) {
+            return null;
+        }
+        return (debut == 0 && fin == nom.length()) ? nom : nom.substring(debut, fin);
+    }
+
+    //mêmes bornes que String.trim() : tout caractère inférieur ou égal à l'espace est retiré
+    private static int debut(String nom) {
+        int debut = 0;
+        while (debut < nom.length() && nom.charAt(debut) <= ' ') {
+            debut++;
+        }
+        return debut;
+    }
+
+    private static int fin(String nom, int debut) {
+        int fin = nom.length();
+        while (fin > debut && nom.charAt(fin - 1) <= ' ') {
+            fin--;
+        }
+        return fin;
+    }
+
+    private static boolean estValide(String nom, int debut, int fin) {
+        if (debut >= fin) {
+            return false;
+        }
+        int i = debut;
+        while (i < fin) {
+            char c = nom.charAt(i);
+            //cas le plus courant : lettres latines sans accent
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ' || c == '.' || c == '\'' || c == '-') {
+                i++;
+                continue;
+            }
+            int codePoint = nom.codePointAt(i);
+            //\p{L} correspond exactement aux catégories de lettres reconnues par Character.isLetter
+            if (!Character.isLetter(codePoint)) {
+                return false;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return true;
+    }
+}
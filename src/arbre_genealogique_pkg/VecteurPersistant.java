@@ -0,0 +1,168 @@
+package arbre_genealogique_pkg;
+
+/**
+ * Vecteur persistant : un arbre de tableaux de 32 cases, dont chaque version reste lisible après modification.
+ * Une modification ne recopie que le chemin de la racine à la case modifiée (log32 de la taille, 4 niveaux pour
+ * un million d'éléments) et partage tout le reste avec la version précédente.
+ * Les modifications se font par lots dans une {@link Edition} : un nœud déjà recopié par l'édition en cours
+ * est modifié sur place, si bien qu'un lot de modifications voisines ne recopie chaque nœud qu'une fois
+ * @author aklam
+ * @param <T> le type des éléments
+ */
+final class VecteurPersistant<T> {
+
+    private static final int BITS = 5;
+    private static final int LARGEUR = 1 << BITS;
+    private static final int MASQUE = LARGEUR - 1;
+
+    private static final VecteurPersistant<Object> VIDE =
+            new VecteurPersistant<>(new Noeud(null, new Object[LARGEUR]), 0, 0);
+
+    private final Noeud racine;
+    //décalage de l'indice pour le niveau de la racine, 0 si la racine est une feuille
+    private final int decalage;
+    private final int taille;
+
+    private VecteurPersistant(Noeud racine, int decalage, int taille) {
+        this.racine = racine;
+        this.decalage = decalage;
+        this.taille = taille;
+    }
+
+    /**
+     * @return le vecteur vide
+     */
+    @SuppressWarnings("unchecked")
+    static <T> VecteurPersistant<T> vide() {
+        return (VecteurPersistant<T>) VIDE;
+    }
+
+    /**
+     * @return le nombre d'éléments
+     */
+    int taille() {
+        return taille;
+    }
+
+    /**
+     * @param i la position
+     * @return l'élément à la position i
+     */
+    @SuppressWarnings("unchecked")
+    T get(int i) {
+        if (i < 0 || i >= taille) {
+            throw new IndexOutOfBoundsException("Position " + i + " hors du vecteur de taille " + taille);
+        }
+        Noeud noeud = racine;
+        for (int niveau = decalage; niveau > 0; niveau -= BITS) {
+            noeud = (Noeud) noeud.cases[(i >>> niveau) & MASQUE];
+        }
+        return (T) noeud.cases[i & MASQUE];
+    }
+
+    /**
+     * @return une édition qui part de cette version, sans la modifier
+     */
+    Edition<T> edition() {
+        return new Edition<>(racine, decalage, taille);
+    }
+
+    /**
+     * Nœud de l'arbre. Le propriétaire est l'édition qui l'a créé : elle seule peut encore le modifier
+     */
+    private static final class Noeud {
+        private final Object proprietaire;
+        private final Object[] cases;
+
+        Noeud(Object proprietaire, Object[] cases) {
+            this.proprietaire = proprietaire;
+            this.cases = cases;
+        }
+    }
+
+    /**
+     * Lot de modifications d'un vecteur, à figer en une nouvelle version. Une édition n'est utilisable
+     * que par un seul fil et plus du tout une fois figée
+     * @param <T> le type des éléments
+     */
+    static final class Edition<T> {
+        //jeton propre à l'édition, porté par les nœuds qu'elle a recopiés
+        private Object proprietaire = new Object();
+        private Noeud racine;
+        private int decalage;
+        private int taille;
+
+        private Edition(Noeud racine, int decalage, int taille) {
+            this.racine = racine;
+            this.decalage = decalage;
+            this.taille = taille;
+        }
+
+        /**
+         * @return le nombre d'éléments
+         */
+        int taille() {
+            return taille;
+        }
+
+        /**
+         * @param i la position, inférieure à la taille
+         * @param valeur le nouvel élément
+         */
+        void remplacer(int i, T valeur) {
+            if (i < 0 || i >= taille) {
+                throw new IndexOutOfBoundsException("Position " + i + " hors du vecteur de taille " + taille);
+            }
+            placer(i, valeur);
+        }
+
+        /**
+         * @param valeur l'élément ajouté à la fin
+         */
+        void ajouter(T valeur) {
+            //racine pleine : elle devient le premier enfant d'une nouvelle racine
+            if ((long) taille == 1L << (decalage + BITS)) {
+                Noeud nouvelle = new Noeud(verifier(), new Object[LARGEUR]);
+                nouvelle.cases[0] = racine;
+                racine = nouvelle;
+                decalage += BITS;
+            }
+            placer(taille, valeur);
+            taille++;
+        }
+
+        /**
+         * @return la nouvelle version. Ses nœuds ne seront plus modifiés sur place
+         */
+        VecteurPersistant<T> figer() {
+            verifier();
+            proprietaire = null;
+            return new VecteurPersistant<>(racine, decalage, taille);
+        }
+
+        private void placer(int i, Object valeur) {
+            racine = posseder(racine);
+            Noeud noeud = racine;
+            for (int niveau = decalage; niveau > 0; niveau -= BITS) {
+                int j = (i >>> niveau) & MASQUE;
+                Noeud enfant = (Noeud) noeud.cases[j];
+                enfant = enfant == null ? new Noeud(proprietaire, new Object[LARGEUR]) : posseder(enfant);
+                noeud.cases[j] = enfant;
+                noeud = enfant;
+            }
+            noeud.cases[i & MASQUE] = valeur;
+        }
+
+        //recopie un nœud d'une version figée, une seule fois par édition
+        private Noeud posseder(Noeud noeud) {
+            return noeud.proprietaire == verifier() ? noeud : new Noeud(proprietaire, noeud.cases.clone());
+        }
+
+        private Object verifier() {
+            if (proprietaire == null) {
+                throw new IllegalStateException("Édition déjà figée");
+            }
+            return proprietaire;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package arbre_genealogique_pkg;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Vérification de la cohérence de tout un arbre : liens vers des membres connus, enfants présents dans la liste
+ * de leurs parents, conjoints réciproques et de genres différents, père homme et mère femme, et aucun membre
+ * qui soit son propre ancêtre.
+ * <p>
+ * Les identifiants sont découpés en tranches vérifiées en parallèle par un {@link ForkJoinPool}, en trois passes :
+ * la première recopie les liens de chaque membre dans des tableaux plats, la deuxième vérifie chaque membre
+ * et ses enfants contre ces tableaux, la troisième les parents qui n'ont pas retrouvé leur enfant.
+ * Chaque tranche n'écrit que dans ses propres cases, les constats des tranches sont fusionnés en remontant.
+ * Les cycles sont cherchés ensuite, en O(n) sur un seul fil : les membres sans enfant sont retirés de proche
+ * en proche, seuls ceux qui restent (les cycles et leurs ancêtres) sont parcourus par l'algorithme de Tarjan.
+ * <p>
+ * Les membres ne sont que lus : l'arbre ne doit pas être modifié pendant la vérification.
+ * Un arbre projeté dont tous les membres ne sont pas lus est vérifié sur un seul fil, sans rien charger :
+ * sa source se lit sous verrou, plusieurs fils n'y gagneraient rien
+ * @author aklam
+ */
+final class VerificationArbre {
+
+    //nombre de membres d'une tranche vérifiée sans la redécouper
+    static final int SEUIL = 1 << 14;
+    //nombre d'exemples gardés pour chaque sorte d'incohérence
+    static final int EXEMPLES = 10;
+    //au-delà, une liste partagée n'est vérifiée que pour le premier membre qui la lit
+    private static final int LISTE_COURTE = 8;
+
+    private static final byte INCONNU = 0;
+    private static final byte MASCULIN = 1;
+    private static final byte FEMININ = 2;
+
+    private static final int LECTURE = 0;
+    private static final int MEMBRES = 1;
+    private static final int PARENTS = 2;
+
+    private final RegistreMembres registre;
+    private final int taille;
+    private final int seuil;
+
+    private final int[] pere;
+    private final int[] mere;
+    private final int[] conjoint;
+    private final byte[] genre;
+    //1 quand le père (la mère) d'un membre l'a dans ses enfants
+    private final byte[] pereTrouve;
+    private final byte[] mereTrouvee;
+    //listes longues déjà vérifiées, comparées par identité (ListeIds ne redéfinit pas equals)
+    private final Set<ListeIds> listesVues = ConcurrentHashMap.newKeySet();
+
+    private VerificationArbre(RegistreMembres registre) {
+        this.registre = registre;
+        this.taille = registre.taille();
+        this.seuil = registre.estPartiel() ? Integer.MAX_VALUE : SEUIL;
+        this.pere = new int[taille];
+        this.mere = new int[taille];
+        this.conjoint = new int[taille];
+        this.genre = new byte[taille];
+        this.pereTrouve = new byte[taille];
+        this.mereTrouvee = new byte[taille];
+    }
+
+    /**
+     * vérifie tous les membres du registre
+     * @param registre les membres à vérifier
+     * @param pool les fils qui se partagent les tranches
+     * @return le rapport de vérification
+     */
+    static RapportVerification verifier(RegistreMembres registre, ForkJoinPool pool) {
+        long debut = System.nanoTime();
+        VerificationArbre verification = new VerificationArbre(registre);
+        Constat constat = new Constat();
+        for (int passe = LECTURE; passe <= PARENTS; passe++) {
+            constat.ajouter(pool.invoke(verification.new Tranche(passe, 0, verification.taille)));
+        }
+        verification.chercherCycles(constat);
+        return constat.rapport(verification.taille, System.nanoTime() - debut);
+    }
+
+    /**
+     * Une tranche d'identifiants [debut, fin[ vérifiée pour une passe, coupée en deux tant qu'elle dépasse le seuil
+     */
+    private final class Tranche extends RecursiveTask<Constat> {
+        private static final long serialVersionUID = 1;
+
+        private final int passe;
+        private final int debut;
+        private final int fin;
+
+        Tranche(int passe, int debut, int fin) {
+            this.passe = passe;
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        @Override
+        protected Constat compute() {
+            if (fin - debut <= seuil) {
+                Constat constat = new Constat();
+                for (int id = debut; id < fin; id++) {
+                    if (passe == LECTURE) {
+                        lire(id, constat);
+                    } else if (passe == MEMBRES) {
+                        verifierMembre(id, constat);
+                    } else {
+                        verifierParents(id, constat);
+                    }
+                }
+                return constat;
+            }
+            int milieu = (debut + fin) >>> 1;
+            Tranche gauche = new Tranche(passe, debut, milieu);
+            gauche.fork();
+            Constat droite = new Tranche(passe, milieu, fin).compute();
+            //la moitié gauche d'abord : les exemples restent dans l'ordre des identifiants
+            return gauche.join().ajouter(droite);
+        }
+    }
+
+    //recopie les liens et le genre du membre, vérifie ses frères et soeurs et son nom de base
+    private void lire(int id, Constat constat) {
+        MembreFamille membre = registre.consulter(id);
+        pere[id] = membre.idPere();
+        mere[id] = membre.idMere();
+        conjoint[id] = membre.idConjoint();
+        MembreFamille.Genre lu = membre.getGenre();
+        genre[id] = lu == MembreFamille.Genre.MASCULIN ? MASCULIN : lu == MembreFamille.Genre.FEMININ ? FEMININ : INCONNU;
+        String nomDeBase = membre.getNomDeBaseDeLaMariee();
+        if (nomDeBase != null && !nomDeBase.isEmpty() && genre[id] != FEMININ) {
+            constat.signaler(RapportVerification.Probleme.NOM_DE_BASE_NON_FEMININ, id);
+        }
+        ListeIds freresSoeurs = membre.idsFreresSoeurs();
+        //une fratrie partagée par des milliers de membres n'est parcourue qu'une fois, sinon la passe serait quadratique
+        if (freresSoeurs.taille() > LISTE_COURTE && !listesVues.add(freresSoeurs)) {
+            return;
+        }
+        for (int i = 0; i < freresSoeurs.taille(); i++) {
+            if (!estConnu(freresSoeurs.get(i))) {
+                constat.signaler(RapportVerification.Probleme.LIEN_INCONNU, id);
+            }
+        }
+    }
+
+    //vérifie les liens du membre, puis coche les enfants qui ont bien le membre pour parent
+    private void verifierMembre(int id, Constat constat) {
+        int p = pere[id];
+        if (p >= 0) {
+            if (!estConnu(p)) {
+                constat.signaler(RapportVerification.Probleme.LIEN_INCONNU, id);
+            } else if (genre[p] != MASCULIN) {
+                constat.signaler(RapportVerification.Probleme.PERE_NON_MASCULIN, id);
+            }
+        }
+        int m = mere[id];
+        if (m >= 0) {
+            if (!estConnu(m)) {
+                constat.signaler(RapportVerification.Probleme.LIEN_INCONNU, id);
+            } else if (genre[m] != FEMININ) {
+                constat.signaler(RapportVerification.Probleme.MERE_NON_FEMININ, id);
+            }
+        }
+        int c = conjoint[id];
+        if (c >= 0) {
+            if (!estConnu(c)) {
+                constat.signaler(RapportVerification.Probleme.LIEN_INCONNU, id);
+            } else {
+                if (conjoint[c] != id) {
+                    constat.signaler(RapportVerification.Probleme.CONJOINT_NON_RECIPROQUE, id);
+                }
+                if (genre[c] == genre[id]) {
+                    constat.signaler(RapportVerification.Probleme.CONJOINT_MEME_GENRE, id);
+                }
+            }
+        }
+        //la liste d'enfants est partagée entre conjoints : un enfant peut n'avoir pour parent que le conjoint.
+        //Seules les cases de l'enfant propres à ce parent sont écrites, par la tranche qui lit ce parent
+        boolean conjointConnu = estConnu(c);
+        ListeIds enfants = registre.consulter(id).idsEnfants();
+        for (int i = 0; i < enfants.taille(); i++) {
+            int enfant = enfants.get(i);
+            if (!estConnu(enfant)) {
+                constat.signaler(RapportVerification.Probleme.LIEN_INCONNU, id);
+                continue;
+            }
+            boolean parent = false;
+            if (pere[enfant] == id) {
+                pereTrouve[enfant] = 1;
+                parent = true;
+            }
+            if (mere[enfant] == id) {
+                mereTrouvee[enfant] = 1;
+                parent = true;
+            }
+            if (!parent && !(conjointConnu && (pere[enfant] == c || mere[enfant] == c))) {
+                constat.signaler(RapportVerification.Probleme.ENFANT_SANS_PARENT, id);
+            }
+        }
+    }
+
+    private void verifierParents(int id, Constat constat) {
+        if ((estConnu(pere[id]) && pereTrouve[id] == 0) || (estConnu(mere[id]) && mereTrouvee[id] == 0)) {
+            constat.signaler(RapportVerification.Probleme.ENFANT_ABSENT, id);
+        }
+    }
+
+    private boolean estConnu(int id) {
+        return id >= 0 && id < taille;
+    }
+
+    /**
+     * signale les membres qui sont leur propre ancêtre. Les membres sans enfant ne peuvent pas être sur un cycle :
+     * ils sont retirés, puis ceux dont tous les enfants ont été retirés, et ainsi de suite. Ne restent que
+     * les cycles et leurs ancêtres, parcourus en remontant vers les parents par l'algorithme de Tarjan
+     */
+    private void chercherCycles(Constat constat) {
+        int[] enfants = new int[taille];
+        for (int id = 0; id < taille; id++) {
+            if (estConnu(pere[id])) {
+                enfants[pere[id]]++;
+            }
+            if (estConnu(mere[id])) {
+                enfants[mere[id]]++;
+            }
+        }
+        int[] pile = new int[taille];
+        int hauteur = 0;
+        for (int id = 0; id < taille; id++) {
+            if (enfants[id] == 0) {
+                pile[hauteur++] = id;
+            }
+        }
+        BitSet retires = new BitSet(taille);
+        int restants = taille;
+        while (hauteur > 0) {
+            int id = pile[--hauteur];
+            retires.set(id);
+            restants--;
+            if (estConnu(pere[id]) && --enfants[pere[id]] == 0) {
+                pile[hauteur++] = pere[id];
+            }
+            if (estConnu(mere[id]) && --enfants[mere[id]] == 0) {
+                pile[hauteur++] = mere[id];
+            }
+        }
+        if (restants == 0) {
+            return;
+        }
+        BitSet surCycle = composantes(retires, pile);
+        for (int id = surCycle.nextSetBit(0); id >= 0; id = surCycle.nextSetBit(id + 1)) {
+            constat.signaler(RapportVerification.Probleme.PROPRE_ANCETRE, id);
+        }
+    }
+
+    //Tarjan itératif sur les membres non retirés, en suivant les liens vers le père puis la mère
+    private BitSet composantes(BitSet retires, int[] appels) {
+        int[] numero = new int[taille];
+        int[] bas = new int[taille];
+        byte[] suivant = new byte[taille];
+        int[] composante = new int[taille];
+        BitSet empile = new BitSet(taille);
+        BitSet surCycle = new BitSet(taille);
+        int compteur = 0;
+        int hauteurComposante = 0;
+        for (int depart = retires.nextClearBit(0); depart < taille; depart = retires.nextClearBit(depart + 1)) {
+            if (numero[depart] != 0) {
+                continue;
+            }
+            int hauteur = 0;
+            appels[hauteur++] = depart;
+            numero[depart] = bas[depart] = ++compteur;
+            composante[hauteurComposante++] = depart;
+            empile.set(depart);
+            while (hauteur > 0) {
+                int id = appels[hauteur - 1];
+                if (suivant[id] < 2) {
+                    int parent = suivant[id]++ == 0 ? pere[id] : mere[id];
+                    if (!estConnu(parent) || retires.get(parent)) {
+                        continue;
+                    }
+                    if (numero[parent] == 0) {
+                        numero[parent] = bas[parent] = ++compteur;
+                        composante[hauteurComposante++] = parent;
+                        empile.set(parent);
+                        appels[hauteur++] = parent;
+                    } else if (empile.get(parent)) {
+                        bas[id] = Math.min(bas[id], numero[parent]);
+                    }
+                    continue;
+                }
+                hauteur--;
+                if (hauteur > 0) {
+                    int appelant = appels[hauteur - 1];
+                    bas[appelant] = Math.min(bas[appelant], bas[id]);
+                }
+                if (bas[id] == numero[id]) {
+                    int premier = hauteurComposante;
+                    do {
+                        empile.clear(composante[--premier]);
+                    } while (composante[premier] != id);
+                    //un cycle : plusieurs membres, ou un seul qui est son propre parent
+                    if (hauteurComposante - premier > 1 || pere[id] == id || mere[id] == id) {
+                        for (int i = premier; i < hauteurComposante; i++) {
+                            surCycle.set(composante[i]);
+                        }
+                    }
+                    hauteurComposante = premier;
+                }
+            }
+        }
+        return surCycle;
+    }
+
+    /**
+     * Les incohérences trouvées par une tranche : un compte par sorte et les premiers exemples
+     */
+    private static final class Constat {
+
+        private final long[] nombres = new long[RapportVerification.Probleme.values().length];
+        private final int[][] exemples = new int[nombres.length][EXEMPLES];
+        private final int[] gardes = new int[nombres.length];
+
+        void signaler(RapportVerification.Probleme probleme, int id) {
+            int sorte = probleme.ordinal();
+            nombres[sorte]++;
+            garder(sorte, id);
+        }
+
+        private void garder(int sorte, int id) {
+            int garde = gardes[sorte];
+            //un membre qui a plusieurs fois le même problème n'est donné qu'une fois en exemple
+            if (garde < EXEMPLES && (garde == 0 || exemples[sorte][garde - 1] != id)) {
+                exemples[sorte][garde] = id;
+                gardes[sorte]++;
+            }
+        }
+
+        //ajoute les constats d'une tranche qui suit celle-ci
+        Constat ajouter(Constat suite) {
+            for (int sorte = 0; sorte < nombres.length; sorte++) {
+                nombres[sorte] += suite.nombres[sorte];
+                for (int i = 0; i < suite.gardes[sorte]; i++) {
+                    garder(sorte, suite.exemples[sorte][i]);
+                }
+            }
+            return this;
+        }
+
+        RapportVerification rapport(int nombreMembres, long nanosecondes) {
+            int[][] gardes = new int[nombres.length][];
+            for (int sorte = 0; sorte < nombres.length; sorte++) {
+                //les exemples d'une même sorte peuvent venir de plusieurs passes
+                gardes[sorte] = Arrays.stream(exemples[sorte], 0, this.gardes[sorte]).sorted().distinct().toArray();
+            }
+            return new RapportVerification(nombreMembres, nombres.clone(), gardes, nanosecondes);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ajouts et lectures simultanés sur un arbre partagé, vérifié une fois les fils terminés
+ * @author aklam
+ */
+class ArbreConcurrentTest {
+
+    private static final int ECRIVAINS = 4;
+    private static final int LECTEURS = 2;
+    private static final int AJOUTS = 2000;
+
+    @Test
+    void desAjoutsSimultanesGardentLArbreCoherent() throws Throwable {
+        for (int essai = 0; essai < 5; essai++) {
+            ArbreConcurrent arbre = new ArbreConcurrent(new ArbreGenealogique());
+            arbre.definirRacine("Jean", "Dupont", "", MembreFamille.Genre.MASCULIN);
+            //chaque enfant ajouté, avec le membre auquel il a été ajouté
+            ConcurrentLinkedQueue<int[]> enfants = new ConcurrentLinkedQueue<>();
+            ConcurrentLinkedQueue<Throwable> erreurs = new ConcurrentLinkedQueue<>();
+            AtomicBoolean fini = new AtomicBoolean();
+            CountDownLatch depart = new CountDownLatch(1);
+            List<Thread> fils = new ArrayList<>();
+            for (int f = 0; f < ECRIVAINS; f++) {
+                long graine = essai * 31L + f;
+                fils.add(new Thread(() -> executer(depart, erreurs, () -> ecrire(arbre, new Random(graine), enfants))));
+            }
+            for (int f = 0; f < LECTEURS; f++) {
+                long graine = -essai * 31L - f;
+                fils.add(new Thread(() -> executer(depart, erreurs, () -> lire(arbre, new Random(graine), fini))));
+            }
+            for (Thread thread : fils) {
+                thread.start();
+            }
+            depart.countDown();
+            for (int f = 0; f < ECRIVAINS; f++) {
+                fils.get(f).join();
+            }
+            fini.set(true);
+            for (Thread thread : fils) {
+                thread.join();
+            }
+            if (!erreurs.isEmpty()) {
+                throw erreurs.peek();
+            }
+
+            RapportVerification rapport = new MoteurArbre(arbre.getArbre()).verifier();
+            assertTrue(rapport.estValide(), rapport.toString());
+            for (int[] lien : enfants) {
+                int parent = lien[0];
+                int enfant = lien[1];
+                assertTrue(contient(arbre.enfants(parent), enfant), enfant + " absent des enfants de " + parent);
+                assertTrue(arbre.pere(enfant) == parent || arbre.mere(enfant) == parent,
+                        parent + " n'est pas un parent de " + enfant);
+            }
+            //la racine, les enfants et un conjoint ajouté par couple : aucun ajout n'est perdu ni fait deux fois
+            int couples = 0;
+            for (int id = 0; id < arbre.nombreMembres(); id++) {
+                if (arbre.conjoint(id) >= 0) {
+                    assertEquals(id, arbre.conjoint(arbre.conjoint(id)));
+                    couples++;
+                }
+            }
+            assertEquals(1 + enfants.size() + couples / 2, arbre.nombreMembres());
+        }
+    }
+
+    //des enfants et des conjoints ajoutés à des membres récents : un conjoint peut arriver pendant
+    //l'ajout d'un enfant, qui doit alors être recommencé avec les verrous du conjoint
+    private static void ecrire(ArbreConcurrent arbre, Random hasard, ConcurrentLinkedQueue<int[]> enfants) {
+        for (int i = 0; i < AJOUTS; i++) {
+            //parmi les derniers membres, qui n'ont souvent pas encore de conjoint : les fils se croisent sur eux
+            int nombre = arbre.nombreMembres();
+            int id = nombre - 1 - hasard.nextInt(Math.min(nombre, 8));
+            MembreFamille.Genre genre = arbre.genre(id);
+            if (hasard.nextInt(3) == 0) {
+                if (arbre.conjoint(id) < 0) {
+                    MembreFamille.Genre oppose = genre == MembreFamille.Genre.MASCULIN
+                            ? MembreFamille.Genre.FEMININ : MembreFamille.Genre.MASCULIN;
+                    try {
+                        arbre.ajouterLien(id, MembreFamille.LienDeParente.CONJOINT, "Marie", "Dupont", "", oppose);
+                    } catch (IllegalArgumentException e) {
+                        //un autre fil lui a donné un conjoint entre-temps
+                    }
+                }
+            } else {
+                MembreFamille.Genre genreEnfant = hasard.nextBoolean()
+                        ? MembreFamille.Genre.MASCULIN : MembreFamille.Genre.FEMININ;
+                int enfant = arbre.ajouterLien(id, MembreFamille.LienDeParente.ENFANT, "Luc", "Dupont", "",
+                        genreEnfant);
+                enfants.add(new int[]{id, enfant});
+            }
+        }
+    }
+
+    //lectures optimistes des listes pendant les ajouts : chaque copie est une liste sans doublon de membres existants
+    private static void lire(ArbreConcurrent arbre, Random hasard, AtomicBoolean fini) {
+        while (!fini.get()) {
+            int id = hasard.nextInt(arbre.nombreMembres());
+            int[] enfants = arbre.enfants(id);
+            int[] freresSoeurs = arbre.freresSoeurs(id);
+            int conjoint = arbre.conjoint(id);
+            int nombre = arbre.nombreMembres();
+            verifierListe(enfants, nombre, "enfants de " + id);
+            verifierListe(freresSoeurs, nombre, "freres-soeurs de " + id);
+            assertTrue(conjoint < nombre, "conjoint de " + id);
+        }
+    }
+
+    private static void verifierListe(int[] ids, int nombre, String liste) {
+        int[] tries = ids.clone();
+        Arrays.sort(tries);
+        for (int i = 0; i < tries.length; i++) {
+            assertTrue(tries[i] >= 0 && tries[i] < nombre, liste + " : " + Arrays.toString(ids));
+            assertTrue(i == 0 || tries[i] != tries[i - 1], liste + " en double : " + Arrays.toString(ids));
+        }
+    }
+
+    private static boolean contient(int[] ids, int id) {
+        for (int i : ids) {
+            if (i == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void executer(CountDownLatch depart, ConcurrentLinkedQueue<Throwable> erreurs, Runnable tache) {
+        try {
+            depart.await();
+            tache.run();
+        } catch (Throwable e) {
+            erreurs.add(e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package arbre_genealogique_pkg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Arbres et comparaisons partagés par les tests
+ * @author aklam
+ */
+final class ArbresDeTest {
+
+    private ArbresDeTest() {
+    }
+
+    /**
+     * petite famille sur trois générations, avec des conjoints, un nom de base de la mariée et un genre inconnu
+     * @return le moteur sur cette famille, dont la racine est Jean Dupont
+     */
+    static MoteurArbre famille() {
+        MoteurArbre moteur = new MoteurArbre();
+        MembreFamille jean = moteur.definirRacine("Jean", "Dupont", MembreFamille.Genre.MASCULIN);
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.CONJOINT, "Marie", "Dupont", "Martin",
+                MembreFamille.Genre.FEMININ);
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.PERE, "Pierre", "Dupont", MembreFamille.Genre.MASCULIN);
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.MERE, "Anne", "Durand", MembreFamille.Genre.FEMININ);
+        MembreFamille paul = moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Paul", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Camille", "Dupont", null);
+        moteur.ajouterLien(paul, MembreFamille.LienDeParente.CONJOINT, "Lucie", "Dupont", "Bernard",
+                MembreFamille.Genre.FEMININ);
+        moteur.ajouterLien(paul, MembreFamille.LienDeParente.ENFANT, "Louis", "Dupont", MembreFamille.Genre.MASCULIN);
+        return moteur;
+    }
+
+    /**
+     * @return l'export CSV de l'arbre, qui décrit chaque membre et ses liens dans l'ordre des identifiants
+     */
+    static String contenu(MoteurArbre moteur, Path dossier) throws IOException {
+        File csv = Files.createTempFile(dossier, "arbre", ".csv").toFile();
+        moteur.exporterCsv(csv);
+        return new String(Files.readAllBytes(csv.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return l'export CSV de l'arbre
+     */
+    static String contenu(ArbreGenealogique arbre, Path dossier) throws IOException {
+        return contenu(new MoteurArbre(arbre), dossier);
+    }
+}
@@ -0,0 +1,186 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Noms des liens de parenté sur une famille fixe de cinq générations
+ * @author aklam
+ */
+class CalculParenteTest {
+
+    private static MoteurArbre moteur;
+
+    /*
+     *                 Pierre + Anne             Henri
+     *              ┌────────┴────────┐       ┌────┴────┐
+     *         Jean + Claire        Sophie  Claire    Julie
+     *                   │              │
+     *                  Leo            Emma
+     *                   │              │
+     *                 Victor          Alice
+     *                   │              │
+     *                  Paul           Rose
+     */
+    @BeforeAll
+    static void famille() {
+        moteur = new MoteurArbre();
+        MembreFamille pierre = moteur.definirRacine("Pierre", "Dupont", MembreFamille.Genre.MASCULIN);
+        moteur.ajouterLien(pierre, MembreFamille.LienDeParente.CONJOINT, "Anne", "Dupont", "Durand",
+                MembreFamille.Genre.FEMININ);
+        MembreFamille jean = moteur.ajouterLien(pierre, MembreFamille.LienDeParente.ENFANT, "Jean", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        MembreFamille sophie = moteur.ajouterLien(pierre, MembreFamille.LienDeParente.ENFANT, "Sophie", "Dupont",
+                MembreFamille.Genre.FEMININ);
+        MembreFamille claire = moteur.ajouterLien(jean, MembreFamille.LienDeParente.CONJOINT, "Claire", "Dupont",
+                "Martin", MembreFamille.Genre.FEMININ);
+        MembreFamille henri = moteur.ajouterLien(claire, MembreFamille.LienDeParente.PERE, "Henri", "Martin",
+                MembreFamille.Genre.MASCULIN);
+        moteur.ajouterLien(henri, MembreFamille.LienDeParente.ENFANT, "Julie", "Martin", MembreFamille.Genre.FEMININ);
+        MembreFamille leo = moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Leo", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        MembreFamille victor = moteur.ajouterLien(leo, MembreFamille.LienDeParente.ENFANT, "Victor", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        moteur.ajouterLien(victor, MembreFamille.LienDeParente.ENFANT, "Paul", "Dupont", MembreFamille.Genre.MASCULIN);
+        MembreFamille emma = moteur.ajouterLien(sophie, MembreFamille.LienDeParente.ENFANT, "Emma", "Dupont",
+                MembreFamille.Genre.FEMININ);
+        MembreFamille alice = moteur.ajouterLien(emma, MembreFamille.LienDeParente.ENFANT, "Alice", "Dupont",
+                MembreFamille.Genre.FEMININ);
+        moteur.ajouterLien(alice, MembreFamille.LienDeParente.ENFANT, "Rose", "Dupont", MembreFamille.Genre.FEMININ);
+    }
+
+    @Test
+    void nommeLesAscendantsEtLesDescendants() {
+        assertEquals("même personne", lien("Jean", "Jean"));
+        assertEquals("père", lien("Jean", "Leo"));
+        assertEquals("mère", lien("Sophie", "Emma"));
+        assertEquals("grand-père", lien("Pierre", "Leo"));
+        assertEquals("arrière-grand-mère", lien("Anne", "Victor"));
+        assertEquals("fils", lien("Leo", "Jean"));
+        assertEquals("petite-fille", lien("Alice", "Sophie"));
+        assertEquals("arrière-petit-fils", lien("Victor", "Pierre"));
+    }
+
+    @Test
+    void distingueLesDemiFreresDesFreres(@TempDir Path dossier) throws IOException {
+        LienParente freres = moteur.lien(membre("Jean"), membre("Sophie"));
+        assertEquals("frère", freres.getLibelle());
+        assertFalse(freres.estDemi());
+        assertEquals("sœur", lien("Sophie", "Jean"));
+        //un ancêtre commun sans conjoint ne rend pas le lien demi
+        assertEquals("sœur", lien("Julie", "Claire"));
+
+        //seul un import garde une liste d'enfants par union : Pierre a eu Jean avec Anne, puis Hugo avec Odile
+        File gedcom = dossier.resolve("unions.ged").toFile();
+        Files.write(gedcom.toPath(), String.join("\n",
+                "0 @I1@ INDI", "1 NAME Pierre /Dupont/", "1 SEX M",
+                "0 @I2@ INDI", "1 NAME Anne /Durand/", "1 SEX F",
+                "0 @I3@ INDI", "1 NAME Odile /Roux/", "1 SEX F",
+                "0 @I4@ INDI", "1 NAME Jean /Dupont/", "1 SEX M",
+                "0 @I5@ INDI", "1 NAME Hugo /Dupont/", "1 SEX M",
+                "0 @I6@ INDI", "1 NAME Leo /Dupont/", "1 SEX M",
+                "0 @F1@ FAM", "1 HUSB @I1@", "1 WIFE @I2@", "1 CHIL @I4@",
+                "0 @F2@ FAM", "1 HUSB @I1@", "1 WIFE @I3@", "1 CHIL @I5@",
+                "0 @F3@ FAM", "1 HUSB @I4@", "1 CHIL @I6@", "0 TRLR").getBytes(StandardCharsets.UTF_8));
+        MoteurArbre unions = new MoteurArbre(ImportGedcom.importer(gedcom, SuiviProgression.AUCUN).arbre);
+        MembreFamille hugo = unions.trouverParPrenoms("Hugo").get(0);
+        MembreFamille jean = unions.trouverParPrenoms("Jean").get(0);
+
+        LienParente demi = unions.lien(hugo, jean);
+        assertEquals("demi-frère", demi.getLibelle());
+        assertTrue(demi.estDemi());
+        assertSame(unions.trouverParPrenoms("Pierre").get(0), demi.getAncetreCommun());
+        assertEquals("demi-oncle", unions.lien(hugo, unions.trouverParPrenoms("Leo").get(0)).getLibelle());
+    }
+
+    @Test
+    void nommeLesOnclesEtLesNeveux() {
+        assertEquals("tante", lien("Sophie", "Leo"));
+        assertEquals("neveu", lien("Leo", "Sophie"));
+        assertEquals("grand-tante", lien("Sophie", "Victor"));
+        assertEquals("petite-nièce", lien("Alice", "Jean"));
+        assertEquals("tante", lien("Julie", "Leo"));
+    }
+
+    @Test
+    void nommeLesCousinsSelonLeDegreEtLEloignement() {
+        LienParente germains = moteur.lien(membre("Emma"), membre("Leo"));
+        assertEquals("cousine germaine", germains.getLibelle());
+        assertEquals(2, germains.getGenerationsA());
+        assertEquals(2, germains.getGenerationsB());
+        assertFalse(germains.estDemi());
+        assertEquals("cousin germain, éloigné de 1 génération", lien("Victor", "Emma"));
+        assertEquals("cousine germaine, éloignée de 2 générations", lien("Emma", "Paul"));
+        assertEquals("cousin issu de germain", lien("Victor", "Alice"));
+        assertEquals("cousine au 3e degré", lien("Rose", "Paul"));
+    }
+
+    @Test
+    void nommeLesLiensParLeConjointDeB() {
+        assertEquals("beau-père", lien("Henri", "Jean"));
+        assertEquals("beau-père", lien("Pierre", "Claire"));
+        assertEquals("belle-sœur", lien("Julie", "Jean"));
+        assertEquals("belle-sœur", lien("Sophie", "Claire"));
+        assertEquals("nièce du conjoint", lien("Emma", "Claire"));
+        assertTrue(moteur.lien(membre("Julie"), membre("Jean")).estParAlliance());
+    }
+
+    @Test
+    void nommeLesLiensParLeConjointDeA() {
+        assertEquals("belle-fille", lien("Claire", "Pierre"));
+        assertEquals("gendre", lien("Jean", "Henri"));
+        assertEquals("beau-frère", lien("Jean", "Julie"));
+        assertEquals("conjointe de l'oncle", lien("Claire", "Emma"));
+        assertEquals("épouse", lien("Claire", "Jean"));
+        assertEquals("époux", lien("Jean", "Claire"));
+    }
+
+    @Test
+    void sansAncetreCommunNiConjointLeLienEstInconnu() {
+        LienParente lien = moteur.lien(membre("Henri"), membre("Sophie"));
+        assertEquals("aucun lien connu", lien.getLibelle());
+        assertEquals(-1, lien.getGenerationsA());
+        assertNull(lien.getAncetreCommun());
+    }
+
+    @Test
+    void lesAncetresAuDelaDeLaProfondeurMaximaleSontIgnores() {
+        MoteurArbre lignee = new MoteurArbre();
+        MembreFamille ancetre = lignee.definirRacine("Luc", "Dupont", MembreFamille.Genre.MASCULIN);
+        MembreFamille descendant = ancetre;
+        MembreFamille limite = null;
+        for (int generation = 1; generation <= CalculParente.PROFONDEUR_MAX + 1; generation++) {
+            descendant = lignee.ajouterLien(descendant, MembreFamille.LienDeParente.ENFANT, "Luc", "Dupont",
+                    MembreFamille.Genre.MASCULIN);
+            if (generation == CalculParente.PROFONDEUR_MAX) {
+                limite = descendant;
+            }
+        }
+
+        LienParente atteint = lignee.lien(ancetre, limite);
+        assertEquals(CalculParente.PROFONDEUR_MAX, atteint.getGenerationsB());
+        assertSame(ancetre, atteint.getAncetreCommun());
+        assertEquals("aucun lien connu", lignee.lien(ancetre, descendant).getLibelle());
+    }
+
+    private static String lien(String a, String b) {
+        return moteur.lien(membre(a), membre(b)).getLibelle();
+    }
+
+    private static MembreFamille membre(String prenoms) {
+        return moteur.trouverParPrenoms(prenoms).get(0);
+    }
+}
@@ -0,0 +1,114 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Écriture puis relecture des blocs compressés ({@link SortieBlocs}, {@link EntreeBlocs}) avec chaque codec
+ * @author aklam
+ */
+class CodecBlocsTest {
+
+    @Test
+    void relitPlusieursBlocsAvecChaqueCodec() throws IOException {
+        //un peu plus de trois blocs, en partie compressibles
+        byte[] donnees = donnees(3 * SortieBlocs.TAILLE_BLOC + 1234);
+        for (CodecBlocs codec : CodecBlocs.values()) {
+            byte[] blocs = ecrire(donnees, codec);
+            assertArrayEquals(donnees, lire(blocs, codec), codec.name());
+        }
+    }
+
+    @Test
+    void relitUnFluxVide() throws IOException {
+        for (CodecBlocs codec : CodecBlocs.values()) {
+            byte[] blocs = ecrire(new byte[0], codec);
+            assertEquals(SortieBlocs.TAILLE_ENTETE_BLOC, blocs.length);
+            assertEquals(0, lire(blocs, codec).length);
+        }
+    }
+
+    @Test
+    void retrouveChaqueCodecParSonIdentifiant() throws IOException {
+        for (CodecBlocs codec : CodecBlocs.values()) {
+            assertEquals(codec, CodecBlocs.depuis(codec.identifiant()));
+        }
+        assertThrows(IOException.class, () -> CodecBlocs.depuis(255));
+    }
+
+    @Test
+    void unOctetAltereEstDetecte() throws IOException {
+        byte[] donnees = donnees(SortieBlocs.TAILLE_BLOC + 10);
+        for (CodecBlocs codec : CodecBlocs.values()) {
+            byte[] blocs = ecrire(donnees, codec);
+            //dans le contenu du premier bloc
+            blocs[SortieBlocs.TAILLE_ENTETE_BLOC + 100] ^= 0x01;
+            assertThrows(IOException.class, () -> lire(blocs, codec), codec.name());
+        }
+    }
+
+    @Test
+    void unFluxTronqueEstDetecte() throws IOException {
+        byte[] donnees = donnees(2 * SortieBlocs.TAILLE_BLOC);
+        for (CodecBlocs codec : CodecBlocs.values()) {
+            byte[] blocs = ecrire(donnees, codec);
+            //sans le bloc de fin, puis au milieu du second bloc
+            assertThrows(EOFException.class,
+                    () -> lire(Arrays.copyOf(blocs, blocs.length - SortieBlocs.TAILLE_ENTETE_BLOC), codec));
+            assertThrows(EOFException.class, () -> lire(Arrays.copyOf(blocs, blocs.length - 100), codec));
+        }
+    }
+
+    //des noms qui se répètent, entrecoupés d'octets aléatoires
+    private static byte[] donnees(int taille) {
+        Random aleatoire = new Random(42);
+        byte[] donnees = new byte[taille];
+        byte[] nom = "Dupont Jean-Pierre ".getBytes();
+        for (int i = 0; i < taille; i++) {
+            donnees[i] = i % 64 < 48 ? nom[i % nom.length] : (byte) aleatoire.nextInt();
+        }
+        return donnees;
+    }
+
+    //écrit par morceaux de tailles diverses, pour couper les blocs n'importe où
+    private static byte[] ecrire(byte[] donnees, CodecBlocs codec) throws IOException {
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+        try (SortieBlocs blocs = new SortieBlocs(Channels.newChannel(sortie), codec)) {
+            int position = 0;
+            int morceau = 1;
+            while (position < donnees.length) {
+                int n = Math.min(morceau, donnees.length - position);
+                blocs.write(ByteBuffer.wrap(donnees, position, n));
+                position += n;
+                morceau = morceau * 7 % 100_003;
+            }
+            blocs.terminer();
+        }
+        return sortie.toByteArray();
+    }
+
+    private static byte[] lire(byte[] blocs, CodecBlocs codec) throws IOException {
+        ByteArrayOutputStream lus = new ByteArrayOutputStream();
+        try (EntreeBlocs entree = new EntreeBlocs(Channels.newChannel(new ByteArrayInputStream(blocs)), codec)) {
+            ByteBuffer tampon = ByteBuffer.allocate(10_007);
+            while (entree.read(tampon) >= 0) {
+                tampon.flip();
+                lus.write(tampon.array(), 0, tampon.limit());
+                tampon.clear();
+            }
+        }
+        return lus.toByteArray();
+    }
+}
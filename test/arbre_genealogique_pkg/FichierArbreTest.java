@@ -0,0 +1,239 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Enregistrement puis relecture des fichiers .ft dans chacun de leurs formats
+ * @author aklam
+ */
+class FichierArbreTest {
+
+    @TempDir
+    Path dossier;
+
+    @Test
+    void relitUnFichierDeVersion2() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        File fichier = dossier.resolve("famille.ft").toFile();
+        FichierArbre.enregistrer(moteur.getArbre(), fichier);
+
+        assertEquals(FichierArbre.VERSION, Files.readAllBytes(fichier.toPath())[4]);
+        assertEquals(CodecBlocs.AUCUN, FichierArbre.codec(fichier));
+        String attendu = ArbresDeTest.contenu(moteur, dossier);
+        ArbreGenealogique relu = FichierArbre.ouvrir(fichier);
+        assertEquals(attendu, ArbresDeTest.contenu(relu, dossier));
+        assertEquals(attendu, ArbresDeTest.contenu(FichierArbre.ouvrirProjete(fichier), dossier));
+
+        //les liens relus désignent les mêmes membres, dans les deux sens
+        MembreFamille jean = relu.getRoot();
+        assertEquals("Martin", jean.getConjoint().getNomDeBaseDeLaMariee());
+        assertSame(jean, jean.getConjoint().getConjoint());
+        assertEquals("Anne", jean.getMere().getPrenoms());
+        MembreFamille camille = relu.trouverParPrenoms("Camille").get(0);
+        assertNull(camille.getGenre());
+        assertSame(jean, camille.getPere());
+        MembreFamille louis = relu.trouverParPrenoms("Louis").get(0);
+        assertSame(jean, louis.getPere().getPere());
+        assertEquals(relu.getMembres().size(), relu.nombreMembres());
+    }
+
+    @Test
+    void relitUnFichierDeVersion1() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        File fichier = dossier.resolve("famille.ft").toFile();
+        FichierArbre.enregistrer(moteur.getArbre(), fichier);
+        //la version 1 a le même contenu, sans les tables de positions que la lecture séquentielle ignore
+        byte[] octets = Files.readAllBytes(fichier.toPath());
+        octets[4] = 1;
+        Files.write(fichier.toPath(), octets);
+
+        assertEquals(ArbresDeTest.contenu(moteur, dossier), ArbresDeTest.contenu(FichierArbre.ouvrir(fichier), dossier));
+    }
+
+    @Test
+    void relitUnFichierCompresse() throws IOException {
+        ArbreGenealogique arbre = new GenerateurArbre(10, 3).genererArbre();
+        File fichier = dossier.resolve("genere.ft").toFile();
+        FichierArbre.enregistrer(arbre, fichier, CodecBlocs.DEFLATE, SuiviProgression.AUCUN);
+
+        byte[] octets = Files.readAllBytes(fichier.toPath());
+        assertEquals(FichierArbre.VERSION_COMPRESSEE, octets[4]);
+        assertEquals(CodecBlocs.DEFLATE, FichierArbre.codec(fichier));
+        assertEquals(ArbresDeTest.contenu(arbre, dossier), ArbresDeTest.contenu(FichierArbre.ouvrir(fichier), dossier));
+    }
+
+    @Test
+    void leMoteurGardeLeCodecDuFichierOuvert() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        File fichier = dossier.resolve("famille.ft").toFile();
+        moteur.choisirCodec(CodecBlocs.DEFLATE);
+        moteur.enregistrer(fichier);
+
+        MoteurArbre relu = MoteurArbre.ouvrir(fichier);
+        relu.modifierNom(relu.getArbre().getRoot(), "Durand");
+        File copie = dossier.resolve("copie.ft").toFile();
+        relu.enregistrer(copie);
+
+        assertEquals(CodecBlocs.DEFLATE, FichierArbre.codec(copie));
+        assertEquals(ArbresDeTest.contenu(relu, dossier), ArbresDeTest.contenu(MoteurArbre.ouvrir(copie), dossier));
+    }
+
+    @Test
+    void relitUnFichierDeLAncienFormat() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        File fichier = dossier.resolve("ancien.ft").toFile();
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(fichier.toPath()))) {
+            out.writeObject(moteur.getArbre());
+        }
+
+        ArbreGenealogique relu = FichierArbre.ouvrir(fichier);
+        assertEquals(ArbresDeTest.contenu(moteur, dossier), ArbresDeTest.contenu(relu, dossier));
+        assertEquals("Jean", relu.getRoot().getPrenoms());
+    }
+
+    @Test
+    void unBlocAltereEstRefuse() throws IOException {
+        File fichier = dossier.resolve("genere.ft").toFile();
+        FichierArbre.enregistrer(new GenerateurArbre(8, 5).genererArbre(), fichier, CodecBlocs.DEFLATE,
+                SuiviProgression.AUCUN);
+        byte[] octets = Files.readAllBytes(fichier.toPath());
+        //la somme de contrôle du premier bloc, après l'en-tête du fichier et les deux tailles du bloc
+        octets[FichierArbre.MAGIQUE.length + 2 + 8] ^= 0x40;
+        Files.write(fichier.toPath(), octets);
+
+        IOException erreur = assertThrows(IOException.class, () -> FichierArbre.ouvrir(fichier));
+        assertEquals("Fichier corrompu: somme de contrôle d'un bloc invalide", erreur.getMessage());
+    }
+
+    @Test
+    void unFichierCompresseTronqueEstRefuse() throws IOException {
+        File fichier = dossier.resolve("genere.ft").toFile();
+        FichierArbre.enregistrer(new GenerateurArbre(8, 5).genererArbre(), fichier, CodecBlocs.DEFLATE,
+                SuiviProgression.AUCUN);
+        byte[] octets = Files.readAllBytes(fichier.toPath());
+        Files.write(fichier.toPath(), Arrays.copyOf(octets, octets.length / 2));
+
+        assertThrows(EOFException.class, () -> FichierArbre.ouvrir(fichier));
+    }
+
+    @Test
+    void unArbreProjeteSeChargeEnEntierPendantQuUnAutreFilLeLit() throws Exception {
+        File fichier = dossier.resolve("genere.ft").toFile();
+        FichierArbre.enregistrer(new GenerateurArbre(12, 7).genererArbre(), fichier);
+        for (int essai = 0; essai < 20; essai++) {
+            RegistreMembres registre = FichierArbre.ouvrirProjete(fichier).getRegistre();
+            int taille = registre.taille();
+            MembreFamille[] lus = new MembreFamille[taille];
+            //comme l'affichage pendant un enregistrement en arrière-plan, qui construit tout l'arbre
+            Thread lecteur = new Thread(() -> {
+                for (int id = taille - 1; id >= 0; id--) {
+                    lus[id] = registre.get(id);
+                    lus[id].getPere();
+                }
+            });
+            lecteur.start();
+            registre.chargerTout();
+            lecteur.join();
+
+            assertFalse(registre.estPartiel());
+            for (int id = 0; id < taille; id++) {
+                //un membre construit par l'un des fils n'est pas remplacé par celui de l'autre
+                assertSame(registre.get(id), lus[id]);
+                assertEquals(id, lus[id].getId());
+            }
+        }
+    }
+
+    @Test
+    void unFichierTronqueEstRefuse() throws IOException {
+        File fichier = dossier.resolve("famille.ft").toFile();
+        FichierArbre.enregistrer(ArbresDeTest.famille().getArbre(), fichier);
+        byte[] octets = Files.readAllBytes(fichier.toPath());
+        //la lecture séquentielle s'arrête au début des tables de positions, dont le pied donne la position
+        int finContenu = (int) ByteBuffer.wrap(octets).getLong(octets.length - FichierArbre.TAILLE_PIED);
+
+        for (int longueur = FichierArbre.MAGIQUE.length + 1; longueur < finContenu; longueur++) {
+            Files.write(fichier.toPath(), Arrays.copyOf(octets, longueur));
+            assertThrows(IOException.class, () -> FichierArbre.ouvrir(fichier), "tronqué à " + longueur);
+        }
+    }
+
+    @Test
+    void unNombreNegatifEstRefuse() throws IOException {
+        //le nombre de noms, sur dix octets dont le dernier porte le bit 63 : -1 une fois lu en long
+        byte[] negatif = new byte[50];
+        Arrays.fill(negatif, 5, 14, (byte) 0xFF);
+        negatif[14] = 0x01;
+        IOException erreur = assertThrows(IOException.class, () -> FichierArbre.ouvrir(fichier(negatif)));
+        assertEquals("Fichier corrompu: entier hors limites", erreur.getMessage());
+
+        //un dixième octet qui déborde des 64 bits
+        negatif[14] = 0x02;
+        erreur = assertThrows(IOException.class, () -> FichierArbre.ouvrir(fichier(negatif)));
+        assertEquals("Fichier corrompu: entier trop long", erreur.getMessage());
+    }
+
+    @Test
+    void unNombreDElementsTropGrandEstRefuse() throws IOException {
+        //2^31 - 1 noms annoncés dans un fichier de 50 octets
+        byte[] grand = new byte[50];
+        grand[5] = grand[6] = grand[7] = grand[8] = (byte) 0xFF;
+        grand[9] = 0x07;
+        IOException erreur = assertThrows(IOException.class, () -> FichierArbre.ouvrir(fichier(grand)));
+        assertEquals("Fichier corrompu: nombre d'éléments hors limites", erreur.getMessage());
+
+        //aucun nom ni liste, 2^31 - 1 membres
+        byte[] membres = new byte[50];
+        membres[7] = membres[8] = membres[9] = membres[10] = (byte) 0xFF;
+        membres[11] = 0x07;
+        erreur = assertThrows(IOException.class, () -> FichierArbre.ouvrir(fichier(membres)));
+        assertEquals("Fichier corrompu: nombre d'éléments hors limites", erreur.getMessage());
+    }
+
+    @Test
+    void desOctetsQuelconquesDonnentUnArbreOuUneIOException() throws IOException {
+        Random aleatoire = new Random(42);
+        for (int essai = 0; essai < 2000; essai++) {
+            byte[] octets = new byte[5 + aleatoire.nextInt(60)];
+            aleatoire.nextBytes(octets);
+            //des petits nombres, pour dépasser souvent les tables
+            for (int i = 5; i < octets.length; i++) {
+                if (aleatoire.nextBoolean()) {
+                    octets[i] &= 0x07;
+                }
+            }
+            File fichier = fichier(octets);
+            try {
+                FichierArbre.ouvrir(fichier);
+            } catch (IOException e) {
+                //attendu pour la plupart des essais
+            }
+        }
+    }
+
+    //un fichier de version 2 dont le contenu, après la signature et la version, est pris dans les octets
+    private File fichier(byte[] octets) throws IOException {
+        System.arraycopy(FichierArbre.MAGIQUE, 0, octets, 0, FichierArbre.MAGIQUE.length);
+        octets[FichierArbre.MAGIQUE.length] = FichierArbre.VERSION;
+        Path fichier = dossier.resolve("corrompu.ft");
+        Files.write(fichier, octets);
+        return fichier.toFile();
+    }
+}
@@ -0,0 +1,227 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Annulation et rétablissement des modifications faites par le moteur, y compris après le rejeu d'un journal
+ * @author aklam
+ */
+class HistoriqueArbreTest {
+
+    @TempDir
+    Path dossier;
+
+    @Test
+    void annuleEtRefaitDesAjouts() throws IOException {
+        MoteurArbre moteur = new MoteurArbre();
+        List<String> etats = new ArrayList<>();
+        etats.add(ArbresDeTest.contenu(moteur, dossier));
+        MembreFamille jean = moteur.definirRacine("Jean", "Dupont", MembreFamille.Genre.MASCULIN);
+        etats.add(ArbresDeTest.contenu(moteur, dossier));
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.CONJOINT, "Marie", "Dupont", "Martin",
+                MembreFamille.Genre.FEMININ);
+        etats.add(ArbresDeTest.contenu(moteur, dossier));
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.PERE, "Pierre", "Dupont", MembreFamille.Genre.MASCULIN);
+        etats.add(ArbresDeTest.contenu(moteur, dossier));
+        MembreFamille paul = moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Paul", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        etats.add(ArbresDeTest.contenu(moteur, dossier));
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Lucie", "Dupont", MembreFamille.Genre.FEMININ);
+        etats.add(ArbresDeTest.contenu(moteur, dossier));
+
+        for (int i = etats.size() - 2; i >= 0; i--) {
+            assertTrue(moteur.annuler());
+            assertEquals(etats.get(i), ArbresDeTest.contenu(moteur, dossier));
+        }
+        assertFalse(moteur.annuler());
+        assertNull(moteur.getArbre().getRoot());
+
+        for (int i = 1; i < etats.size(); i++) {
+            assertTrue(moteur.refaire());
+            assertEquals(etats.get(i), ArbresDeTest.contenu(moteur, dossier));
+        }
+        assertFalse(moteur.refaire());
+        //les membres refaits sont les mêmes objets, avec les mêmes identifiants
+        assertSame(jean, moteur.getArbre().getRoot());
+        assertSame(paul, moteur.getMembre(paul.getId()));
+    }
+
+    @Test
+    void annuleEtRefaitDesModificationsDeNomEtDeGenre() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille jean = moteur.getArbre().getRoot();
+        MembreFamille camille = moteur.trouverParPrenoms("Camille").get(0);
+        String initial = ArbresDeTest.contenu(moteur, dossier);
+
+        moteur.modifierNom(jean, "Durand");
+        moteur.modifierPrenoms(jean, "Jean-Pierre");
+        moteur.modifierNomDeBaseDeLaMariee(jean.getConjoint(), "");
+        moteur.modifierGenre(camille, MembreFamille.Genre.FEMININ);
+        String modifie = ArbresDeTest.contenu(moteur, dossier);
+
+        assertTrue(moteur.annuler());
+        assertNull(camille.getGenre());
+        assertTrue(moteur.annuler());
+        assertEquals("Martin", jean.getConjoint().getNomDeBaseDeLaMariee());
+        assertTrue(moteur.annuler());
+        assertEquals("Jean", jean.getPrenoms());
+        assertTrue(moteur.annuler());
+        assertEquals(initial, ArbresDeTest.contenu(moteur, dossier));
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(moteur.refaire());
+        }
+        assertFalse(moteur.refaire());
+        assertEquals(modifie, ArbresDeTest.contenu(moteur, dossier));
+    }
+
+    @Test
+    void unChangementDeGenreQuiCasseUnLienEstRefuse() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille jean = moteur.getArbre().getRoot();
+        MembreFamille camille = moteur.trouverParPrenoms("Camille").get(0);
+        MembreFamille conjoint = moteur.ajouterLien(camille, MembreFamille.LienDeParente.CONJOINT, "Marc", "Durand",
+                MembreFamille.Genre.MASCULIN);
+        String avant = ArbresDeTest.contenu(moteur, dossier);
+
+        //le père de Paul, la mère de Paul, puis le même genre que son conjoint
+        assertThrows(IllegalArgumentException.class, () -> moteur.modifierGenre(jean, MembreFamille.Genre.FEMININ));
+        assertThrows(IllegalArgumentException.class,
+                () -> moteur.modifierGenre(jean.getConjoint(), MembreFamille.Genre.MASCULIN));
+        assertThrows(IllegalArgumentException.class,
+                () -> moteur.modifierMembre(camille, "Dupont", "Camille", "", MembreFamille.Genre.MASCULIN));
+        assertEquals(avant, ArbresDeTest.contenu(moteur, dossier));
+
+        //rien n'a été noté : l'annulation retire le conjoint ajouté
+        assertTrue(moteur.annuler());
+        assertNull(camille.getConjoint());
+        assertTrue(moteur.refaire());
+        assertSame(conjoint, camille.getConjoint());
+        moteur.modifierGenre(camille, MembreFamille.Genre.FEMININ);
+        assertEquals(MembreFamille.Genre.FEMININ, camille.getGenre());
+    }
+
+    @Test
+    void uneModificationDeMembreSAnnuleEnUneFois() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille camille = moteur.trouverParPrenoms("Camille").get(0);
+        String initial = ArbresDeTest.contenu(moteur, dossier);
+
+        moteur.modifierMembre(camille, "Durand", "Camille Anne", "", MembreFamille.Genre.FEMININ);
+
+        assertTrue(moteur.annuler());
+        assertEquals("Dupont", camille.getNom());
+        assertEquals("Camille", camille.getPrenoms());
+        assertNull(camille.getGenre());
+        assertTrue(moteur.trouverParNom("Durand").stream().noneMatch(membre -> membre == camille));
+        assertEquals(initial, ArbresDeTest.contenu(moteur, dossier));
+        assertTrue(moteur.refaire());
+        assertEquals("Durand", camille.getNom());
+        assertEquals("Camille Anne", camille.getPrenoms());
+        assertEquals(MembreFamille.Genre.FEMININ, camille.getGenre());
+        assertTrue(moteur.trouverParNom("Durand").contains(camille));
+    }
+
+    @Test
+    void annuleEtRefaitUnChangementDeRacine() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille jean = moteur.getArbre().getRoot();
+        int membres = moteur.getArbre().nombreMembres();
+
+        MembreFamille alice = moteur.definirRacine("Alice", "Bernard", MembreFamille.Genre.FEMININ);
+        assertSame(alice, moteur.getArbre().getRoot());
+        assertEquals(membres + 1, moteur.getArbre().nombreMembres());
+
+        //l'ancienne racine est rétablie et la nouvelle retirée de l'arbre
+        assertTrue(moteur.annuler());
+        assertSame(jean, moteur.getArbre().getRoot());
+        assertEquals(membres, moteur.getArbre().nombreMembres());
+        assertTrue(moteur.trouverParPrenoms("Alice").isEmpty());
+
+        assertTrue(moteur.refaire());
+        assertSame(alice, moteur.getArbre().getRoot());
+        assertEquals(membres, alice.getId());
+        assertSame(jean, moteur.getMembre(jean.getId()));
+    }
+
+    @Test
+    void uneNouvelleModificationEmpecheDeRefaire() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille jean = moteur.getArbre().getRoot();
+        moteur.modifierNom(jean, "Durand");
+        assertTrue(moteur.annuler());
+        assertTrue(moteur.peutRefaire());
+
+        moteur.modifierPrenoms(jean, "Jacques");
+        assertFalse(moteur.peutRefaire());
+        assertTrue(moteur.annuler());
+        assertEquals("Dupont", jean.getNom());
+        assertEquals("Jean", jean.getPrenoms());
+    }
+
+    @Test
+    void desLiensModifiesSansLeMoteurAbandonnentLHistorique() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        assertTrue(moteur.peutAnnuler());
+
+        moteur.getArbre().getRoot().ajouterLienRelatif(MembreFamille.LienDeParente.ENFANT,
+                new MembreFamille("Luc", "Dupont", MembreFamille.Genre.MASCULIN));
+
+        assertFalse(moteur.peutAnnuler());
+        assertFalse(moteur.annuler());
+    }
+
+    @Test
+    void annuleEtRefaitApresLeRejeuDuJournal() throws IOException {
+        File fichier = dossier.resolve("famille.ft").toFile();
+        ArbresDeTest.famille().enregistrer(fichier);
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        MembreFamille jean = moteur.getArbre().getRoot();
+        moteur.modifierNom(jean, "Durand");
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Luc", "Durand", MembreFamille.Genre.MASCULIN);
+        moteur.enregistrer(fichier);
+        String rejoue = ArbresDeTest.contenu(moteur, dossier);
+        moteur.fermerJournal();
+
+        //les modifications rejouées font partie du fichier : elles ne s'annulent pas
+        MoteurArbre repris = MoteurArbre.ouvrirJournalise(fichier);
+        assertEquals(rejoue, ArbresDeTest.contenu(repris, dossier));
+        assertFalse(repris.peutAnnuler());
+        assertFalse(repris.annuler());
+
+        //les modifications suivantes s'annulent, se refont, et leur annulation est journalisée
+        MembreFamille jeanRepris = repris.getArbre().getRoot();
+        MembreFamille luc = repris.trouverParPrenoms("Luc").get(0);
+        repris.ajouterLien(luc, MembreFamille.LienDeParente.CONJOINT, "Léa", "Durand", "Petit",
+                MembreFamille.Genre.FEMININ);
+        repris.modifierGenre(repris.trouverParPrenoms("Camille").get(0), MembreFamille.Genre.MASCULIN);
+        String modifie = ArbresDeTest.contenu(repris, dossier);
+        repris.modifierPrenoms(jeanRepris, "Jacques");
+        assertTrue(repris.annuler());
+        assertTrue(repris.annuler());
+        assertTrue(repris.annuler());
+        assertEquals(rejoue, ArbresDeTest.contenu(repris, dossier));
+        assertFalse(repris.annuler());
+        assertTrue(repris.refaire());
+        assertTrue(repris.refaire());
+        assertEquals(modifie, ArbresDeTest.contenu(repris, dossier));
+        repris.enregistrer(fichier);
+        repris.fermerJournal();
+
+        assertEquals(modifie, ArbresDeTest.contenu(MoteurArbre.ouvrir(fichier), dossier));
+    }
+}
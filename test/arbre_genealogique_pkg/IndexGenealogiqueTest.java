@@ -0,0 +1,201 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Réponses de l'index comparées à des parcours en largeur naïfs sur les mêmes liens
+ * @author aklam
+ */
+class IndexGenealogiqueTest {
+
+    @Test
+    void unEnfantDeDeuxSousArbresDescendDeSesDeuxLignees() {
+        //0 → 2 → 4 et 1 → 3 → 4 : le parcours en profondeur depuis 0 atteint 4 avant de partir de 1
+        RegistreMembres registre = registre(6);
+        lier(registre, 2, 0, -1);
+        lier(registre, 3, 1, -1);
+        lier(registre, 4, 2, 3);
+        lier(registre, 5, 3, -1);
+        IndexGenealogique index = IndexGenealogique.construire(registre);
+
+        assertTrue(index.estAncetre(1, 4));
+        assertTrue(index.estAncetre(0, 4));
+        assertFalse(index.estAncetre(0, 5));
+        assertFalse(index.estAncetre(2, 3));
+        assertFalse(index.estAncetre(4, 1));
+        assertEquals(2, index.generation(4));
+        assertArrayEquals(new int[]{3, 4, 5}, trie(index.descendants(1, 1, Integer.MAX_VALUE)));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, trie(index.ancetres(4)));
+    }
+
+    @Test
+    void repondCommeUnParcoursNaifSurDesArbresAleatoires() {
+        Random hasard = new Random(42);
+        for (int essai = 0; essai < 200; essai++) {
+            comparer(aleatoire(hasard, 10 + hasard.nextInt(60), false), true, "essai " + essai);
+        }
+    }
+
+    @Test
+    void repondCommeUnParcoursNaifSurDesArbresAvecDesCycles() {
+        Random hasard = new Random(7);
+        for (int essai = 0; essai < 200; essai++) {
+            comparer(aleatoire(hasard, 10 + hasard.nextInt(60), true), false, "essai " + essai);
+        }
+    }
+
+    private static void comparer(RegistreMembres registre, boolean acyclique, String essai) {
+        IndexGenealogique index = IndexGenealogique.construire(registre);
+        int taille = registre.taille();
+        List<List<Integer>> enfants = enfants(registre);
+        List<List<Integer>> parents = new ArrayList<>();
+        for (int id = 0; id < taille; id++) {
+            parents.add(new ArrayList<>());
+        }
+        for (int id = 0; id < taille; id++) {
+            for (int enfant : enfants.get(id)) {
+                parents.get(enfant).add(id);
+            }
+        }
+        for (int a = 0; a < taille; a++) {
+            int[] profondeurs = largeur(enfants, a);
+            for (int b = 0; b < taille; b++) {
+                assertEquals(a != b && profondeurs[b] > 0, index.estAncetre(a, b), essai + " : " + a + " ancêtre de " + b);
+            }
+            for (int min = 1; min <= 3; min++) {
+                for (int max = min; max <= min + 2; max++) {
+                    assertArrayEquals(entre(profondeurs, min, max), trie(index.descendants(a, min, max)),
+                            essai + " : descendants de " + a + " entre " + min + " et " + max);
+                }
+            }
+            assertArrayEquals(entre(largeur(parents, a), 1, Integer.MAX_VALUE), trie(index.ancetres(a)),
+                    essai + " : ancêtres de " + a);
+            if (acyclique) {
+                assertEquals(generation(parents, a), index.generation(a), essai + " : génération de " + a);
+            }
+        }
+    }
+
+    //liens parent vers enfant comme l'index les lit : père, mère et liste d'enfants, sans boucle ni doublon
+    private static List<List<Integer>> enfants(RegistreMembres registre) {
+        List<List<Integer>> enfants = new ArrayList<>();
+        for (int id = 0; id < registre.taille(); id++) {
+            enfants.add(new ArrayList<>());
+        }
+        for (int id = 0; id < registre.taille(); id++) {
+            MembreFamille membre = registre.get(id);
+            for (int parent : new int[]{membre.idPere(), membre.idMere()}) {
+                if (parent >= 0 && parent != id && !enfants.get(parent).contains(id)) {
+                    enfants.get(parent).add(id);
+                }
+            }
+            for (int enfant : membre.idsEnfants().copie()) {
+                if (enfant != id && !enfants.get(id).contains(enfant)) {
+                    enfants.get(id).add(enfant);
+                }
+            }
+        }
+        return enfants;
+    }
+
+    //distance la plus courte depuis le départ, -1 pour un membre inaccessible
+    private static int[] largeur(List<List<Integer>> voisins, int depart) {
+        int[] profondeurs = new int[voisins.size()];
+        Arrays.fill(profondeurs, -1);
+        profondeurs[depart] = 0;
+        ArrayDeque<Integer> file = new ArrayDeque<>();
+        file.add(depart);
+        while (!file.isEmpty()) {
+            int membre = file.poll();
+            for (int voisin : voisins.get(membre)) {
+                if (profondeurs[voisin] < 0) {
+                    profondeurs[voisin] = profondeurs[membre] + 1;
+                    file.add(voisin);
+                }
+            }
+        }
+        return profondeurs;
+    }
+
+    private static int[] entre(int[] profondeurs, int min, int max) {
+        return IntStream.range(0, profondeurs.length)
+                .filter(id -> profondeurs[id] >= min && profondeurs[id] <= max).toArray();
+    }
+
+    //la plus longue chaîne de parents au-dessus du membre
+    private static int generation(List<List<Integer>> parents, int id) {
+        int generation = 0;
+        for (int parent : parents.get(id)) {
+            generation = Math.max(generation, generation(parents, parent) + 1);
+        }
+        return generation;
+    }
+
+    /**
+     * des membres dont les parents ont un identifiant plus petit, pris au hasard dans tout l'arbre, et quelques
+     * enfants ajoutés aux seules listes. Avec des cycles, 0 et 1 sont le père l'un de l'autre et quelques parents
+     * sont pris parmi les identifiants plus grands
+     */
+    private static RegistreMembres aleatoire(Random hasard, int taille, boolean cycles) {
+        RegistreMembres registre = registre(taille);
+        ListeIds[] listes = new ListeIds[taille];
+        for (int id = 0; id < taille; id++) {
+            listes[id] = new ListeIds();
+        }
+        int[] peres = new int[taille];
+        int[] meres = new int[taille];
+        for (int id = 0; id < taille; id++) {
+            peres[id] = id > 0 && hasard.nextInt(4) > 0 ? hasard.nextInt(id) : -1;
+            meres[id] = id > 0 && hasard.nextInt(3) > 0 ? hasard.nextInt(id) : -1;
+            //un enfant que seule la liste du parent connaît
+            if (id > 0 && hasard.nextInt(5) == 0) {
+                listes[hasard.nextInt(id)].ajouterSiAbsent(id);
+            }
+        }
+        if (cycles) {
+            peres[0] = 1;
+            peres[1] = 0;
+            for (int i = 0; i < 1 + hasard.nextInt(3); i++) {
+                int id = hasard.nextInt(taille);
+                peres[id] = id + hasard.nextInt(taille - id);
+            }
+        }
+        for (int id = 0; id < taille; id++) {
+            if (peres[id] >= 0) {
+                listes[peres[id]].ajouterSiAbsent(id);
+            }
+            registre.get(id).restaurerLiens(peres[id], meres[id], -1, listes[id], ListeIds.VIDE);
+        }
+        return registre;
+    }
+
+    private static RegistreMembres registre(int taille) {
+        RegistreMembres registre = new RegistreMembres();
+        for (int id = 0; id < taille; id++) {
+            registre.ajouter(MembreFamille.restaurer("Luc", "Dupont", "", null));
+        }
+        return registre;
+    }
+
+    private static void lier(RegistreMembres registre, int id, int pere, int mere) {
+        registre.get(id).restaurerLiens(pere, mere, -1, ListeIds.VIDE, ListeIds.VIDE);
+    }
+
+    private static int[] trie(int[] ids) {
+        int[] copie = ids.clone();
+        Arrays.sort(copie);
+        return copie;
+    }
+}
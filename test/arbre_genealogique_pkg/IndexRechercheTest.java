@@ -0,0 +1,96 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Mise à jour de l'index de recherche approchée quand les membres changent de nom
+ * @author aklam
+ */
+class IndexRechercheTest {
+
+    @Test
+    void unMembreRenommeNEstTrouveQueSousSonNouveauNom() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille jean = moteur.getArbre().getRoot();
+        int porteurs = moteur.rechercher("Dupont", 100).size();
+
+        //le premier membre, loin de la fin des listes de l'index
+        moteur.modifierNom(jean, "Durand");
+
+        List<MembreFamille> dupont = moteur.rechercher("Dupont", 100);
+        assertEquals(porteurs - 1, dupont.size());
+        assertFalse(dupont.contains(jean));
+        assertTrue(moteur.rechercher("Durand Jean", 100).contains(jean));
+
+        assertTrue(moteur.annuler());
+        assertEquals(porteurs, moteur.rechercher("Dupont", 100).size());
+        assertFalse(moteur.rechercher("Jean Durand", 100).contains(jean));
+    }
+
+    @Test
+    void unMotRepeteEstRetireUneFoisParOccurrence() {
+        IndexRecherche index = new IndexRecherche();
+        index.ajouter(5, "Marie Marie");
+        index.ajouter(2, "Marie");
+        index.ajouter(9, "Marie");
+
+        assertArrayEquals(new int[]{2, 5, 9}, index.rechercher("marie", 10));
+        index.retirer(5, "Marie");
+        assertArrayEquals(new int[]{2, 5, 9}, index.rechercher("marie", 10));
+        index.retirer(5, "Marie");
+        assertArrayEquals(new int[]{2, 9}, index.rechercher("marie", 10));
+        index.retirer(2, "Marie");
+        assertArrayEquals(new int[]{9}, index.rechercher("marie", 10));
+    }
+
+    @Test
+    void desRenommagesEnChaineGardentLIndexCoherent() {
+        MoteurArbre moteur = new MoteurArbre(new GenerateurArbre(8, 11).genererArbre());
+        moteur.rechercher("x", 1);
+        String[] noms = {"Alpha", "Beta", "Gamma"};
+        int nombre = moteur.getArbre().nombreMembres();
+        for (int id = nombre - 1; id >= 0; id -= 3) {
+            moteur.modifierNom(moteur.getMembre(id), noms[id / 3 % noms.length]);
+        }
+
+        for (String nom : noms) {
+            List<MembreFamille> porteurs = moteur.trouverParNom(nom);
+            List<MembreFamille> trouves = moteur.rechercher(nom, nombre);
+            //les porteurs du nom d'abord, puis d'éventuels noms approchants
+            assertEquals(porteurs.size(), trouves.stream().filter(membre -> membre.getNom().equals(nom)).count());
+            assertTrue(trouves.containsAll(porteurs), nom);
+        }
+    }
+
+    @Test
+    void lIndexPeutEtreConstruitAvantLaPremiereRecherche() throws IOException {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        assertFalse(moteur.recherchePrete());
+        SuiviProgression annule = new SuiviProgression() {
+            @Override
+            public void progression(long fait, long total) {
+            }
+
+            @Override
+            public boolean estAnnule() {
+                return true;
+            }
+        };
+        assertThrows(InterruptedIOException.class, () -> moteur.preparerRecherche(annule));
+        assertFalse(moteur.recherchePrete());
+
+        moteur.preparerRecherche(SuiviProgression.AUCUN);
+        assertTrue(moteur.recherchePrete());
+        assertTrue(moteur.rechercher("Jean", 10).contains(moteur.getArbre().getRoot()));
+    }
+}
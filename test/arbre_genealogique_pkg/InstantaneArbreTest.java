@@ -0,0 +1,78 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Instantanés successifs d'un arbre modifié entre-temps
+ * @author aklam
+ */
+class InstantaneArbreTest {
+
+    @Test
+    void unInstantaneNeChangePlusApresUneModification() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille jean = moteur.getArbre().getRoot();
+        InstantaneArbre avant = moteur.instantane();
+        int[] enfants = avant.enfants(jean.getId());
+
+        moteur.modifierNom(jean, "Durand");
+        moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Luc", "Durand", MembreFamille.Genre.MASCULIN);
+        InstantaneArbre apres = moteur.instantane();
+
+        assertEquals("Dupont", avant.nom(jean.getId()));
+        assertArrayEquals(enfants, avant.enfants(jean.getId()));
+        assertEquals("Durand", apres.nom(jean.getId()));
+        assertEquals(enfants.length + 1, apres.enfants(jean.getId()).length);
+        assertEquals(avant.nombreMembres() + 1, apres.nombreMembres());
+    }
+
+    @Test
+    void lesListesRemplaceesNeSontPasGardees() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille camille = moteur.trouverParPrenoms("Camille").get(0);
+        int listes = moteur.instantane().nombreListes();
+
+        //chaque ajout alloue une nouvelle liste d'enfants à Camille, que l'annulation retire
+        for (int i = 0; i < 100; i++) {
+            MembreFamille enfant = moteur.ajouterLien(camille, MembreFamille.LienDeParente.ENFANT, "Luc", "Dupont",
+                    MembreFamille.Genre.MASCULIN);
+            InstantaneArbre instantane = moteur.instantane();
+            assertArrayEquals(new int[]{enfant.getId()}, instantane.enfants(camille.getId()));
+            assertTrue(moteur.annuler());
+            instantane = moteur.instantane();
+            assertEquals(0, instantane.enfants(camille.getId()).length);
+        }
+
+        assertTrue(moteur.instantane().nombreListes() <= listes + 2,
+                "table des listes : " + moteur.instantane().nombreListes());
+    }
+
+    @Test
+    void lesModificationsDePlusieursFilsSontToutesPubliees() throws InterruptedException {
+        ArbreConcurrent arbre = new ArbreConcurrent(new GenerateurArbre(12, 7).genererArbre());
+        arbre.instantane();
+        int fils = 4;
+        Thread[] threads = new Thread[fils];
+        for (int f = 0; f < fils; f++) {
+            int premier = f;
+            threads[f] = new Thread(() -> {
+                for (int id = premier; id < arbre.nombreMembres(); id += fils) {
+                    arbre.modifierNom(id, "Nom" + (char) ('a' + premier));
+                }
+            });
+            threads[f].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        InstantaneArbre instantane = arbre.instantane();
+        for (int id = 0; id < instantane.nombreMembres(); id++) {
+            assertEquals("Nom" + (char) ('a' + id % fils), instantane.nom(id), "membre " + id);
+        }
+    }
+}
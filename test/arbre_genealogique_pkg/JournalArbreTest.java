@@ -0,0 +1,234 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rejeu du journal à l'ouverture, après un arrêt brutal, et compactage
+ * @author aklam
+ */
+class JournalArbreTest {
+
+    @TempDir
+    Path dossier;
+
+    @Test
+    void lesModificationsValideesSontRejouees() throws IOException {
+        File fichier = enregistrerFamille();
+        String initial = ArbresDeTest.contenu(MoteurArbre.ouvrir(fichier), dossier);
+
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        MembreFamille racine = moteur.getArbre().getRoot();
+        moteur.modifierNom(racine, "Durand");
+        moteur.modifierPrenoms(racine, "Jean-Pierre");
+        moteur.modifierNomDeBaseDeLaMariee(racine.getConjoint(), "");
+        moteur.modifierGenre(moteur.trouverParPrenoms("Camille").get(0), MembreFamille.Genre.FEMININ);
+        MembreFamille enfant = moteur.ajouterLien(racine, MembreFamille.LienDeParente.ENFANT, "Paul", "Durand",
+                MembreFamille.Genre.MASCULIN);
+        moteur.ajouterLien(enfant, MembreFamille.LienDeParente.CONJOINT, "Léa", "Durand", "Petit",
+                MembreFamille.Genre.FEMININ);
+        moteur.enregistrer(fichier);
+        String attendu = ArbresDeTest.contenu(moteur, dossier);
+        moteur.fermerJournal();
+
+        //le fichier .ft n'a pas été réécrit, les modifications ne sont que dans le journal
+        assertEquals(initial, ArbresDeTest.contenu(FichierArbre.ouvrir(fichier), dossier));
+        MoteurArbre rejoue = MoteurArbre.ouvrir(fichier);
+        MembreFamille jean = rejoue.getArbre().getRoot();
+        assertEquals("Durand", jean.getNom());
+        assertEquals("Jean-Pierre", jean.getPrenoms());
+        assertEquals("", jean.getConjoint().getNomDeBaseDeLaMariee());
+        assertEquals(MembreFamille.Genre.FEMININ, rejoue.trouverParPrenoms("Camille").get(0).getGenre());
+        MembreFamille lea = rejoue.trouverParPrenoms("Léa").get(0);
+        assertEquals("Petit", lea.getNomDeBaseDeLaMariee());
+        assertSame(jean, lea.getConjoint().getPere());
+        assertEquals(attendu, ArbresDeTest.contenu(rejoue, dossier));
+        assertEquals(attendu, ArbresDeTest.contenu(MoteurArbre.ouvrirJournalise(fichier), dossier));
+    }
+
+    @Test
+    void seulesLesModificationsValideesSontRejoueesApresUnArretBrutal() throws IOException {
+        File fichier = enregistrerFamille();
+        Path journal = JournalArbre.fichierJournal(fichier).toPath();
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        MembreFamille racine = moteur.getArbre().getRoot();
+
+        moteur.modifierNom(racine, "Durand");
+        moteur.enregistrer(fichier);
+        String premiereValidation = ArbresDeTest.contenu(moteur, dossier);
+        long finPremiereValidation = Files.size(journal);
+
+        moteur.ajouterLien(racine, MembreFamille.LienDeParente.ENFANT, "Paul", "Durand", MembreFamille.Genre.MASCULIN);
+        moteur.modifierPrenoms(racine, "Jean-Pierre");
+        moteur.enregistrer(fichier);
+        String secondeValidation = ArbresDeTest.contenu(moteur, dossier);
+        long finSecondeValidation = Files.size(journal);
+
+        //modifications jamais validées
+        moteur.modifierNom(racine, "Martin");
+        moteur.ajouterLien(racine, MembreFamille.LienDeParente.ENFANT, "Luc", "Martin", MembreFamille.Genre.MASCULIN);
+        moteur.fermerJournal();
+        byte[] complet = Files.readAllBytes(journal);
+        assertTrue(complet.length > finSecondeValidation);
+
+        assertEquals(secondeValidation, ArbresDeTest.contenu(MoteurArbre.ouvrir(fichier), dossier));
+
+        //coupé au milieu d'un enregistrement qui suit la dernière validation
+        Files.write(journal, Arrays.copyOf(complet, (int) finSecondeValidation + 7));
+        MoteurArbre coupe = MoteurArbre.ouvrir(fichier);
+        assertEquals("Durand", coupe.getArbre().getRoot().getNom());
+        assertEquals("Jean-Pierre", coupe.getArbre().getRoot().getPrenoms());
+        assertEquals(2, coupe.trouverParPrenoms("Paul").size());
+        assertTrue(coupe.trouverParPrenoms("Luc").isEmpty());
+        assertEquals(secondeValidation, ArbresDeTest.contenu(coupe, dossier));
+
+        //coupé au milieu d'un enregistrement qui précède la seconde validation
+        Files.write(journal, Arrays.copyOf(complet, (int) finPremiereValidation + 7));
+        coupe = MoteurArbre.ouvrir(fichier);
+        assertEquals("Durand", coupe.getArbre().getRoot().getNom());
+        assertEquals("Jean", coupe.getArbre().getRoot().getPrenoms());
+        assertEquals(1, coupe.trouverParPrenoms("Paul").size());
+        assertEquals(premiereValidation, ArbresDeTest.contenu(coupe, dossier));
+
+        //la suite du journal coupé reste lisible après de nouvelles modifications
+        MoteurArbre repris = MoteurArbre.ouvrirJournalise(fichier);
+        repris.modifierPrenoms(repris.getArbre().getRoot(), "Jacques");
+        repris.enregistrer(fichier);
+        String attendu = ArbresDeTest.contenu(repris, dossier);
+        repris.fermerJournal();
+        assertNotEquals(premiereValidation, attendu);
+        assertEquals(attendu, ArbresDeTest.contenu(MoteurArbre.ouvrir(fichier), dossier));
+    }
+
+    @Test
+    void unEnregistrementAltereArreteLeRejeu() throws IOException {
+        File fichier = enregistrerFamille();
+        Path journal = JournalArbre.fichierJournal(fichier).toPath();
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        MembreFamille racine = moteur.getArbre().getRoot();
+        moteur.modifierNom(racine, "Durand");
+        moteur.enregistrer(fichier);
+        String premiereValidation = ArbresDeTest.contenu(moteur, dossier);
+        long finPremiereValidation = Files.size(journal);
+        moteur.modifierNom(racine, "Martin");
+        moteur.enregistrer(fichier);
+        moteur.fermerJournal();
+
+        //un octet du nom écrit après la première validation : sa somme de contrôle ne correspond plus
+        byte[] octets = Files.readAllBytes(journal);
+        octets[(int) finPremiereValidation + 8] ^= 0x01;
+        Files.write(journal, octets);
+
+        MoteurArbre relu = MoteurArbre.ouvrir(fichier);
+        assertEquals("Durand", relu.getArbre().getRoot().getNom());
+        assertEquals(premiereValidation, ArbresDeTest.contenu(relu, dossier));
+    }
+
+    @Test
+    void leJournalDUnAutreFichierEstIgnore() throws IOException {
+        File fichier = enregistrerFamille();
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        moteur.modifierNom(moteur.getArbre().getRoot(), "Durand");
+        moteur.enregistrer(fichier);
+        moteur.fermerJournal();
+
+        //le fichier est remplacé sans passer par le journal
+        MoteurArbre autre = new MoteurArbre();
+        autre.definirRacine("Alice", "Bernard", MembreFamille.Genre.FEMININ);
+        autre.enregistrer(fichier);
+
+        MoteurArbre relu = MoteurArbre.ouvrir(fichier);
+        assertEquals("Alice", relu.getArbre().getRoot().getPrenoms());
+        assertEquals("Bernard", relu.getArbre().getRoot().getNom());
+        assertEquals(1, relu.getArbre().nombreMembres());
+    }
+
+    @Test
+    void unGrosJournalEstCompacte() throws IOException {
+        File fichier = enregistrerFamille();
+        Path journal = JournalArbre.fichierJournal(fichier).toPath();
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        MembreFamille racine = moteur.getArbre().getRoot();
+        char[] lettres = new char[1000];
+        long plusGrand = 0;
+        boolean compacte = false;
+        for (int i = 0; i < 2000 && !compacte; i++) {
+            //chaque prénom diffère du précédent
+            Arrays.fill(lettres, (char) ('a' + i % 26));
+            lettres[0] = (char) ('a' + i / 26 % 26);
+            moteur.modifierPrenoms(racine, new String(lettres));
+            moteur.enregistrer(fichier);
+            long taille = Files.size(journal);
+            compacte = taille < plusGrand;
+            plusGrand = Math.max(plusGrand, taille);
+        }
+        String attendu = ArbresDeTest.contenu(moteur, dossier);
+        moteur.fermerJournal();
+
+        assertTrue(compacte, "le journal aurait dû être compacté");
+        //compacté à l'enregistrement qui lui fait dépasser 1 Mio, à une modification près
+        assertTrue(plusGrand > (1 << 20) - 2 * lettres.length, "compacté trop tôt : " + plusGrand);
+        //l'arbre réécrit contient toutes les modifications, sans le journal
+        assertEquals(attendu, ArbresDeTest.contenu(FichierArbre.ouvrir(fichier), dossier));
+        assertEquals(attendu, ArbresDeTest.contenu(MoteurArbre.ouvrir(fichier), dossier));
+    }
+
+    @Test
+    void unChangementDeCodecCompacteLeJournal() throws IOException {
+        File fichier = enregistrerFamille();
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        moteur.modifierNom(moteur.getArbre().getRoot(), "Durand");
+        moteur.choisirCodec(CodecBlocs.DEFLATE);
+        moteur.enregistrer(fichier);
+        String attendu = ArbresDeTest.contenu(moteur, dossier);
+
+        assertEquals(CodecBlocs.DEFLATE, FichierArbre.codec(fichier));
+        assertEquals(attendu, ArbresDeTest.contenu(FichierArbre.ouvrir(fichier), dossier));
+
+        //le journal recommencé correspond au fichier réécrit
+        moteur.modifierPrenoms(moteur.getArbre().getRoot(), "Jacques");
+        moteur.enregistrer(fichier);
+        attendu = ArbresDeTest.contenu(moteur, dossier);
+        moteur.fermerJournal();
+        assertEquals(attendu, ArbresDeTest.contenu(MoteurArbre.ouvrir(fichier), dossier));
+    }
+
+    @Test
+    void unEnregistrementCoupeEstEfaceALaReprise() throws IOException {
+        File fichier = enregistrerFamille();
+        Path journal = JournalArbre.fichierJournal(fichier).toPath();
+        MoteurArbre moteur = MoteurArbre.ouvrirJournalise(fichier);
+        moteur.modifierNom(moteur.getArbre().getRoot(), "Durand");
+        moteur.enregistrer(fichier);
+        long finValidation = Files.size(journal);
+        moteur.modifierNom(moteur.getArbre().getRoot(), "Martin");
+        moteur.fermerJournal();
+        try (FileChannel canal = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            canal.truncate(Files.size(journal) - 3);
+        }
+
+        MoteurArbre repris = MoteurArbre.ouvrirJournalise(fichier);
+        assertEquals(finValidation, Files.size(journal));
+        assertEquals("Durand", repris.getArbre().getRoot().getNom());
+        repris.fermerJournal();
+    }
+
+    private File enregistrerFamille() throws IOException {
+        File fichier = dossier.resolve("famille.ft").toFile();
+        ArbresDeTest.famille().enregistrer(fichier);
+        return fichier;
+    }
+}
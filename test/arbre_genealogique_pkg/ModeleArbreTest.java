@@ -0,0 +1,163 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Mise à jour du modèle de l'arbre après des ajouts et des annulations, comme le fait l'interface
+ * @author aklam
+ */
+class ModeleArbreTest {
+
+    @Test
+    void unMembreAjouteApresUneAnnulationEstDeveloppe() {
+        MoteurArbre moteur = new MoteurArbre();
+        MembreFamille racine = moteur.definirRacine("Jean", "Dupont", MembreFamille.Genre.MASCULIN);
+        ModeleArbre modele = new ModeleArbre(moteur.getArbre());
+        ModeleArbre.NoeudMembre noeudRacine = modele.getNoeudRacine();
+        noeudRacine.getChildCount();
+
+        MembreFamille paul = moteur.ajouterLien(racine, MembreFamille.LienDeParente.ENFANT, "Paul", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        modele.liensModifies(racine, racine.getConjoint(), paul);
+        assertNotNull(noeudEnfant(noeudRacine, 0));
+        assertTrue(moteur.annuler());
+        modele.liensModifies();
+        modele.membresModifies();
+
+        //le nouvel enfant reprend l'identifiant de l'enfant retiré
+        MembreFamille enfant = moteur.ajouterLien(racine, MembreFamille.LienDeParente.ENFANT, "Luc", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        modele.liensModifies(racine, racine.getConjoint(), enfant);
+        ModeleArbre.NoeudMembre noeudEnfant = noeudEnfant(noeudRacine, 0);
+        assertEquals(enfant, noeudEnfant.getMembre());
+        assertFalse(noeudEnfant instanceof ModeleArbre.NoeudFeuille, "l'enfant doit être développable");
+
+        noeudEnfant.getChildCount();
+        MembreFamille petitEnfant = moteur.ajouterLien(enfant, MembreFamille.LienDeParente.ENFANT, "Marc", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        modele.liensModifies(enfant, enfant.getConjoint(), petitEnfant);
+        assertEquals(petitEnfant, noeudEnfant(noeudEnfant, 0).getMembre());
+    }
+
+    @Test
+    void unAjoutAnnuleRetireSonNoeud() {
+        MoteurArbre moteur = new MoteurArbre();
+        MembreFamille racine = moteur.definirRacine("Jean", "Dupont", MembreFamille.Genre.MASCULIN);
+        ModeleArbre modele = new ModeleArbre(moteur.getArbre());
+        ModeleArbre.NoeudMembre noeudRacine = modele.getNoeudRacine();
+        noeudRacine.getChildCount();
+
+        MembreFamille paul = moteur.ajouterLien(racine, MembreFamille.LienDeParente.ENFANT, "Paul", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        modele.liensModifies(racine, racine.getConjoint(), paul);
+        assertTrue(moteur.annuler());
+        modele.liensModifies();
+        assertEquals(null, categorie(noeudRacine, ModeleArbre.ENFANTS));
+    }
+
+    @Test
+    void unAjoutNeMetAJourQueLesNoeudsQuiAffichentSesListes() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        MembreFamille jean = moteur.getArbre().getRoot();
+        ModeleArbre modele = new ModeleArbre(moteur.getArbre());
+        ModeleArbre.NoeudMembre noeudRacine = modele.getNoeudRacine();
+        noeudRacine.getChildCount();
+        ModeleArbre.NoeudMembre noeudPaul = noeudEnfant(noeudRacine, 0);
+        assertEquals("Paul", noeudPaul.getMembre().getPrenoms());
+        noeudPaul.getChildCount();
+        ModeleArbre.NoeudMembre noeudPierre =
+                (ModeleArbre.NoeudMembre) categorie(noeudRacine, ModeleArbre.PARENTS).getChildAt(0);
+        noeudPierre.getChildCount();
+
+        List<Object> touches = new ArrayList<>();
+        modele.addTreeModelListener(new TreeModelListener() {
+            @Override
+            public void treeNodesChanged(TreeModelEvent e) {
+                touches.add(e.getTreePath().getLastPathComponent());
+            }
+
+            @Override
+            public void treeNodesInserted(TreeModelEvent e) {
+                touches.add(e.getTreePath().getLastPathComponent());
+            }
+
+            @Override
+            public void treeNodesRemoved(TreeModelEvent e) {
+                touches.add(e.getTreePath().getLastPathComponent());
+            }
+
+            @Override
+            public void treeStructureChanged(TreeModelEvent e) {
+                touches.add(e.getTreePath().getLastPathComponent());
+            }
+        });
+        MembreFamille nouveau = moteur.ajouterLien(jean, MembreFamille.LienDeParente.ENFANT, "Luc", "Dupont",
+                MembreFamille.Genre.MASCULIN);
+        modele.liensModifies(jean, jean.getConjoint(), nouveau);
+
+        //Paul partage la liste de freres-soeurs de ses parents : son nœud affiche le nouvel enfant
+        assertTrue(contient(categorie(noeudPaul, ModeleArbre.FRERES_SOEURS), nouveau));
+        assertTrue(contient(categorie(noeudRacine, ModeleArbre.ENFANTS), nouveau));
+        //le père de Jean n'affiche aucune liste modifiée
+        assertFalse(touches.contains(noeudPierre));
+        for (int i = 0; i < noeudPierre.getChildCount(); i++) {
+            assertFalse(touches.contains(noeudPierre.getChildAt(i)));
+        }
+    }
+
+    @Test
+    void lEnumerationDesEnfantsChargeLeNoeud() {
+        MoteurArbre moteur = ArbresDeTest.famille();
+        ModeleArbre modele = new ModeleArbre(moteur.getArbre());
+        ModeleArbre.NoeudMembre noeudRacine = modele.getNoeudRacine();
+
+        //children() est appelé avant tout autre accès aux enfants
+        Enumeration<TreeNode> enfants = noeudRacine.children();
+        int i = 0;
+        while (enfants.hasMoreElements()) {
+            assertSame(noeudRacine.getChildAt(i++), enfants.nextElement());
+        }
+        assertEquals(noeudRacine.getChildCount(), i);
+        assertNotNull(categorie(noeudRacine, ModeleArbre.ENFANTS));
+    }
+
+    private static ModeleArbre.NoeudMembre noeudEnfant(ModeleArbre.NoeudMembre parent, int index) {
+        DefaultMutableTreeNode enfants = categorie(parent, ModeleArbre.ENFANTS);
+        assertNotNull(enfants, "catégorie des enfants absente");
+        return (ModeleArbre.NoeudMembre) enfants.getChildAt(index);
+    }
+
+    private static boolean contient(DefaultMutableTreeNode categorie, MembreFamille membre) {
+        for (int i = 0; i < categorie.getChildCount(); i++) {
+            if (((ModeleArbre.NoeudMembre) categorie.getChildAt(i)).getMembre() == membre) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static DefaultMutableTreeNode categorie(ModeleArbre.NoeudMembre noeud, String libelle) {
+        for (int i = 0; i < noeud.getChildCount(); i++) {
+            TreeNode enfant = noeud.getChildAt(i);
+            if (libelle.equals(((DefaultMutableTreeNode) enfant).getUserObject())) {
+                return (DefaultMutableTreeNode) enfant;
+            }
+        }
+        return null;
+    }
+}
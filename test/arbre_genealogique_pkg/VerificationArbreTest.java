@@ -0,0 +1,173 @@
+package arbre_genealogique_pkg;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Incohérences trouvées dans des registres construits sans passer par les règles de liaison, comme après
+ * la lecture d'un fichier abîmé
+ * @author aklam
+ */
+class VerificationArbreTest {
+
+    private static final MembreFamille.Genre M = MembreFamille.Genre.MASCULIN;
+    private static final MembreFamille.Genre F = MembreFamille.Genre.FEMININ;
+
+    @TempDir
+    Path dossier;
+
+    @Test
+    void uneFamilleConstruiteParLeMoteurEstCoherente() {
+        assertTrue(ArbresDeTest.famille().verifier().estValide());
+    }
+
+    @Test
+    void signaleUnConjointNonReciproque() {
+        //0 a pour conjointe 1, qui a pour conjoint 2
+        RegistreMembres registre = registre(M, F, M);
+        lier(registre, 0, -1, -1, 1);
+        lier(registre, 1, -1, -1, 2);
+        lier(registre, 2, -1, -1, 1);
+
+        RapportVerification rapport = verifier(registre);
+        assertSeul(rapport, RapportVerification.Probleme.CONJOINT_NON_RECIPROQUE, 0);
+    }
+
+    @Test
+    void signaleUnEnfantAbsentDeLaListeDeSonParent() {
+        RegistreMembres registre = registre(M, F, M);
+        lier(registre, 0, -1, -1, 1);
+        lier(registre, 1, -1, -1, 0);
+        //l'enfant a un père et une mère, mais seul le père l'a dans ses enfants : la liste n'est pas partagée
+        lier(registre, 2, 0, 1, -1);
+        registre.get(0).restaurerLiens(-1, -1, 1, liste(2), ListeIds.VIDE);
+
+        RapportVerification rapport = verifier(registre);
+        assertSeul(rapport, RapportVerification.Probleme.ENFANT_ABSENT, 2);
+    }
+
+    @Test
+    void signaleUnEnfantDontNiLeMembreNiSonConjointNEstLeParent() {
+        RegistreMembres registre = registre(M, M);
+        registre.get(0).restaurerLiens(-1, -1, -1, liste(1), ListeIds.VIDE);
+
+        assertSeul(verifier(registre), RapportVerification.Probleme.ENFANT_SANS_PARENT, 0);
+    }
+
+    @Test
+    void signaleUnParentDuMauvaisGenre() {
+        RegistreMembres registre = registre(F, M, M, null);
+        registre.get(0).restaurerLiens(-1, -1, -1, liste(2), ListeIds.VIDE);
+        registre.get(1).restaurerLiens(-1, -1, -1, liste(3), ListeIds.VIDE);
+        lier(registre, 2, 0, -1, -1);
+        lier(registre, 3, -1, 1, -1);
+
+        RapportVerification rapport = verifier(registre);
+        assertEquals(2, rapport.total());
+        assertArrayEquals(new int[]{2}, rapport.exemples(RapportVerification.Probleme.PERE_NON_MASCULIN));
+        assertArrayEquals(new int[]{3}, rapport.exemples(RapportVerification.Probleme.MERE_NON_FEMININ));
+    }
+
+    @Test
+    void signaleLesMembresQuiSontLeurPropreAncetre() {
+        //0 et 1 sont le père l'un de l'autre, 2 est le fils de 0 sans être sur le cycle, 3 est son propre père
+        RegistreMembres registre = registre(M, M, M, M);
+        registre.get(0).restaurerLiens(1, -1, -1, liste(1, 2), ListeIds.VIDE);
+        registre.get(1).restaurerLiens(0, -1, -1, liste(0), ListeIds.VIDE);
+        lier(registre, 2, 0, -1, -1);
+        registre.get(3).restaurerLiens(3, -1, -1, liste(3), ListeIds.VIDE);
+
+        RapportVerification rapport = verifier(registre);
+        assertEquals(3, rapport.total());
+        assertArrayEquals(new int[]{0, 1, 3}, rapport.exemples(RapportVerification.Probleme.PROPRE_ANCETRE));
+    }
+
+    @Test
+    void lesTranchesEtLaLectureProjeteeTrouventLesMemesIncoherences() throws IOException {
+        int taille = 3 * VerificationArbre.SEUIL + 7;
+        RegistreMembres registre = new RegistreMembres();
+        for (int id = 0; id < taille; id++) {
+            registre.ajouter(MembreFamille.restaurer("Luc", "Dupont", "", M));
+        }
+        //des conjoints à sens unique et du même genre, répartis sur toutes les tranches
+        for (int id = 0; id + 1 < taille; id += 5000) {
+            lier(registre, id, -1, -1, id + 1);
+        }
+        //le dernier membre est le père d'enfants de toutes les tranches sans les avoir dans sa liste,
+        //l'avant-dernier a bien les siens
+        int absent = taille - 1;
+        int present = taille - 2;
+        ListeIds enfants = new ListeIds();
+        for (int id = 3; id < present; id += 7000) {
+            lier(registre, id, absent, -1, -1);
+            lier(registre, id + 1, present, -1, -1);
+            enfants.ajouter(id + 1);
+        }
+        registre.get(present).restaurerLiens(-1, -1, -1, enfants, ListeIds.VIDE);
+
+        RapportVerification rapport = verifier(registre);
+        assertEquals(10, rapport.nombre(RapportVerification.Probleme.CONJOINT_NON_RECIPROQUE));
+        assertEquals(10, rapport.nombre(RapportVerification.Probleme.CONJOINT_MEME_GENRE));
+        assertEquals(8, rapport.nombre(RapportVerification.Probleme.ENFANT_ABSENT));
+        assertEquals(28, rapport.total());
+        assertArrayEquals(new int[]{0, 5000, 10000, 15000, 20000, 25000, 30000, 35000, 40000, 45000},
+                rapport.exemples(RapportVerification.Probleme.CONJOINT_NON_RECIPROQUE));
+        assertArrayEquals(new int[]{3, 7003, 14003, 21003, 28003, 35003, 42003, 49003},
+                rapport.exemples(RapportVerification.Probleme.ENFANT_ABSENT));
+
+        //un arbre projeté est vérifié d'une traite, sans charger ses membres
+        File fichier = dossier.resolve("incoherent.ft").toFile();
+        FichierArbre.enregistrer(new ArbreGenealogique(registre, null), fichier);
+        RegistreMembres projete = FichierArbre.ouvrirProjete(fichier).getRegistre();
+        RapportVerification lu = verifier(projete);
+        assertTrue(projete.estPartiel());
+        for (RapportVerification.Probleme probleme : RapportVerification.Probleme.values()) {
+            assertEquals(rapport.nombre(probleme), lu.nombre(probleme), probleme.name());
+            assertArrayEquals(rapport.exemples(probleme), lu.exemples(probleme), probleme.name());
+        }
+    }
+
+    private static RapportVerification verifier(RegistreMembres registre) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            return VerificationArbre.verifier(registre, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSeul(RapportVerification rapport, RapportVerification.Probleme probleme, int id) {
+        assertEquals(1, rapport.total(), rapport.toString());
+        assertEquals(1, rapport.nombre(probleme), rapport.toString());
+        assertArrayEquals(new int[]{id}, rapport.exemples(probleme));
+    }
+
+    private static RegistreMembres registre(MembreFamille.Genre... genres) {
+        RegistreMembres registre = new RegistreMembres();
+        for (MembreFamille.Genre genre : genres) {
+            registre.ajouter(MembreFamille.restaurer("Luc", "Dupont", "", genre));
+        }
+        return registre;
+    }
+
+    private static void lier(RegistreMembres registre, int id, int pere, int mere, int conjoint) {
+        registre.get(id).restaurerLiens(pere, mere, conjoint, ListeIds.VIDE, ListeIds.VIDE);
+    }
+
+    private static ListeIds liste(int... ids) {
+        ListeIds liste = new ListeIds();
+        for (int id : ids) {
+            liste.ajouter(id);
+        }
+        return liste;
+    }
+}